@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.messages;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the old one-lookup-per-byte CRC32c with slicing-by-8 and the JDK
+ * intrinsic. Run with mvn -Pjmh compile exec:exec -Djmh.args="Crc32c"
+ *
+ * @author tim
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Crc32cBenchmark {
+
+    // a tiny control packet, a typical full DTLS sized packet and a big one
+    @Param({"100", "1200", "65536"})
+    int size;
+
+    byte[] data;
+    ByteBuffer direct;
+    Crc32c slice8;
+    Crc32c jdk;
+
+    @Setup
+    public void setup() {
+        data = new byte[size];
+        new Random(1).nextBytes(data);
+        direct = ByteBuffer.allocateDirect(size);
+        direct.put(data);
+        slice8 = new Crc32c(false);
+        jdk = new Crc32c(true);
+    }
+
+    @Benchmark
+    public int bytewise() {
+        return Crc32c.updateBytewise(~0, data, 0, size);
+    }
+
+    @Benchmark
+    public long sliceBy8() {
+        slice8.reset();
+        slice8.update(data, 0, size);
+        return slice8.getValue();
+    }
+
+    @Benchmark
+    public long jdkIntrinsic() {
+        jdk.reset();
+        jdk.update(data, 0, size);
+        return jdk.getValue();
+    }
+
+    @Benchmark
+    public long sliceBy8Direct() {
+        ((Buffer) direct).clear();
+        slice8.reset();
+        slice8.update(direct);
+        return slice8.getValue();
+    }
+
+    @Benchmark
+    public long jdkIntrinsicDirect() {
+        ((Buffer) direct).clear();
+        jdk.reset();
+        jdk.update(direct);
+        return jdk.getValue();
+    }
+}
@@ -22,6 +22,7 @@ import pe.pi.sctp4j.sctp.messages.exceptions.UnreadyAssociationException;
 import pe.pi.sctp4j.sctp.messages.*;
 
 import pe.pi.sctp4j.sctp.messages.params.StaleCookieError;
+import pe.pi.sctp4j.sctp.messages.params.ZeroChecksumAcceptable;
 
 import com.phono.srtplight.Log;
 import java.io.EOFException;
@@ -30,16 +31,18 @@ import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.security.SecureRandom;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import org.bouncycastle.tls.DTLSTransport;
 import org.bouncycastle.tls.DatagramTransport;
 import pe.pi.sctp4j.sctp.dataChannel.DECP.DCOpen;
+import pe.pi.sctp4j.sctp.runtime.AssociationRuntime;
+import pe.pi.sctp4j.sctp.runtime.DedicatedRuntime;
 
 /**
  *
@@ -97,15 +100,18 @@ abstract public class Association {
         SHUTDOWNACKSENT, CLOSED
     };
 
-    private byte[] _supportedExtensions = {(byte) Chunk.RE_CONFIG};
+    private byte[] _supportedExtensions = {(byte) Chunk.RE_CONFIG, (byte) Chunk.FORWARD_TSN,
+        (byte) Chunk.I_DATA, (byte) Chunk.I_FORWARD_TSN};
     /*
-     For what it is worth, here's the logic as to why we don't have any supported extensions.
+     For what it is worth, here's the logic as to why we don't support the other extensions.
      { 
      ASCONF, // this is ICE's job so we never send ASCONF or 
      ASCONF-ACK, // ASCONF-ACK
-     FORWARDTSN, // we may end up wanting this - it supports partial reliability - aka giving up..
+     FORWARDTSN, // supported - partial reliability (RFC 3758) aka giving up.. needed for the PARTIAL_RELIABLE_* channel types
      PKTDROP, // thie is an optional performance enhancement especially valuable for middleboxes (we aren't one)
      RE-CONFIG, // not sure about this - but lets assume for now that the w3c interface doesn't support stream resets.
+     I-DATA, // supported - message interleaving (RFC 8260) so a big message doesn't hold up the other streams
+     I-FORWARD-TSN, // supported - FORWARD TSN for when I-DATA is in use
      AUTH // Assume DTLS will cover this for us if we never send ASCONF packets.
      */
 
@@ -126,7 +132,10 @@ abstract public class Association {
      HB.Max.Burst - 1
      */
     protected final DatagramTransport _transp;
-    private Thread _rcv;
+    private final AssociationRuntime _runtime;
+    private volatile boolean _rcving;
+    private RcvBufferPool _rcvPool;
+    private PacketEncoder _encoder; // lock it from encode until sent
     private int _peerVerTag;
     protected int _myVerTag;
     private final SecureRandom _random;
@@ -143,8 +152,62 @@ abstract public class Association {
     private final AssociationListener _al;
     private HashMap<Long, DataChunk> _outbound;
     protected State _state;
-    private HashMap<Long, DataChunk> _holdingPen;
-    private static int TICK = 1000; // loop time in rcv
+    // inbound DATA waiting for earlier TSNs
+    private final HoldingPen _holdingPen;
+    // bundles outbound DATA and SACKs into MTU sized packets
+    protected final Packetizer _packetizer;
+    // when to SACK inbound DATA
+    private final DelayedAck _delayedAck;
+    // the peer accepts zero checksums from us (RFC 9653)
+    private volatile boolean _sendZeroChecksum;
+    // both ends negotiated FORWARD TSN (RFC 3758) - or I-FORWARD-TSN with I-DATA
+    private volatile boolean _forwardTSN;
+    // both ends negotiated I-DATA (RFC 8260) - all our DATA goes as I-DATA
+    private volatile boolean _iData;
+    private final SCTPTimer _heartbeat;
+    private final Runnable _heartbeatDue = this::heartbeatDue;
+    private volatile long _hbInterval = HB_INTERVAL;
+    private volatile long _lastSentAt;
+    /*
+     10.2.  Probing Method Using SCTP
+
+     In the Stream Control Transmission Protocol (SCTP) [RFC2960], the
+     application writes messages to SCTP, which divides the data into
+     smaller "chunks" suitable for transmission through the network.  Each
+     chunk is assigned a Transmission Sequence Number (TSN).  Once a TSN
+     has been transmitted, SCTP cannot change the chunk size.  SCTP multi-
+     path support normally requires SCTP to choose a chunk size such that
+     its messages to fit the smallest PMTU of all paths.  Although not
+     required, implementations may bundle multiple data chunks together to
+     make larger IP packets to send on paths with a larger PMTU.  Note
+     that SCTP must independently probe the PMTU on each path to the peer.
+
+     The RECOMMENDED method for generating probes is to add a chunk
+     consisting only of padding to an SCTP message.  The PAD chunk defined
+     in [RFC4820] SHOULD be attached to a minimum length HEARTBEAT (HB)
+     chunk to build a probe packet.  This method is fully compatible with
+     all current SCTP implementations.
+
+     SCTP MAY also probe with a method similar to TCP's described above,
+     using inline data.  Using such a method has the advantage that
+     successful probes have no additional overhead; however, failed probes
+     will require retransmission of data, which may impact flow
+     performance.
+
+     To do .....
+     */
+    private int _transpMTU = 768;
+    private int _rcvLimit = 1500;
+    /*
+     common header (12) + DATA chunk header (16) - the DTLS record overhead
+     has already been taken off by the transport's getSendLimit()
+     */
+    public final static int DATAOVERHEAD = 28;
+    // the I-DATA chunk header is 4 bytes longer (RFC 8260)
+    public final static int IDATAOVERHEAD = 32;
+    private final static long[] NODUPS = new long[0];
+    public final static long RTO_INITIAL = 3000;
+    public final static long HB_INTERVAL = 30000;
     protected static int __assocNo = 1;
     private ReconfigState reconfigState;
 
@@ -161,6 +224,32 @@ abstract public class Association {
         return _supportedExtensions;
     }
 
+    private boolean supportsExtension(int type) {
+        for (byte e : getSupportedExtensions()) {
+            if (e == (byte) type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if both ends agreed to partial reliability (RFC 3758) - so
+     * we may give up on a message and tell the far end with a FORWARD TSN.
+     */
+    public boolean mayForwardTSN() {
+        return _forwardTSN;
+    }
+
+    /**
+     * @return true if both ends agreed to I-DATA (RFC 8260) - our messages go
+     * as I-DATA, their fragments may be interleaved with other streams' and
+     * are numbered with 32 bit message identifiers rather than SSNs.
+     */
+    public boolean usesIData() {
+        return _iData;
+    }
+
     long getNearTSN() {
         return _nearTSN;
     }
@@ -177,10 +266,11 @@ abstract public class Association {
         ByteBuffer unionbb = ByteBuffer.allocate(far.length);
         for (int f = 0; f < far.length; f++) {
             Log.verb("offered extension " + Chunk.typeLookup(far[f]));
-            for (int n = 0; n < _supportedExtensions.length; n++) {
-                Log.verb("supported extension " + Chunk.typeLookup(_supportedExtensions[n]));
-                if (_supportedExtensions[n] == far[f]) {
-                    Log.verb("matching extension " + Chunk.typeLookup(_supportedExtensions[n]));
+            byte[] ours = getSupportedExtensions();
+            for (int n = 0; n < ours.length; n++) {
+                Log.verb("supported extension " + Chunk.typeLookup(ours[n]));
+                if (ours[n] == far[f]) {
+                    Log.verb("matching extension " + Chunk.typeLookup(ours[n]));
                     unionbb.put(far[f]);
                 }
             }
@@ -227,61 +317,174 @@ abstract public class Association {
             replies.add(0, hisack.get());
         }
         try {
-            send(replies.toArray(s));
+            if (hisack.isPresent() && (replies.size() == 1)) {
+                // only a SACK - let it ride along with any DATA that is queued
+                // or wait for the next packet/delayed ack timer
+                SackChunk sack = (SackChunk) hisack.get();
+                _packetizer.queueSack(sack);
+                if (_delayedAck.sackNow(sack)) {
+                    _packetizer.flush();
+                }
+            } else {
+                if (hisack.isPresent()) {
+                    _delayedAck.sent();
+                }
+                send(replies.toArray(s));
+            }
         } catch (java.io.EOFException end) {
             unexpectedClose(end);
         }
     }
 
-    void startRcv() {
-        final Association me = this;
-        Runnable r = new Runnable() {
-            @Override
-            public void run() {
-                int length = -99;
-                try {
-                    byte[] buf = new byte[1500];
-                    while (_rcv != null) {
-                        try {
-                            length = _transp.receive(buf, 0, buf.length, TICK);
-                            if (length > 0) {
-                                String b = Packet.getHex(buf, length);
-                                Log.verb("DTLS message recieved\n" + b.toString());
-                                ByteBuffer pbb = ByteBuffer.wrap(buf);
-                                ((Buffer) pbb).limit(length);
-                                Packet rec = new Packet(pbb);
-                                Log.debug("SCTP message parsed\n" + rec.toString());
-                                deal(rec);
-                            } else {
-                                Log.verb("Timeout -> short packet " + length);
-                                //_rcv = null;
-                            }
-                        } catch (java.io.InterruptedIOException iox) {
-                            ;// ignore. it should be a timeout.
-                            Log.verb("tick time out");
-                        }
-                    }
-                    Log.verb("SCTP message recv null\n Shutting down.");
+    // delayed ack timer - send the SACK unless some DATA took it already
+    private void flushDelayedSack() {
+        try {
+            if (_packetizer.hasSack()) {
+                _packetizer.flush();
+            }
+        } catch (EOFException end) {
+            unexpectedClose(end);
+        } catch (Exception x) {
+            Log.warn("Can't send delayed SACK " + x.getMessage());
+        }
+    }
+
+    // the packetizer has put the pending SACK in a packet
+    void sackSent() {
+        _delayedAck.sent();
+    }
+
+    /**
+     * Delayed SACK policy (RFC 4960 6.2): acknowledge every
+     * <code>packets</code>'th packet carrying DATA, or <code>delay</code> ms
+     * after the first unacknowledged one, whichever comes first. Gaps and
+     * duplicates are always acknowledged at once. The default is 2 packets
+     * or 200ms - setDelayedAck(1, x) SACKs every packet.
+     *
+     * @param packets
+     * @param delay ms
+     */
+    public void setDelayedAck(int packets, long delay) {
+        _delayedAck.setFrequency(packets);
+        _delayedAck.setDelay(delay);
+    }
 
-                    _transp.close();
+    public int getSackFrequency() {
+        return _delayedAck.getFrequency();
+    }
+
+    public long getSackDelay() {
+        return _delayedAck.getDelay();
+    }
 
-                } catch (java.io.EOFException eof) {
-                    unexpectedClose(eof);
-                } catch (IllegalArgumentException iex) {
-                    Log.warn("Exception " + iex.getMessage());
-                    Log.warn("Buffer Length was invalid " + length);
-                } catch (Exception ex) {
-                    Log.debug("Association rcv failed " + ex.getClass().getName() + " " + ex.getMessage());
-                    ex.printStackTrace();
+    void startRcv() {
+        _rcving = true;
+        _runtime.startReceiver("AssocRcv" + __assocNo, this::rcvOnce);
+    }
 
+    // one turn of the receive loop - false once we are done with the transport
+    private boolean rcvOnce(int waitMillis) {
+        int length = -99;
+        try {
+            if (!_rcving) {
+                Log.verb("SCTP message recv null\n Shutting down.");
+                _transp.close();
+                return false;
+            }
+            RcvBuffer buf = _rcvPool.take();
+            try {
+                length = _transp.receive(buf.array(), 0, buf.array().length, waitMillis);
+                if (length > 0) {
+                    LazyLog.verbHex("DTLS message recieved\n", buf.array(), length);
+                    rcvd(buf, length);
+                } else {
+                    Log.verb("Timeout -> short packet");
                 }
+            } catch (java.io.InterruptedIOException iox) {
+                ;// ignore. it should be a timeout.
+                Log.verb("tick time out");
+            } finally {
+                buf.release();
+            }
+            return true;
+        } catch (java.io.EOFException eof) {
+            unexpectedClose(eof);
+        } catch (IllegalArgumentException iex) {
+            Log.warn("Exception " + iex.getMessage());
+            Log.warn("Buffer Length was invalid " + length);
+        } catch (Exception ex) {
+            Log.debug("Association rcv failed " + ex.getClass().getName() + " " + ex.getMessage());
+            ex.printStackTrace();
+        }
+        return false;
+    }
 
+    // the DATA chunks are views of buf, so each holds it until delivered
+    private void rcvd(RcvBuffer buf, int length) throws Exception {
+        ByteBuffer pbb = ByteBuffer.wrap(buf.array());
+        ((Buffer) pbb).limit(length);
+        Packet rec = new Packet(pbb, doZeroChecksum());
+        LazyLog.debug(() -> "SCTP message parsed\n" + rec.toString());
+        for (Chunk c : rec.getChunkList()) {
+            if (c instanceof DataChunk) {
+                ((DataChunk) c).setRcvBuffer(buf);
             }
-        };
-        _rcv = new Thread(r);
-        _rcv.setPriority(Thread.MAX_PRIORITY);
-        _rcv.setName("AssocRcv" + __assocNo);
-        _rcv.start();
+        }
+        deal(rec);
+    }
+
+    /**
+     * @return the threads we run on
+     */
+    public AssociationRuntime getRuntime() {
+        return _runtime;
+    }
+
+    protected SCTPTimer newTimer() {
+        return _runtime.newTimer();
+    }
+
+    /**
+     * Push mode - the application has read (and DTLS decoded) an SCTP packet
+     * for us, rather than our own thread reading the transport. Calls for one
+     * association must not overlap, a bad packet is logged and dropped.
+     *
+     * @param pkt - position to limit is the packet, it is not kept after
+     * this returns.
+     */
+    public void onDatagram(ByteBuffer pkt) {
+        onRcvBuffer(copyIn(pkt), pkt.remaining());
+    }
+
+    /**
+     * copy a pushed packet into one of our receive buffers - leaving the
+     * caller free to reuse theirs.
+     *
+     * @param pkt - position to limit is the packet
+     * @return a buffer holding the packet at offset 0 - pass it to
+     * onRcvBuffer()
+     */
+    protected RcvBuffer copyIn(ByteBuffer pkt) {
+        int len = pkt.remaining();
+        RcvBuffer ret = _rcvPool.take(len);
+        pkt.duplicate().get(ret.array(), 0, len);
+        return ret;
+    }
+
+    /**
+     * deal with a packet that was copied in - and release our reference to
+     * its buffer.
+     */
+    protected void onRcvBuffer(RcvBuffer buf, int length) {
+        try {
+            rcvd(buf, length);
+        } catch (java.io.EOFException eof) {
+            unexpectedClose(eof);
+        } catch (Exception ex) {
+            Log.debug("Association dropped packet " + ex.getClass().getName() + " " + ex.getMessage());
+        } finally {
+            buf.release();
+        }
     }
 
     public Association(DatagramTransport transport, AssociationListener al) {
@@ -289,21 +492,61 @@ abstract public class Association {
     }
 
     public Association(DatagramTransport transport, AssociationListener al, boolean client) {
+        this(transport, al, client, false);
+    }
+
+    /**
+     * @param transport - used to send, and to receive unless pushed
+     * @param al
+     * @param client - our DTLS role
+     * @param pushed - the application will hand us inbound packets with
+     * onDatagram() - so we don't start a receive thread.
+     */
+    protected Association(DatagramTransport transport, AssociationListener al, boolean client, boolean pushed) {
+        this(transport, al, client, new DedicatedRuntime(), pushed);
+    }
+
+    /**
+     * @param transport - used to send, and to receive unless pushed
+     * @param al
+     * @param client - our DTLS role
+     * @param runtime - reads the transport, runs our timers and calls back
+     * @param pushed - the application will hand us inbound packets with
+     * onDatagram() - so the runtime is not asked to read the transport.
+     */
+    protected Association(DatagramTransport transport, AssociationListener al, boolean client, AssociationRuntime runtime, boolean pushed) {
         //Log.setLevel(Log.ALL);
         Log.debug("Created an Associaction of type: " + this.getClass().getSimpleName());
         _al = al;
+        _runtime = runtime;
         _random = new SecureRandom();
         _myVerTag = _random.nextInt();
         _transp = transport;
         _streams = new ConcurrentHashMap();
         _outbound = new HashMap<Long, DataChunk>();
-        _holdingPen = new HashMap<Long, DataChunk>();
+        _holdingPen = new HoldingPen(0);
         _nearTSN = _random.nextInt(Integer.MAX_VALUE);
         _state = State.CLOSED;
+        _delayedAck = new DelayedAck(() -> flushDelayedSack(), newTimer());
+        _heartbeat = newTimer();
         if (_transp != null) {
+            try {
+                _transpMTU = _transp.getSendLimit();
+                _rcvLimit = Math.max(_rcvLimit, _transp.getReceiveLimit());
+                Log.debug("Transport MTU is now " + _transpMTU);
+            } catch (IOException x) {
+                Log.warn("Failed to get suitable transport mtu ");
+            }
+        }
+        _packetizer = new Packetizer(this, _transpMTU);
+        _rcvPool = new RcvBufferPool(_rcvLimit);
+        _encoder = new PacketEncoder(_transpMTU);
+        if (_transp == null) {
+            Log.error("Created an Associaction with a null transport somehow...");
+        } else if (!pushed) {
             startRcv();
         } else {
-            Log.error("Created an Associaction with a null transport somehow...");
+            Log.debug("Association will be pushed packets");
         }
         __assocNo++;
         /*
@@ -327,6 +570,106 @@ abstract public class Association {
         return true;
     }
 
+    /**
+     * Zero Checksum (RFC 9653): we offer it in our INIT/INIT ACK and accept
+     * packets with a zero checksum. When the peer offers it too we stop
+     * calculating the CRC32c on send. By default only when the transport is
+     * DTLS - which already protects integrity, override to change that.
+     *
+     * @return true if the transport is a DTLSTransport
+     */
+    public boolean doZeroChecksum() {
+        return _transp instanceof DTLSTransport;
+    }
+
+    /**
+     * @return true if we are sending zero checksums to the peer.
+     */
+    public boolean isSendingZeroChecksum() {
+        return _sendZeroChecksum;
+    }
+
+    private boolean acceptZeroChecksum(long farEDMID) {
+        return doZeroChecksum() && (farEDMID == ZeroChecksumAcceptable.EDMID_DTLS);
+    }
+
+    /**
+     * @return the current retransmission timeout in ms - subclasses that
+     * measure the RTT override this.
+     */
+    public long getT3() {
+        return RTO_INITIAL;
+    }
+
+    /*
+     8.3.  Path Heartbeat
+
+     By default, an SCTP endpoint SHOULD monitor the reachability of the
+     idle destination transport address(es) of its peer by sending a
+     HEARTBEAT chunk periodically to the destination transport
+     address(es).  HEARTBEAT sending MAY begin upon reaching the
+     ESTABLISHED state and is discontinued after sending either SHUTDOWN
+     or SHUTDOWN-ACK.
+
+     ...
+
+     A destination transport address is considered "idle" if no new chunk
+     that can be used for updating path RTT (usually including first
+     transmission DATA, INIT, COOKIE ECHO, HEARTBEAT, etc.) and no
+     HEARTBEAT has been sent to it within the current heartbeat period
+     of that address.
+
+     ...
+
+     On an idle destination address that is allowed to heartbeat, it is
+     recommended that a HEARTBEAT chunk is sent once per RTO of that
+     destination address plus the protocol parameter 'HB.interval', with
+     jittering of +/- 50% of the RTO value
+
+     We count anything we send as keeping the path busy.
+     */
+    /**
+     * @param ms - how long we may be idle before sending a HEARTBEAT, 0 to
+     * never send them.
+     */
+    public void setHeartbeatInterval(long ms) {
+        _hbInterval = ms;
+        if (ms <= 0) {
+            _heartbeat.cancel();
+        } else if (isAssociated()) {
+            armHeartbeat();
+        }
+    }
+
+    public long getHeartbeatInterval() {
+        return _hbInterval;
+    }
+
+    private void armHeartbeat() {
+        long rto = getT3();
+        long jitter = ThreadLocalRandom.current().nextLong(rto + 1) - (rto / 2);
+        long from = (_lastSentAt == 0) ? System.currentTimeMillis() : _lastSentAt;
+        _heartbeat.setRunnable(_heartbeatDue, from + _hbInterval + rto + jitter);
+    }
+
+    private void heartbeatDue() {
+        if ((_hbInterval <= 0) || !isAssociated()) {
+            return;
+        }
+        if (System.currentTimeMillis() - _lastSentAt >= _hbInterval) {
+            try {
+                Log.debug("Idle - sending heartbeat");
+                sendHeartBeat();
+            } catch (EOFException end) {
+                unexpectedClose(end);
+                return;
+            } catch (Exception ex) {
+                Log.warn("Can't send heartbeat " + ex.getMessage());
+            }
+        }
+        armHeartbeat();
+    }
+
     public void sendHeartBeat() throws Exception {
         Chunk[] dub = new Chunk[1];
         dub[0] = new HeartBeatChunk();
@@ -335,9 +678,15 @@ abstract public class Association {
 
     protected void send(Chunk c[]) throws SctpPacketFormatException, IOException {
         if ((c != null) && (c.length > 0)) {
-            ByteBuffer obb = mkPkt(c);
-            Log.verb("sending SCTP packet" + Packet.getHex(obb));
-            _transp.send(obb.array(), obb.arrayOffset(), ((Buffer) obb).position());
+            // the encoder's buffer is reused - hold it until the transport has the bytes
+            synchronized (_encoder) {
+                ByteBuffer obb = mkPkt(c);
+                if (LazyLog.isVerb()) {
+                    Log.verb("sending SCTP packet" + Packet.getHex(obb.duplicate()));
+                }
+                _transp.send(obb.array(), obb.arrayOffset(), ((Buffer) obb).limit());
+            }
+            _lastSentAt = System.currentTimeMillis();
         } else {
             Log.verb("Blocked empty packet send() - probably no response needed.");
         }
@@ -371,9 +720,11 @@ abstract public class Association {
         int ty = c.getType();
         if (ty < 0) {
             // todo this is the wrong place to do this....
-            Log.debug("fixing negative " + ty);
+            int neg = ty;
             ty = (ty & 0x7f) + 128;
-            Log.debug("fixed negative " + ty);
+            if (LazyLog.isDebug()) {
+                Log.debug("fixed negative " + neg + " to " + ty);
+            }
         }
         boolean ret = true;
         State oldState = _state;
@@ -388,7 +739,7 @@ abstract public class Association {
                 }
                 break;
             case Chunk.INITACK:
-                Log.debug("got initack " + c.toString());
+                LazyLog.debug(() -> "got initack " + c.toString());
                 if (_state == State.COOKIEWAIT) {
                     InitAckChunk iack = (InitAckChunk) c;
                     reply = iackDeal(iack);
@@ -397,21 +748,28 @@ abstract public class Association {
                 }
                 break;
             case Chunk.COOKIE_ECHO:
-                Log.debug("got cookie echo " + c.toString());
+                LazyLog.debug(() -> "got cookie echo " + c.toString());
                 reply = cookieEchoDeal((CookieEchoChunk) c);
                 if (reply.length > 0) {
                     ret = !(reply[0] instanceof ErrorChunk); // ignore any following data chunk. 
                 }
                 break;
             case Chunk.COOKIE_ACK:
-                Log.debug("got cookie ack " + c.toString());
+                LazyLog.debug(() -> "got cookie ack " + c.toString());
                 if (_state == State.COOKIEECHOED) {
                     _state = State.ESTABLISHED;
                 }
                 break;
             case Chunk.DATA:
-                Log.debug("got data " + c.toString());
-                reply = dataDeal((DataChunk) c);
+            case Chunk.I_DATA:
+                LazyLog.debug(() -> "got data " + c.toString());
+                if (((DataChunk) c).isIData() == _iData) {
+                    reply = dataDeal((DataChunk) c);
+                } else {
+                    // RFC 8260 2.2 says abort - we just won't ack it
+                    Log.warn("Dropping " + c.typeLookup() + " - I-DATA was " + (_iData ? "" : "not ") + "negotiated");
+                    ((DataChunk) c).releaseRcvBuffer();
+                }
                 break;
             case Chunk.ABORT:
                 unexpectedClose(new EOFException("ABORT received"));
@@ -420,17 +778,25 @@ abstract public class Association {
                 ret = false;
                 break;
             case Chunk.HEARTBEAT:
-                Log.debug("got heartbeat " + c.toString());
+                LazyLog.debug(() -> "got heartbeat " + c.toString());
                 reply = ((HeartBeatChunk) c).mkReply();
-                Log.debug("sending " + reply[0].typeLookup());
                 break;
             case Chunk.SACK:
-                Log.debug("got tsak for TSN " + ((SackChunk) c).getCumuTSNAck());
+                LazyLog.debug(() -> "got sack for TSN " + ((SackChunk) c).getCumuTSNAck());
                 reply = sackDeal((SackChunk) c);
                 break;
             case Chunk.RE_CONFIG:
                 reply = reconfigState.deal((ReConfigChunk) c);
                 break;
+            case Chunk.FORWARD_TSN:
+            case Chunk.I_FORWARD_TSN:
+                LazyLog.debug(() -> "got forward tsn " + c.toString());
+                if (((ForwardTsnChunk) c).isInterleaved() ? _iData : (supportsExtension(Chunk.FORWARD_TSN) && !_iData)) {
+                    reply = forwardTsnDeal((ForwardTsnChunk) c);
+                } else {
+                    Log.debug("Ignoring FORWARD TSN - not supported");
+                }
+                break;
         }
         if (reply != null) {
             for (Chunk r : reply) {
@@ -445,9 +811,13 @@ abstract public class Association {
                 _al.onAssociated(this);
             }
             reconfigState = new ReconfigState(this, _farTSN);
+            if (_hbInterval > 0) {
+                armHeartbeat();
+            }
 
         }
         if ((oldState == State.ESTABLISHED) && (_state != State.ESTABLISHED)) {
+            _heartbeat.cancel();
             closeAllStreams();
             if (null != _al) {
                 _al.onDisAssociated(this);
@@ -456,29 +826,10 @@ abstract public class Association {
         return ret;
     }
 
+    // cookie ACKs _must_ come before data or sacks - the encoder sees to that
+    // only good until the next call, see send()
     ByteBuffer mkPkt(Chunk[] cs) throws SctpPacketFormatException {
-        Packet ob = new Packet(_srcPort, _destPort, _peerVerTag);
-        // cookie ACKs _must_ come before data or sacks
-        Arrays.asList(cs).stream()
-                .filter((Chunk c) -> {
-                    return c.getType() == Chunk.COOKIE_ACK;
-                })
-                .forEach((Chunk r) -> {
-                    Log.debug("adding Cookie Ack chunk to outbound packet " + r.toString());
-                    ob.getChunkList().add(r);
-                }
-                );
-        Arrays.asList(cs).stream()
-                .filter((Chunk c) -> {
-                    return c.getType() != Chunk.COOKIE_ACK;
-                })
-                .forEach((Chunk r) -> {
-                    Log.debug("adding normal chunk to outbound packet " + r.toString());
-                    ob.getChunkList().add(r);
-                }
-                );
-        ByteBuffer obb = ob.getByteBuffer();
-        return obb;
+        return _encoder.encode(_srcPort, _destPort, _peerVerTag, _sendZeroChecksum, cs);
     }
 
     public int getPeerVerTag() {
@@ -544,6 +895,10 @@ abstract public class Association {
         c.setNumOutStreams(this.MAXSTREAMS);
         c.setAdRecWinCredit(this.MAXBUFF);
         c.setInitiate(this.getMyVerTag());
+        if (doZeroChecksum()) {
+            c.setZeroChecksumEDMID(ZeroChecksumAcceptable.EDMID_DTLS);
+        }
+        c.setSupportedExtensions(getSupportedExtensions());
         Chunk[] s = new Chunk[1];
         s[0] = c;
         this._state = State.COOKIEWAIT;
@@ -560,10 +915,14 @@ abstract public class Association {
         _peerVerTag = iack.getInitiateTag();
         _winCredit = iack.getAdRecWinCredit();
         _farTSN = iack.getInitialTSN() - 1;
+        _holdingPen.reset(_farTSN);
         _maxOutStreams = Math.min(iack.getNumInStreams(), MAXSTREAMS);
         _maxInStreams = Math.min(iack.getNumOutStreams(), MAXSTREAMS);
 
-        iack.getSupportedExtensions(_supportedExtensions);
+        _iData = iack.isExtensionSupported(Chunk.I_DATA) && supportsExtension(Chunk.I_DATA);
+        _forwardTSN = _iData ? (iack.isExtensionSupported(Chunk.I_FORWARD_TSN) && supportsExtension(Chunk.I_FORWARD_TSN))
+                : (iack.isForwardTSNsupported() && supportsExtension(Chunk.FORWARD_TSN));
+        _sendZeroChecksum = acceptZeroChecksum(iack.getZeroChecksumEDMID());
         byte[] data = iack.getCookie();
         CookieEchoChunk ce = new CookieEchoChunk();
         ce.setCookieData(data);
@@ -618,6 +977,7 @@ abstract public class Association {
         _peerVerTag = init.getInitiateTag();
         _winCredit = init.getAdRecWinCredit();
         _farTSN = init.getInitialTSN() - 1;
+        _holdingPen.reset(_farTSN);
 
         _maxOutStreams = Math.min(init.getNumInStreams(), MAXSTREAMS);
         _maxInStreams = Math.min(init.getNumOutStreams(), MAXSTREAMS);
@@ -627,6 +987,10 @@ abstract public class Association {
         iac.setNumOutStreams(_maxOutStreams);
         iac.setInitialTSN((int) _nearTSN);
         iac.setInitiateTag(_myVerTag);
+        if (doZeroChecksum()) {
+            iac.setZeroChecksumEDMID(ZeroChecksumAcceptable.EDMID_DTLS);
+        }
+        _sendZeroChecksum = acceptZeroChecksum(init.getFarZeroChecksumEDMID());
         CookieHolder cookie = new CookieHolder();
         cookie.cookieData = new byte[Association.COOKIESIZE];
         cookie.cookieTime = System.currentTimeMillis();
@@ -643,6 +1007,9 @@ abstract public class Association {
         if (fse != null) {
             iac.setSupportedExtensions(this.getUnionSupportedExtensions(fse));
         }
+        _iData = init.isFarExtensionSupported(Chunk.I_DATA) && supportsExtension(Chunk.I_DATA);
+        _forwardTSN = _iData ? (init.isFarExtensionSupported(Chunk.I_FORWARD_TSN) && supportsExtension(Chunk.I_FORWARD_TSN))
+                : (init.isFarForwardTSNsupported() && supportsExtension(Chunk.FORWARD_TSN));
         reply = new Chunk[1];
         reply[0] = iac;
         Log.debug("Got in bound init :" + init.toString());
@@ -650,18 +1017,22 @@ abstract public class Association {
         return reply;
     }
 
-    private void ingest(DataChunk dc, ArrayList<Chunk> rep) {
-        Log.verb("ingesting " + dc.toString());
-        Chunk closer = null;
-        Integer sno = dc.getStreamId();
-        long tsn = dc.getTsn();
+    private SCTPStream inboundStream(Integer sno) {
         SCTPStream in = _streams.get(sno);
         if (in == null) {
-            Log.verb("making new stream " + sno);
+            LazyLog.verb(() -> "making new stream " + sno);
             in = mkStream(sno);
             _streams.put(sno, in);
             _al.onRawStream(in);
         }
+        return in;
+    }
+
+    private void ingest(DataChunk dc, ArrayList<Chunk> rep) {
+        LazyLog.verb(() -> "ingesting " + dc.toString());
+        Chunk closer = null;
+        long tsn = dc.getTsn();
+        SCTPStream in = inboundStream(dc.getStreamId());
         Chunk[] repa;
         repa = in.append(dc);
 
@@ -679,45 +1050,102 @@ abstract public class Association {
 
     private Chunk[] dataDeal(DataChunk dc) {
         ArrayList<Chunk> rep = new ArrayList();
-        ArrayList<Long> duplicates = new ArrayList();
+        long[] duplicates = NODUPS;
 
         Chunk dummy[] = new Chunk[0];
         long tsn = dc.getTsn();
-        Long tsn_L = new Long(tsn);
-        if (tsn > _farTSN) {
-            // put it in the pen.
-            DataChunk dup = _holdingPen.get(tsn_L);
-            if (dup != null) {
-                duplicates.add(tsn_L);
-            } else {
-                _holdingPen.put(tsn_L, dc);
-            }
-            // now see if we can deliver anything new to the streams
-            boolean gap = false;
-            for (long t = _farTSN + 1; !gap; t++) {
-                Long l = new Long(t);
-                dc = _holdingPen.remove(l);
-                if (dc != null) {
-                    ingest(dc, rep);
-                } else {
-                    Log.verb("gap in inbound tsns at " + t);
-                    gap = true;
-                }
-            }
+        boolean held = false;
+        if (!_holdingPen.inWindow(tsn)) {
+            Log.warn("TSN " + tsn + " too far beyond " + _farTSN + " dropping it");
+            dc.releaseRcvBuffer();
+        } else if (!_holdingPen.add(dc)) {
+            Log.warn("Already seen . " + tsn + " expecting " + (_farTSN + 1));
+            dc.releaseRcvBuffer();
+            duplicates = new long[]{tsn};
         } else {
-            // probably wrong now.. 
-            Log.warn("Already seen . " + tsn + " expecting " + (_farTSN));
-            duplicates.add(tsn_L);
+            held = tsn > _holdingPen.getCumTSN() + 1;
         }
-        ArrayList<Long> l = new ArrayList();
-        l.addAll(_holdingPen.keySet());
-        Collections.sort(l);
-
-        SackChunk sack = mkSack(l, duplicates);
+        /*
+         An unordered message can go as soon as all of it is here - the
+         gaps before it only matter to the cumulative TSN (RFC 4960 6.6).
+         */
+        if (held && ((dc.getFlags() & DataChunk.UNORDERED) != 0)) {
+            List<DataChunk> whole = _holdingPen.takeUnordered(dc);
+            if (whole != null) {
+                inboundStream(dc.getStreamId()).deliverUnordered(whole);
+            }
+        }
+        // now see if we can deliver anything new to the streams
+        while (null != (dc = _holdingPen.poll())) {
+            ingest(dc, rep);
+        }
+        // the last few may have been taken early
+        _farTSN = _holdingPen.getCumTSN();
+        if (!_holdingPen.isEmpty()) {
+            LazyLog.verb(() -> "gap in inbound tsns at " + (_farTSN + 1));
+        }
+        SackChunk sack = mkSack(duplicates);
         rep.add(sack);
         return rep.toArray(dummy);
     }
 
+    /*
+     RFC 3758 3.6.  Receiver Side Implementation of PR-SCTP
+
+     When a FORWARD TSN chunk arrives, the data receiver MUST first update
+     its cumulative TSN point to the value carried in the FORWARD TSN chunk,
+     and then MUST further advance its cumulative TSN point locally if
+     possible, as shown by the following example...
+
+     ...
+
+     Note, if the "New Cumulative TSN" value carried in the arrived FORWARD
+     TSN chunk is found to be behind or at the current cumulative TSN
+     point, the data receiver MUST treat this FORWARD TSN as out-of-date and
+     MUST NOT update its Cumulative TSN.  The receiver SHOULD send a SACK
+     to its peer (the sender of the FORWARD TSN) since such a duplicate may
+     indicate the previous SACK was lost in the network.
+
+     Any chunks we held up to the new point go to their streams first - they
+     may finish messages. Then the streams drop the part built messages
+     that can't be finished and stop waiting for the skipped SSNs, and only
+     then do the chunks that were waiting behind the gap follow.
+
+     An I-FORWARD-TSN (RFC 8260 2.3) names the skipped messages by MID, and
+     unordered ones too - with interleaving the TSN alone can't say which
+     part built messages are dead.
+     */
+    private Chunk[] forwardTsnDeal(ForwardTsnChunk fwd) {
+        ArrayList<Chunk> rep = new ArrayList();
+        long newCum = fwd.getNewCumulativeTSN();
+        if (newCum > _holdingPen.getCumTSN()) {
+            ArrayList<DataChunk> skipped = new ArrayList();
+            _holdingPen.advanceTo(newCum, skipped);
+            for (DataChunk dc : skipped) {
+                ingest(dc, rep);
+            }
+            for (SCTPStream s : _streams.values()) {
+                s.forwardTsn(newCum);
+            }
+            for (int i = 0; i < fwd.getStreamCount(); i++) {
+                SCTPStream s = _streams.get(fwd.getStream(i));
+                if (s != null) {
+                    s.skip(fwd.isUnordered(i), fwd.getStreamSequence(i));
+                }
+            }
+            DataChunk dc;
+            while (null != (dc = _holdingPen.poll())) {
+                ingest(dc, rep);
+            }
+            _farTSN = _holdingPen.getCumTSN();
+            LazyLog.debug(() -> "forward tsn moved us on to " + _farTSN);
+        } else {
+            LazyLog.debug(() -> "stale forward tsn " + newCum + " we are at " + _farTSN);
+        }
+        rep.add(mkSack(NODUPS));
+        return rep.toArray(new Chunk[rep.size()]);
+    }
+
     /**
      * <code>
      * 2)  Authenticate the State Cookie as one that it previously generated
@@ -799,19 +1227,24 @@ abstract public class Association {
         return reply;
     }
 
-    private SackChunk mkSack(ArrayList<Long> pen, ArrayList<Long> dups) {
+    private SackChunk mkSack(long[] dups) {
         SackChunk ret = new SackChunk();
         ret.setCumuTSNAck(_farTSN);
         int stashcap = calcStashCap();
         ret.setArWin(MAXBUFF - stashcap);
-        ret.setGaps(pen);
+        _holdingPen.fillGaps(ret);
         ret.setDuplicates(dups);
-        Log.debug("made SACK " + ret.toString());
+        LazyLog.debug(() -> "made SACK " + ret.toString());
         return ret;
     }
 
+    // each stream keeps a running count - this is one add per stream
     private int calcStashCap() {
-        return _streams.values().stream().mapToInt((s) -> s.stashCap()).sum();
+        int ret = 0;
+        for (SCTPStream s : _streams.values()) {
+            ret += s.stashCap();
+        }
+        return ret;
     }
 
     public abstract void enqueue(DataChunk d);
@@ -841,7 +1274,21 @@ abstract public class Association {
         return s;
     }
 
+    /**
+     * open a data channel of the type (ordered or not, reliable or not) in
+     * the DCEP open, on a free stream.
+     */
+    public SCTPStream mkStream(DCOpen open, SCTPStreamListener sl) throws StreamNumberInUseException, UnreadyAssociationException, SctpPacketFormatException, IOException, Exception {
+        SCTPStream s = mkStream(freeStreamNo(), open);
+        s.setSCTPStreamListener(sl);
+        return s;
+    }
+
     public SCTPStream mkStream(String label) throws StreamNumberInUseException, UnreadyAssociationException, SctpPacketFormatException, IOException, Exception {
+        return mkStream(freeStreamNo(), label);
+    }
+
+    private int freeStreamNo() throws StreamNumberInUseException {
         int n = 1;
         int tries = this._maxOutStreams;
 
@@ -855,7 +1302,7 @@ abstract public class Association {
             }
         } while (_streams.containsKey(new Integer(n)));
 
-        return mkStream(n, label);
+        return n;
     }
 
     int[] allStreams() {
@@ -881,6 +1328,21 @@ abstract public class Association {
     }
 
     public SCTPStream mkStream(int sno, String label) throws StreamNumberInUseException, UnreadyAssociationException, SctpPacketFormatException, IOException, Exception {
+        return addStream(sno, label);
+    }
+
+    /**
+     * The channel type in the open takes effect when the far end acks it -
+     * until then we send ordered (RFC 8832 section 6).
+     */
+    public SCTPStream mkStream(int sno, DCOpen open) throws StreamNumberInUseException, UnreadyAssociationException, SctpPacketFormatException, IOException, Exception {
+        SCTPStream sout = addStream(sno, open.getLabel());
+        sout.setBehaveOnAck(open.mkStreamBehaviour());
+        sout.setPriority(open.getPriority());
+        return sout;
+    }
+
+    private SCTPStream addStream(int sno, String label) throws StreamNumberInUseException, UnreadyAssociationException {
         SCTPStream sout;
         if (canSend()) {
 
@@ -897,6 +1359,25 @@ abstract public class Association {
         return sout;
     }
 
+    /**
+     * The largest SCTP packet we will send - from the transport's send limit.
+     *
+     * @return bytes
+     */
+    public int getMTU() {
+        return _transpMTU;
+    }
+
+    /**
+     * How much user data fits in a single DATA (or I-DATA) chunk in a packet
+     * of getMTU()
+     *
+     * @return bytes
+     */
+    public int getFragmentSize() {
+        return _transpMTU - (_iData ? IDATAOVERHEAD : DATAOVERHEAD);
+    }
+
     public int maxMessageSize() {
         return 1 << 16; // shrug - I don't know 
     }
@@ -942,7 +1423,10 @@ abstract public class Association {
         } else {
             Log.warn("already closed. ");
         }
-        _rcv = null;
+        _packetizer.clear();
+        _delayedAck.sent(); // stops the timer
+        _heartbeat.cancel();
+        _rcving = false;
 
     }
 
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp;
+
+import com.phono.srtplight.Log;
+import pe.pi.sctp4j.sctp.messages.SackChunk;
+
+/**
+ * Decides whether the SACK for an inbound packet goes now or waits - either
+ * for the next packet, for some outbound DATA to ride on, or for the timer.
+ *
+ * Never calls back into the association while holding its own lock.
+ */
+class DelayedAck {
+    /*
+     6.2.  Acknowledgement on Reception of DATA Chunks
+
+     The SCTP endpoint MUST always acknowledge the reception of each valid
+     DATA chunk when the DATA chunk received is inside its receive window.
+
+     When the receiver's advertised window is 0, the receiver MUST drop
+     any new incoming DATA chunk with a TSN larger than the largest TSN
+     received so far.  ...
+
+     The guidelines on delayed acknowledgement algorithm specified in
+     Section 4.2 of [RFC2581] SHOULD be followed.  Specifically, an
+     acknowledgement SHOULD be generated for at least every second packet
+     (not every second DATA chunk) received, and SHOULD be generated
+     within 200 ms of the arrival of any unacknowledged DATA chunk.  In
+     some situations, it may be beneficial for an SCTP transmitter to be
+     more conservative than the algorithms detailed in this document
+     allow.  However, an SCTP transmitter MUST NOT be more aggressive than
+     the following algorithms allow.
+
+     ...
+
+     Upon the reception of a new DATA chunk, an endpoint shall examine the
+     continuity of the TSNs received.  If the endpoint detects a gap in
+     the received DATA chunk sequence, it SHOULD send a SACK with Gap Ack
+     Blocks immediately.  The data receiver continues sending a SACK after
+     receipt of each SCTP packet that doesn't fill the gap.
+
+     Upon the reception of a DATA chunk whose TSN is a duplicate, the
+     endpoint SHOULD ... immediately send a SACK
+     */
+    final static int DEFAULT_FREQUENCY = 2;
+    final static long DEFAULT_DELAY = 200;
+
+    private final Runnable _onTimer;
+    private final SCTPTimer _timer;
+    private final Runnable _fire = this::fire;
+    private int _frequency = DEFAULT_FREQUENCY;
+    private long _delay = DEFAULT_DELAY;
+    private int _unacked;
+    private boolean _lastHadGaps;
+    private boolean _armed;
+
+    /**
+     * @param onTimer - run (on the timer thread) when a delayed SACK is due.
+     */
+    DelayedAck(Runnable onTimer) {
+        this(onTimer, HashedWheelTimer.getShared().newTimer());
+    }
+
+    DelayedAck(Runnable onTimer, SCTPTimer timer) {
+        _onTimer = onTimer;
+        _timer = timer;
+    }
+
+    synchronized void setFrequency(int packets) {
+        _frequency = Math.max(1, packets);
+    }
+
+    synchronized int getFrequency() {
+        return _frequency;
+    }
+
+    synchronized void setDelay(long ms) {
+        _delay = Math.max(1, ms);
+    }
+
+    synchronized long getDelay() {
+        return _delay;
+    }
+
+    /**
+     * a packet with DATA in has arrived and this is the SACK for it.
+     *
+     * @param sack
+     * @return true if it should go now, false if it can wait (the timer is
+     * then running)
+     */
+    synchronized boolean sackNow(SackChunk sack) {
+        boolean gaps = sack.getGaps().length > 0;
+        boolean dups = sack.getDupTSNs().length > 0;
+        // a packet that fills the last gap is acked at once too
+        boolean now = gaps || dups || _lastHadGaps;
+        _lastHadGaps = gaps;
+        if (!now) {
+            _unacked++;
+            now = _unacked >= _frequency;
+        }
+        if (now) {
+            sent();
+        } else if (!_armed) {
+            _armed = true;
+            _timer.setRunnable(_fire, System.currentTimeMillis() + _delay);
+        }
+        return now;
+    }
+
+    private void fire() {
+        synchronized (this) {
+            if (!_armed) {
+                return; // raced with a send
+            }
+            _armed = false;
+            _unacked = 0;
+        }
+        Log.verb("delayed SACK timer fired");
+        _onTimer.run();
+    }
+
+    /**
+     * a SACK has gone out - either on its own or bundled with something.
+     */
+    synchronized void sent() {
+        _unacked = 0;
+        if (_armed) {
+            _armed = false;
+            _timer.cancel();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp;
+
+import com.phono.srtplight.Log;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A hashed timing wheel - one thread (and one instance, via getShared())
+ * for every timer of every association in the process.
+ *
+ * Time is cut into ticks, each tick has a bucket and a timer lives in the
+ * bucket for the tick it is due in, with a count of how many more turns of
+ * the wheel to wait. So setting and cancelling a timer is O(1) whatever the
+ * number of timers, and each timer is a reusable node - rescheduling one
+ * allocates nothing. The price is that timers fire up to a tick late.
+ *
+ * Expired timers run on the wheel's thread unless it is given an executor to
+ * hand them to - the shared wheel has one, since an expiry may well send,
+ * or even close an association, and must not hold up everyone else's. It is
+ * bounded (one thread per core) so a burst of expiries queues rather than
+ * starting a thread each.
+ *
+ * @author Westhawk Ltd<thp@westhawk.co.uk>
+ */
+public class HashedWheelTimer {
+
+    public final static long DEFAULT_TICK = 10;
+    public final static int DEFAULT_SIZE = 512;
+    private static HashedWheelTimer __shared;
+
+    private final long _tickMs;
+    private final Node[] _wheel;
+    private final int _mask;
+    private final String _name;
+    private final long _start;
+    private long _tickNo; // the next tick to process
+    private int _count;
+    private Thread _thread;
+    private boolean _stopped;
+    private final ArrayList<Runnable> _expired = new ArrayList();
+    private final Executor _dispatch;
+
+    /**
+     * @return the process wide wheel - 10ms ticks, which is plenty for
+     * 10k associations each with a few timers.
+     */
+    public static synchronized HashedWheelTimer getShared() {
+        if (__shared == null) {
+            AtomicInteger tno = new AtomicInteger();
+            int n = Math.max(2, Runtime.getRuntime().availableProcessors());
+            ThreadPoolExecutor dispatch = new ThreadPoolExecutor(n, n, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue(), (Runnable r) -> {
+                        Thread t = new Thread(r, "SCTPTimer-" + tno.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            dispatch.allowCoreThreadTimeOut(true);
+            __shared = new HashedWheelTimer(DEFAULT_TICK, DEFAULT_SIZE, "SCTPWheel", dispatch);
+        }
+        return __shared;
+    }
+
+    /**
+     * @param tickMs - resolution
+     * @param size - buckets - rounded up to a power of 2
+     * @param name - for the thread
+     */
+    public HashedWheelTimer(long tickMs, int size, String name) {
+        this(tickMs, size, name, null);
+    }
+
+    /**
+     * @param tickMs - resolution
+     * @param size - buckets - rounded up to a power of 2
+     * @param name - for the thread
+     * @param dispatch - runs the expired timers, null to run them on the
+     * wheel's own thread.
+     */
+    public HashedWheelTimer(long tickMs, int size, String name, Executor dispatch) {
+        if (tickMs < 1) {
+            throw new IllegalArgumentException("tick must be at least 1ms");
+        }
+        int sz = 1;
+        while (sz < size) {
+            sz <<= 1;
+        }
+        _tickMs = tickMs;
+        _wheel = new Node[sz];
+        for (int i = 0; i < sz; i++) {
+            _wheel[i] = new Node(); // sentinel
+        }
+        _mask = sz - 1;
+        _name = name;
+        _dispatch = dispatch;
+        _start = System.currentTimeMillis();
+    }
+
+    /**
+     * @return a timer - keep it and reuse it.
+     */
+    public SCTPTimer newTimer() {
+        return new Node();
+    }
+
+    synchronized int pending() {
+        return _count;
+    }
+
+    /**
+     * Let the wheel's thread go - timers still pending never fire and new
+     * ones are ignored. Not for the shared wheel, which lives as long as the
+     * process.
+     */
+    public synchronized void stop() {
+        _stopped = true;
+        notifyAll();
+    }
+
+    private synchronized void schedule(Node n, Runnable r, long at) {
+        if (_stopped) {
+            Log.debug("Timer wheel " + _name + " stopped, ignoring timer");
+            return;
+        }
+        unlink(n);
+        n._r = r;
+        if (_count == 0) {
+            // nothing was due - so skip the empty ticks
+            _tickNo = Math.max(_tickNo, (System.currentTimeMillis() - _start) / _tickMs);
+        }
+        long target = (at - _start + _tickMs - 1) / _tickMs;
+        if (target < _tickNo) {
+            target = _tickNo;
+        }
+        n._rounds = (target - _tickNo) / _wheel.length;
+        Node head = _wheel[(int) (target & _mask)];
+        n._prev = head;
+        n._next = head._next;
+        if (head._next != null) {
+            head._next._prev = n;
+        }
+        head._next = n;
+        _count++;
+        if (_thread == null) {
+            _thread = new Thread(this::loop, _name);
+            _thread.setDaemon(true);
+            _thread.start();
+        } else if (_count == 1) {
+            notifyAll(); // was idle
+        }
+    }
+
+    private synchronized void cancel(Node n) {
+        unlink(n);
+        n._r = null;
+    }
+
+    // must hold the lock
+    private void unlink(Node n) {
+        if (n._prev != null) {
+            n._prev._next = n._next;
+            if (n._next != null) {
+                n._next._prev = n._prev;
+            }
+            n._prev = null;
+            n._next = null;
+            _count--;
+        }
+    }
+
+    // take this tick's expired timers - must hold the lock
+    private void expire() {
+        Node n = _wheel[(int) (_tickNo & _mask)]._next;
+        while (n != null) {
+            Node next = n._next;
+            if (n._rounds <= 0) {
+                unlink(n);
+                _expired.add(n._r);
+                n._r = null;
+            } else {
+                n._rounds--;
+            }
+            n = next;
+        }
+        _tickNo++;
+    }
+
+    private void loop() {
+        Log.debug("Timer wheel " + _name + " running");
+        while (true) {
+            synchronized (this) {
+                try {
+                    while ((_count == 0) && !_stopped) {
+                        wait();
+                    }
+                    if (_stopped) {
+                        break;
+                    }
+                    long due = _start + _tickNo * _tickMs;
+                    long now = System.currentTimeMillis();
+                    if (now < due) {
+                        wait(due - now);
+                        continue;
+                    }
+                } catch (InterruptedException x) {
+                    Log.debug("Timer wheel interrupted");
+                    continue;
+                }
+                expire();
+            }
+            for (Runnable r : _expired) {
+                if (_dispatch == null) {
+                    run(r);
+                } else {
+                    try {
+                        _dispatch.execute(() -> run(r));
+                    } catch (RejectedExecutionException x) {
+                        Log.warn("SCTPTimer dispatch refused " + x.getMessage());
+                    }
+                }
+            }
+            _expired.clear();
+        }
+        Log.debug("Timer wheel " + _name + " stopped");
+    }
+
+    private static void run(Runnable r) {
+        try {
+            r.run();
+        } catch (Throwable t) {
+            Log.error("SCTPTimer task threw Exception " + t);
+            if (Log.getLevel() >= Log.DEBUG) {
+                t.printStackTrace();
+            }
+        }
+    }
+
+    private class Node implements SCTPTimer {
+
+        Runnable _r;
+        long _rounds;
+        Node _prev;
+        Node _next;
+
+        @Override
+        public void setRunnable(Runnable r, long at) {
+            schedule(this, r, at);
+        }
+
+        @Override
+        public void cancel() {
+            HashedWheelTimer.this.cancel(this);
+        }
+    }
+}
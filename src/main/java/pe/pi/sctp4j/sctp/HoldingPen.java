@@ -0,0 +1,325 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp;
+
+import java.util.ArrayList;
+import java.util.List;
+import pe.pi.sctp4j.sctp.messages.DataChunk;
+import pe.pi.sctp4j.sctp.messages.SackChunk;
+
+/**
+ * Inbound DATA that arrived ahead of the cumulative TSN ack point.
+ *
+ * Chunks sit in a ring indexed by TSN, so add, duplicate detection and
+ * taking the next in sequence chunk are all O(1) and nothing gets boxed.
+ * Alongside we keep the runs of TSNs held (absolute start,end pairs in TSN
+ * order) - updated on each add/poll - which are the gap ack blocks.
+ *
+ * An unordered message need not wait for the gaps before it; once all its
+ * fragments are here it can be taken out early. Its TSNs stay held (they
+ * are still gaps as far as the cumulative TSN is concerned) but poll()
+ * passes over them.
+ *
+ * A FORWARD TSN (RFC 3758) moves the cumulative TSN past gaps that will
+ * now never be filled.
+ *
+ * Not thread safe - only the receive side touches it.
+ */
+class HoldingPen {
+
+    /*
+     Gap Ack Block Start/End: 16 bits (unsigned integer)
+
+     Indicates the Start/End offset TSN for this Gap Ack Block.  To
+     calculate the actual TSN number the Cumulative TSN Ack is added to
+     this offset number.
+
+     So there is no point holding anything further ahead than that.
+     */
+    final static int MAXSPAN = 0xffff;
+    final static int INITIALSIZE = 64;
+
+    private DataChunk[] _ring;
+    private boolean[] _taken;
+    private int _mask;
+    private long _cumTSN;
+    private int _count;
+    private long[] _runs = new long[16];
+    private int _nruns;
+    private int[] _gapOffs = new int[16];
+
+    HoldingPen(long cumTSN) {
+        _ring = new DataChunk[INITIALSIZE];
+        _taken = new boolean[INITIALSIZE];
+        _mask = INITIALSIZE - 1;
+        _cumTSN = cumTSN;
+    }
+
+    // start again from a new cumulative TSN (INIT or INIT ACK)
+    void reset(long cumTSN) {
+        for (int i = 0; i < _ring.length; i++) {
+            _ring[i] = null;
+            _taken[i] = false;
+        }
+        _count = 0;
+        _nruns = 0;
+        _cumTSN = cumTSN;
+    }
+
+    long getCumTSN() {
+        return _cumTSN;
+    }
+
+    int size() {
+        return _count;
+    }
+
+    boolean isEmpty() {
+        return _count == 0;
+    }
+
+    int gapBlockCount() {
+        return _nruns;
+    }
+
+    // can we hold (or have we delivered) this TSN ?
+    boolean inWindow(long tsn) {
+        return tsn - _cumTSN <= MAXSPAN;
+    }
+
+    /**
+     * hold a chunk until the ones before it have arrived.
+     *
+     * @param dc
+     * @return false if it is a duplicate - already held or delivered.
+     */
+    boolean add(DataChunk dc) {
+        long tsn = dc.getTsn();
+        if (tsn <= _cumTSN) {
+            return false;
+        }
+        int off = (int) (tsn - _cumTSN);
+        if (off >= _ring.length) {
+            grow(off);
+        }
+        int slot = (int) (tsn & _mask);
+        if (_ring[slot] != null) {
+            return false;
+        }
+        _ring[slot] = dc;
+        _count++;
+        addRun(tsn);
+        return true;
+    }
+
+    /**
+     * take the next chunk in TSN order, if we have it - any that were taken
+     * early are passed over.
+     *
+     * @return the chunk - the cumulative TSN moves up to it, or null.
+     */
+    DataChunk poll() {
+        while ((_nruns > 0) && (_runs[0] == _cumTSN + 1)) {
+            long tsn = _cumTSN + 1;
+            int slot = (int) (tsn & _mask);
+            DataChunk ret = _ring[slot];
+            boolean taken = _taken[slot];
+            _ring[slot] = null;
+            _taken[slot] = false;
+            _count--;
+            _cumTSN = tsn;
+            if (_runs[0] == _runs[1]) {
+                removeRun(0);
+            } else {
+                _runs[0]++;
+            }
+            if (!taken) {
+                return ret;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The far end has given up on the TSNs up to newCum - move the
+     * cumulative TSN there, as if the missing ones had arrived.
+     *
+     * @param newCum
+     * @param out - gets the chunks we held up to there (not any taken early)
+     * in TSN order - they may still finish messages.
+     */
+    void advanceTo(long newCum, List<DataChunk> out) {
+        if (newCum <= _cumTSN) {
+            return;
+        }
+        // only the runs hold anything
+        while ((_nruns > 0) && (_runs[0] <= newCum)) {
+            long end = Math.min(_runs[1], newCum);
+            for (long tsn = _runs[0]; tsn <= end; tsn++) {
+                int slot = (int) (tsn & _mask);
+                if (!_taken[slot]) {
+                    out.add(_ring[slot]);
+                }
+                _ring[slot] = null;
+                _taken[slot] = false;
+                _count--;
+            }
+            if (end == _runs[1]) {
+                removeRun(0);
+            } else {
+                _runs[0] = end + 1;
+            }
+        }
+        _cumTSN = newCum;
+    }
+
+    /**
+     * dc is unordered and held beyond a gap - if it completes a message with
+     * the chunks held either side of it take the whole message now.
+     *
+     * We look forward first, so fragments that arrive in order behind a gap
+     * cost one step each until the end one comes.
+     *
+     * @param dc - just added
+     * @return the message's chunks in TSN order, or null if it isn't all
+     * here yet.
+     */
+    List<DataChunk> takeUnordered(DataChunk dc) {
+        long first = dc.getTsn();
+        long last = first;
+        DataChunk c = dc;
+        while ((c.getFlags() & DataChunk.ENDFLAG) == 0) {
+            c = held(last + 1, dc);
+            if ((c == null) || ((c.getFlags() & DataChunk.BEGINFLAG) != 0)) {
+                return null;
+            }
+            last++;
+        }
+        c = dc;
+        while ((c.getFlags() & DataChunk.BEGINFLAG) == 0) {
+            c = held(first - 1, dc);
+            if ((c == null) || ((c.getFlags() & DataChunk.ENDFLAG) != 0)) {
+                return null;
+            }
+            first--;
+        }
+        ArrayList<DataChunk> ret = new ArrayList((int) (last - first + 1));
+        for (long tsn = first; tsn <= last; tsn++) {
+            int slot = (int) (tsn & _mask);
+            ret.add(_ring[slot]);
+            _taken[slot] = true;
+        }
+        return ret;
+    }
+
+    // the untaken, unordered chunk for tsn on like's stream - if we hold it
+    private DataChunk held(long tsn, DataChunk like) {
+        if ((tsn <= _cumTSN) || (tsn - _cumTSN >= _ring.length)) {
+            return null;
+        }
+        int slot = (int) (tsn & _mask);
+        DataChunk ret = _ring[slot];
+        if ((ret == null) || _taken[slot] || (ret.getTsn() != tsn)
+                || (ret.getStreamId() != like.getStreamId())
+                || ((ret.getFlags() & DataChunk.UNORDERED) == 0)
+                || (like.isIData() && (ret.getSSeqNo() != like.getSSeqNo()))) {
+            return null;
+        }
+        return ret;
+    }
+
+    /**
+     * put our gap ack blocks into a SACK with our cumulative TSN
+     *
+     * @param sack
+     */
+    void fillGaps(SackChunk sack) {
+        if (_gapOffs.length < _nruns * 2) {
+            _gapOffs = new int[_runs.length];
+        }
+        for (int i = 0; i < _nruns * 2; i++) {
+            _gapOffs[i] = (int) (_runs[i] - _cumTSN);
+        }
+        sack.setGaps(_gapOffs, _nruns);
+    }
+
+    private void grow(int off) {
+        int sz = _ring.length;
+        while (sz <= off) {
+            sz <<= 1;
+        }
+        DataChunk[] nring = new DataChunk[sz];
+        boolean[] ntaken = new boolean[sz];
+        int nmask = sz - 1;
+        for (int i = 0; i < _ring.length; i++) {
+            DataChunk d = _ring[i];
+            if (d != null) {
+                int slot = (int) (d.getTsn() & nmask);
+                nring[slot] = d;
+                ntaken[slot] = _taken[i];
+            }
+        }
+        _ring = nring;
+        _taken = ntaken;
+        _mask = nmask;
+    }
+
+    // find the first run starting after tsn
+    private int runAfter(long tsn) {
+        int lo = 0;
+        int hi = _nruns;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_runs[mid * 2] > tsn) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    private void addRun(long tsn) {
+        int next = runAfter(tsn);
+        int prev = next - 1;
+        boolean joinPrev = (prev >= 0) && (_runs[prev * 2 + 1] == tsn - 1);
+        boolean joinNext = (next < _nruns) && (_runs[next * 2] == tsn + 1);
+        if (joinPrev && joinNext) {
+            _runs[prev * 2 + 1] = _runs[next * 2 + 1];
+            removeRun(next);
+        } else if (joinPrev) {
+            _runs[prev * 2 + 1] = tsn;
+        } else if (joinNext) {
+            _runs[next * 2] = tsn;
+        } else {
+            if (_runs.length < (_nruns + 1) * 2) {
+                long[] nruns = new long[_runs.length * 2];
+                System.arraycopy(_runs, 0, nruns, 0, _nruns * 2);
+                _runs = nruns;
+            }
+            System.arraycopy(_runs, next * 2, _runs, next * 2 + 2, (_nruns - next) * 2);
+            _runs[next * 2] = tsn;
+            _runs[next * 2 + 1] = tsn;
+            _nruns++;
+        }
+    }
+
+    private void removeRun(int r) {
+        System.arraycopy(_runs, r * 2 + 2, _runs, r * 2, (_nruns - r - 1) * 2);
+        _nruns--;
+    }
+}
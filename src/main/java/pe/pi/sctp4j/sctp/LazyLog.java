@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp;
+
+import com.phono.srtplight.Log;
+import java.util.function.Supplier;
+import pe.pi.sctp4j.sctp.messages.Packet;
+
+/**
+ * Level checked logging over com.phono.srtplight.Log for the paths that run
+ * once per packet or per chunk.
+ *
+ * Log.debug("got " + c) builds the string (and calls c.toString()) before
+ * Log gets to drop it; LazyLog.debug(() -&gt; "got " + c) only builds it if
+ * DEBUG is on. Where a few lines of logging go together, or the message
+ * would need a capturing lambda in a loop we want allocation free, test
+ * isDebug() / isVerb() and call Log directly.
+ *
+ * @author Westhawk Ltd<thp@westhawk.co.uk>
+ */
+public final class LazyLog {
+
+    private LazyLog() {
+    }
+
+    public static boolean isVerb() {
+        return Log.getLevel() >= Log.VERB;
+    }
+
+    public static boolean isDebug() {
+        return Log.getLevel() >= Log.DEBUG;
+    }
+
+    public static boolean isInfo() {
+        return Log.getLevel() >= Log.INFO;
+    }
+
+    public static void verb(Supplier<String> message) {
+        if (isVerb()) {
+            Log.verb(message.get());
+        }
+    }
+
+    public static void debug(Supplier<String> message) {
+        if (isDebug()) {
+            Log.debug(message.get());
+        }
+    }
+
+    public static void info(Supplier<String> message) {
+        if (isInfo()) {
+            Log.info(message.get());
+        }
+    }
+
+    /**
+     * log what followed by len bytes of b in hex - at VERB only.
+     */
+    public static void verbHex(String what, byte[] b, int len) {
+        if (isVerb()) {
+            Log.verb(what + Packet.getHex(b, len));
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import pe.pi.sctp4j.sctp.messages.DataChunk;
+
+/**
+ * The payload of a received message, read in place - a read only view of
+ * the receive buffer for a single chunk message, or a composite of one view
+ * per fragment for a bigger one. Nothing is copied until someone asks for
+ * the bytes in one piece.
+ *
+ * Holds a reference to each receive buffer it looks into - release() it
+ * when done and they go back to the pool.
+ *
+ * This is also the handle an SCTPByteBufferListener is given, so it carries
+ * the payload protocol id the message came with.
+ *
+ * @author Westhawk Ltd<thp@westhawk.co.uk>
+ */
+public class MessageView {
+
+    private final ByteBuffer[] _parts;
+    private final RcvBuffer[] _held;
+    private final int _length;
+    private final int _ppid;
+    private final AtomicInteger _refs = new AtomicInteger(1);
+
+    /**
+     * a view of one chunk - takes over its hold on the receive buffer.
+     */
+    public MessageView(DataChunk single) {
+        _parts = new ByteBuffer[]{view(single)};
+        _held = new RcvBuffer[]{single.takeRcvBuffer()};
+        _length = single.getDataSize();
+        _ppid = single.getPpid();
+    }
+
+    /**
+     * a view of the fragments in order - takes over their holds on the
+     * receive buffers.
+     */
+    public MessageView(Collection<DataChunk> fragments) {
+        _parts = new ByteBuffer[fragments.size()];
+        _held = new RcvBuffer[_parts.length];
+        int i = 0;
+        int len = 0;
+        int ppid = 0;
+        for (DataChunk dc : fragments) {
+            ppid = (i == 0) ? dc.getPpid() : ppid;
+            _parts[i] = view(dc);
+            _held[i] = dc.takeRcvBuffer();
+            len += dc.getDataSize();
+            i++;
+        }
+        _length = len;
+        _ppid = ppid;
+    }
+
+    private static ByteBuffer view(DataChunk dc) {
+        return ByteBuffer.wrap(dc.getData(), dc.getDataOffset(), dc.getDataSize()).slice();
+    }
+
+    public int length() {
+        return _length;
+    }
+
+    /**
+     * @return the payload protocol id - DataChunk.WEBRTCSTRING etc.
+     */
+    public int getPpid() {
+        return _ppid;
+    }
+
+    /**
+     * @return true if the sender sent this as a string (possibly an empty
+     * one) rather than as binary.
+     */
+    public boolean isString() {
+        return (_ppid == DataChunk.WEBRTCSTRING) || (_ppid == DataChunk.WEBRTCSTRINGEMPTY);
+    }
+
+    /**
+     * @return true if the whole message is in one piece - asByteBuffer()
+     * won't copy.
+     */
+    public boolean isContiguous() {
+        return _parts.length == 1;
+    }
+
+    /**
+     * @return a fresh read only view of each fragment, in order.
+     */
+    public ByteBuffer[] getBuffers() {
+        ByteBuffer[] ret = new ByteBuffer[_parts.length];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = _parts[i].asReadOnlyBuffer();
+        }
+        return ret;
+    }
+
+    /**
+     * @return the message as one read only buffer - a view if contiguous, a
+     * copy otherwise.
+     */
+    public ByteBuffer asByteBuffer() {
+        return isContiguous() ? _parts[0].asReadOnlyBuffer() : ByteBuffer.wrap(toByteArray()).asReadOnlyBuffer();
+    }
+
+    /**
+     * copy the message out.
+     */
+    public void copyTo(byte[] dst, int off) {
+        for (ByteBuffer p : _parts) {
+            int len = p.remaining();
+            p.duplicate().get(dst, off, len);
+            off += len;
+        }
+    }
+
+    public byte[] toByteArray() {
+        byte[] ret = new byte[_length];
+        copyTo(ret, 0);
+        return ret;
+    }
+
+    /**
+     * decode as a string - straight from the receive buffer if contiguous.
+     * RFC 8831 says string messages are UTF-8, whatever the platform default.
+     */
+    public String asString() {
+        if (isContiguous()) {
+            ByteBuffer p = _parts[0];
+            return new String(p.array(), p.arrayOffset() + ((Buffer) p).position(), p.remaining(), StandardCharsets.UTF_8);
+        }
+        return new String(toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    public MessageView retain() {
+        if (_refs.getAndIncrement() <= 0) {
+            _refs.decrementAndGet();
+            throw new IllegalStateException("retain of a released message");
+        }
+        return this;
+    }
+
+    /**
+     * done with it - the last release lets go of the receive buffers. The
+     * views must not be read after that.
+     */
+    public void release() {
+        int r = _refs.decrementAndGet();
+        if (r == 0) {
+            for (int i = 0; i < _held.length; i++) {
+                if (_held[i] != null) {
+                    _held[i].release();
+                    _held[i] = null;
+                }
+            }
+        } else if (r < 0) {
+            _refs.incrementAndGet();
+            throw new IllegalStateException("message released too often");
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp;
+
+import com.phono.srtplight.Log;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import pe.pi.sctp4j.sctp.messages.Chunk;
+import pe.pi.sctp4j.sctp.messages.DataChunk;
+import pe.pi.sctp4j.sctp.messages.SackChunk;
+import pe.pi.sctp4j.sctp.messages.exceptions.SctpPacketFormatException;
+
+/**
+ * Packs queued DATA chunks (from any stream) and a pending SACK into as few
+ * MTU sized packets as possible.
+ *
+ * Whoever calls flush() first becomes the flusher and keeps sending until the
+ * queue is empty, anyone queueing meanwhile just leaves their chunks for it.
+ * So under load chunks naturally pile up behind the (slow - DTLS) send and
+ * go out together, but an idle association adds no latency.
+ */
+public class Packetizer {
+    /*
+     6.10.  Bundling
+
+     An endpoint bundles chunks by simply including multiple chunks in one
+     outbound SCTP packet.  The total size of the resultant IP datagram,
+     including the SCTP packet and IP headers, MUST be less that or equal
+     to the current Path MTU.
+
+     ...
+
+     When bundling control chunks with DATA chunks, an endpoint MUST place
+     control chunks first in the outbound SCTP packet.  The transmitter
+     MUST transmit DATA chunks within an SCTP packet in increasing order
+     of TSN.
+     */
+
+    final static int COMMONHEADER = 12;
+    private final Association _ass;
+    private final ArrayDeque<DataChunk> _queue = new ArrayDeque();
+    private SackChunk _sack;
+    private int _mtu;
+    private boolean _flushing;
+
+    public Packetizer(Association a, int mtu) {
+        _ass = a;
+        _mtu = mtu;
+    }
+
+    public synchronized void setMTU(int mtu) {
+        _mtu = mtu;
+    }
+
+    public synchronized int getMTU() {
+        return _mtu;
+    }
+
+    // caller must queue in TSN order
+    public synchronized void queueData(DataChunk d) {
+        _queue.add(d);
+    }
+
+    // a newer SACK always supersedes an unsent older one
+    public synchronized void queueSack(SackChunk s) {
+        if (_sack != null) {
+            // serial number arithmetic - TSNs wrap
+            long behind = (_sack.getCumuTSNAck() - s.getCumuTSNAck()) & 0xffffffffL;
+            if ((behind != 0) && (behind < 0x80000000L)) {
+                return;
+            }
+        }
+        _sack = s;
+    }
+
+    public synchronized boolean hasSack() {
+        return _sack != null;
+    }
+
+    public synchronized int queuedBytes() {
+        int ret = 0;
+        for (DataChunk d : _queue) {
+            ret += padded(d.getChunkLength());
+        }
+        return ret;
+    }
+
+    // is there at least a whole packet's worth of data waiting ?
+    public synchronized boolean isFull() {
+        return queuedBytes() >= _mtu - COMMONHEADER;
+    }
+
+    static int padded(int len) {
+        return len + ((4 - (len % 4)) % 4);
+    }
+
+    /*
+     take the SACK (if any) then as many DATA chunks as will fit.
+     must hold the lock.
+     */
+    private Chunk[] nextPacket() {
+        ArrayList<Chunk> pkt = new ArrayList();
+        int space = _mtu - COMMONHEADER;
+        if (_sack != null) {
+            pkt.add(_sack);
+            space -= padded(_sack.getChunkLength());
+            _sack = null;
+            _ass.sackSent();
+        }
+        DataChunk d;
+        while (null != (d = _queue.peek())) {
+            int len = padded(d.getChunkLength());
+            if (!pkt.isEmpty() && (len > space)) {
+                break;
+            }
+            pkt.add(_queue.poll());
+            space -= len;
+        }
+        return pkt.isEmpty() ? null : pkt.toArray(new Chunk[pkt.size()]);
+    }
+
+    /**
+     * send everything that is queued. Returns immediately if another thread
+     * is already flushing - it will pick up our chunks.
+     *
+     * @throws SctpPacketFormatException
+     * @throws IOException
+     */
+    public void flush() throws SctpPacketFormatException, IOException {
+        synchronized (this) {
+            if (_flushing) {
+                return;
+            }
+            _flushing = true;
+        }
+        boolean done = false;
+        try {
+            while (!done) {
+                Chunk[] pkt;
+                synchronized (this) {
+                    pkt = nextPacket();
+                    if (pkt == null) {
+                        _flushing = false;
+                        done = true;
+                    }
+                }
+                if (pkt != null) {
+                    LazyLog.verb(() -> "Packetizer sending " + pkt.length + " chunks");
+                    _ass.send(pkt);
+                }
+            }
+        } finally {
+            if (!done) {
+                synchronized (this) {
+                    _flushing = false;
+                }
+            }
+        }
+    }
+
+    // association gone - forget anything unsent.
+    public synchronized void clear() {
+        _queue.clear();
+        _sack = null;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A buffer a packet was received into - the DATA chunks parsed from it are
+ * views of it rather than copies, so it stays out of the pool until every
+ * one of them has been delivered and let go.
+ *
+ * Reference counted - whoever holds a view must retain() it, and release()
+ * it exactly once when done. The last release hands it back to its pool. A
+ * buffer that is never released is simply garbage collected; one released
+ * too early is reused under its holder's feet, so when in doubt keep it.
+ *
+ * @author Westhawk Ltd<thp@westhawk.co.uk>
+ */
+public final class RcvBuffer {
+
+    private final byte[] _bytes;
+    private final RcvBufferPool _pool;
+    private final AtomicInteger _refs = new AtomicInteger();
+
+    RcvBuffer(byte[] bytes, RcvBufferPool pool) {
+        _bytes = bytes;
+        _pool = pool;
+    }
+
+    public byte[] array() {
+        return _bytes;
+    }
+
+    /**
+     * add a reference.
+     *
+     * @return this
+     */
+    public RcvBuffer retain() {
+        if (_refs.getAndIncrement() <= 0) {
+            _refs.decrementAndGet();
+            throw new IllegalStateException("retain of a released receive buffer");
+        }
+        return this;
+    }
+
+    /**
+     * drop a reference - the last one returns the buffer to its pool.
+     */
+    public void release() {
+        int r = _refs.decrementAndGet();
+        if (r == 0) {
+            if (_pool != null) {
+                _pool.recycle(this);
+            }
+        } else if (r < 0) {
+            _refs.incrementAndGet();
+            throw new IllegalStateException("receive buffer released too often");
+        }
+    }
+
+    public int refCount() {
+        return _refs.get();
+    }
+
+    // fresh from the pool - the taker holds the only reference
+    RcvBuffer reset() {
+        _refs.set(1);
+        return this;
+    }
+}
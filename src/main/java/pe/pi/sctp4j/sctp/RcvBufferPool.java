@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Receive buffers for one association. Most recently released first, so a
+ * quiet association keeps reusing the one buffer that is still in cache.
+ *
+ * Holds at most max idle buffers - beyond that (and for packets bigger than
+ * our buffers) they are allocated and left to the garbage collector.
+ *
+ * @author Westhawk Ltd<thp@westhawk.co.uk>
+ */
+public class RcvBufferPool {
+
+    final static int DEFAULTMAX = 64;
+
+    private final int _size;
+    private final int _max;
+    private final ConcurrentLinkedDeque<RcvBuffer> _idle = new ConcurrentLinkedDeque();
+    private final AtomicInteger _nidle = new AtomicInteger();
+    private final AtomicInteger _allocated = new AtomicInteger();
+
+    public RcvBufferPool(int size) {
+        this(size, DEFAULTMAX);
+    }
+
+    /**
+     * @param size - of each buffer - the transport's receive limit
+     * @param max - most idle buffers kept
+     */
+    public RcvBufferPool(int size, int max) {
+        _size = size;
+        _max = max;
+    }
+
+    public int getBufferSize() {
+        return _size;
+    }
+
+    /**
+     * @return a buffer of getBufferSize() bytes, with one reference - the
+     * caller's.
+     */
+    public RcvBuffer take() {
+        RcvBuffer ret = _idle.pollFirst();
+        if (ret == null) {
+            _allocated.incrementAndGet();
+            ret = new RcvBuffer(new byte[_size], this);
+        } else {
+            _nidle.decrementAndGet();
+        }
+        return ret.reset();
+    }
+
+    /**
+     * @param len
+     * @return a buffer of at least len bytes, with one reference - the
+     * caller's.
+     */
+    public RcvBuffer take(int len) {
+        return (len <= _size) ? take() : new RcvBuffer(new byte[len], null).reset();
+    }
+
+    void recycle(RcvBuffer b) {
+        if (_nidle.incrementAndGet() <= _max) {
+            _idle.offerFirst(b);
+        } else {
+            _nidle.decrementAndGet();
+        }
+    }
+
+    // how many buffers we have had to allocate - for tests and stats
+    public int getAllocated() {
+        return _allocated.get();
+    }
+
+    public int getIdle() {
+        return _nidle.get();
+    }
+}
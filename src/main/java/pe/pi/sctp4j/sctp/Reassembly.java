@@ -0,0 +1,324 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp;
+
+import com.phono.srtplight.Log;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import pe.pi.sctp4j.sctp.messages.DataChunk;
+
+/**
+ * A stream's inbound DATA on its way to becoming messages.
+ *
+ * The association hands a stream its chunks in TSN order, and the fragments
+ * of a message have consecutive TSNs (RFC 4960 6.9) - so a stream only ever
+ * has one message part built, and each chunk either starts it, extends it,
+ * finishes it or is a whole message by itself. Every chunk is looked at
+ * once, as it arrives, however big the message.
+ *
+ * I-DATA (RFC 8260) does away with the consecutive TSNs - fragments of
+ * different messages, even on the same stream, may be interleaved. So each
+ * of those is built apart, keyed by its U bit and Message Identifier. TSN
+ * order still brings a message's fragments in FSN order.
+ *
+ * Finished messages wait here until the stream's behaviour takes them, and
+ * ordered ones that are ahead of their turn can be put back to wait (by SSN)
+ * until it comes. The payload bytes held are counted as they come and go -
+ * the receive window needs that for every SACK.
+ *
+ * A finished message stays as its chunks until it is taken, so a behaviour
+ * that only knows how to deliver from a sorted set of chunks can have them
+ * instead - see stash().
+ *
+ * Only used from the association's receive thread.
+ *
+ * @author Westhawk Ltd<thp@westhawk.co.uk>
+ */
+public class Reassembly {
+
+    private final SCTPStream _stream;
+    // the message being put together - in TSN order
+    private ArrayList<DataChunk> _partial = new ArrayList();
+    // I-DATA messages being put together - in FSN order, see key()
+    private final HashMap<Long, ArrayList<DataChunk>> _interleaved = new HashMap();
+    // finished messages - each one's chunks in order
+    private final ArrayDeque<List<DataChunk>> _whole = new ArrayDeque();
+    // for behaviours that deliver from a sorted set - null until one asks
+    private TreeSet<DataChunk> _stash;
+    private final HashMap<Integer, SCTPMessage> _held = new HashMap();
+    private int _bytes;
+
+    Reassembly(SCTPStream s) {
+        _stream = s;
+    }
+
+    /**
+     * take the next chunk for this stream - in TSN order.
+     */
+    void add(DataChunk dc) {
+        if (dc.isIData()) {
+            addInterleaved(dc);
+            return;
+        }
+        int flags = dc.getFlags() & DataChunk.SINGLEFLAG; // mask to the bits we want
+        switch (flags) {
+            case DataChunk.SINGLEFLAG:
+                abandonPartial();
+                _bytes += dc.getDataSize();
+                _whole.add(Collections.singletonList(dc));
+                break;
+            case DataChunk.BEGINFLAG:
+                abandonPartial();
+                _bytes += dc.getDataSize();
+                _partial.add(dc);
+                break;
+            default: // middle or end
+                if (!follows(dc)) {
+                    if (LazyLog.isDebug()) {
+                        Log.debug("Fragment with no start " + dc.getSSeqNo() + " tsn " + dc.getTsn() + " dropped");
+                    }
+                    dc.releaseRcvBuffer();
+                    break;
+                }
+                _bytes += dc.getDataSize();
+                _partial.add(dc);
+                if (flags == DataChunk.ENDFLAG) {
+                    _whole.add(_partial);
+                    _partial = new ArrayList();
+                }
+                break;
+        }
+    }
+
+    private void addInterleaved(DataChunk dc) {
+        int flags = dc.getFlags() & DataChunk.SINGLEFLAG;
+        if (flags == DataChunk.SINGLEFLAG) {
+            _bytes += dc.getDataSize();
+            _whole.add(Collections.singletonList(dc));
+            return;
+        }
+        Long key = key(dc);
+        ArrayList<DataChunk> frags = _interleaved.get(key);
+        if (flags == DataChunk.BEGINFLAG) {
+            if (frags != null) {
+                // the MID came round again - the old one can't be finished now
+                release(frags);
+            }
+            frags = new ArrayList();
+            _interleaved.put(key, frags);
+        } else if ((frags == null) || (frags.get(frags.size() - 1).getFsn() + 1 != dc.getFsn())) {
+            if (LazyLog.isDebug()) {
+                Log.debug("Fragment " + dc.getFsn() + " of message " + (dc.getSSeqNo() & 0xffffffffL) + " tsn " + dc.getTsn() + " doesn't follow on - dropped");
+            }
+            if (frags != null) {
+                release(_interleaved.remove(key));
+            }
+            dc.releaseRcvBuffer();
+            return;
+        }
+        _bytes += dc.getDataSize();
+        frags.add(dc);
+        if (flags == DataChunk.ENDFLAG) {
+            _interleaved.remove(key);
+            _whole.add(frags);
+        }
+    }
+
+    // an I-DATA message is known by its U bit and MID
+    private static Long key(DataChunk dc) {
+        long u = ((dc.getFlags() & DataChunk.UNORDERED) != 0) ? (1L << 32) : 0;
+        return u | (dc.getSSeqNo() & 0xffffffffL);
+    }
+
+    private void release(List<DataChunk> frags) {
+        for (DataChunk dc : frags) {
+            _bytes -= dc.getDataSize();
+            dc.releaseRcvBuffer();
+        }
+    }
+
+    // does dc carry on the message we are building ?
+    private boolean follows(DataChunk dc) {
+        if (_partial.isEmpty()) {
+            return false;
+        }
+        long next = (_partial.get(_partial.size() - 1).getTsn() + 1) & 0xffffffffL;
+        return dc.getTsn() == next;
+    }
+
+    /*
+     a new message started (or a single arrived) before the one we were
+     building ended - the rest of it can't come now, TSNs are in order.
+     */
+    private void abandonPartial() {
+        if (!_partial.isEmpty()) {
+            if (LazyLog.isDebug()) {
+                Log.debug("Abandoning " + _partial.size() + " fragments of message " + _partial.get(0).getSSeqNo());
+            }
+            release(_partial);
+            _partial.clear();
+        }
+    }
+
+    /**
+     * @return the next finished message, in the order they finished - null
+     * if there are none.
+     */
+    public SCTPMessage poll() {
+        List<DataChunk> chunks = _whole.poll();
+        if (chunks == null) {
+            return null;
+        }
+        DataChunk first = chunks.get(0);
+        SCTPMessage ret = (chunks.size() == 1) ? new SCTPMessage(_stream, first) : new SCTPMessage(_stream, chunks);
+        ret.setSeq(first.getSSeqNo());
+        _bytes -= ret.getView().length();
+        return ret;
+    }
+
+    /**
+     * For a behaviour that delivers from a sorted set of chunks - the chunks
+     * of the finished messages not yet taken, in TSN order. Whatever it
+     * leaves in the set is still there next time.
+     */
+    public SortedSet<DataChunk> stash() {
+        if (_stash == null) {
+            _stash = new TreeSet();
+        }
+        List<DataChunk> chunks;
+        while (null != (chunks = _whole.poll())) {
+            for (DataChunk dc : chunks) {
+                _bytes -= dc.getDataSize();
+                _stash.add(dc);
+            }
+        }
+        return _stash;
+    }
+
+    /**
+     * put an ordered message aside until its turn comes.
+     */
+    public void hold(SCTPMessage m) {
+        _held.put(m.getSeq(), m);
+        _bytes += m.getView().length();
+    }
+
+    /**
+     * @return the held message with this SSN - or null.
+     */
+    public SCTPMessage unhold(int ssn) {
+        SCTPMessage ret = _held.isEmpty() ? null : _held.remove(ssn);
+        if (ret != null) {
+            _bytes -= ret.getView().length();
+        }
+        return ret;
+    }
+
+    /**
+     * take the held messages from first to last (inclusive, counting in the
+     * stream's sequence space) - in order.
+     */
+    public List<SCTPMessage> unholdThrough(int first, int last) {
+        ArrayList<SCTPMessage> ret = new ArrayList();
+        int span = _stream.seqDistance(first, last);
+        for (Iterator<SCTPMessage> it = _held.values().iterator(); it.hasNext();) {
+            SCTPMessage m = it.next();
+            int d = _stream.seqDistance(first, m.getSeq());
+            if ((d >= 0) && (d <= span)) {
+                it.remove();
+                _bytes -= m.getView().length();
+                ret.add(m);
+            }
+        }
+        ret.sort(Comparator.comparingInt(m -> _stream.seqDistance(first, m.getSeq())));
+        return ret;
+    }
+
+    /**
+     * The far end has given up on everything up to cumTSN (RFC 3758) - if the
+     * next fragment of the message we are building was among it, the rest
+     * will never come.
+     */
+    void dropStale(long cumTSN) {
+        if (!_partial.isEmpty()) {
+            // serial number arithmetic - TSNs wrap
+            long behind = (cumTSN - _partial.get(_partial.size() - 1).getTsn()) & 0xffffffffL;
+            if ((behind != 0) && (behind < 0x80000000L)) {
+                abandonPartial();
+            }
+        }
+    }
+
+    /**
+     * The far end has given up on the I-DATA messages up to mid (RFC 8260
+     * I-FORWARD-TSN) - ordered or unordered ones - so drop any we have only
+     * part of.
+     */
+    void dropMessages(boolean unordered, int mid) {
+        for (Iterator<ArrayList<DataChunk>> it = _interleaved.values().iterator(); it.hasNext();) {
+            ArrayList<DataChunk> frags = it.next();
+            DataChunk first = frags.get(0);
+            boolean u = (first.getFlags() & DataChunk.UNORDERED) != 0;
+            // serial number arithmetic - MIDs wrap
+            if ((u == unordered) && (mid - first.getSSeqNo() >= 0)) {
+                if (LazyLog.isDebug()) {
+                    Log.debug("Dropping part of message " + (first.getSSeqNo() & 0xffffffffL) + " given up on");
+                }
+                it.remove();
+                release(frags);
+            }
+        }
+    }
+
+    /**
+     * @return true if any ordered messages are waiting their turn.
+     */
+    public boolean hasHeld() {
+        return !_held.isEmpty();
+    }
+
+    /**
+     * @return true if there is nothing part built, finished or held - so a
+     * whole message that is next in line can skip the queues.
+     */
+    public boolean isIdle() {
+        return _partial.isEmpty() && _interleaved.isEmpty() && _whole.isEmpty() && _held.isEmpty()
+                && ((_stash == null) || _stash.isEmpty());
+    }
+
+    /**
+     * @return payload bytes held - in part built, finished and held
+     * messages.
+     */
+    public int getBytes() {
+        int ret = _bytes;
+        if (_stash != null) {
+            // the behaviour takes what it delivers from the set behind our back
+            for (DataChunk dc : _stash) {
+                ret += dc.getDataSize();
+            }
+        }
+        return ret;
+    }
+}
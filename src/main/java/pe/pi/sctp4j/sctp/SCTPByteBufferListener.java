@@ -0,0 +1,45 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package pe.pi.sctp4j.sctp;
+
+/**
+ * A listener that reads messages in place - no byte[] or String per message.
+ *
+ * Every message, binary or string, arrives here as a view into the receive
+ * buffers (see MessageView.isString() and getBuffers()). The view stays
+ * valid until the listener calls release() on it - which it must do, now or
+ * later from another thread, or the buffers never go back to the pool.
+ *
+ * @author Westhawk Ltd<thp@westhawk.co.uk>
+ */
+public interface SCTPByteBufferListener extends SCTPStreamListener {
+
+    /**
+     * @param s - the stream it came in on
+     * @param m - the payload, this listener's to release()
+     */
+    public void onMessage(SCTPStream s, MessageView m);
+
+    /**
+     * never called - strings are given to onMessage(SCTPStream, MessageView)
+     * too.
+     */
+    @Override
+    default public void onMessage(SCTPStream s, String message) {
+    }
+}
@@ -19,7 +19,8 @@ package pe.pi.sctp4j.sctp;
 import pe.pi.sctp4j.sctp.messages.DataChunk;
 import com.phono.srtplight.Log;
 import java.nio.ByteBuffer;
-import java.util.SortedSet;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import pe.pi.sctp4j.sctp.behave.SCTPStreamBehaviour;
 import pe.pi.sctp4j.sctp.dataChannel.DECP.DCOpen;
 
@@ -30,10 +31,15 @@ import pe.pi.sctp4j.sctp.dataChannel.DECP.DCOpen;
 public class SCTPMessage implements Runnable {
 
     private final SCTPStream _stream;
-    private final byte[] _data;
+    private byte[] _data;
+    private final MessageView _view; // inbound only
     private int _offset = 0;
     private int _pPid = 0;
     private int _mseq; // note do we need these ?
+    private int _nextFsn; // I-DATA fragment sequence
+    private boolean _unordered;
+    private long _expires; // 0 = never
+    private int _maxRetransmits = -1; // -1 = no limit
     private SCTPStreamListener _li;
     private boolean _delivered;
     private Runnable onAcked;
@@ -47,12 +53,17 @@ public class SCTPMessage implements Runnable {
      */
     public SCTPMessage(byte[] data, SCTPStream s) {
         _data = (data.length > 0) ? data : new byte[1];
+        _view = null;
         _stream = s;
         _pPid = (data.length > 0) ? DataChunk.WEBRTCBINARY : DataChunk.WEBRTCBINARYEMPTY;
     }
 
+    /**
+     * Outbound string - sent as UTF-8 (RFC 8831 section 6.6)
+     */
     public SCTPMessage(String data, SCTPStream s) {
-        _data = (data.length() > 0) ? data.getBytes() : new byte[1];
+        _data = (data.length() > 0) ? data.getBytes(StandardCharsets.UTF_8) : new byte[1];
+        _view = null;
         _stream = s;
         _pPid = (data.length() > 0) ? DataChunk.WEBRTCSTRING : DataChunk.WEBRTCSTRINGEMPTY;
     }
@@ -60,41 +71,49 @@ public class SCTPMessage implements Runnable {
     public SCTPMessage(DCOpen dcep, SCTPStream s) {
         byte[] data = dcep.getBytes();
         _data = (data.length > 0) ? data : new byte[1];
+        _view = null;
         _stream = s;
         _pPid = (data.length > 0) ? DataChunk.WEBRTCCONTROL : DataChunk.WEBRTCBINARYEMPTY;
     }
 
-    public SCTPMessage(SCTPStream s, SortedSet<DataChunk> chunks) {
+    /**
+     * Inbound message - the fragments' payloads are not copied, we keep a
+     * view of them in their receive buffers until delivered.
+     *
+     * @param chunks - the fragments, in order. Only the first I-DATA fragment
+     * carries a PPID.
+     */
+    public SCTPMessage(SCTPStream s, Collection<DataChunk> chunks) {
         _stream = s;
-        int tot = 0;
-        if ((chunks.first().getFlags() & DataChunk.BEGINFLAG) == 0) {
-            throw new IllegalArgumentException("must start with 'start' chunk");
-        }
-        if ((chunks.last().getFlags() & DataChunk.ENDFLAG) == 0) {
-            throw new IllegalArgumentException("must end with 'end' chunk");
-        }
-        _pPid = chunks.first().getPpid();
+        DataChunk first = null;
+        DataChunk last = null;
         for (DataChunk dc : chunks) {
-            tot += dc.getDataSize();
-            if (_pPid != dc.getPpid()) {
+            if (first == null) {
+                first = dc;
+            } else if (!dc.isIData() && (first.getPpid() != dc.getPpid())) {
                 // aaagh 
-                throw new IllegalArgumentException("chunk has wrong ppid" + dc.getPpid() + " vs " + _pPid);
+                throw new IllegalArgumentException("chunk has wrong ppid" + dc.getPpid() + " vs " + first.getPpid());
             }
+            last = dc;
         }
-        _data = new byte[tot];
-        int offs = 0;
-        for (DataChunk dc : chunks) {
-            System.arraycopy(dc.getData(), 0, _data, offs, dc.getDataSize());
-            offs += dc.getDataSize();
+        if ((first == null) || ((first.getFlags() & DataChunk.BEGINFLAG) == 0)) {
+            throw new IllegalArgumentException("must start with 'start' chunk");
         }
+        if ((last.getFlags() & DataChunk.ENDFLAG) == 0) {
+            throw new IllegalArgumentException("must end with 'end' chunk");
+        }
+        _pPid = first.getPpid();
+        _unordered = (first.getFlags() & DataChunk.UNORDERED) != 0;
+        _view = new MessageView(chunks);
     }
 
     public SCTPMessage(SCTPStream s, DataChunk singleChunk) {
         _stream = s;
         int flags = singleChunk.getFlags();
         if ((flags & singleChunk.SINGLEFLAG) > 0) {
-            _data = singleChunk.getData();
             _pPid = singleChunk.getPpid();
+            _unordered = (flags & DataChunk.UNORDERED) != 0;
+            _view = new MessageView(singleChunk);
         } else {
             throw new IllegalArgumentException("must use a 'single' chunk");
         }
@@ -115,7 +134,7 @@ public class SCTPMessage implements Runnable {
      * @param dc
      */
     public void fill(DataChunk dc) {
-        int dsz = dc.getCapacity();
+        int dsz = fragmentSize(dc);
         int remain = _data.length - _offset;
         if (_offset == 0) {
             if (remain <= dsz) {
@@ -142,23 +161,57 @@ public class SCTPMessage implements Runnable {
                 _offset += dsz;
             }
         }
+        if (_unordered) {
+            dc.setFlags(dc.getFlags() | DataChunk.UNORDERED);
+        }
         dc.setPpid(_pPid);
         dc.setsSeqNo(_mseq);
+        Association a = (_stream == null) ? null : _stream.getAssociation();
+        if ((a != null) && a.usesIData()) {
+            // RFC 8260 - the MID is _mseq, the FSN counts the fragments from 0
+            dc.setIData(true);
+            dc.setFsn(_nextFsn++);
+        }
+        dc.setAbandonAfter(_expires, _maxRetransmits);
         _stream.outbound(dc);
     }
 
+    // per association if we have one, otherwise the old fixed guess
+    private int fragmentSize(DataChunk dc) {
+        Association a = (_stream == null) ? null : _stream.getAssociation();
+        return (a == null) ? dc.getCapacity() : a.getFragmentSize();
+    }
+
     public boolean deliver(SCTPStreamListener li) {
         _li = li;
         _delivered = false;
-        Log.debug("delegating message delivery to stream of type " + _stream.getClass().getSimpleName());
+        LazyLog.debug(() -> "delegating message delivery to stream of type " + _stream.getClass().getSimpleName());
         _stream.deliverMessage(this);
         return true;
     }
 
+    /**
+     * @return the message's bytes - for an inbound message this is a copy.
+     */
     public byte[] getData() {
+        if ((_data == null) && (_view != null)) {
+            _data = _view.toByteArray();
+        }
         return _data;
     }
 
+    /**
+     * @return the payload of an inbound message, in place - null for
+     * outbound ones.
+     */
+    public MessageView getView() {
+        return _view;
+    }
+
+    public SCTPStream getStream() {
+        return _stream;
+    }
+
     public void setSeq(int mseq) {
         _mseq = mseq;
     }
@@ -167,15 +220,66 @@ public class SCTPMessage implements Runnable {
         return _mseq;
     }
 
-    private void dcepMessageDeal(byte[] data) {
-        ByteBuffer bb = ByteBuffer.wrap(data);
+    /**
+     * send this one with the U bit set - the far end ignores the SSN and
+     * delivers it as soon as it is whole. DCEP messages always go ordered
+     * (RFC 8832 section 6) so this is ignored for them.
+     */
+    public void setUnordered(boolean u) {
+        _unordered = u && (_pPid != DataChunk.WEBRTCCONTROL);
+    }
+
+    /**
+     * @return true if this message was (or will be) sent with the U bit.
+     */
+    public boolean isUnordered() {
+        return _unordered;
+    }
+
+    /**
+     * give up on this message (RFC 3758) if it has to be retransmitted more
+     * than max times. -1 (the default) retransmits for ever. Ignored for DCEP.
+     */
+    public void setMaxRetransmits(int max) {
+        if (_pPid != DataChunk.WEBRTCCONTROL) {
+            _maxRetransmits = max;
+        }
+    }
+
+    public int getMaxRetransmits() {
+        return _maxRetransmits;
+    }
+
+    /**
+     * give up on this message (RFC 3758) if it isn't acked within ms
+     * milliseconds of now. Ignored for DCEP.
+     */
+    public void setLifetime(long ms) {
+        if (_pPid != DataChunk.WEBRTCCONTROL) {
+            _expires = System.currentTimeMillis() + ms;
+        }
+    }
+
+    /**
+     * @return when we give up on this message, 0 for never.
+     */
+    public long getExpires() {
+        return _expires;
+    }
+
+    private void dcepMessageDeal(ByteBuffer bb) {
         try {
             DCOpen dcep = new DCOpen(bb);
             SCTPStreamBehaviour behave = dcep.mkStreamBehaviour();
+            if (dcep.isAck() && (_stream.getBehaveOnAck() != null)) {
+                // an ack has no channel type - it was in our open
+                behave = _stream.getBehaveOnAck();
+            }
             _stream.setBehave(behave);
             if (!dcep.isAck()) {
-                Log.debug("decp open  " + dcep.toString());
+                LazyLog.debug(() -> "decp open  " + dcep.toString());
                 _stream.setLabel(dcep.getLabel());
+                _stream.setPriority(dcep.getPriority());
                 try {
                     _stream.openAck(dcep);
                     _stream.alOnDCEPStream(_stream, _stream.getLabel(), _pPid);
@@ -192,7 +296,7 @@ public class SCTPMessage implements Runnable {
                     }
                 }
             } else {
-                Log.debug("got a dcep ack for " + _stream.getLabel());
+                LazyLog.debug(() -> "got a dcep ack for " + _stream.getLabel());
                 if ((_li != null) && (_li instanceof SCTPOutboundStreamOpenedListener)) {
                     ((SCTPOutboundStreamOpenedListener) _li).opened(_stream);
                 }
@@ -206,40 +310,56 @@ public class SCTPMessage implements Runnable {
 
     @Override
     public void run() {
-        Log.debug("delegated message delivery from stream of type " + _stream.getClass().getSimpleName());
+        LazyLog.debug(() -> "delegated message delivery from stream of type " + _stream.getClass().getSimpleName());
         if (_li != null){
-            Log.debug("delegated message delivery to listener of type " + _li.getClass().getSimpleName());
+            LazyLog.debug(() -> "delegated message delivery to listener of type " + _li.getClass().getSimpleName());
         }
-        byte data[] = _data;
         switch (_pPid) {
             case DataChunk.WEBRTCBINARYEMPTY:
-                data = new byte[0];
             case DataChunk.WEBRTCBINARY:
-                if ((_li != null) && (_li instanceof SCTPByteStreamListener)) {
-                    ((SCTPByteStreamListener) _li).onMessage(_stream, data);
-                    _delivered = true;
+                if ((_li instanceof SCTPByteBufferListener) || (_li instanceof SCTPByteStreamListener)) {
+                    deliverTo(_li);
                 } else {
                     _stream.earlyMessageEnqueue(this);
                 }
                 break;
             case DataChunk.WEBRTCSTRINGEMPTY:
-                data = new byte[0];
             case DataChunk.WEBRTCSTRING:
                 if (_li != null) {
-                    _li.onMessage(_stream, new String(data));
-                    _delivered = true;
+                    deliverTo(_li);
                 } else {
                     _stream.earlyMessageEnqueue(this);
                 }
                 break;
             case DataChunk.WEBRTCCONTROL:
-                dcepMessageDeal(data);
+                dcepMessageDeal((_view == null) ? ByteBuffer.wrap(_data) : _view.asByteBuffer());
+                if (_view != null) {
+                    _view.release();
+                }
                 _delivered = true;
                 break;
         }
-
         if (!_delivered) {
-            Log.debug("Undelivered message to " + (_stream == null ? "null stream" : _stream.getLabel()) + " via " + (_li == null ? "null listener" : _li.getClass().getSimpleName()) + " ppid is " + _pPid);
+            LazyLog.debug(() -> "Undelivered message to " + (_stream == null ? "null stream" : _stream.getLabel()) + " via " + (_li == null ? "null listener" : _li.getClass().getSimpleName()) + " ppid is " + _pPid);
+        }
+    }
+
+    /*
+     * the view (and the job of releasing it) goes to the listener - the older
+     * listener types get theirs via an adapter that copies and releases.
+     * An early message keeps its view until it is delivered for real.
+     */
+    private void deliverTo(SCTPStreamListener li) {
+        _delivered = true;
+        if (_view != null) {
+            StreamListenerAdapter.adapt(li).onMessage(_stream, _view);
+        } else if (_pPid == DataChunk.WEBRTCSTRING) {
+            // not one we received, never had a view
+            li.onMessage(_stream, new String(_data, StandardCharsets.UTF_8));
+        } else if (_pPid == DataChunk.WEBRTCSTRINGEMPTY) {
+            li.onMessage(_stream, "");
+        } else if (li instanceof SCTPByteStreamListener) {
+            ((SCTPByteStreamListener) li).onMessage(_stream, (_pPid == DataChunk.WEBRTCBINARYEMPTY) ? new byte[0] : _data);
         }
     }
 
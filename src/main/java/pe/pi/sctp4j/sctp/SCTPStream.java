@@ -21,7 +21,7 @@ import pe.pi.sctp4j.sctp.behave.SCTPStreamBehaviour;
 import pe.pi.sctp4j.sctp.messages.Chunk;
 import pe.pi.sctp4j.sctp.messages.DataChunk;
 import com.phono.srtplight.Log;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
 import pe.pi.sctp4j.sctp.dataChannel.DECP.DCOpen;
 
@@ -38,13 +38,15 @@ public abstract class SCTPStream  {
      - and I wonder if closures would do it better.
      */
     private SCTPStreamBehaviour _behave;
+    private SCTPStreamBehaviour _behaveOnAck;
     Association _ass;
     private Integer _sno;
     private String _label;
-    private ConcurrentSkipListSet<DataChunk> _stash;
+    private final Reassembly _reassembly;
     private SCTPStreamListener _sl;
     private int _nextMessageSeqIn;
     private int _nextMessageSeqOut;
+    private int _priority = DCOpen.PRIORITY_NORMAL;
     protected LinkedBlockingQueue<SCTPMessage> _earlyQueue;
     private boolean closing;
     private State state = State.OPEN;
@@ -99,11 +101,16 @@ public abstract class SCTPStream  {
         int mseq = getNextMessageSeqOut();
         setNextMessageSeqOut(mseq + 1);
         m.setSeq(mseq);
+        // the SSN is still taken, it keys the ack tracking - the far end ignores it
+        m.setUnordered((_behave != null) && !_behave.isOrdered());
+        if (_behave != null) {
+            _behave.prepare(m);
+        }
     }
 
     public void openAck(DCOpen dcep) throws Exception {
         DCOpen ack = DCOpen.mkAck();
-        Log.debug("made a dcep ack for "+_label);
+        LazyLog.debug(() -> "made a dcep ack for "+_label);
         send(ack);
     }
 
@@ -111,8 +118,49 @@ public abstract class SCTPStream  {
         _ass.alOnDCEPStream(_stream, label, _pPid);
     }
 
+    /**
+     * an unordered message that arrived whole ahead of a gap in the TSNs -
+     * it skips the reassembly and the SSN order.
+     *
+     * @param chunks - all of it, in TSN order
+     */
+    void deliverUnordered(List<DataChunk> chunks) {
+        DataChunk first = chunks.get(0);
+        SCTPMessage m = (chunks.size() == 1) ? new SCTPMessage(this, first) : new SCTPMessage(this, chunks);
+        m.setSeq(first.getSSeqNo());
+        LazyLog.debug(() -> "early unordered message tsn " + first.getTsn() + " on " + this.toString());
+        m.deliver(_sl);
+    }
+
+    /**
+     * the far end gave up on the TSNs up to cumTSN (RFC 3758) - forget any
+     * part built message that can't now be finished.
+     */
+    void forwardTsn(long cumTSN) {
+        _reassembly.dropStale(cumTSN);
+    }
+
+    /**
+     * the far end gave up on the messages up to ssn on this stream - let
+     * the ones waiting for them go.
+     */
+    void skip(int ssn) {
+        skip(false, ssn);
+    }
+
+    /**
+     * an I-FORWARD-TSN may also give up on unordered messages - and names
+     * them by MID, so the part built ones can go too.
+     */
+    void skip(boolean unordered, int seq) {
+        _reassembly.dropMessages(unordered, seq);
+        if (!unordered && (_behave != null)) {
+            _behave.skip(this, _reassembly, seq, _sl);
+        }
+    }
+
     void earlyMessageEnqueue(SCTPMessage early) {
-        Log.debug("enqueue an early message seq "+early.getSeq()+" on "+this.toString());
+        LazyLog.debug(() -> "enqueue an early message seq "+early.getSeq()+" on "+this.toString());
         _earlyQueue.add(early);
     }
 
@@ -123,7 +171,7 @@ public abstract class SCTPStream  {
     public SCTPStream(Association a, Integer id) {
         _ass = a;
         _sno = id;
-        _stash = new ConcurrentSkipListSet(); // sort bt tsn
+        _reassembly = new Reassembly(this);
         _behave = new OrderedStreamBehaviour(); // default 'till we know different
         _earlyQueue = new LinkedBlockingQueue(100);
     }
@@ -137,8 +185,10 @@ public abstract class SCTPStream  {
     }
 
     public Chunk[] append(DataChunk dc) {
-        Log.debug("adding data to stash on stream " + ((_label == null) ? "*unnamed*" : _label) + "(" + dc + ")");
-        _stash.add(dc);
+        LazyLog.debug(() -> "adding data to stash on stream " + ((_label == null) ? "*unnamed*" : _label) + "(" + dc + ")");
+        if (!_reassembly.isIdle() || !_behave.deliverNow(this, dc, _sl)) {
+            _reassembly.add(dc);
+        }
         return _behave.respond(this);
     }
 
@@ -152,6 +202,15 @@ public abstract class SCTPStream  {
         _behave = behave;
     }
 
+    // what our open asked for - we switch to it when the far end acks
+    void setBehaveOnAck(SCTPStreamBehaviour behave) {
+        _behaveOnAck = behave;
+    }
+
+    SCTPStreamBehaviour getBehaveOnAck() {
+        return _behaveOnAck;
+    }
+
     // seqno management.
     /**
      * annotate the outgoing chunk with stuff this stream knows.
@@ -165,7 +224,7 @@ public abstract class SCTPStream  {
 
     void inbound(DataChunk dc) {
         if (_behave != null) {
-            _behave.deliver(this, _stash, _sl);
+            _behave.deliver(this, _reassembly, _sl);
         } else {
             Log.warn("No behaviour set");
         }
@@ -175,25 +234,22 @@ public abstract class SCTPStream  {
         return _label;
     }
 
+    // bytes received but not yet handed on as messages
     int stashCap() {
-        int ret = 0;
-        for (DataChunk d : _stash) {
-            ret += d.getData().length;
-        }
-        return ret;
+        return _reassembly.getBytes();
     }
 
     public void setSCTPStreamListener(SCTPStreamListener sl) {
         _sl = sl;
-        Log.debug("adding listener for "+this._label+" of "+sl.getClass().getName());
+        LazyLog.debug(() -> "adding listener for "+this._label+" of "+sl.getClass().getName());
         if (_earlyQueue != null) {
-            Log.debug("delivering early " + _earlyQueue.size() + " messages to "+sl.getClass().getName());
+            LazyLog.debug(() -> "delivering early " + _earlyQueue.size() + " messages to "+sl.getClass().getName());
             SCTPMessage e = null;
             while (null != (e = _earlyQueue.poll())) {
                 e.deliver(_sl);
             }
         } else {
-            Log.debug("no early queue for "+_label);
+            LazyLog.debug(() -> "no early queue for "+_label);
         }
     }
 
@@ -208,12 +264,29 @@ public abstract class SCTPStream  {
     }
 
     public void close() throws Exception {
-        Log.debug("closing stream " + this._label + " " + this._sno);
+        LazyLog.debug(() -> "closing stream " + this._label + " " + this._sno);
         _ass.closeStream(this);
     }
 
+    /**
+     * @return true if messages are numbered by I-DATA (RFC 8260) 32 bit
+     * message identifiers rather than 16 bit SSNs.
+     */
+    public boolean usesMessageIds() {
+        return (_ass != null) && _ass.usesIData();
+    }
+
+    /**
+     * how far after from is to - negative if it is before - in whichever
+     * (serial number) sequence space the stream is using.
+     */
+    public int seqDistance(int from, int to) {
+        return usesMessageIds() ? (to - from) : (short) (to - from);
+    }
+
+    // MIDs wrap at 32 bits all by themselves
     public void setNextMessageSeqIn(int expectedSeq) {
-        _nextMessageSeqIn = (expectedSeq == 1 + Character.MAX_VALUE) ? 0 : expectedSeq;
+        _nextMessageSeqIn = (!usesMessageIds() && (expectedSeq == 1 + Character.MAX_VALUE)) ? 0 : expectedSeq;
     }
 
     public int getNextMessageSeqIn() {
@@ -221,7 +294,19 @@ public abstract class SCTPStream  {
     }
 
     public void setNextMessageSeqOut(int expectedSeq) {
-        _nextMessageSeqOut = (expectedSeq == 1 + Character.MAX_VALUE) ? 0 : expectedSeq;
+        _nextMessageSeqOut = (!usesMessageIds() && (expectedSeq == 1 + Character.MAX_VALUE)) ? 0 : expectedSeq;
+    }
+
+    /**
+     * @return the channel's priority - from the DCEP open - which the
+     * association's stream scheduler may favour it by.
+     */
+    public int getPriority() {
+        return _priority;
+    }
+
+    public void setPriority(int priority) {
+        _priority = priority;
     }
 
     public int getNextMessageSeqOut() {
@@ -235,7 +320,7 @@ public abstract class SCTPStream  {
     }
 
     void reset() {
-        Log.debug("Resetting stream " + this._sno);
+        LazyLog.debug(() -> "Resetting stream " + this._sno);
         if (this._sl != null) {
             _sl.close(this);
         }
@@ -261,7 +346,7 @@ public abstract class SCTPStream  {
             case INBOUNDONLY:
                 break;
         }
-        Log.debug("Stream State for " + _sno + " is now " + state);
+        LazyLog.debug(() -> "Stream State for " + _sno + " is now " + state);
     }
 
     void setInboundClosed() {
@@ -276,11 +361,11 @@ public abstract class SCTPStream  {
             case OUTBOUNDONLY:
                 break;
         }
-        Log.debug("Stream State for " + _sno + " is now " + state);
+        LazyLog.debug(() -> "Stream State for " + _sno + " is now " + state);
     }
 
     State getState() {
-        Log.debug("Stream State for " + _sno + " is currently " + state);
+        LazyLog.debug(() -> "Stream State for " + _sno + " is currently " + state);
         return state;
     }
 
@@ -22,5 +22,18 @@ package pe.pi.sctp4j.sctp;
  * @author Westhawk Ltd<thp@westhawk.co.uk>
  */
 public interface SCTPTimer {
+
+    /**
+     * run r at (or just after) the given time - replacing whatever was
+     * scheduled before.
+     *
+     * @param r
+     * @param at - absolute time in ms (as System.currentTimeMillis())
+     */
     public void setRunnable(Runnable r,long at);
+
+    /**
+     * forget whatever is scheduled, if anything.
+     */
+    public void cancel();
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package pe.pi.sctp4j.sctp;
+
+/**
+ * Lets an SCTPStreamListener or SCTPByteStreamListener stand in for an
+ * SCTPByteBufferListener - decodes or copies each message out of its view,
+ * hands the String or byte[] on and releases the view.
+ *
+ * @author Westhawk Ltd<thp@westhawk.co.uk>
+ */
+public class StreamListenerAdapter implements SCTPByteBufferListener {
+
+    private final SCTPStreamListener _li;
+
+    public StreamListenerAdapter(SCTPStreamListener li) {
+        _li = li;
+    }
+
+    /**
+     * @return li, as a buffer listener - wrapped if it isn't one already.
+     */
+    public static SCTPByteBufferListener adapt(SCTPStreamListener li) {
+        return (li instanceof SCTPByteBufferListener) ? (SCTPByteBufferListener) li : new StreamListenerAdapter(li);
+    }
+
+    /**
+     * binary messages are dropped unless the listener can take bytes.
+     */
+    @Override
+    public void onMessage(SCTPStream s, MessageView m) {
+        try {
+            if (m.isString()) {
+                _li.onMessage(s, m.asString());
+            } else if (_li instanceof SCTPByteStreamListener) {
+                ((SCTPByteStreamListener) _li).onMessage(s, m.toByteArray());
+            }
+        } finally {
+            m.release();
+        }
+    }
+
+    @Override
+    public void close(SCTPStream s) {
+        _li.close(s);
+    }
+
+    public SCTPStreamListener getListener() {
+        return _li;
+    }
+}
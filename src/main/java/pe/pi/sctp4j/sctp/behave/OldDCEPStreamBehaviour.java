@@ -16,6 +16,7 @@
  */
 package pe.pi.sctp4j.sctp.behave;
 
+import pe.pi.sctp4j.sctp.Reassembly;
 import pe.pi.sctp4j.sctp.SCTPStream;
 import pe.pi.sctp4j.sctp.SCTPStreamListener;
 import pe.pi.sctp4j.sctp.messages.Chunk;
@@ -45,6 +46,25 @@ public class OldDCEPStreamBehaviour implements
         return null;
     }
 
+    /*
+     a whole DCEP message sets the stream's behaviour itself when it is
+     delivered (see SCTPMessage) - so just deliver in order.
+     */
+    @Override
+    public void deliver(SCTPStream s, Reassembly r, SCTPStreamListener l) {
+        new OrderedStreamBehaviour().deliver(s, r, l);
+    }
+
+    @Override
+    public void skip(SCTPStream s, Reassembly r, int ssn, SCTPStreamListener l) {
+        new OrderedStreamBehaviour().skip(s, r, ssn, l);
+    }
+
+    @Override
+    public boolean deliverNow(SCTPStream s, DataChunk dc, SCTPStreamListener l) {
+        return new OrderedStreamBehaviour().deliverNow(s, dc, l);
+    }
+
     @Override
     public void deliver(SCTPStream s, SortedSet<DataChunk> a, SCTPStreamListener l) {
         DataChunk dc = a.first();
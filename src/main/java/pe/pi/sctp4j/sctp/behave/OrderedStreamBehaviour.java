@@ -16,12 +16,14 @@
  */
 package pe.pi.sctp4j.sctp.behave;
 
+import pe.pi.sctp4j.sctp.Reassembly;
 import pe.pi.sctp4j.sctp.SCTPMessage;
 import pe.pi.sctp4j.sctp.SCTPStream;
 import pe.pi.sctp4j.sctp.SCTPStreamListener;
 import pe.pi.sctp4j.sctp.messages.Chunk;
 import pe.pi.sctp4j.sctp.messages.DataChunk;
 import com.phono.srtplight.Log;
+import pe.pi.sctp4j.sctp.LazyLog;
 import java.util.ArrayList;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -34,6 +36,93 @@ public class OrderedStreamBehaviour implements SCTPStreamBehaviour {
 
     protected boolean _ordered = true;
     
+    // fully reliable - nothing to set
+    @Override
+    public void prepare(SCTPMessage m) {
+    }
+
+    /*
+     Each call only looks at the messages the latest chunk finished, plus any
+     ordered ones that were waiting for them - the reassembly did the rest as
+     the chunks came in.
+     */
+    @Override
+    public void deliver(SCTPStream s, Reassembly r, SCTPStreamListener l) {
+        SCTPMessage m;
+        while (null != (m = r.poll())) {
+            int messageNo = s.getNextMessageSeqIn();
+            if (_ordered && !m.isUnordered() && (messageNo != m.getSeq())) {
+                if (LazyLog.isDebug()) {
+                    Log.debug("Hole in message sequence  " + m.getSeq() + " expected " + messageNo + " holding it");
+                }
+                r.hold(m);
+                continue;
+            }
+            dispatch(s, m, l);
+            while (_ordered && (null != (m = r.unhold(s.getNextMessageSeqIn())))) {
+                dispatch(s, m, l);
+            }
+        }
+    }
+
+    /*
+     The common case - a single chunk message that is next in line (or any
+     single on an unordered stream) goes straight on to the listener.
+     */
+    @Override
+    public boolean deliverNow(SCTPStream s, DataChunk dc, SCTPStreamListener l) {
+        if ((dc.getFlags() & DataChunk.SINGLEFLAG) != DataChunk.SINGLEFLAG) {
+            return false;
+        }
+        boolean unordered = (dc.getFlags() & DataChunk.UNORDERED) != 0;
+        if (_ordered && !unordered && (dc.getSSeqNo() != s.getNextMessageSeqIn())) {
+            return false;
+        }
+        SCTPMessage m = new SCTPMessage(s, dc);
+        m.setSeq(dc.getSSeqNo());
+        dispatch(s, m, l);
+        return true;
+    }
+
+    /*
+     RFC 3758 3.6
+
+     Stream-N and Stream Sequence-N fields ... enable delivery of any
+     stranded TSN's that remain on the stream re-ordering queues.
+
+     Messages held for the skipped ones go now, in SSN order. A skip that is
+     behind us (in serial number order - 16 bit SSNs or 32 bit I-DATA MIDs)
+     is stale - ignore it.
+     */
+    @Override
+    public void skip(SCTPStream s, Reassembly r, int ssn, SCTPStreamListener l) {
+        int next = s.getNextMessageSeqIn();
+        if (!_ordered || (s.seqDistance(next, ssn) < 0)) {
+            return;
+        }
+        SCTPMessage m;
+        if (r.hasHeld()) {
+            for (SCTPMessage h : r.unholdThrough(next, ssn)) {
+                h.deliver(l);
+            }
+        }
+        s.setNextMessageSeqIn(ssn + 1);
+        while (null != (m = r.unhold(s.getNextMessageSeqIn()))) {
+            dispatch(s, m, l);
+        }
+    }
+
+    // a U bit message has no place in the SSN order (RFC 4960 6.6)
+    private void dispatch(SCTPStream s, SCTPMessage m, SCTPStreamListener l) {
+        if (m.deliver(l) && !m.isUnordered()) {
+            s.setNextMessageSeqIn(s.getNextMessageSeqIn() + 1);
+        }
+    }
+
+    /*
+     For a stash that may have been filled in any order - rescans it from the
+     start each time.
+     */
     @Override
     public void deliver(SCTPStream s, SortedSet<DataChunk> stash, SCTPStreamListener l) {
         //stash is the list of all DataChunks that have not yet been turned into whole messages
@@ -58,14 +147,18 @@ public class OrderedStreamBehaviour implements SCTPStreamBehaviour {
             // which is to say for unordered messages we can tolerate gaps _between_ messages
             // but not within them
             if (lookingForOrderedMessages && (tsn != expectedTsn)) {
-                Log.debug("Hole in chunk sequence  " + tsn + " expected " + expectedTsn);
+                if (LazyLog.isDebug()) {
+                    Log.debug("Hole in chunk sequence  " + tsn + " expected " + expectedTsn);
+                }
                 break;
             }
             switch (flags) {
                 case DataChunk.SINGLEFLAG:
                     // singles are easy - just dispatch.
                     if (_ordered && (messageNo != dc.getSSeqNo())) {
-                        Log.debug("Hole (single) in message sequence  " + dc.getSSeqNo() + " expected " + messageNo);
+                        if (LazyLog.isDebug()) {
+                            Log.debug("Hole (single) in message sequence  " + dc.getSSeqNo() + " expected " + messageNo);
+                        }
                         break; // not the message we are looking for...
                     }
                     SCTPMessage single = new SCTPMessage(s, dc);
@@ -77,26 +170,28 @@ public class OrderedStreamBehaviour implements SCTPStreamBehaviour {
                     break;
                 case DataChunk.BEGINFLAG:
                     if (_ordered && (messageNo != dc.getSSeqNo())) {
-                        Log.debug("Hole (begin) in message sequence  " + dc.getSSeqNo() + " expected " + messageNo);
+                        if (LazyLog.isDebug()) {
+                            Log.debug("Hole (begin) in message sequence  " + dc.getSSeqNo() + " expected " + messageNo);
+                        }
                         break; // not the message we are looking for...
                     }
                     message = new TreeSet();
                     message.add(dc);
-                    Log.verb("new message no" + dc.getSSeqNo() + " starts with  " + dc.getTsn());
+                    LazyLog.verb(() -> "new message no" + dc.getSSeqNo() + " starts with  " + dc.getTsn());
                     break;
                 case 0: // middle 
                     if (message != null) {
                         message.add(dc);
-                        Log.verb("continued message no" + dc.getSSeqNo() + " with  " + dc.getTsn());
+                        LazyLog.verb(() -> "continued message no" + dc.getSSeqNo() + " with  " + dc.getTsn());
                     } else {
                         // perhaps check sno ?
-                        Log.debug("Middle with no start" + dc.getSSeqNo() + " tsn " + dc.getTsn());
+                        LazyLog.debug(() -> "Middle with no start" + dc.getSSeqNo() + " tsn " + dc.getTsn());
                     }
                     break;
                 case DataChunk.ENDFLAG:
                     if (message != null) {
                         message.add(dc);
-                        Log.verb("finished message no" + dc.getSSeqNo() + " with  " + dc.getTsn());
+                        LazyLog.verb(() -> "finished message no" + dc.getSSeqNo() + " with  " + dc.getTsn());
                         SCTPMessage deliverable = new SCTPMessage(s, message);
                         if (deliverable.deliver(l)) {
                             delivered.addAll(message);
@@ -105,7 +200,7 @@ public class OrderedStreamBehaviour implements SCTPStreamBehaviour {
                         }
                         message = null;
                     } else {
-                        Log.debug("End with no start" + dc.getSSeqNo() + " tsn " + dc.getTsn());
+                        LazyLog.debug(() -> "End with no start" + dc.getSSeqNo() + " tsn " + dc.getTsn());
                         message = null;
                     }
                     break;
@@ -117,6 +212,11 @@ public class OrderedStreamBehaviour implements SCTPStreamBehaviour {
         stash.removeAll(delivered);
     }
 
+    @Override
+    public boolean isOrdered() {
+        return _ordered;
+    }
+
     @Override
     public Chunk[] respond(SCTPStream a) {
         return null;
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.behave;
+
+import pe.pi.sctp4j.sctp.SCTPMessage;
+
+/**
+ * A data channel opened as one of the PARTIAL_RELIABLE_* types - each
+ * message is given up on (RFC 3758) once it has been retransmitted too often
+ * or has been waiting too long for an ack.
+ *
+ * @author Westhawk Ltd<thp@westhawk.co.uk>
+ */
+public class PartialReliableStreamBehaviour extends OrderedStreamBehaviour {
+
+    private final boolean _timed;
+    private final long _limit;
+
+    /**
+     * @param ordered - deliver in order (or send with the U bit)
+     * @param timed - limit is a lifetime in ms rather than a retransmit count
+     * @param limit - the DCEP reliability parameter
+     */
+    public PartialReliableStreamBehaviour(boolean ordered, boolean timed, long limit) {
+        _ordered = ordered;
+        _timed = timed;
+        _limit = limit;
+    }
+
+    @Override
+    public void prepare(SCTPMessage m) {
+        if (_timed) {
+            m.setLifetime(_limit);
+        } else {
+            m.setMaxRetransmits((int) Math.min(_limit, Integer.MAX_VALUE));
+        }
+    }
+
+    public boolean isTimed() {
+        return _timed;
+    }
+
+    public long getLimit() {
+        return _limit;
+    }
+}
@@ -16,6 +16,8 @@
  */
 package pe.pi.sctp4j.sctp.behave;
 
+import pe.pi.sctp4j.sctp.Reassembly;
+import pe.pi.sctp4j.sctp.SCTPMessage;
 import pe.pi.sctp4j.sctp.SCTPStream;
 import pe.pi.sctp4j.sctp.SCTPStreamListener;
 import pe.pi.sctp4j.sctp.messages.Chunk;
@@ -32,8 +34,43 @@ public interface SCTPStreamBehaviour {
     // typically this means sending nothing
     public Chunk[] respond(SCTPStream a);
 
+    // should our messages go in order ? - if not they are sent with the U bit
+    default public boolean isOrdered() {
+        return true;
+    }
+
+    // an outbound message is about to be sent on the stream - set whatever
+    // (partial reliability) policy it should go with. Fully reliable by
+    // default.
+    default public void prepare(SCTPMessage m) {
+    }
+
     // we have a sorted queue of datachunks for this stream to deliver
     // according to the appropriate behaviour.
     public void deliver(SCTPStream s, SortedSet<DataChunk> a, SCTPStreamListener l) ;
 
+    // a chunk has just gone into the stream's reassembly - deliver any
+    // messages it finished (or that were waiting on them) according to
+    // the appropriate behaviour. A behaviour that doesn't know about
+    // reassembly gets the finished messages' chunks as a sorted set.
+    default public void deliver(SCTPStream s, Reassembly r, SCTPStreamListener l) {
+        deliver(s, r.stash(), l);
+    }
+
+    // nothing is waiting on the stream - if dc is a whole message that can
+    // go now then deliver it without queueing and return true.
+    default public boolean deliverNow(SCTPStream s, DataChunk dc, SCTPStreamListener l) {
+        return false;
+    }
+
+    // the far end gave up on the messages up to ssn (a FORWARD TSN) - deliver
+    // whatever was waiting on them and expect the one after. A behaviour that
+    // doesn't know about skipping gets what was waiting as a sorted set.
+    default public void skip(SCTPStream s, Reassembly r, int ssn, SCTPStreamListener l) {
+        if (s.seqDistance(s.getNextMessageSeqIn(), ssn) >= 0) {
+            s.setNextMessageSeqIn(ssn + 1);
+        }
+        deliver(s, r, l);
+    }
+
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.congestion;
+
+/**
+ * Owns the congestion window (cwnd), slow start threshold (ssthresh) and the
+ * flight size for a single association. We assume a single destination via
+ * ICE so there is exactly one of these per association.
+ *
+ * The association tells the controller what it sends and what gets acked,
+ * the controller decides how much may be outstanding.
+ */
+public interface CongestionController {
+
+    // the path mtu we are allowed to send - all the window arithmetic is in
+    // multiples of this.
+    public void setMTU(int mtu);
+
+    // the peer's a_rwnd from the INIT or INIT ACK - used as initial ssthresh
+    public void setInitialSsthresh(long peerRwnd);
+
+    // may we put another size bytes of new data on the wire ?
+    public boolean maySend(int size);
+
+    // size bytes of new data have been transmitted (not retransmitted)
+    public void onSent(int size);
+
+    // a SACK has arrived that newly acknowledges bytesAcked, either by
+    // cumulative ack or gap block.
+    public void onSack(boolean cumAckAdvanced, int bytesAcked, boolean fastRecovery);
+
+    // size bytes that were in flight have been given up on (RFC 3758) - they
+    // will never be acked, so must stop counting as in flight.
+    default public void onAbandoned(int size) {
+        onSack(false, size, false);
+    }
+
+    // a new smoothed round trip time (SRTT, in seconds - RFC 4960 6.3.1)
+    default public void onRtt(double srtt) {
+    }
+
+    // a chunk got its third miss indication and we are entering fast recovery
+    public void onFastRetransmit();
+
+    // the T3-rtx timer expired
+    public void onRetransmitTimeout();
+
+    // nothing has been sent for an RTO or more.
+    public void onIdle();
+
+    // data which will never be acked (association gone etc)
+    public void reset();
+
+    public long getCwnd();
+
+    public long getSsthresh();
+
+    public long getFlightSize();
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.congestion;
+
+import com.phono.srtplight.Log;
+import pe.pi.sctp4j.sctp.LazyLog;
+
+/**
+ * CUBIC (RFC 9438) window growth for high bandwidth-delay paths. Slow start,
+ * the retransmit timeout and idle handling are as per RFC 4960 - only the
+ * congestion avoidance increase and the multiplicative decrease differ.
+ */
+public class CubicCongestionController extends NewRenoCongestionController {
+
+    /*
+     C:  Constant that determines the aggressiveness of CUBIC in
+     competing with other congestion control algorithms in high-BDP
+     networks.  See Section 5 for more explanation on how it is set.
+     The unit for C is segment/second^3.
+     */
+    final static double C = 0.4;
+    /*
+     beta_cubic:  CUBIC multiplicative decrease factor as described in
+     Section 4.6.
+     */
+    final static double BETA = 0.7;
+    // alpha_cubic from section 4.3 - makes the reno estimate as friendly as reno with beta 0.5
+    final static double ALPHA = 3.0 * (1.0 - BETA) / (1.0 + BETA);
+
+    private double _wMax;      // segments
+    private double _wLastMax;  // segments
+    private double _wEst;      // segments
+    private double _k;         // seconds
+    private long _epochStart;  // nanos, 0 means no epoch
+    private double _srtt;      // seconds, 0 until we have a measurement
+
+    /*
+     4.6.  Multiplicative Decrease
+
+     When a congestion event is detected by the mechanisms described in
+     Section 3.1, CUBIC updates W_max and reduces cwnd and ssthresh
+     immediately, as described below.
+     */
+    protected void congestionEvent() {
+        double cwndSegs = (double) _cwnd / _mtu;
+        /*
+         4.7.  Fast Convergence
+         if cwnd < W_max and fast convergence enabled, further reduce W_max
+         */
+        if (cwndSegs < _wLastMax) {
+            _wMax = cwndSegs * (1.0 + BETA) / 2.0;
+        } else {
+            _wMax = cwndSegs;
+        }
+        _wLastMax = cwndSegs;
+        _ssthresh = Math.max((long) (_cwnd * BETA), 4 * _mtu);
+        _epochStart = 0;
+    }
+
+    /*
+     cwnd = cwnd * beta_cubic
+     */
+    @Override
+    public synchronized void onFastRetransmit() {
+        congestionEvent();
+        _cwnd = _ssthresh;
+        _partial_bytes_acked = 0;
+        LazyLog.debug(() -> "Fast retransmit (cubic) cwnd now " + _cwnd + " wmax " + _wMax);
+    }
+
+    /*
+     4.8.  Timeout
+
+     In the case of a timeout, CUBIC follows Reno to reduce cwnd [RFC5681],
+     but sets ssthresh using beta_cubic (same as in Section 4.6) in a way
+     that is different from Reno TCP [RFC5681].
+     */
+    @Override
+    public synchronized void onRetransmitTimeout() {
+        congestionEvent();
+        _cwnd = _mtu;
+        _partial_bytes_acked = 0;
+        LazyLog.debug(() -> "T3 expired (cubic) ssthresh now " + _ssthresh + " cwnd now " + _cwnd + " wmax " + _wMax);
+    }
+
+    @Override
+    public synchronized void onRtt(double srtt) {
+        _srtt = srtt;
+    }
+
+    @Override
+    public synchronized void onIdle() {
+        super.onIdle();
+        // don't let the cubic function count the idle time as growth time
+        _epochStart = 0;
+    }
+
+    @Override
+    public synchronized void reset() {
+        super.reset();
+        _epochStart = 0;
+        _wMax = 0;
+        _wLastMax = 0;
+    }
+
+    /*
+     4.2.  Window Increase Function
+
+     W_cubic(t) = C*(t-K)^3 + W_max
+
+     K = cubic_root((W_max - cwnd_epoch)/C)
+
+     Upon receiving a new ACK during congestion avoidance, CUBIC computes
+     the target congestion window size after the next RTT using
+     Figure 1 as follows, where RTT is the smoothed round-trip time.
+
+     target = W_cubic(t + RTT), clamped to [cwnd, 1.5*cwnd]
+     */
+    @Override
+    protected void congestionAvoidance(int bytesAcked, long flightBefore, boolean fullyUtilized) {
+        if (!fullyUtilized) {
+            // cwnd is not the limit - don't grow it
+            return;
+        }
+        double cwndSegs = (double) _cwnd / _mtu;
+        long now = now();
+        if (_epochStart == 0) {
+            _epochStart = now;
+            if (cwndSegs < _wMax) {
+                _k = Math.cbrt((_wMax - cwndSegs) / C);
+            } else {
+                _k = 0.0;
+                _wMax = cwndSegs;
+            }
+            _wEst = cwndSegs;
+        }
+        double t = (now - _epochStart) / 1.0E9;
+        double wCubic = C * Math.pow(t + _srtt - _k, 3.0) + _wMax;
+        /*
+         4.3.  Reno-Friendly Region
+
+         W_est = W_est + alpha_cubic * segments_acked / cwnd
+         */
+        _wEst += ALPHA * ((double) bytesAcked / _mtu) / cwndSegs;
+
+        double target;
+        if (wCubic < _wEst) {
+            target = _wEst;
+        } else {
+            /*
+             the target is clamped to at most 1.5 cwnd per RTT - 4.2
+             */
+            target = Math.min(wCubic, 1.5 * cwndSegs);
+        }
+        if (target > cwndSegs) {
+            // cwnd += (target - cwnd)/cwnd per segment acked
+            double incSegs = (target - cwndSegs) / cwndSegs * ((double) bytesAcked / _mtu);
+            long inc = Math.max(1L, (long) (incSegs * _mtu));
+            _cwnd += Math.min(inc, _mtu);
+            LazyLog.debug(() -> "cubic cwnd now " + _cwnd + " target " + (long) (target * _mtu));
+        }
+    }
+
+    // overridden by tests that want to control the clock
+    protected long now() {
+        return System.nanoTime();
+    }
+
+    public synchronized double getWMax() {
+        return _wMax;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.congestion;
+
+import com.phono.srtplight.Log;
+import pe.pi.sctp4j.sctp.LazyLog;
+
+/**
+ * The congestion control described in RFC 4960 section 7.2 - slow start and
+ * congestion avoidance with partial_bytes_acked, which is to say NewReno.
+ */
+public class NewRenoCongestionController implements CongestionController {
+
+    protected int _mtu = 1200;
+    /*
+     o  Congestion control window (cwnd, in bytes), which is adjusted by
+     the sender based on observed network conditions.
+     */
+    protected long _cwnd;
+    /*
+     o  Slow-start threshold (ssthresh, in bytes), which is used by the
+     sender to distinguish slow-start and congestion avoidance phases.
+     */
+    protected long _ssthresh = Long.MAX_VALUE;
+    /*
+     SCTP also requires one additional control variable,
+     partial_bytes_acked, which is used during congestion avoidance phase
+     to facilitate cwnd adjustment.
+     */
+    protected long _partial_bytes_acked;
+    protected long _flightSize;
+
+    public NewRenoCongestionController() {
+        resetCwnd();
+    }
+
+    /*
+     o  The initial cwnd before DATA transmission or after a sufficiently
+     long idle period MUST be set to min(4*MTU, max (2*MTU, 4380)
+     bytes)).
+     */
+    protected final void resetCwnd() {
+        _cwnd = Math.min(4 * _mtu, Math.max(2 * _mtu, 4380));
+    }
+
+    @Override
+    public synchronized void setMTU(int mtu) {
+        boolean untouched = (_flightSize == 0) && (_cwnd == Math.min(4 * _mtu, Math.max(2 * _mtu, 4380)));
+        _mtu = mtu;
+        if (untouched) {
+            resetCwnd();
+        }
+    }
+
+    /*
+     o  The initial value of ssthresh MAY be arbitrarily high (for
+     example, implementations MAY use the size of the receiver
+     advertised window).
+     */
+    @Override
+    public synchronized void setInitialSsthresh(long peerRwnd) {
+        _ssthresh = peerRwnd;
+    }
+
+    /*
+     o  Whenever cwnd is greater than zero, the endpoint is allowed to
+     have cwnd bytes of data outstanding on that transport address.
+     */
+    @Override
+    public synchronized boolean maySend(int size) {
+        boolean ret = (_flightSize == 0) || (_flightSize + size <= _cwnd);
+        LazyLog.verb(() -> "MaySend " + ret + " cwnd = " + _cwnd + " flight = " + _flightSize + " sz = " + size);
+        return ret;
+    }
+
+    @Override
+    public synchronized void onSent(int size) {
+        _flightSize += size;
+    }
+
+    /*
+     o  When cwnd is less than or equal to ssthresh, an SCTP endpoint MUST
+     use the slow-start algorithm to increase cwnd only if the current
+     congestion window is being fully utilized, an incoming SACK
+     advances the Cumulative TSN Ack Point, and the data sender is not
+     in Fast Recovery.  Only when these three conditions are met can
+     the cwnd be increased; otherwise, the cwnd MUST not be increased.
+     If these conditions are met, then cwnd MUST be increased by, at
+     most, the lesser of 1) the total size of the previously
+     outstanding DATA chunk(s) acknowledged, and 2) the destination's
+     path MTU.  This upper bound protects against the ACK-Splitting
+     attack outlined in [SAVAGE99].
+     */
+    @Override
+    public synchronized void onSack(boolean cumAckAdvanced, int bytesAcked, boolean fastRecovery) {
+        long flightBefore = _flightSize;
+        _flightSize = Math.max(0, _flightSize - bytesAcked);
+        // could we have fitted one more packet in before this sack arrived ?
+        boolean fullyUtilized = (flightBefore + _mtu > _cwnd);
+
+        if (_cwnd <= _ssthresh) {
+            if (cumAckAdvanced && fullyUtilized && !fastRecovery) {
+                _cwnd += Math.min(_mtu, bytesAcked);
+                LazyLog.debug(() -> "slow start cwnd now " + _cwnd);
+            }
+        } else if (cumAckAdvanced && !fastRecovery) {
+            congestionAvoidance(bytesAcked, flightBefore, fullyUtilized);
+        }
+        /*
+         o  When all of the data transmitted by the sender has been
+         acknowledged by the receiver, partial_bytes_acked is initialized
+         to 0.
+         */
+        if (_flightSize == 0) {
+            _partial_bytes_acked = 0;
+        }
+    }
+
+    // neither an ack nor a loss signal - just no longer in flight
+    @Override
+    public synchronized void onAbandoned(int size) {
+        _flightSize = Math.max(0, _flightSize - size);
+        if (_flightSize == 0) {
+            _partial_bytes_acked = 0;
+        }
+    }
+
+    /*
+     7.2.2.  Congestion Avoidance
+
+     o  Whenever cwnd is greater than ssthresh, upon each SACK arrival
+     that advances the Cumulative TSN Ack Point, increase
+     partial_bytes_acked by the total number of bytes of all new chunks
+     acknowledged in that SACK including chunks acknowledged by the new
+     Cumulative TSN Ack and by Gap Ack Blocks.
+
+     o  When partial_bytes_acked is equal to or greater than cwnd and
+     before the arrival of the SACK the sender had cwnd or more bytes
+     of data outstanding (i.e., before arrival of the SACK, flightsize
+     was greater than or equal to cwnd), increase cwnd by MTU, and
+     reset partial_bytes_acked to (partial_bytes_acked - cwnd).
+     */
+    protected void congestionAvoidance(int bytesAcked, long flightBefore, boolean fullyUtilized) {
+        _partial_bytes_acked += bytesAcked;
+        if ((_partial_bytes_acked >= _cwnd) && fullyUtilized) {
+            _partial_bytes_acked -= _cwnd;
+            _cwnd += _mtu;
+            LazyLog.debug(() -> "congestion avoidance cwnd now " + _cwnd);
+        }
+    }
+
+    /*
+     7.2.3.  Congestion Control
+
+     Upon detection of packet losses from SACK (see Section 7.2.4), an
+     endpoint should do the following:
+
+     ssthresh = max(cwnd/2, 4*MTU)
+     cwnd = ssthresh
+     partial_bytes_acked = 0
+     */
+    @Override
+    public synchronized void onFastRetransmit() {
+        _ssthresh = Math.max(_cwnd / 2, 4 * _mtu);
+        _cwnd = _ssthresh;
+        _partial_bytes_acked = 0;
+        LazyLog.debug(() -> "Fast retransmit ssthresh now " + _ssthresh + " cwnd now " + _cwnd);
+    }
+
+    /*
+     When the T3-rtx timer expires on an address, SCTP should perform slow
+     start by:
+
+     ssthresh = max(cwnd/2, 4*MTU)
+     cwnd = 1*MTU
+
+     and ensure that no more than one SCTP packet will be in flight for
+     that address until the endpoint receives acknowledgement for
+     successful delivery of data to that address.
+     */
+    @Override
+    public synchronized void onRetransmitTimeout() {
+        _ssthresh = Math.max(_cwnd / 2, 4 * _mtu);
+        _cwnd = _mtu;
+        _partial_bytes_acked = 0;
+        LazyLog.debug(() -> "T3 expired ssthresh now " + _ssthresh + " cwnd now " + _cwnd);
+    }
+
+    /*
+     o  When the endpoint does not transmit data on a given transport
+     address, the cwnd of the transport address should be adjusted to
+     max(cwnd/2, 4*MTU) per RTO.
+     */
+    @Override
+    public synchronized void onIdle() {
+        _cwnd = Math.max(_cwnd / 2, 4 * _mtu);
+    }
+
+    @Override
+    public synchronized void reset() {
+        _flightSize = 0;
+        _partial_bytes_acked = 0;
+        resetCwnd();
+    }
+
+    @Override
+    public synchronized long getCwnd() {
+        return _cwnd;
+    }
+
+    @Override
+    public synchronized long getSsthresh() {
+        return _ssthresh;
+    }
+
+    @Override
+    public synchronized long getFlightSize() {
+        return _flightSize;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " cwnd=" + _cwnd + " ssthresh=" + _ssthresh + " flight=" + _flightSize;
+    }
+}
@@ -19,6 +19,7 @@ package pe.pi.sctp4j.sctp.dataChannel.DECP;
 import pe.pi.sctp4j.sctp.behave.SCTPStreamBehaviour;
 import pe.pi.sctp4j.sctp.behave.OrderedStreamBehaviour;
 import pe.pi.sctp4j.sctp.behave.UnorderedStreamBehaviour;
+import pe.pi.sctp4j.sctp.behave.PartialReliableStreamBehaviour;
 import pe.pi.sctp4j.sctp.messages.Packet;
 import pe.pi.sctp4j.sctp.messages.exceptions.InvalidDataChunkException;
 import com.phono.srtplight.Log;
@@ -53,6 +54,16 @@ public class DCOpen {
     public final static byte PARTIAL_RELIABLE_TIMED_UNORDERED = (byte) 0x82;
     public final static byte RELIABLE_UNORDERED = (byte) 0x80;
 
+    /*
+     The priority field carries the channel's relative priority (RFC 8831
+     section 6.4) - the values in use are these, higher is more important.
+     0 - what we send if no one says - we take as normal.
+     */
+    public final static int PRIORITY_BELOW_NORMAL = 128;
+    public final static int PRIORITY_NORMAL = 256;
+    public final static int PRIORITY_HIGH = 512;
+    public final static int PRIORITY_EXTRA_HIGH = 1024;
+
     /*
      5.1.  DATA_CHANNEL_OPEN Message
 
@@ -194,15 +205,18 @@ public class DCOpen {
             case RELIABLE_UNORDERED:
                 behave = new UnorderedStreamBehaviour();
                 break;
-            // todo these next 4 are wrong... the odering is atleast correct
-            // even if the retry is wrong.
+            // the reliability parameter is a retransmit count or a lifetime in ms
             case PARTIAL_RELIABLE_REXMIT:
+                behave = new PartialReliableStreamBehaviour(true, false, _reliablity);
+                break;
             case PARTIAL_RELIABLE_TIMED:
-                behave = new OrderedStreamBehaviour();
+                behave = new PartialReliableStreamBehaviour(true, true, _reliablity);
                 break;
             case PARTIAL_RELIABLE_REXMIT_UNORDERED:
+                behave = new PartialReliableStreamBehaviour(false, false, _reliablity);
+                break;
             case PARTIAL_RELIABLE_TIMED_UNORDERED:
-                behave = new UnorderedStreamBehaviour();
+                behave = new PartialReliableStreamBehaviour(false, true, _reliablity);
                 break;
         }
         if (behave != null) {
@@ -216,6 +230,10 @@ public class DCOpen {
         return new String(_label);
     }
 
+    public int getPriority() {
+        return (_priority == 0) ? PRIORITY_NORMAL : _priority;
+    }
+
     public static DCOpen mkAck() {
         DCOpen ack = new DCOpen() {
             @Override
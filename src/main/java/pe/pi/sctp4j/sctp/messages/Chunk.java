@@ -37,6 +37,7 @@ import pe.pi.sctp4j.sctp.messages.params.StaleCookieError;
 import pe.pi.sctp4j.sctp.messages.params.SupportedAddressTypes;
 import pe.pi.sctp4j.sctp.messages.params.Unknown;
 import pe.pi.sctp4j.sctp.messages.params.VariableParam;
+import pe.pi.sctp4j.sctp.messages.params.ZeroChecksumAcceptable;
 import com.phono.srtplight.Log;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
@@ -76,7 +77,10 @@ public abstract class Chunk {
     public final static int COOKIE_ECHO = 10;
     public final static int COOKIE_ACK = 11;
     public final static int SHUTDOWN_COMPLETE = 14;
+    public final static int I_DATA = 64;
     public final static int RE_CONFIG = 130;
+    public final static int FORWARD_TSN = 192;
+    public final static int I_FORWARD_TSN = 194;
 
 
 
@@ -100,6 +104,7 @@ public abstract class Chunk {
             int itype = (int) (0xff & type);
             switch (itype) {
                 case DATA:
+                case I_DATA:
                     ret = new DataChunk(type, flags, length, pkt);
                     break;
                 case INIT:
@@ -126,6 +131,10 @@ public abstract class Chunk {
                 case RE_CONFIG:
                     ret = new ReConfigChunk(type, flags, length, pkt);
                     break;
+                case FORWARD_TSN:
+                case I_FORWARD_TSN:
+                    ret = new ForwardTsnChunk(type, flags, length, pkt);
+                    break;
                 default:
                     Log.warn("Default chunk type "+itype+" read in ");
                     ret = new Chunk(type, flags, length, pkt) {
@@ -195,6 +204,16 @@ public abstract class Chunk {
      Chunk Type    Chunk Name
      ------------------------------------------------------
      192 (0xC0)    Forward Cumulative TSN (FORWARD TSN)
+
+     RFC 8260 message interleaving
+
+     +------------+--------------------------------------+
+     | Chunk Type | Chunk Name                           |
+     +------------+--------------------------------------+
+     | 64 (0x40)  | Payload Data supporting Interleaving |
+     |            | (I-DATA)                             |
+     | 194 (0xC2) | I-FORWARD-TSN                        |
+     +------------+--------------------------------------+
      
     
      Chunk Type  Chunk Name
@@ -219,10 +238,12 @@ public abstract class Chunk {
                     new AbstractMap.SimpleEntry<>(13, "CWR"),
                     new AbstractMap.SimpleEntry<>(14, "SHUTDOWN COMPLETE"),
                     new AbstractMap.SimpleEntry<>(15, "AUTH"),
+                    new AbstractMap.SimpleEntry<>(64, "I-DATA"),
                     new AbstractMap.SimpleEntry<>(0xC1, "ASCONF"),
                     new AbstractMap.SimpleEntry<>(0x80, "ASCONF-ACK"),
                     new AbstractMap.SimpleEntry<>(130, "RE-CONFIG"),
                     new AbstractMap.SimpleEntry<>(192, "FORWARDTSN"),
+                    new AbstractMap.SimpleEntry<>(194, "I-FORWARD-TSN"),
                     new AbstractMap.SimpleEntry<>(0x81, "PKTDROP")
                                 ).collect(Collectors.toMap((e) -> e.getKey(), (e) -> e.getValue())));
     final static Map<String, Integer> __nameMap = _typeLookup.entrySet().stream().collect(Collectors.toMap(
@@ -264,15 +285,22 @@ public abstract class Chunk {
         bb.putInt((int) (value & 0xffffffffL));
     }
 
+    /**
+     * write the chunk at ret's position - leaves the position just after it
+     * (before any padding).
+     */
     void write(ByteBuffer ret) throws SctpPacketFormatException {
+        Buffer bret = (Buffer) ret;
+        int start = bret.position();
         ret.put(_type);
         ret.put(_flags);
         ret.putChar((char) 4); // marker for length;
-        Buffer bret = (Buffer) ret;
         putFixedParams(ret);
         int pad = 0;
         if (_varList != null) {
-            for (VariableParam v : this._varList) {
+            // by index - no iterator for the (usual) empty list
+            for (int vi = 0; vi < _varList.size(); vi++) {
+                VariableParam v = _varList.get(vi);
                 Log.debug("var " + v.getName() + " at " + bret.position());
 
                 ByteBuffer var = ret.slice();
@@ -285,13 +313,17 @@ public abstract class Chunk {
                 pad = bvar.position() % 4;
                 pad = (pad != 0) ? 4 - pad : 0;
                 Log.verb("padding by " + pad);
-                bret.position(bret.position() + bvar.position() + pad);
+                bret.position(bret.position() + bvar.position());
+                // the buffer may be reused - so zero the padding rather than skip it
+                for (int i = 0; i < pad; i++) {
+                    ret.put((byte) 0);
+                }
             }
         }
         //System.out.println("un padding by " + pad);
         bret.position(bret.position() - pad);
         // and push the new length into place.
-        ret.putChar(2, (char) bret.position());
+        ret.putChar(start + 2, (char) (bret.position() - start));
         //System.out.println("setting chunk length to " + ret.position());
     }
 
@@ -346,6 +378,7 @@ public abstract class Chunk {
      18	Add Incoming Streams Request Parameter	[RFC6525]
      19-32767	Unassigned	
      32768	Reserved for ECN Capable (0x8000)	
+     32769	Zero Checksum Acceptable (0x8001)	[RFC9653]
      32770	Random (0x8002)	[RFC4805]
      32771	Chunk List (0x8003)	[RFC4895]
      32772	Requested HMAC Algorithm Parameter (0x8004)	[RFC4895]
@@ -418,6 +451,9 @@ public abstract class Chunk {
             case 32768:
                 var = new Unknown(32768, "ReservedforECNCapable");
                 break;
+            case ZeroChecksumAcceptable.TYPE:
+                var = new ZeroChecksumAcceptable(ZeroChecksumAcceptable.TYPE, "ZeroChecksumAcceptable");
+                break;
             case 32770:
                 var = new RandomParam(32770, "Random");
                 break;
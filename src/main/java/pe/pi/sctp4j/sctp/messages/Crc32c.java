@@ -15,6 +15,9 @@
  */
 package pe.pi.sctp4j.sctp.messages;
 
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.zip.Checksum;
 
 /**
@@ -24,6 +27,10 @@ import java.util.zip.Checksum;
  *
  * The implementation of this class has been sourced from the Appendix of RFC 3309,
  * but with masking due to Java not being able to support unsigned types.
+ *
+ * Where the JDK has java.util.zip.CRC32C (9+, hotspot intrinsifies it) we
+ * delegate to that. Otherwise (Android) we fall back to slicing-by-8 - 8 table
+ * lookups per 8 bytes rather than one lookup per byte.
  */
 public class Crc32c implements Checksum {
     private static final int[] CRC_TABLE = {
@@ -96,32 +103,168 @@ public class Crc32c implements Checksum {
     private static final long LONG_MASK = 0xFFFFFFFFL;
     private static final int BYTE_MASK = 0xFF;
 
+    // SLICES[k][n] is the crc of byte n followed by k zero bytes. SLICES[0] is CRC_TABLE
+    private static final int[][] SLICES = new int[8][];
+
+    static {
+        SLICES[0] = CRC_TABLE;
+        for (int k = 1; k < 8; k++) {
+            SLICES[k] = new int[256];
+            for (int n = 0; n < 256; n++) {
+                int c = SLICES[k - 1][n];
+                SLICES[k][n] = (c >>> 8) ^ CRC_TABLE[c & BYTE_MASK];
+            }
+        }
+    }
+
+    private static final boolean JDK_CRC = jdkAvailable();
+
+    private static boolean jdkAvailable() {
+        try {
+            Class.forName("java.util.zip.CRC32C");
+            return true;
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    // kept in its own class so nothing tries to resolve CRC32C unless it is there.
+    private static class Jdk {
+
+        static Checksum make() {
+            return new java.util.zip.CRC32C();
+        }
+    }
+
+    private final Checksum _jdk;
     private int crc = ~0;
 
+    public Crc32c() {
+        this(JDK_CRC);
+    }
+
+    /**
+     * @param useJdk false forces the slicing-by-8 implementation (for tests and
+     * benchmarks) - true is ignored if the JDK doesn't have CRC32C.
+     */
+    public Crc32c(boolean useJdk) {
+        _jdk = (useJdk && JDK_CRC) ? Jdk.make() : null;
+    }
+
+    public static boolean isJdkAvailable() {
+        return JDK_CRC;
+    }
+
     @Override
     public void update(int b) {
-        crc = crc32c(crc, b);
+        if (_jdk != null) {
+            _jdk.update(b);
+        } else {
+            crc = crc32c(crc, b);
+        }
     }
 
     @Override
     public void update(byte[] buffer, int offset, int length) {
-        for (int i = offset; i < offset + length; i++) {
-            crc = crc32c(crc, buffer[i]);
+        if (_jdk != null) {
+            _jdk.update(buffer, offset, length);
+        } else {
+            crc = updateSlice8(crc, buffer, offset, length);
+        }
+    }
+
+    /**
+     * Everything from position to limit, leaves position at limit. Heap
+     * buffers use the array directly, direct buffers are read in place - no
+     * copy in either case.
+     *
+     * @param buffer
+     */
+    @Override
+    public void update(ByteBuffer buffer) {
+        if (_jdk != null) {
+            _jdk.update(buffer);
+        } else if (buffer.hasArray()) {
+            int pos = buffer.position();
+            int len = buffer.remaining();
+            crc = updateSlice8(crc, buffer.array(), buffer.arrayOffset() + pos, len);
+            ((Buffer) buffer).position(pos + len);
+        } else {
+            crc = updateSlice8(crc, buffer);
         }
     }
 
     @Override
     public long getValue() {
+        if (_jdk != null) {
+            return _jdk.getValue();
+        }
         return (crc ^ LONG_MASK) & LONG_MASK;
     }
 
     @Override
     public void reset() {
+        if (_jdk != null) {
+            _jdk.reset();
+        }
         crc = ~0;
     }
 
     private static int crc32c(int crc, int b) {
         return crc >>> 8 ^ CRC_TABLE[(crc ^ b & BYTE_MASK) & BYTE_MASK];
     }
+
+    // the original one lookup per byte loop - kept for comparison.
+    static int updateBytewise(int crc, byte[] buffer, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            crc = crc32c(crc, buffer[i]);
+        }
+        return crc;
+    }
+
+    static int updateSlice8(int crc, byte[] b, int off, int len) {
+        int end = off + len;
+        int end8 = off + (len & ~7);
+        for (; off < end8; off += 8) {
+            int lo = crc ^ ((b[off] & BYTE_MASK)
+                    | (b[off + 1] & BYTE_MASK) << 8
+                    | (b[off + 2] & BYTE_MASK) << 16
+                    | (b[off + 3] & BYTE_MASK) << 24);
+            crc = slice8(lo, b[off + 4], b[off + 5], b[off + 6], b[off + 7]);
+        }
+        for (; off < end; off++) {
+            crc = crc32c(crc, b[off]);
+        }
+        return crc;
+    }
+
+    static int updateSlice8(int crc, ByteBuffer buffer) {
+        ByteBuffer bb = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int pos = bb.position();
+        int end = bb.limit();
+        int end8 = pos + ((end - pos) & ~7);
+        for (; pos < end8; pos += 8) {
+            long l = bb.getLong(pos);
+            int lo = crc ^ (int) l;
+            int hi = (int) (l >>> 32);
+            crc = slice8(lo, (byte) hi, (byte) (hi >>> 8), (byte) (hi >>> 16), (byte) (hi >>> 24));
+        }
+        for (; pos < end; pos++) {
+            crc = crc32c(crc, bb.get(pos));
+        }
+        ((Buffer) buffer).position(end);
+        return crc;
+    }
+
+    private static int slice8(int lo, byte b4, byte b5, byte b6, byte b7) {
+        return SLICES[7][lo & BYTE_MASK]
+                ^ SLICES[6][(lo >>> 8) & BYTE_MASK]
+                ^ SLICES[5][(lo >>> 16) & BYTE_MASK]
+                ^ SLICES[4][lo >>> 24]
+                ^ SLICES[3][b4 & BYTE_MASK]
+                ^ SLICES[2][b5 & BYTE_MASK]
+                ^ SLICES[1][b6 & BYTE_MASK]
+                ^ SLICES[0][b7 & BYTE_MASK];
+    }
 }
 
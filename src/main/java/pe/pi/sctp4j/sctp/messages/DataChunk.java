@@ -19,7 +19,11 @@ package pe.pi.sctp4j.sctp.messages;
 import pe.pi.sctp4j.sctp.dataChannel.DECP.DCOpen;
 import pe.pi.sctp4j.sctp.messages.exceptions.InvalidDataChunkException;
 import com.phono.srtplight.Log;
+import pe.pi.sctp4j.sctp.LazyLog;
+import pe.pi.sctp4j.sctp.RcvBuffer;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Comparator;
 
 /**
@@ -57,7 +61,8 @@ public class DataChunk extends Chunk implements Comparable, Comparator {
 
     private long _tsn;
     private int _streamId;
-    private int _sSeqNo;
+    private int _sSeqNo; // or for I-DATA the Message Identifier
+    private int _fsn; // I-DATA only
     private int _ppid;
     private byte[] _data;
     private int _dataOffset;
@@ -69,61 +74,100 @@ public class DataChunk extends Chunk implements Comparable, Comparator {
     private long _retryTime;
     private int _retryCount;
     private long _sentTime;
+    private int _missCount;
+    private boolean _fastRetransmitted;
+    private RcvBuffer _rcvBuffer;
+    // RFC 3758 partial reliability - when (and after how many resends) to give up
+    private long _expires;
+    private int _maxResends = -1;
+    private int _resends;
+    private boolean _abandoned;
+    private final static byte[] EMPTY = new byte[0];
 
     public DataChunk(byte type, byte flags, int length, ByteBuffer pkt) {
         super(type, flags, length, pkt);
-        Log.debug("read in chunk header " + length);
-        Log.debug("body remaining " + _body.remaining());
+        if (LazyLog.isDebug()) {
+            Log.debug("read in chunk header " + length);
+            Log.debug("body remaining " + _body.remaining());
+        }
 
-        if (_body.remaining() >= 12) {
+        if (isIData()) {
+            if (_body.remaining() >= 16) {
+                _tsn = getUnsignedInt(_body);
+                _streamId = _body.getChar();
+                _body.getChar(); // reserved
+                _sSeqNo = _body.getInt();
+                int ppidOrFsn = _body.getInt();
+                if ((_flags & BEGINFLAG) != 0) {
+                    _ppid = ppidOrFsn;
+                } else {
+                    // only the first fragment says what it is - see SCTPMessage
+                    _fsn = ppidOrFsn;
+                }
+                if (LazyLog.isDebug()) {
+                    Log.debug(" _tsn : " + _tsn
+                            + " _streamId : " + _streamId
+                            + " _mid : " + (_sSeqNo & 0xffffffffL)
+                            + " _fsn : " + (_fsn & 0xffffffffL)
+                            + " _ppid : " + _ppid);
+                }
+                readPayload();
+            }
+        } else if (_body.remaining() >= 12) {
             _tsn = getUnsignedInt(_body);
             _streamId = _body.getChar();
             _sSeqNo = _body.getChar();
             _ppid = _body.getInt();
 
-            Log.debug(" _tsn : " + _tsn
-                    + " _streamId : " + _streamId
-                    + " _sSeqNo : " + _sSeqNo
-                    + " _ppid : " + _ppid);
-            Log.debug("data size remaining " + _body.remaining());
-            switch (_ppid) {
-                case WEBRTCBINARY:
-                    _data = new byte[_body.remaining()];
-                    _body.get(_data);
-                    _dataOffset = 0;
-                    _dataLength = _data.length;
-                    Log.verb("Binary data is " + Packet.getHex(_data));
-                    break;
-                case WEBRTCSTRING:
-                    _data = new byte[_body.remaining()];
-                    _body.get(_data);
-                    _dataOffset = 0;
-                    _dataLength = _data.length;
-                    Log.verb("String data is " + new String(_data));
-                    break;
-                case WEBRTCCONTROL:
-                    _data = new byte[_body.remaining()];
-                    _body.get(_data);
-                    _dataOffset = 0;
-                    _dataLength = _data.length;
-                    Log.verb("Dcep data is " + Packet.getHex(_data));
-                    break;
-                case WEBRTCSTRINGEMPTY:
-                    _data = new byte[0];
-                    _dataOffset = 0;
-                    _dataLength = _data.length;
-                    Log.verb("String data empty");
-                    break;
-                case WEBRTCBINARYEMPTY:
-                    _data = new byte[0];
-                    _dataOffset = 0;
-                    _dataLength = _data.length;
-                    Log.verb("Binary data empty");
-                    break;
-                default:
-                    _invalid = new InvalidDataChunkException("Invalid Protocol Id in data Chunk " + _ppid);
-                    break;
+            if (LazyLog.isDebug()) {
+                Log.debug(" _tsn : " + _tsn
+                        + " _streamId : " + _streamId
+                        + " _sSeqNo : " + _sSeqNo
+                        + " _ppid : " + _ppid);
+                Log.debug("data size remaining " + _body.remaining());
             }
+            readPayload();
+        }
+    }
+
+    // a view of the packet - not a copy. see setRcvBuffer()
+    // A direct or read only buffer has no array to share, so that gets copied.
+    private void viewPayload() {
+        if (_body.hasArray()) {
+            _data = _body.array();
+            _dataOffset = _body.arrayOffset() + ((Buffer) _body).position();
+            _dataLength = _body.remaining();
+        } else {
+            _data = new byte[_body.remaining()];
+            _body.get(_data);
+            _dataOffset = 0;
+            _dataLength = _data.length;
+        }
+    }
+
+    private void readPayload() {
+        if (isIData() && ((_flags & BEGINFLAG) == 0)) {
+            // a later I-DATA fragment - no PPID to check
+            viewPayload();
+            return;
+        }
+        switch (_ppid) {
+            case WEBRTCBINARY:
+            case WEBRTCSTRING:
+            case WEBRTCCONTROL:
+                viewPayload();
+                LazyLog.verb(() -> "data (ppid " + _ppid + ") length is " + _dataLength);
+                break;
+            case WEBRTCSTRINGEMPTY:
+            case WEBRTCBINARYEMPTY:
+                _data = EMPTY;
+                _dataOffset = 0;
+                _dataLength = 0;
+                LazyLog.verb(() -> "data empty ppid " + _ppid);
+                break;
+            default:
+                _invalid = new InvalidDataChunkException("Invalid Protocol Id in data Chunk " + _ppid);
+                break;
         }
     }
 
@@ -134,7 +178,7 @@ public class DataChunk extends Chunk implements Comparable, Comparator {
                 ret = "Got an DCEP " + _open;
                 break;
             case WEBRTCSTRING:
-                ret = new String(_data, _dataOffset, _dataLength);
+                ret = new String(_data, _dataOffset, _dataLength, StandardCharsets.UTF_8);
                 break;
             case WEBRTCSTRINGEMPTY:
                 ret = "Empty String message";
@@ -142,7 +186,7 @@ public class DataChunk extends Chunk implements Comparable, Comparator {
             case WEBRTCBINARY:
                 byte[] p = new byte[_dataLength];
                 System.arraycopy(_data, _dataOffset, p, 0, _dataLength);
-                ret = Packet.getHex(_data);
+                ret = Packet.getHex(p);
                 break;
             case WEBRTCBINARYEMPTY:
                 ret = "Empty binay message";
@@ -184,6 +228,32 @@ public class DataChunk extends Chunk implements Comparable, Comparator {
      \                                                               \
      +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
 
+
+     RFC 8260 2.1 - the I-DATA chunk
+
+     0                   1                   2                   3
+     0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+     +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+     |   Type = 64   |  Res  |I|U|B|E|       Length = Variable       |
+     +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+     |                              TSN                              |
+     +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+     |        Stream Identifier      |           Reserved            |
+     +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+     |                      Message Identifier                       |
+     +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+     |    Payload Protocol Identifier / Fragment Sequence Number     |
+     +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+     \                                                               \
+     /                           User Data                           /
+     \                                                               \
+     +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+
+     The fragments of a message need not have consecutive TSNs - they are
+     tied together by the stream, the U bit and the 32 bit Message
+     Identifier (which takes the place of the SSN), and put in order by the
+     Fragment Sequence Number. The first fragment carries the PPID, the rest
+     their FSN.
      */
     public long getTsn() {
         return _tsn;
@@ -193,18 +263,89 @@ public class DataChunk extends Chunk implements Comparable, Comparator {
         return this._streamId;
     }
 
+    /**
+     * @return the SSN - or for an I-DATA chunk the (32 bit) Message
+     * Identifier.
+     */
     public int getSSeqNo() {
         return this._sSeqNo;
     }
 
+    /**
+     * @return true if this is an I-DATA chunk (RFC 8260) rather than DATA
+     */
+    public boolean isIData() {
+        return _type == I_DATA;
+    }
+
+    /**
+     * send this chunk as I-DATA - both ends must have agreed to it.
+     */
+    public void setIData(boolean idata) {
+        _type = (byte) (idata ? I_DATA : DATA);
+    }
+
+    /**
+     * @return the I-DATA Fragment Sequence Number - 0 for the first fragment
+     */
+    public int getFsn() {
+        return _fsn;
+    }
+
+    public void setFsn(int fsn) {
+        _fsn = fsn;
+    }
+
     public int getPpid() {
         return this._ppid;
     }
 
+    /**
+     * @return the array holding the payload - which starts at
+     * getDataOffset() and is getDataSize() long. For inbound chunks this is
+     * the whole receive buffer.
+     */
     public byte[] getData() {
         return this._data;
     }
 
+    public int getDataOffset() {
+        return _dataOffset;
+    }
+
+    /**
+     * An inbound chunk's payload is a view of the buffer the packet was
+     * received into - so the chunk holds a reference to it until the payload
+     * is delivered.
+     *
+     * @param b - retained here
+     */
+    public void setRcvBuffer(RcvBuffer b) {
+        releaseRcvBuffer();
+        _rcvBuffer = b.retain();
+    }
+
+    /**
+     * hand our reference to the receive buffer (if any) to the caller - who
+     * must release it.
+     */
+    public RcvBuffer takeRcvBuffer() {
+        RcvBuffer ret = _rcvBuffer;
+        _rcvBuffer = null;
+        return ret;
+    }
+
+    /**
+     * we will never be delivered (a duplicate say) - let go of the receive
+     * buffer.
+     */
+    public void releaseRcvBuffer() {
+        RcvBuffer b = takeRcvBuffer();
+        if (b != null) {
+            b.release();
+        }
+    }
+
     public DCOpen getDCEP() {
         return this._open;
     }
@@ -221,13 +362,22 @@ public class DataChunk extends Chunk implements Comparable, Comparator {
         int len = super.getLength();
         if (len == 0) {
             // ie outbound chunk.
-            len = _dataLength + 12 + 4;
+            len = _dataLength + (isIData() ? 16 : 12) + 4;
         }
         return len;
     }
 
     @Override
     void putFixedParams(ByteBuffer ret) {
+        if (isIData()) {
+            putUnsignedInt(ret, _tsn);
+            ret.putChar((char) _streamId);
+            ret.putChar((char) 0);
+            ret.putInt(_sSeqNo);
+            ret.putInt(((_flags & BEGINFLAG) != 0) ? _ppid : _fsn);
+            ret.put(_data, _dataOffset, _dataLength);
+            return;
+        }
         putUnsignedInt(ret, _tsn);// = _body.getInt();
         ret.putChar((char) _streamId);// = _body.getChar();
         ret.putChar((char) _sSeqNo);// = _body.getChar();
@@ -250,7 +400,7 @@ public class DataChunk extends Chunk implements Comparable, Comparator {
     }
 
     /**
-     * @param _sSeqNo the _sSeqNo to set
+     * @param _sSeqNo the _sSeqNo (or I-DATA Message Identifier) to set
      */
     public void setsSeqNo(int sSeqNo) {
         _sSeqNo = sSeqNo;
@@ -284,9 +434,9 @@ public class DataChunk extends Chunk implements Comparable, Comparator {
      */
     public String toString() {
         String ret = super.toString();
-        ret += " ppid=" + _ppid + " seqn=" + _sSeqNo + " streamId=" + _streamId + " tsn=" + _tsn
+        ret += " ppid=" + _ppid + " seqn=" + _sSeqNo + (isIData() ? " fsn=" + _fsn : "") + " streamId=" + _streamId + " tsn=" + _tsn
                 + " retryAt=" + _retryTime + " retryCount=" + _retryCount + " sentTime=" + _sentTime
-                + " gapacked=" + _gapAck;
+                + " gapacked=" + _gapAck + " misses=" + _missCount;
         return ret;
     }
 
@@ -298,6 +448,7 @@ public class DataChunk extends Chunk implements Comparable, Comparator {
         return _flags;
     }
 
+    // only used when there is no association to ask - see Association.getFragmentSize()
     public static int getCapacity() {
         return 1024; // shrug - needs to be less than the theoretical MTU or slow start fails.
     }
@@ -355,9 +506,11 @@ public class DataChunk extends Chunk implements Comparable, Comparator {
     }
 
     public void clean() {
+        _type = (byte) DATA;
         _tsn = 0;
         _streamId = 0;
         _sSeqNo = 0;
+        _fsn = 0;
         _ppid = 0;
         _data = null;
         _dataOffset = 0;
@@ -368,11 +521,73 @@ public class DataChunk extends Chunk implements Comparable, Comparator {
         _retryTime = 0;
         _retryCount = 0;
         _sentTime = 0;
+        _missCount = 0;
+        _fastRetransmitted = false;
+        _rcvBuffer = null;
+        _expires = 0;
+        _maxResends = -1;
+        _resends = 0;
+        _abandoned = false;
     }
 
     public void incrementRetryCount() {
         _retryCount++;
-        Log.verb(" retry count is now " + _retryCount + " on " + _tsn);
+        LazyLog.verb(() -> " retry count is now " + _retryCount + " on " + _tsn);
+    }
+
+    // a SACK reported this chunk missing - returns the new total.
+    public int incrementMissCount() {
+        return ++_missCount;
+    }
+
+    public int getMissCount() {
+        return _missCount;
+    }
+
+    public void setFastRetransmitted(boolean b) {
+        _fastRetransmitted = b;
+    }
+
+    public boolean isFastRetransmitted() {
+        return _fastRetransmitted;
+    }
+
+    /**
+     * Partial reliability policy for this chunk.
+     *
+     * @param expires - give up if not acked by then (ms since the epoch), 0
+     * for never.
+     * @param maxResends - give up rather than resend more than this many
+     * times, -1 for no limit.
+     */
+    public void setAbandonAfter(long expires, int maxResends) {
+        _expires = expires;
+        _maxResends = maxResends;
+    }
+
+    // we are about to resend this chunk - returns the new total.
+    public int incrementResends() {
+        return ++_resends;
+    }
+
+    /**
+     * should this chunk be given up on rather than resent (again) ?
+     */
+    public boolean isAbandonable(long now) {
+        return ((_expires != 0) && (now >= _expires))
+                || ((_maxResends >= 0) && (_resends >= _maxResends));
+    }
+
+    public boolean isPartiallyReliable() {
+        return (_expires != 0) || (_maxResends >= 0);
+    }
+
+    public void setAbandoned(boolean b) {
+        _abandoned = b;
+    }
+
+    public boolean isAbandoned() {
+        return _abandoned;
     }
 
 }
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.messages;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Tells the far end to stop waiting for TSNs we have given up on - RFC 3758
+ * partial reliability. Once I-DATA is in use it is an I-FORWARD-TSN instead
+ * (RFC 8260), which names messages by their 32 bit MID and says which of a
+ * stream's unordered messages were given up on too.
+ *
+ * @author Westhawk Ltd<thp@westhawk.co.uk>
+ */
+public class ForwardTsnChunk extends Chunk {
+
+    /*
+     3.2.  Forward Cumulative TSN Chunk Definition (FORWARD TSN)
+
+     0                   1                   2                   3
+     0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+     +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+     |   Type = 192  |  Flags = 0x00 |        Length = Variable      |
+     +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+     |                      New Cumulative TSN                       |
+     +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+     |         Stream-1              |       Stream Sequence-1       |
+     +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+     \                                                               /
+     /                                                               \
+     +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+     |         Stream-N              |       Stream Sequence-N       |
+     +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+
+     New Cumulative TSN: 32 bit u_int
+
+     This indicates the new cumulative TSN to the data receiver.  Upon
+     the reception of this value, the data receiver MUST consider
+     any missing TSNs earlier than or equal to this value as received,
+     and stop reporting them as gaps in any subsequent SACKs.
+
+     Stream-N: 16 bit u_int
+
+     This field holds a stream number that was skipped by this
+     FWD-TSN.
+
+     Stream Sequence-N: 16 bit u_int
+
+     This field holds the sequence number associated with the stream
+     that was skipped.  The stream sequence field holds the largest
+     stream sequence number in this stream being skipped.  The receiver
+     of the FWD-TSN's can use the Stream-N and Stream Sequence-N fields
+     to enable delivery of any stranded TSN's that remain on the stream
+     re-ordering queues.  This field MUST NOT report TSN's corresponding
+     to DATA chunks that are marked as unordered.
+
+     RFC 8260 2.3.1.  I-FORWARD-TSN Chunk Definition
+
+     0                   1                   2                   3
+     0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+     +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+     |  Type = 194   | Flags = 0x00  |      Length = Variable        |
+     +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+     |                       New Cumulative TSN                      |
+     +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+     |       Stream Identifier       |          Reserved           |U|
+     +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+     |                       Message Identifier                      |
+     +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+     \                                                               \
+     /                                                               /
+     +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+
+     Message Identifier (MID): 32 bits (unsigned integer)
+     This field holds the largest Message Identifier for ordered or
+     unordered messages indicated by the U bit that was skipped for the
+     stream specified by the Stream Identifier.
+     */
+    private long _newCumTSN;
+    private int[] _streams = new int[4];
+    private int[] _seqs = new int[4];
+    private boolean[] _unordered = new boolean[4];
+    private int _n;
+
+    public ForwardTsnChunk() {
+        this(false);
+    }
+
+    /**
+     * @param interleaved - an I-FORWARD-TSN, for when I-DATA is in use
+     */
+    public ForwardTsnChunk(boolean interleaved) {
+        super((byte) (interleaved ? I_FORWARD_TSN : FORWARD_TSN));
+    }
+
+    public ForwardTsnChunk(byte type, byte flags, int length, ByteBuffer pkt) {
+        super(type, flags, length, pkt);
+        _newCumTSN = Chunk.getUnsignedInt(_body);
+        if (isInterleaved()) {
+            while (_body.remaining() >= 8) {
+                int sid = _body.getChar();
+                boolean u = (_body.getChar() & 1) != 0;
+                addStream(sid, u, _body.getInt());
+            }
+        } else {
+            while (_body.remaining() >= 4) {
+                addStream(_body.getChar(), _body.getChar());
+            }
+        }
+    }
+
+    /**
+     * @return true for an I-FORWARD-TSN
+     */
+    public boolean isInterleaved() {
+        return (_type == (byte) I_FORWARD_TSN);
+    }
+
+    public long getNewCumulativeTSN() {
+        return _newCumTSN;
+    }
+
+    public void setNewCumulativeTSN(long tsn) {
+        _newCumTSN = tsn;
+    }
+
+    /**
+     * note that ssn is the last one skipped on the stream - a later one for
+     * the same stream replaces it.
+     */
+    public void addStream(int sid, int ssn) {
+        addStream(sid, false, ssn);
+    }
+
+    /**
+     * I-FORWARD-TSN - mid is the last message skipped on the stream's
+     * ordered (or unordered) messages, a later one replaces it.
+     */
+    public void addStream(int sid, boolean unordered, int mid) {
+        for (int i = 0; i < _n; i++) {
+            if ((_streams[i] == sid) && (_unordered[i] == unordered)) {
+                _seqs[i] = mid;
+                return;
+            }
+        }
+        if (_n == _streams.length) {
+            int[] ns = new int[_n * 2];
+            int[] nq = new int[_n * 2];
+            boolean[] nu = new boolean[_n * 2];
+            System.arraycopy(_streams, 0, ns, 0, _n);
+            System.arraycopy(_seqs, 0, nq, 0, _n);
+            System.arraycopy(_unordered, 0, nu, 0, _n);
+            _streams = ns;
+            _seqs = nq;
+            _unordered = nu;
+        }
+        _streams[_n] = sid;
+        _seqs[_n] = mid;
+        _unordered[_n] = unordered;
+        _n++;
+    }
+
+    public int getStreamCount() {
+        return _n;
+    }
+
+    public int getStream(int i) {
+        return _streams[i];
+    }
+
+    /**
+     * @return the SSN - or for an I-FORWARD-TSN the MID.
+     */
+    public int getStreamSequence(int i) {
+        return _seqs[i];
+    }
+
+    // I-FORWARD-TSN only - is entry i about the stream's unordered messages
+    public boolean isUnordered(int i) {
+        return _unordered[i];
+    }
+
+    // bytes this chunk will occupy on the wire
+    public int getChunkLength() {
+        int len = getLength();
+        if (len == 0) {
+            // ie outbound chunk.
+            len = 8 + ((isInterleaved() ? 8 : 4) * _n);
+        }
+        return len;
+    }
+
+    @Override
+    void putFixedParams(ByteBuffer ret) {
+        Chunk.putUnsignedInt(ret, _newCumTSN);
+        for (int i = 0; i < _n; i++) {
+            ret.putChar((char) _streams[i]);
+            if (isInterleaved()) {
+                ret.putChar((char) (_unordered[i] ? 1 : 0));
+                ret.putInt(_seqs[i]);
+            } else {
+                ret.putChar((char) _seqs[i]);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder ret = new StringBuilder(isInterleaved() ? "I-FORWARD-TSN" : "FORWARD TSN")
+                .append(" newCumTSN=").append(_newCumTSN);
+        for (int i = 0; i < _n; i++) {
+            ret.append("\n\t{").append(_streams[i]).append(',').append(_seqs[i] & 0xffffffffL);
+            if (_unordered[i]) {
+                ret.append(",U");
+            }
+            ret.append('}');
+        }
+        return ret.toString();
+    }
+}
@@ -18,6 +18,7 @@ package pe.pi.sctp4j.sctp.messages;
 
 import pe.pi.sctp4j.sctp.messages.params.StateCookie;
 import pe.pi.sctp4j.sctp.messages.params.VariableParam;
+import pe.pi.sctp4j.sctp.messages.params.ZeroChecksumAcceptable;
 import com.phono.srtplight.Log;
 import java.nio.ByteBuffer;
 
@@ -57,6 +58,8 @@ public class InitAckChunk extends Chunk {
     long _initialTSN;
     private byte[] _cookie;
     private byte[] _supportedExtensions;
+    private long _zeroChecksumEDMID;
+    private boolean _forwardTSNsupported;
 
     public InitAckChunk() {
         super((byte) INITACK);
@@ -129,6 +132,12 @@ public class InitAckChunk extends Chunk {
                 Log.verb("variable of type: " + v.getName() + " " + v.toString());
                 if (v instanceof StateCookie) {
                     _cookie = ((StateCookie) v).getData();
+                } else if (v instanceof ZeroChecksumAcceptable) {
+                    _zeroChecksumEDMID = ((ZeroChecksumAcceptable) v).getEDMID();
+                } else if (v instanceof SupportedExtensions) {
+                    _supportedExtensions = ((SupportedExtensions) v).getData();
+                } else if (v instanceof ForwardTSNsupported) {
+                    _forwardTSNsupported = true;
                 } else {
                     Log.verb("ignored variable of type: " + v.getName());
                 }
@@ -144,6 +153,7 @@ public class InitAckChunk extends Chunk {
                 + " numOutStreams : " + _numOutStreams
                 + " numInStreams : " + _numInStreams
                 + " initialTSN : " + _initialTSN
+                + " zeroChecksumEDMID : " + _zeroChecksumEDMID
                 + ((_supportedExtensions == null) ? " no supported extensions" : " supported extensions are: " + chunksToNames(_supportedExtensions));
         ;
         return ret;
@@ -166,14 +176,66 @@ public class InitAckChunk extends Chunk {
             se.setData(_supportedExtensions);
             _varList.add(se);
         }
+        if (_zeroChecksumEDMID != ZeroChecksumAcceptable.EDMID_NONE) {
+            ZeroChecksumAcceptable zca = new ZeroChecksumAcceptable();
+            zca.setEDMID(_zeroChecksumEDMID);
+            _varList.add(zca);
+        }
     }
 
     public byte[] getSupportedExtensions(byte[] v) {
         return _supportedExtensions;
     }
 
+    public byte[] getSupportedExtensions() {
+        return _supportedExtensions;
+    }
+
+    /**
+     * will the sender of this INIT ACK accept FORWARD TSN (RFC 3758) - either
+     * from the parameter or its supported extensions.
+     */
+    public boolean isForwardTSNsupported() {
+        boolean ret = _forwardTSNsupported;
+        if (_supportedExtensions != null) {
+            for (byte e : _supportedExtensions) {
+                ret |= (e == (byte) FORWARD_TSN);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * did the sender of this INIT ACK list this chunk type in its supported
+     * extensions (RFC 5061) - I-DATA and I-FORWARD-TSN (RFC 8260) say so no
+     * other way.
+     */
+    public boolean isExtensionSupported(int type) {
+        boolean ret = false;
+        if (_supportedExtensions != null) {
+            for (byte e : _supportedExtensions) {
+                ret |= (e == (byte) type);
+            }
+        }
+        return ret;
+    }
+
     public void setSupportedExtensions(byte[] v) {
         _supportedExtensions = v;
     }
 
+    /**
+     * RFC 9653 error detection method (EDMID) the sender of this INIT ACK
+     * accepts in place of a CRC32c, EDMID_NONE if none.
+     *
+     * @return
+     */
+    public long getZeroChecksumEDMID() {
+        return _zeroChecksumEDMID;
+    }
+
+    public void setZeroChecksumEDMID(long v) {
+        _zeroChecksumEDMID = v;
+    }
+
 }
@@ -18,6 +18,7 @@ package pe.pi.sctp4j.sctp.messages;
 
 import pe.pi.sctp4j.sctp.messages.params.RequestedHMACAlgorithmParameter;
 import pe.pi.sctp4j.sctp.messages.params.VariableParam;
+import pe.pi.sctp4j.sctp.messages.params.ZeroChecksumAcceptable;
 import com.phono.srtplight.Log;
 import java.nio.ByteBuffer;
 
@@ -56,6 +57,9 @@ public class InitChunk extends Chunk {
     boolean _farForwardTSNsupported;
     byte[] _farHmacs;
     byte[] _farChunks;
+    long _farZeroChecksumEDMID;
+    long _zeroChecksumEDMID;
+    byte [] _supportedExtensions;
     public int _outStreams;
 
     public InitChunk(){
@@ -88,6 +92,8 @@ public class InitChunk extends Chunk {
                     _farHmacs = ((RequestedHMACAlgorithmParameter)v).getData();
                 } else if (v instanceof ChunkListParam){
                     _farChunks = ((ChunkListParam)v).getData();
+                } else if (v instanceof ZeroChecksumAcceptable){
+                    _farZeroChecksumEDMID = ((ZeroChecksumAcceptable)v).getEDMID();
                 } else {
                     Log.debug("unexpected variable of type: "+v.getName());
                 }
@@ -102,6 +108,7 @@ public class InitChunk extends Chunk {
                 + " numInStreams : " + _numInStreams
                 + " initialTSN : " + _initialTSN
                 + " farForwardTSNsupported : "+_farForwardTSNsupported
+                + " farZeroChecksumEDMID : "+_farZeroChecksumEDMID
                 + ((_farSupportedExtensions == null) ?" no supported extensions": " supported extensions are: "+chunksToNames(_farSupportedExtensions));
         return ret;
     }
@@ -113,6 +120,16 @@ public class InitChunk extends Chunk {
         ret.putChar((char) _numOutStreams);
         ret.putChar((char) _numInStreams);
         Chunk.putUnsignedInt(ret,_initialTSN);
+        if (_zeroChecksumEDMID != ZeroChecksumAcceptable.EDMID_NONE) {
+            ZeroChecksumAcceptable zca = new ZeroChecksumAcceptable();
+            zca.setEDMID(_zeroChecksumEDMID);
+            _varList.add(zca);
+        }
+        if (_supportedExtensions != null) {
+            SupportedExtensions se = new SupportedExtensions();
+            se.setData(_supportedExtensions);
+            _varList.add(se);
+        }
     }
 
     public int getInitiateTag() {
@@ -147,6 +164,51 @@ public class InitChunk extends Chunk {
         return _farSupportedExtensions;
     }        
 
+    // the chunk types we offer (RFC 5061 Supported Extensions parameter)
+    public void setSupportedExtensions(byte [] v){
+        _supportedExtensions = v;
+    }
+
+    /**
+     * will the far end accept FORWARD TSN (RFC 3758) - it may say so either
+     * with the parameter or in its supported extensions.
+     */
+    public boolean isFarForwardTSNsupported(){
+        boolean ret = _farForwardTSNsupported;
+        if (_farSupportedExtensions != null) {
+            for (byte e : _farSupportedExtensions) {
+                ret |= (e == (byte) FORWARD_TSN);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * did the far end list this chunk type in its supported extensions (RFC
+     * 5061) - I-DATA and I-FORWARD-TSN (RFC 8260) say so no other way.
+     */
+    public boolean isFarExtensionSupported(int type){
+        boolean ret = false;
+        if (_farSupportedExtensions != null) {
+            for (byte e : _farSupportedExtensions) {
+                ret |= (e == (byte) type);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * the error detection method the far end will accept in place of a
+     * CRC32c (RFC 9653) - EDMID_NONE if it didn't offer one
+     */
+    public long getFarZeroChecksumEDMID(){
+        return _farZeroChecksumEDMID;
+    }
+
+    public void setZeroChecksumEDMID(long edmid){
+        _zeroChecksumEDMID = edmid;
+    }
+
     public void setInitiate(long tag) {
         this._initiateTag = tag;
     }
@@ -21,6 +21,7 @@ import pe.pi.sctp4j.sctp.messages.exceptions.ChecksumException;
 import pe.pi.sctp4j.sctp.messages.exceptions.InvalidSCTPPacketException;
 import pe.pi.sctp4j.sctp.messages.exceptions.SctpPacketFormatException;
 import com.phono.srtplight.Log;
+import pe.pi.sctp4j.sctp.LazyLog;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -51,7 +52,9 @@ public class Packet {
     int _verTag;
     int _chksum;
     List<Chunk> _chunks;
+    boolean _zeroChecksum;
     private static int SUMOFFSET = 8;
+    private static int FIRSTCHUNK = 12;
 
     /**
      * Constructor used to parse an incoming packet
@@ -59,10 +62,23 @@ public class Packet {
      * @param pkt
      */
     public Packet(ByteBuffer pkt) throws SctpPacketFormatException, ChecksumException {
+        this(pkt, false);
+    }
+
+    /**
+     * Constructor used to parse an incoming packet
+     *
+     * @param pkt
+     * @param zeroChecksumOk - we have offered the peer Zero Checksum
+     * (RFC 9653), so a zero in the checksum field is accepted unchecked
+     */
+    public Packet(ByteBuffer pkt, boolean zeroChecksumOk) throws SctpPacketFormatException, ChecksumException {
         if (((Buffer)pkt).limit() < 12) {
             throw new SctpPacketFormatException("SCTP packet too short expected 12 bytes, got " + ((Buffer)pkt).limit());
         }
-        checkChecksum(pkt); // if this isn't ok, then we dump the packet silently - by throwing an exception.
+        if (!zeroChecksumOk || !isZeroChecksum(pkt)) {
+            checkChecksum(pkt); // if this isn't ok, then we dump the packet silently - by throwing an exception.
+        }
 
         _srcPort = pkt.getChar();
         _destPort = pkt.getChar();
@@ -81,28 +97,31 @@ public class Packet {
     }
 
     public ByteBuffer getByteBuffer() throws SctpPacketFormatException {
-        ByteBuffer ret = ByteBuffer.allocate(MTU);
-        ret.putChar(_srcPort);
-        ret.putChar(_destPort);
-        ret.putInt(_verTag);
-        ret.putInt(_chksum);
-        Buffer bret = (Buffer)ret;
-        int pad = 0;
-        for (Chunk c : _chunks) {
-            ByteBuffer cs = ret.slice();            // create a zero offset buffer to play in
-            c.write(cs); // ask the chunk to write itself into there.
-            Buffer bcs = (Buffer) cs;
-            pad = bcs.position() % 4;
-            pad = (pad != 0) ? 4 - pad : 0;
-            Log.verb("padding by " + pad);
-            bret.position(pad + bret.position() + bcs.position());// move us along.
-        }
-        /*Log.verb("un padding by " + pad);
-        ret.position(ret.position() - pad);*/
-        
-        ret = (ByteBuffer) bret.flip();
-        setChecksum(ret);
-        return ret;
+        return getByteBuffer(MTU);
+    }
+
+    /**
+     * encode into a fresh buffer big enough for a packet of mtu bytes (but
+     * never less than the default MTU - INIT and friends don't check their
+     * size). An association sending over and over uses a PacketEncoder of
+     * its own instead.
+     *
+     * @param mtu
+     * @return
+     * @throws SctpPacketFormatException
+     */
+    public ByteBuffer getByteBuffer(int mtu) throws SctpPacketFormatException {
+        return new PacketEncoder(mtu).encode(_srcPort, _destPort, _verTag, _zeroChecksum, _chunks);
+    }
+
+    /**
+     * Send with a zero checksum - only once the peer has said it accepts
+     * that (RFC 9653). Packets with an INIT in are always checksummed.
+     *
+     * @param zero
+     */
+    public void setZeroChecksum(boolean zero) {
+        _zeroChecksum = zero;
     }
 
     public int getSrcPort() {
@@ -147,7 +166,9 @@ public class Packet {
         Chunk next = null;
         while (null != (next = Chunk.mkChunk(pkt))) {
             ret.add(next);
-            Log.debug("saw chunk: "+next.typeLookup());
+            if (LazyLog.isDebug()) {
+                Log.debug("saw chunk: " + next.typeLookup());
+            }
         }
         return ret;
     }
@@ -177,20 +198,34 @@ public class Packet {
      verifiable by the software.
      */
     void setChecksum(ByteBuffer pkt) {
-        byte b[] = new byte[4];
         pkt.putInt(SUMOFFSET, 0);
         Crc32c crc = new Crc32c();
-        crc.update(pkt.array(), pkt.arrayOffset(), ((Buffer)pkt).limit());
-        long result = crc.getValue();
-        b[0] = (byte) (result & 0xff);
-        b[1] = (byte) ((result >> 8) & 0xff);
-        b[2] = (byte) ((result >> 16) & 0xff);
-        b[3] = (byte) ((result >> 24) & 0xff);
-        long flip = (((0xff & b[0]) << 24)
-                + ((0xff & b[1]) << 16)
-                + ((0xff & b[2]) << 8)
-                + (0xff & b[3]));
-        pkt.putInt(8, (int) flip);
+        ByteBuffer all = pkt.duplicate(); // works for direct buffers too
+        ((Buffer) all).position(0);
+        crc.update(all);
+        // the crc goes on the wire least significant byte first
+        pkt.putInt(SUMOFFSET, Integer.reverseBytes((int) crc.getValue()));
+    }
+
+    /*
+     RFC 9653 5.3. Receiver Behavior
+
+     If an endpoint has sent the Zero Checksum Acceptable Chunk Parameter
+     indicating the support of an alternate error detection method in an
+     INIT or INIT ACK chunk, in addition to SCTP packets containing the
+     correct CRC32c checksum value it MUST accept SCTP packets that have
+     an incorrect checksum value of zero.
+
+     A packet carrying an INIT or a COOKIE ECHO is never sent with a zero
+     checksum, so we still check those - both have to be the first chunk.
+     */
+    static boolean isZeroChecksum(ByteBuffer pkt) {
+        boolean mustSum = false;
+        if (((Buffer) pkt).limit() > FIRSTCHUNK) {
+            byte first = pkt.get(FIRSTCHUNK);
+            mustSum = (first == Chunk.INIT) || (first == (byte) Chunk.COOKIE_ECHO);
+        }
+        return !mustSum && (pkt.getInt(SUMOFFSET) == 0);
     }
 
     void checkChecksum(ByteBuffer pkt) throws ChecksumException {
@@ -199,8 +234,9 @@ public class Packet {
         long calc = (long) pkt.getInt(SUMOFFSET);
         if (calc != farsum) {
             Log.error("Checksums don't match " + Long.toHexString(calc) + " vs " + Long.toHexString(farsum));
-            byte []p = pkt.array();
-            Log.error("for packet "+getHex(p));
+            if (pkt.hasArray()) {
+                Log.error("for packet " + getHex(pkt.array()));
+            }
             throw new ChecksumException();
         }
     }
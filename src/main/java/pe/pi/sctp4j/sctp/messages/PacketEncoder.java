@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.messages;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.List;
+import pe.pi.sctp4j.sctp.messages.exceptions.SctpPacketFormatException;
+
+/**
+ * Writes outbound packets into one buffer that is used over and over - the
+ * common header, then each chunk in place (header, fixed params, payload and
+ * zero padding), then the checksum over the finished bytes. Nothing is
+ * allocated per packet for the chunks we send in steady state (DATA, SACK,
+ * HEARTBEAT and friends).
+ *
+ * Not thread safe - the buffer returned by encode() is only good until the
+ * next call, so an association holds the encoder's lock from encode() until
+ * the transport has the bytes.
+ *
+ * @author Westhawk Ltd<thp@westhawk.co.uk>
+ */
+public class PacketEncoder {
+
+    private final static int SUMOFFSET = 8;
+    private final ByteBuffer _buf;
+    private final Crc32c _crc = new Crc32c();
+
+    /**
+     * @param mtu - biggest packet we will be asked to encode (never less
+     * than the default MTU - INIT and friends don't check their size)
+     */
+    public PacketEncoder(int mtu) {
+        _buf = ByteBuffer.allocate(Math.max(mtu, Packet.MTU));
+    }
+
+    public int getCapacity() {
+        return _buf.capacity();
+    }
+
+    /**
+     * encode a packet - COOKIE ACKs go first, whatever order they are given
+     * in (RFC 4960 5.1 - they must come before any DATA or SACK).
+     *
+     * @return the packet, from 0 to limit() - valid until the next encode()
+     */
+    public ByteBuffer encode(int srcPort, int destPort, int verTag, boolean zeroChecksum, Chunk[] cs) throws SctpPacketFormatException {
+        header(srcPort, destPort, verTag);
+        boolean mustSum = false;
+        for (Chunk c : cs) {
+            if (c._type == Chunk.COOKIE_ACK) {
+                put(c);
+            }
+        }
+        for (Chunk c : cs) {
+            if (c._type != Chunk.COOKIE_ACK) {
+                put(c);
+                mustSum |= mustChecksum(c);
+            }
+        }
+        return finish(zeroChecksum && !mustSum);
+    }
+
+    /**
+     * encode the chunks in the order given.
+     */
+    public ByteBuffer encode(int srcPort, int destPort, int verTag, boolean zeroChecksum, List<Chunk> cs) throws SctpPacketFormatException {
+        header(srcPort, destPort, verTag);
+        boolean mustSum = false;
+        for (int i = 0; i < cs.size(); i++) {
+            Chunk c = cs.get(i);
+            put(c);
+            mustSum |= mustChecksum(c);
+        }
+        return finish(zeroChecksum && !mustSum);
+    }
+
+    /*
+     RFC 9653 - the peer holds no state for us until it has our INIT or
+     COOKIE ECHO, so it can't know we may send a zero checksum - packets
+     carrying either always get a correct CRC32c.
+     */
+    private static boolean mustChecksum(Chunk c) {
+        return (c._type == Chunk.INIT) || (c._type == Chunk.COOKIE_ECHO);
+    }
+
+    private void header(int srcPort, int destPort, int verTag) {
+        ByteBuffer b = _buf;
+        ((Buffer) b).clear();
+        b.putChar((char) srcPort);
+        b.putChar((char) destPort);
+        b.putInt(verTag);
+        b.putInt(0); // checksum goes in last
+    }
+
+    private void put(Chunk c) throws SctpPacketFormatException {
+        ByteBuffer b = _buf;
+        c.write(b);
+        int pad = ((Buffer) b).position() % 4;
+        // the buffer is reused so padding has to be written, not skipped
+        for (pad = (pad != 0) ? 4 - pad : 0; pad > 0; pad--) {
+            b.put((byte) 0);
+        }
+    }
+
+    /*
+     RFC 4960 6.8 - fill in the Verification Tag and the checksum field
+     with 0, calculate the CRC32c over the whole packet and put the result
+     in the checksum field.
+     */
+    private ByteBuffer finish(boolean zeroChecksum) {
+        ByteBuffer b = _buf;
+        ((Buffer) b).flip();
+        if (!zeroChecksum) {
+            _crc.reset();
+            _crc.update(b.array(), b.arrayOffset(), ((Buffer) b).limit());
+            // the crc goes on the wire least significant byte first
+            b.putInt(SUMOFFSET, Integer.reverseBytes((int) _crc.getValue()));
+        }
+        return b;
+    }
+}
@@ -152,6 +152,24 @@ public class SackChunk extends Chunk {
         }
     }
     
+    public void setDuplicates(long[] dups) {
+        _duplicateTSNs = dups;
+    }
+
+    /**
+     * Gap ack blocks that have already been worked out.
+     *
+     * @param offs start,end pairs - offsets from the cumulative TSN ack
+     * @param n number of blocks
+     */
+    public void setGaps(int[] offs, int n) {
+        _gaps = new GapBlock[n];
+        for (int i = 0; i < n; i++) {
+            _gaps[i] = new GapBlock((char) offs[2 * i]);
+            _gaps[i].setEnd((char) offs[2 * i + 1]);
+        }
+    }
+
     public void setGaps(ArrayList<Long> seenTsns){
         long cuTsn = _cumuTSNAck;
         ArrayList<GapBlock> gaplist = new ArrayList();
@@ -181,6 +199,16 @@ public class SackChunk extends Chunk {
         }
     }
     
+    // bytes this chunk will occupy on the wire (before padding)
+    public int getChunkLength() {
+        int len = getLength();
+        if (len == 0) {
+            // ie outbound chunk.
+            len = 16 + (4 * _gaps.length) + (4 * _duplicateTSNs.length);
+        }
+        return len;
+    }
+
     @Override
     void putFixedParams(ByteBuffer ret) {
         Chunk.putUnsignedInt(ret, _cumuTSNAck);
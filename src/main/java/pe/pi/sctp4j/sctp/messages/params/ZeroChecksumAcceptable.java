@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.messages.params;
+
+import pe.pi.sctp4j.sctp.messages.Chunk;
+import java.nio.ByteBuffer;
+
+/**
+ *
+ * @author tim
+ */
+public class ZeroChecksumAcceptable extends KnownParam {
+    /*
+     RFC 9653 5.1. Zero Checksum Acceptable Chunk Parameter
+
+     0                   1                   2                   3
+     0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+     +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+     |   Type = 0x8001 (suggested)   |          Length = 8           |
+     +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+     |           Error Detection Method Identifier (EDMID)           |
+     +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+
+     +-------+----------------------------+-----------+
+     | ID    | Error Detection Method     | Reference |
+     +-------+----------------------------+-----------+
+     | 0     | Reserved                   | RFC 9653  |
+     | 1     | DTLS                       | RFC 9653  |
+     +-------+----------------------------+-----------+
+     */
+
+    public final static int TYPE = 0x8001;
+    public final static long EDMID_NONE = 0;
+    public final static long EDMID_DTLS = 1;
+
+    private long _edmid;
+
+    public ZeroChecksumAcceptable() {
+        this(TYPE, "ZeroChecksumAcceptable");
+    }
+
+    public ZeroChecksumAcceptable(int t, String n) {
+        super(t, n);
+    }
+
+    @Override
+    public void readBody(ByteBuffer body, int blen) {
+        _edmid = Chunk.getUnsignedInt(body);
+    }
+
+    @Override
+    public void writeBody(ByteBuffer body) {
+        Chunk.putUnsignedInt(body, _edmid);
+    }
+
+    public long getEDMID() {
+        return _edmid;
+    }
+
+    public void setEDMID(long edmid) {
+        _edmid = edmid;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + " edmid " + _edmid;
+    }
+}
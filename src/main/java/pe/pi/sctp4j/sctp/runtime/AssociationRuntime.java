@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.runtime;
+
+import java.util.concurrent.Executor;
+import pe.pi.sctp4j.sctp.HashedWheelTimer;
+import pe.pi.sctp4j.sctp.SCTPTimer;
+
+/**
+ * The threads an association runs on - who reads the transport, who runs
+ * the timers and who calls the application back.
+ *
+ * An association asks its runtime to drive its receive loop, gets its
+ * timers from it and hands it every application callback (wrapped so that
+ * each association and stream sees its own in order). Swapping the runtime
+ * changes the threading model without changing the association.
+ *
+ * One runtime may be shared by any number of associations.
+ */
+public interface AssociationRuntime {
+
+    /**
+     * One turn of an association's receive loop.
+     */
+    public interface Receiver {
+
+        /**
+         * wait at most waitMillis for a packet and deal with it.
+         *
+         * @param waitMillis
+         * @return false once the association is finished with the transport.
+         */
+        public boolean receive(int waitMillis);
+    }
+
+    /**
+     * call r.receive() over and over until it returns false.
+     *
+     * @param name - of the association, for thread names and logs
+     * @param r
+     */
+    public void startReceiver(String name, Receiver r);
+
+    /**
+     * Application callbacks go here - they may block (unless the runtime
+     * says otherwise), so this is never a thread a receiver needs.
+     */
+    public Executor getCallbackExecutor();
+
+    /**
+     * A timer for T1-init, T3-rtx, delayed SACK and heartbeat.
+     */
+    default public SCTPTimer newTimer() {
+        return HashedWheelTimer.getShared().newTimer();
+    }
+}
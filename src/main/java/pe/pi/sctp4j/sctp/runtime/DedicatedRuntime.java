@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.runtime;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A thread of its own reading each association's transport - the classic
+ * model, and the default.
+ *
+ * Callbacks go to an executor so a slow application can't hold up the
+ * receive thread. By default that is a thread of the runtime's own (which
+ * goes when idle) - so an association made with the defaults blocks nobody
+ * else's callbacks. Pass SharedPoolRuntime.getSharedCallbackPool() to share
+ * a bounded pool instead.
+ */
+public class DedicatedRuntime implements AssociationRuntime {
+
+    // loop time in rcv
+    final static int TICK = 1000;
+    // how long an idle callback thread hangs about
+    final static int IDLE = 5;
+    private final static AtomicInteger __execNo = new AtomicInteger();
+
+    private final Executor _callbacks;
+
+    /**
+     * callbacks run on a thread of this runtime's own.
+     */
+    public DedicatedRuntime() {
+        ThreadPoolExecutor ex = new ThreadPoolExecutor(1, 1, IDLE, TimeUnit.SECONDS, new LinkedBlockingQueue(),
+                (Runnable r) -> new Thread(r, "Assoc-Exec-" + __execNo.incrementAndGet()));
+        ex.allowCoreThreadTimeOut(true);
+        _callbacks = ex;
+    }
+
+    /**
+     * @param callbacks - where application callbacks run
+     */
+    public DedicatedRuntime(Executor callbacks) {
+        _callbacks = callbacks;
+    }
+
+    @Override
+    public void startReceiver(String name, Receiver r) {
+        Thread rcv = new Thread(() -> {
+            while (r.receive(TICK)) {
+            }
+        });
+        rcv.setPriority(Thread.MAX_PRIORITY);
+        rcv.setName(name);
+        rcv.start();
+    }
+
+    @Override
+    public Executor getCallbackExecutor() {
+        return _callbacks;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.runtime;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Lowest latency - a receive thread per association, and the application is
+ * called back on it, straight from the packet that caused the callback.
+ *
+ * The callbacks must not block: until they return the association can't
+ * read the acks that a blocking send would be waiting for.
+ */
+public class InlineRuntime extends DedicatedRuntime {
+
+    private final static Executor DIRECT = (Runnable r) -> r.run();
+
+    public InlineRuntime() {
+        super(DIRECT);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.runtime;
+
+import com.phono.srtplight.Log;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * No association has a thread of its own - receive loops take turns on one
+ * pool, and callbacks on another.
+ *
+ * The transport can only be read by waiting on it, so each turn of a receive
+ * loop waits briefly (pollMillis) and then goes to the back of the pool's
+ * queue. A big association count costs up to pollMillis of latency per turn
+ * round the pool.
+ *
+ * Callbacks never run on the receive pool - one that blocks (say in a send()
+ * waiting for the far end to SACK) would hold a thread that the SACK needs
+ * to be read on, and enough of them would stop every association.
+ */
+public class SharedPoolRuntime implements AssociationRuntime {
+
+    final static int DEFAULTPOLL = 10;
+    private static ExecutorService __shared;
+    private static ExecutorService __sharedCallbacks;
+
+    private final ExecutorService _pool;
+    private final Executor _callbacks;
+    private final int _poll;
+
+    /**
+     * runs on the bounded pools shared by every runtime.
+     */
+    public SharedPoolRuntime() {
+        this(getSharedPool(), DEFAULTPOLL);
+    }
+
+    public SharedPoolRuntime(ExecutorService pool) {
+        this(pool, DEFAULTPOLL);
+    }
+
+    /**
+     * callbacks go to the shared callback pool.
+     *
+     * @param pool - runs receive turns
+     * @param pollMillis - longest a receive turn waits for a packet
+     */
+    public SharedPoolRuntime(ExecutorService pool, int pollMillis) {
+        this(pool, getSharedCallbackPool(), pollMillis);
+    }
+
+    /**
+     * @param pool - runs receive turns
+     * @param callbacks - where application callbacks run - must not be pool
+     * @param pollMillis - longest a receive turn waits for a packet
+     */
+    public SharedPoolRuntime(ExecutorService pool, Executor callbacks, int pollMillis) {
+        if (pool == callbacks) {
+            throw new IllegalArgumentException("callbacks need a pool of their own");
+        }
+        _pool = pool;
+        _callbacks = callbacks;
+        _poll = pollMillis;
+    }
+
+    /**
+     * A bounded pool of daemon threads - twice as many as there are cores,
+     * however many associations and streams there are.
+     */
+    public static synchronized ExecutorService getSharedPool() {
+        if (__shared == null) {
+            __shared = mkPool("SCTPPool-");
+        }
+        return __shared;
+    }
+
+    /**
+     * The same again, for callbacks - they may block, but never a thread
+     * that reads a transport.
+     */
+    public static synchronized ExecutorService getSharedCallbackPool() {
+        if (__sharedCallbacks == null) {
+            __sharedCallbacks = mkPool("SCTPCallback-");
+        }
+        return __sharedCallbacks;
+    }
+
+    private static ExecutorService mkPool(String prefix) {
+        AtomicInteger tno = new AtomicInteger();
+        int n = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        return Executors.newFixedThreadPool(n, (Runnable r) -> {
+            Thread t = new Thread(r, prefix + tno.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public void startReceiver(String name, Receiver r) {
+        Runnable turn = new Runnable() {
+            @Override
+            public void run() {
+                if (r.receive(_poll)) {
+                    submit(name, this);
+                } else {
+                    Log.debug("receiver " + name + " finished");
+                }
+            }
+        };
+        submit(name, turn);
+    }
+
+    private void submit(String name, Runnable turn) {
+        try {
+            _pool.execute(turn);
+        } catch (RejectedExecutionException x) {
+            Log.warn("pool refused receiver " + name + " " + x.getMessage());
+        }
+    }
+
+    @Override
+    public Executor getCallbackExecutor() {
+        return _callbacks;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.runtime;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A virtual thread reading each association's transport, and one per
+ * callback - blocking is cheap so nothing need be shared.
+ *
+ * Virtual threads need java 21. This is the java 11 build of the class, it
+ * can't be used - on java 21 the multi release jar supplies the real one
+ * (src/main/java21, built by the java21 profile). Check isSupported() first:
+ * here the constructor throws UnsupportedOperationException, so no instance
+ * can exist to half work.
+ */
+public class VirtualThreadRuntime implements AssociationRuntime, AutoCloseable {
+
+    private final static String NEEDS21 = "VirtualThreadRuntime needs java 21 and the multi release jar"
+            + " - use DedicatedRuntime or SharedPoolRuntime on this JVM";
+
+    /**
+     * @return true if this JVM (and jar) can run virtual threads.
+     */
+    public static boolean isSupported() {
+        return false;
+    }
+
+    public VirtualThreadRuntime() {
+        throw new UnsupportedOperationException(NEEDS21);
+    }
+
+    @Override
+    public void startReceiver(String name, Receiver r) {
+        throw new UnsupportedOperationException(NEEDS21);
+    }
+
+    @Override
+    public Executor getCallbackExecutor() {
+        throw new UnsupportedOperationException(NEEDS21);
+    }
+
+    @Override
+    public void close() {
+    }
+}
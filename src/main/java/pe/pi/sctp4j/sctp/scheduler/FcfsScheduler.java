@@ -0,0 +1,52 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.scheduler;
+
+import java.util.ArrayDeque;
+import pe.pi.sctp4j.sctp.SCTPMessage;
+
+/**
+ * First come, first served (RFC 8260 section 3.1) - messages go in the order
+ * they were sent, whatever stream they are on, one at a time. So a big
+ * message holds up everything behind it.
+ */
+public class FcfsScheduler implements StreamScheduler {
+
+    private final ArrayDeque<SCTPMessage> _queue = new ArrayDeque();
+
+    @Override
+    public void add(SCTPMessage m) {
+        _queue.add(m);
+    }
+
+    @Override
+    public SCTPMessage next() {
+        return _queue.peek();
+    }
+
+    @Override
+    public void sent(SCTPMessage m, int size) {
+        if (!m.hasMoreData()) {
+            _queue.remove(m);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return _queue.isEmpty();
+    }
+}
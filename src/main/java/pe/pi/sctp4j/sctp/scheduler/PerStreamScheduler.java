@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.scheduler;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import pe.pi.sctp4j.sctp.SCTPMessage;
+import pe.pi.sctp4j.sctp.SCTPStream;
+
+/**
+ * A queue of messages per stream - messages on a stream go in order, the
+ * subclass picks which stream goes next.
+ *
+ * Streams with something queued are kept in _active, in the order they
+ * became active - subclasses rotate it to take turns.
+ */
+public abstract class PerStreamScheduler implements StreamScheduler {
+
+    private final HashMap<Integer, ArrayDeque<SCTPMessage>> _byStream = new HashMap();
+    protected final ArrayDeque<SCTPStream> _active = new ArrayDeque();
+
+    @Override
+    public void add(SCTPMessage m) {
+        SCTPStream s = m.getStream();
+        ArrayDeque<SCTPMessage> q = _byStream.get(s.getNum());
+        if (q == null) {
+            q = new ArrayDeque();
+            _byStream.put(s.getNum(), q);
+            _active.add(s);
+            activated(s);
+        }
+        q.add(m);
+    }
+
+    @Override
+    public SCTPMessage next() {
+        SCTPStream s = _active.isEmpty() ? null : choose();
+        return (s == null) ? null : _byStream.get(s.getNum()).peek();
+    }
+
+    @Override
+    public void sent(SCTPMessage m, int size) {
+        SCTPStream s = m.getStream();
+        ArrayDeque<SCTPMessage> q = _byStream.get(s.getNum());
+        if (q == null) {
+            return;
+        }
+        charge(s, size);
+        if (!m.hasMoreData()) {
+            q.remove(m);
+            if (q.isEmpty()) {
+                _byStream.remove(s.getNum());
+                _active.remove(s);
+                deactivated(s);
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return _byStream.isEmpty();
+    }
+
+    /**
+     * @return the stream (one of _active) whose head message goes next.
+     */
+    protected abstract SCTPStream choose();
+
+    // s now has a message waiting, where it had none
+    protected void activated(SCTPStream s) {
+    }
+
+    // s has nothing left waiting
+    protected void deactivated(SCTPStream s) {
+    }
+
+    // size bytes of s's data have gone
+    protected void charge(SCTPStream s, int size) {
+    }
+
+    // move s to the back of the turns
+    protected void rotate(SCTPStream s) {
+        if (_active.peekLast() != s) {
+            _active.remove(s);
+            _active.add(s);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.scheduler;
+
+import pe.pi.sctp4j.sctp.SCTPStream;
+
+/**
+ * Strict priority (RFC 8260 section 3.6) - the highest priority stream with
+ * anything waiting goes, streams of the same priority take turns. A busy
+ * high priority stream starves the others.
+ *
+ * The priority is the stream's data channel priority, higher goes first.
+ */
+public class PriorityScheduler extends PerStreamScheduler {
+
+    @Override
+    protected SCTPStream choose() {
+        SCTPStream best = null;
+        for (SCTPStream s : _active) {
+            if ((best == null) || (s.getPriority() > best.getPriority())) {
+                best = s;
+            }
+        }
+        rotate(best);
+        return best;
+    }
+}
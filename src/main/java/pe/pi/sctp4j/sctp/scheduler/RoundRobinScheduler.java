@@ -0,0 +1,34 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.scheduler;
+
+import pe.pi.sctp4j.sctp.SCTPStream;
+
+/**
+ * Round robin over the streams with messages waiting (RFC 8260 section 3.2)
+ * - each takes a turn. With I-DATA a turn is a chunk, with DATA a whole
+ * message.
+ */
+public class RoundRobinScheduler extends PerStreamScheduler {
+
+    @Override
+    protected SCTPStream choose() {
+        SCTPStream s = _active.poll();
+        _active.add(s);
+        return s;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.scheduler;
+
+import pe.pi.sctp4j.sctp.SCTPMessage;
+
+/**
+ * Decides whose data goes next when more than one stream has messages
+ * waiting to be sent (RFC 8260 section 3).
+ *
+ * The association asks for the next message each time it fills a chunk -
+ * unless it is using DATA rather than I-DATA, in which case a message's
+ * fragments must go back to back and it only asks once the last one has
+ * gone. Either way it reports what it took with sent().
+ *
+ * Not thread safe - the association calls it from one thread at a time.
+ */
+public interface StreamScheduler {
+
+    // m is waiting to be sent - behind any messages already waiting on its stream
+    public void add(SCTPMessage m);
+
+    // the message whose data should go next - null if none are waiting
+    public SCTPMessage next();
+
+    // size bytes of m have been put in a chunk - once m has no more data it is done with
+    public void sent(SCTPMessage m, int size);
+
+    // are any messages still waiting ?
+    public boolean isEmpty();
+}
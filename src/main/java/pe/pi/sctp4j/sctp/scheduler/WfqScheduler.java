@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.scheduler;
+
+import java.util.HashMap;
+import pe.pi.sctp4j.sctp.SCTPStream;
+
+/**
+ * Weighted fair queueing (RFC 8260 section 3.5) - streams with something
+ * waiting share the bandwidth in proportion to their weights. A stream's
+ * weight is its data channel priority, so a high (512) channel gets twice
+ * what a normal (256) one does.
+ *
+ * Each stream has a virtual time - the bytes it has sent divided by its
+ * weight - and the one furthest behind goes next. A stream that has been
+ * idle starts again at the virtual time of the stream last served, so it
+ * can't save up a burst while it has nothing to send.
+ */
+public class WfqScheduler extends PerStreamScheduler {
+
+    private final HashMap<Integer, Double> _vtime = new HashMap();
+    private double _now;
+
+    @Override
+    protected SCTPStream choose() {
+        SCTPStream best = null;
+        double least = 0;
+        // ties go to the one that has waited longest
+        for (SCTPStream s : _active) {
+            double v = _vtime.get(s.getNum());
+            if ((best == null) || (v < least)) {
+                best = s;
+                least = v;
+            }
+        }
+        _now = least;
+        rotate(best);
+        return best;
+    }
+
+    @Override
+    protected void activated(SCTPStream s) {
+        _vtime.put(s.getNum(), _now);
+    }
+
+    @Override
+    protected void deactivated(SCTPStream s) {
+        _vtime.remove(s.getNum());
+    }
+
+    @Override
+    protected void charge(SCTPStream s, int size) {
+        _vtime.put(s.getNum(), _vtime.get(s.getNum()) + ((double) size / Math.max(1, s.getPriority())));
+    }
+}
@@ -20,10 +20,9 @@ import pe.pi.sctp4j.sctp.SCTPMessage;
 import pe.pi.sctp4j.sctp.SCTPStream;
 import pe.pi.sctp4j.sctp.messages.DataChunk;
 import java.util.HashMap;
-import java.util.concurrent.Executors;
 import pe.pi.sctp4j.sctp.dataChannel.DECP.DCOpen;
 import com.phono.srtplight.Log;
-import java.util.concurrent.ExecutorService;
+import pe.pi.sctp4j.sctp.LazyLog;
 
 /**
  *
@@ -33,11 +32,11 @@ public class BlockingSCTPStream extends SCTPStream {
 
     private HashMap<Integer, SCTPMessage> undeliveredOutboundMessages = new HashMap();
     private final ThreadedAssociation _ta;
-    private final ExecutorService _ex;
+    private final Strand _ex;
 
     BlockingSCTPStream(ThreadedAssociation a, Integer id) {
         super(a, id);
-        _ex = Executors.newSingleThreadExecutor((Runnable r) -> new Thread(r, "Stream-" + id + "-Exec"));
+        _ex = new Strand(a.getRuntime().getCallbackExecutor(), "Stream-" + id);
         _ta = a;
     }
 
@@ -59,7 +58,7 @@ public class BlockingSCTPStream extends SCTPStream {
     public void send(DCOpen message) throws Exception {
         SCTPMessage m = _ta.makeMessage(message, this);
         undeliveredOutboundMessages.put(m.getSeq(), m);
-        Log.debug("About to send message for dcep size is " + m.getData().length);
+        LazyLog.debug(() -> "About to send message for dcep size is " + m.getData().length);
         _ta.sendAndBlock(m);
     }
 
@@ -99,9 +98,6 @@ public class BlockingSCTPStream extends SCTPStream {
     @Override
     public void close() throws Exception {
         super.close();
-        if ((_ex != null) && (!_ex.isShutdown())) {
-            _ex.shutdownNow();
-            Log.debug("shutdown of Stream-" + this.getNum() + "-Exec");
-        }
+        _ex.close();
     }
 }
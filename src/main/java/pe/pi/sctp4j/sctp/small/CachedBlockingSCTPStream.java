@@ -17,14 +17,13 @@
 package pe.pi.sctp4j.sctp.small;
 
 import com.phono.srtplight.Log;
+import pe.pi.sctp4j.sctp.LazyLog;
 import pe.pi.sctp4j.sctp.SCTPMessage;
 import pe.pi.sctp4j.sctp.SCTPStream;
 import pe.pi.sctp4j.sctp.dataChannel.DECP.DCOpen;
 import pe.pi.sctp4j.sctp.messages.DataChunk;
 
 import java.util.HashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  *
@@ -34,11 +33,11 @@ public class CachedBlockingSCTPStream extends SCTPStream {
 
     private HashMap<Integer, SCTPMessage> undeliveredOutboundMessages = new HashMap();
     private final CachedThreadedAssociation _ta;
-    private final ExecutorService _ex;
+    private final Strand _ex;
 
     CachedBlockingSCTPStream(CachedThreadedAssociation a, Integer id) {
         super(a, id);
-        _ex = a.getExecutorService();
+        _ex = new Strand(a.getExecutorService(), "Stream-" + id);
         _ta = a;
     }
 
@@ -60,7 +59,7 @@ public class CachedBlockingSCTPStream extends SCTPStream {
     public void send(DCOpen message) throws Exception {
         SCTPMessage m = _ta.makeMessage(message, this);
         undeliveredOutboundMessages.put(m.getSeq(), m);
-        Log.debug("About to send message for dcep size is " + m.getData().length);
+        LazyLog.debug(() -> "About to send message for dcep size is " + m.getData().length);
         _ta.sendAndBlock(m);
     }
 
@@ -100,9 +99,6 @@ public class CachedBlockingSCTPStream extends SCTPStream {
     @Override
     public void close() throws Exception {
         super.close();
-        if ((_ex != null) && (!_ex.isShutdown())) {
-            _ex.shutdownNow();
-            Log.debug("shutdown of Stream-" + this.getNum() + "-Exec");
-        }
+        _ex.close();
     }
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.small;
+
+import com.phono.srtplight.Log;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.bouncycastle.tls.DatagramTransport;
+import pe.pi.sctp4j.sctp.AssociationListener;
+import pe.pi.sctp4j.sctp.congestion.CongestionController;
+import pe.pi.sctp4j.sctp.congestion.NewRenoCongestionController;
+
+/**
+ * A few threads to run a great many associations.
+ *
+ * Each association made here is pinned (round robin) to one of the loop
+ * threads - which parses the packets the application pushes to it with
+ * onDatagram() and runs its timers. Application callbacks go to a shared
+ * pool of workers so they can block without stalling a loop. No association
+ * has a thread of its own.
+ *
+ * @author Westhawk Ltd<thp@westhawk.co.uk>
+ */
+public class EventLoopGroup implements AutoCloseable {
+
+    private static final AtomicInteger __groupNo = new AtomicInteger();
+    private final ScheduledExecutorService[] _loops;
+    private final ScheduledExecutorService _workers;
+    private final AtomicInteger _next = new AtomicInteger();
+
+    /**
+     * one loop per core.
+     */
+    public EventLoopGroup() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public EventLoopGroup(int loops) {
+        this(loops, loops * 2);
+    }
+
+    /**
+     * @param loops - threads running the protocol
+     * @param workers - threads running application callbacks
+     */
+    public EventLoopGroup(int loops, int workers) {
+        if ((loops < 1) || (workers < 1)) {
+            throw new IllegalArgumentException("Need at least one loop and one worker");
+        }
+        int g = __groupNo.incrementAndGet();
+        _loops = new ScheduledExecutorService[loops];
+        for (int i = 0; i < loops; i++) {
+            String name = "SCTPLoop-" + g + "-" + i;
+            _loops[i] = Executors.newSingleThreadScheduledExecutor((Runnable r) -> daemon(r, name));
+        }
+        AtomicInteger w = new AtomicInteger();
+        _workers = Executors.newScheduledThreadPool(workers, (Runnable r) -> daemon(r, "SCTPWorker-" + g + "-" + w.getAndIncrement()));
+        Log.debug("EventLoopGroup " + g + " with " + loops + " loops and " + workers + " workers");
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    public int size() {
+        return _loops.length;
+    }
+
+    /**
+     * make an association - the application must pass it every packet the
+     * transport receives with onDatagram() - it never reads the transport
+     * itself.
+     *
+     * @param transport - used for sending only
+     * @param al
+     * @param client - our DTLS role
+     * @return
+     */
+    public LoopAssociation mkAssociation(DatagramTransport transport, AssociationListener al, boolean client) {
+        return mkAssociation(transport, al, client, new NewRenoCongestionController());
+    }
+
+    public LoopAssociation mkAssociation(DatagramTransport transport, AssociationListener al, boolean client, CongestionController cc) {
+        ScheduledExecutorService loop = _loops[Math.floorMod(_next.getAndIncrement(), _loops.length)];
+        return new LoopAssociation(transport, al, loop, _workers, cc, client);
+    }
+
+    @Override
+    public void close() {
+        for (ScheduledExecutorService l : _loops) {
+            l.shutdownNow();
+        }
+        _workers.shutdownNow();
+    }
+}
@@ -0,0 +1,494 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.small;
+
+import com.phono.srtplight.Log;
+import pe.pi.sctp4j.sctp.LazyLog;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import pe.pi.sctp4j.sctp.messages.DataChunk;
+import pe.pi.sctp4j.sctp.messages.ForwardTsnChunk;
+
+/**
+ * DATA we have sent but the far end has not yet cumulatively acked.
+ *
+ * Chunks sit in a ring indexed by TSN between the cumulative ack point and
+ * the next TSN to send. We keep the runs of TSNs the far end has gap acked
+ * (absolute start,end pairs in TSN order) and a running count of the bytes
+ * that are neither cum nor gap acked, so a SACK only touches the chunks it
+ * newly acks.
+ *
+ * The chunks still awaiting any ack are also kept ordered by retry time, so
+ * the T3-rtx timer need only look at the earliest and take those now due.
+ *
+ * An abandoned chunk (RFC 3758) stays in the ring until the far end acks
+ * past it, but like a gap acked one it is no longer outstanding or due.
+ *
+ * When T3 goes off only one packet of what is due goes straight away - the
+ * rest are marked (in TSN order) to be resent as the congestion window opens.
+ * Marked chunks are unmarked when acked, abandoned or resent.
+ *
+ * Not thread safe - callers synchronize on it.
+ */
+class InFlight {
+
+    final static int INITIALSIZE = 128;
+    private final static Comparator<DataChunk> BYRETRYTIME = (a, b) -> {
+        int ret = Long.compare(a.getRetryTime(), b.getRetryTime());
+        return (ret != 0) ? ret : Long.compare(a.getTsn(), b.getTsn());
+    };
+    private final static Comparator<DataChunk> BYTSN = (a, b) -> Long.compare(a.getTsn(), b.getTsn());
+
+    private DataChunk[] _ring;
+    private int _mask;
+    private long _base; // lowest TSN that may still be held
+    private long _next; // one past the highest TSN added
+    private int _count;
+    private long _outstanding;
+    private long[] _acked = new long[16];
+    private int _nacked;
+    private long _lastNewlyAcked;
+    private int _lastAbandoned;
+    private final TreeSet<DataChunk> _byRetryTime = new TreeSet(BYRETRYTIME);
+    private final TreeSet<DataChunk> _marked = new TreeSet(BYTSN);
+    private long _markedBytes;
+
+    InFlight() {
+        _ring = new DataChunk[INITIALSIZE];
+        _mask = INITIALSIZE - 1;
+    }
+
+    int size() {
+        return _count;
+    }
+
+    boolean isEmpty() {
+        return _count == 0;
+    }
+
+    /**
+     * @return bytes sent that are neither cumulatively nor gap acked.
+     */
+    long getOutstanding() {
+        return _outstanding;
+    }
+
+    /**
+     * @return the bytes the last call to abandon() took out of flight - they
+     * will never be acked.
+     */
+    int getLastAbandoned() {
+        return _lastAbandoned;
+    }
+
+    /**
+     * @return the highest TSN newly acked by the last call to gapAck(), or -1
+     */
+    long getLastNewlyAcked() {
+        return _lastNewlyAcked;
+    }
+
+    void add(DataChunk d) {
+        long tsn = d.getTsn();
+        if (_count == 0) {
+            _base = tsn;
+            _next = tsn;
+            _nacked = 0;
+        } else if (tsn < _base) {
+            Log.warn("Ignoring in flight TSN " + tsn + " below " + _base);
+            return;
+        }
+        int off = (int) (tsn - _base);
+        if (off >= _ring.length) {
+            grow(off);
+        }
+        int slot = (int) (tsn & _mask);
+        if (_ring[slot] == null) {
+            _count++;
+        } else if (awaitingAck(_ring[slot])) {
+            _outstanding -= _ring[slot].getDataSize();
+            _byRetryTime.remove(_ring[slot]);
+            resent(_ring[slot]);
+        }
+        _ring[slot] = d;
+        if (!d.getGapAck()) {
+            _outstanding += d.getDataSize();
+            _byRetryTime.add(d);
+        }
+        if (tsn >= _next) {
+            _next = tsn + 1;
+        }
+    }
+
+    /**
+     * take the lowest chunk at or below the cumulative TSN ack.
+     *
+     * @param cumTSN
+     * @return the chunk - now no longer in flight - or null when there are
+     * no more.
+     */
+    DataChunk pollAcked(long cumTSN) {
+        while ((_base <= cumTSN) && (_base < _next)) {
+            int slot = (int) (_base & _mask);
+            DataChunk d = _ring[slot];
+            _ring[slot] = null;
+            _base++;
+            while ((_nacked > 0) && (_acked[1] < _base)) {
+                removeRun(0);
+            }
+            if ((_nacked > 0) && (_acked[0] < _base)) {
+                _acked[0] = _base;
+            }
+            if (d != null) {
+                _count--;
+                if (awaitingAck(d)) {
+                    _outstanding -= d.getDataSize();
+                    _byRetryTime.remove(d);
+                    resent(d);
+                }
+                return d;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * mark the chunks in a gap ack block as received - only those not
+     * already covered by an earlier block are visited.
+     *
+     * @param ts - absolute start TSN
+     * @param te - absolute end TSN
+     * @return the number of bytes newly acked
+     */
+    int gapAck(long ts, long te) {
+        int ret = 0;
+        _lastNewlyAcked = -1;
+        ts = Math.max(ts, _base);
+        te = Math.min(te, _next - 1);
+        if (ts > te) {
+            return ret;
+        }
+        int r = runEndingAtOrAfter(ts);
+        long t = ts;
+        while (t <= te) {
+            if ((r < _nacked) && (_acked[r * 2] <= t)) {
+                t = _acked[r * 2 + 1] + 1;
+                r++;
+                continue;
+            }
+            long segEnd = (r < _nacked) ? Math.min(te, _acked[r * 2] - 1) : te;
+            for (; t <= segEnd; t++) {
+                DataChunk d = _ring[(int) (t & _mask)];
+                if (d == null) {
+                    if (LazyLog.isDebug()) {
+                        Log.debug("Huh? gap for something not inFlight ?!? " + t);
+                    }
+                } else if (d.isAbandoned()) {
+                    d.setGapAck(true); // too late, but no longer a hole
+                } else if (!d.getGapAck()) {
+                    _byRetryTime.remove(d);
+                    resent(d);
+                    d.setGapAck(true);
+                    ret += d.getDataSize();
+                    _outstanding -= d.getDataSize();
+                    _lastNewlyAcked = t;
+                }
+            }
+        }
+        addRun(ts, te);
+        return ret;
+    }
+
+    /**
+     * Bump the miss count of each chunk reported missing below limit and
+     * collect (in TSN order) those that have now been missed often enough
+     * to be fast retransmitted.
+     *
+     * Only the holes between gap acked runs can be missing, so that is all
+     * we look at.
+     */
+    void countMisses(long limit, int threshold, List<DataChunk> marked) {
+        long t = _base;
+        for (int r = 0; r < _nacked; r++) {
+            long holeEnd = _acked[r * 2];
+            for (; t < holeEnd; t++) {
+                DataChunk d = _ring[(int) (t & _mask)];
+                if ((d == null) || !awaitingAck(d)) {
+                    continue;
+                }
+                if (t < limit) {
+                    d.incrementMissCount();
+                }
+                if ((d.getMissCount() >= threshold) && !d.isFastRetransmitted()) {
+                    marked.add(d);
+                }
+            }
+            t = _acked[r * 2 + 1] + 1;
+        }
+    }
+
+    /**
+     * @return when the earliest unacked chunk is due for retransmission, or
+     * Long.MAX_VALUE if nothing is awaiting an ack.
+     */
+    long nextRetryTime() {
+        return _byRetryTime.isEmpty() ? Long.MAX_VALUE : _byRetryTime.first().getRetryTime();
+    }
+
+    /**
+     * move a chunk's retry time - it must not change behind our back.
+     */
+    void setRetryTime(DataChunk d, long at) {
+        boolean held = _byRetryTime.remove(d);
+        d.setRetryTime(at);
+        if (held) {
+            _byRetryTime.add(d);
+        }
+    }
+
+    /**
+     * collect (earliest first) the chunks whose retry time has come and that
+     * the far end hasn't acked - looks no further than those.
+     */
+    void due(long now, List<DataChunk> ret) {
+        for (DataChunk d : _byRetryTime) {
+            if (d.getRetryTime() > now) {
+                break;
+            }
+            ret.add(d);
+        }
+    }
+
+    /**
+     * note that d is due a resend that the congestion window doesn't yet
+     * allow.
+     */
+    void mark(DataChunk d) {
+        if (awaitingAck(d) && _marked.add(d)) {
+            _markedBytes += d.getDataSize();
+        }
+    }
+
+    /**
+     * d has been resent (or no longer needs to be) - unmark it.
+     */
+    void resent(DataChunk d) {
+        if (_marked.remove(d)) {
+            _markedBytes -= d.getDataSize();
+        }
+    }
+
+    /**
+     * @return the lowest TSN chunk marked for resending, or null
+     */
+    DataChunk firstMarked() {
+        return _marked.isEmpty() ? null : _marked.first();
+    }
+
+    /**
+     * @return bytes marked for resending - sent once but not in the network
+     * as far as the congestion window is concerned.
+     */
+    long getMarkedBytes() {
+        return _markedBytes;
+    }
+
+    /**
+     * Give up on d (RFC 3758) - and on the rest of its message, the far end
+     * can't deliver part of one. The fragments stay in the ring until acked
+     * past, but no longer count as outstanding nor come due for resending.
+     *
+     * I-DATA fragments may be interleaved with other messages', but they are
+     * sent in FSN order - so the message lies between its B and E fragments
+     * and we walk out from d to those, not over all that is in flight.
+     *
+     * @return the number of chunks newly abandoned
+     */
+    int abandon(DataChunk d) {
+        long first = d.getTsn();
+        long last = d.getTsn();
+        if (d.isIData()) {
+            while ((first > _base) && !isFragment(d, first, DataChunk.BEGINFLAG)) {
+                first--;
+            }
+            while ((last < _next - 1) && !isFragment(d, last, DataChunk.ENDFLAG)) {
+                last++;
+            }
+        } else {
+            while (((flagsAt(first) & DataChunk.BEGINFLAG) == 0) && sameMessage(d, first - 1)) {
+                first--;
+            }
+            while (((flagsAt(last) & DataChunk.ENDFLAG) == 0) && sameMessage(d, last + 1)) {
+                last++;
+            }
+        }
+        int ret = 0;
+        _lastAbandoned = 0;
+        for (long t = first; t <= last; t++) {
+            DataChunk f = _ring[(int) (t & _mask)];
+            if ((f != null) && sameMessage(d, f) && !f.isAbandoned()) {
+                if (awaitingAck(f)) {
+                    _byRetryTime.remove(f);
+                    resent(f);
+                    _outstanding -= f.getDataSize();
+                    _lastAbandoned += f.getDataSize();
+                }
+                f.setAbandoned(true);
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * RFC 3758 C2) - move the Advanced.Peer.Ack.Point up from the cumulative
+     * ack over the abandoned chunks that follow it, noting in fwd the last
+     * SSN skipped on each stream (ordered chunks only) - or for I-DATA the
+     * last MID, ordered and unordered.
+     *
+     * @return the new ack point - cumTSN if there is nothing to skip.
+     */
+    long advancePeerAckPoint(long cumTSN, ForwardTsnChunk fwd) {
+        long ret = cumTSN;
+        for (long t = Math.max(_base, cumTSN + 1); t < _next; t++) {
+            DataChunk d = _ring[(int) (t & _mask)];
+            if ((d == null) || !d.isAbandoned()) {
+                break;
+            }
+            boolean unordered = (d.getFlags() & DataChunk.UNORDERED) != 0;
+            if (d.isIData()) {
+                fwd.addStream(d.getStreamId(), unordered, d.getSSeqNo());
+            } else if (!unordered) {
+                fwd.addStream(d.getStreamId(), d.getSSeqNo());
+            }
+            ret = t;
+        }
+        return ret;
+    }
+
+    /**
+     * empty it - handing every chunk back.
+     */
+    void drainTo(Collection<DataChunk> free) {
+        for (int i = 0; i < _ring.length; i++) {
+            if (_ring[i] != null) {
+                free.add(_ring[i]);
+                _ring[i] = null;
+            }
+        }
+        _byRetryTime.clear();
+        _marked.clear();
+        _markedBytes = 0;
+        _count = 0;
+        _outstanding = 0;
+        _nacked = 0;
+        _base = _next;
+    }
+
+    // neither acked nor given up on
+    private static boolean awaitingAck(DataChunk d) {
+        return !d.getGapAck() && !d.isAbandoned();
+    }
+
+    private int flagsAt(long tsn) {
+        return _ring[(int) (tsn & _mask)].getFlags();
+    }
+
+    // is the chunk at tsn (if we still have it) another fragment of d's message
+    private boolean sameMessage(DataChunk d, long tsn) {
+        if ((tsn < _base) || (tsn >= _next)) {
+            return false;
+        }
+        DataChunk o = _ring[(int) (tsn & _mask)];
+        return (o != null) && sameMessage(d, o);
+    }
+
+    // an SSN (or MID) is only unique within a stream's ordered or unordered messages
+    // is the chunk at tsn d's message's B (or E) fragment
+    private boolean isFragment(DataChunk d, long tsn, int flag) {
+        return sameMessage(d, tsn) && ((flagsAt(tsn) & flag) != 0);
+    }
+
+    private static boolean sameMessage(DataChunk d, DataChunk o) {
+        return (o.getStreamId() == d.getStreamId()) && (o.getSSeqNo() == d.getSSeqNo())
+                && ((o.getFlags() & DataChunk.UNORDERED) == (d.getFlags() & DataChunk.UNORDERED));
+    }
+
+    private void grow(int off) {
+        int sz = _ring.length;
+        while (sz <= off) {
+            sz <<= 1;
+        }
+        DataChunk[] nring = new DataChunk[sz];
+        int nmask = sz - 1;
+        for (DataChunk d : _ring) {
+            if (d != null) {
+                nring[(int) (d.getTsn() & nmask)] = d;
+            }
+        }
+        _ring = nring;
+        _mask = nmask;
+    }
+
+    // first run that ends at or after tsn - i.e. the first that could cover it
+    private int runEndingAtOrAfter(long tsn) {
+        int lo = 0;
+        int hi = _nacked;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_acked[mid * 2 + 1] >= tsn) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    // merge [ts,te] into the acked runs, swallowing any it touches
+    private void addRun(long ts, long te) {
+        int first = runEndingAtOrAfter(ts - 1);
+        int last = first;
+        while ((last < _nacked) && (_acked[last * 2] <= te + 1)) {
+            ts = Math.min(ts, _acked[last * 2]);
+            te = Math.max(te, _acked[last * 2 + 1]);
+            last++;
+        }
+        int swallowed = last - first;
+        if (swallowed == 0) {
+            if (_acked.length < (_nacked + 1) * 2) {
+                long[] nacked = new long[_acked.length * 2];
+                System.arraycopy(_acked, 0, nacked, 0, _nacked * 2);
+                _acked = nacked;
+            }
+            System.arraycopy(_acked, first * 2, _acked, first * 2 + 2, (_nacked - first) * 2);
+            _nacked++;
+        } else if (swallowed > 1) {
+            System.arraycopy(_acked, last * 2, _acked, first * 2 + 2, (_nacked - last) * 2);
+            _nacked -= swallowed - 1;
+        }
+        _acked[first * 2] = ts;
+        _acked[first * 2 + 1] = te;
+    }
+
+    private void removeRun(int r) {
+        System.arraycopy(_acked, r * 2 + 2, _acked, r * 2, (_nacked - r - 1) * 2);
+        _nacked--;
+    }
+}
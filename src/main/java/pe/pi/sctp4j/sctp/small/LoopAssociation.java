@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.small;
+
+import com.phono.srtplight.Log;
+import java.nio.ByteBuffer;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import org.bouncycastle.tls.DatagramTransport;
+import pe.pi.sctp4j.sctp.runtime.DedicatedRuntime;
+import pe.pi.sctp4j.sctp.AssociationListener;
+import pe.pi.sctp4j.sctp.RcvBuffer;
+import pe.pi.sctp4j.sctp.congestion.CongestionController;
+
+/**
+ * An association driven by one of an EventLoopGroup's loops rather than
+ * threads of its own. Make them with EventLoopGroup.mkAssociation().
+ *
+ * @author Westhawk Ltd<thp@westhawk.co.uk>
+ */
+public class LoopAssociation extends CachedThreadedAssociation {
+
+    private final ScheduledExecutorService _loop;
+
+    LoopAssociation(DatagramTransport transport, AssociationListener al, ScheduledExecutorService loop, ScheduledExecutorService workers, CongestionController cc, boolean client) {
+        super(transport, al, workers, loop, cc, client, new DedicatedRuntime(workers), true);
+        _loop = loop;
+    }
+
+    /**
+     * Queue a received packet for our loop - safe to call from any thread,
+     * the buffer may be reused as soon as this returns.
+     *
+     * @param pkt
+     */
+    @Override
+    public void onDatagram(ByteBuffer pkt) {
+        int len = pkt.remaining();
+        RcvBuffer copy = copyIn(pkt);
+        try {
+            _loop.execute(() -> onRcvBuffer(copy, len));
+        } catch (RejectedExecutionException x) {
+            copy.release();
+            Log.debug("Loop gone - dropping packet");
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.small;
+
+import pe.pi.sctp4j.sctp.SCTPMessage;
+import pe.pi.sctp4j.sctp.messages.DataChunk;
+import pe.pi.sctp4j.sctp.scheduler.StreamScheduler;
+
+/**
+ * Outbound messages waiting to be fragmented - the stream scheduler says
+ * whose fragment goes next.
+ *
+ * With I-DATA (RFC 8260) a message's fragments need not have consecutive
+ * TSNs, so we ask the scheduler for every fragment - a small message on one
+ * stream can go between the fragments of a big one on another. With DATA a
+ * message, once started, goes to the end before we ask again.
+ *
+ * One sending thread at a time does the fragmenting - for everyone's
+ * messages, until its own has all gone. The other senders wait here until
+ * theirs has been taken care of or it is their turn to send.
+ *
+ * @author Westhawk Ltd<thp@westhawk.co.uk>
+ */
+class OutboundQueue {
+
+    private StreamScheduler _scheduler;
+    // with DATA, the message we are part way through
+    private SCTPMessage _current;
+    private boolean _sending;
+
+    OutboundQueue(StreamScheduler scheduler) {
+        _scheduler = scheduler;
+    }
+
+    synchronized void setScheduler(StreamScheduler scheduler) {
+        if (!_scheduler.isEmpty()) {
+            throw new IllegalStateException("Can't change scheduler with messages waiting");
+        }
+        _scheduler = scheduler;
+    }
+
+    synchronized void add(SCTPMessage m) {
+        _scheduler.add(m);
+    }
+
+    /**
+     * wait until m has all been fragmented by another thread - or no one
+     * else is sending, in which case it is up to us.
+     *
+     * @return true if we must send - call doneSending() when m has gone.
+     */
+    synchronized boolean awaitTurn(SCTPMessage m) throws InterruptedException {
+        while (_sending && m.hasMoreData()) {
+            wait();
+        }
+        if (!m.hasMoreData()) {
+            return false;
+        }
+        _sending = true;
+        return true;
+    }
+
+    synchronized void doneSending() {
+        _sending = false;
+        notifyAll();
+    }
+
+    /**
+     * @return true if m still has fragments to go.
+     */
+    synchronized boolean hasMoreData(SCTPMessage m) {
+        return m.hasMoreData();
+    }
+
+    /**
+     * fill dc with the next fragment of whichever message the scheduler
+     * picks.
+     *
+     * @param interleave - true if we are sending I-DATA
+     */
+    synchronized void fill(DataChunk dc, boolean interleave) {
+        SCTPMessage m = ((_current != null) && !interleave) ? _current : _scheduler.next();
+        m.fill(dc);
+        _scheduler.sent(m, dc.getDataSize());
+        if (m.hasMoreData()) {
+            _current = m;
+        } else {
+            _current = null;
+            notifyAll(); // its sender may be waiting
+        }
+    }
+}
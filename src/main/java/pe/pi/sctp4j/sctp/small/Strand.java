@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.small;
+
+import com.phono.srtplight.Log;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import pe.pi.sctp4j.sctp.runtime.SharedPoolRuntime;
+
+/**
+ * A serial executor - runs the tasks given to it one at a time, in the order
+ * given, on threads borrowed from a shared pool.
+ *
+ * A stream needs its messages delivered in order and never two at once, but
+ * not a thread of its own; a strand gives it that. At most one task from a
+ * strand is queued on, or running in, the pool at a time, and it hands the
+ * thread back after a batch so a busy stream can't starve the others.
+ *
+ * Closing a strand drops whatever it has not yet started - the pool and
+ * every other strand on it carry on.
+ *
+ * @author Westhawk Ltd<thp@westhawk.co.uk>
+ */
+public class Strand implements Executor {
+
+    final static int BATCH = 16;
+
+    private final Executor _pool;
+    private final String _name;
+    private final ConcurrentLinkedQueue<Runnable> _tasks = new ConcurrentLinkedQueue();
+    // tasks given to us and not yet finished - a drain is scheduled while > 0
+    private final AtomicInteger _pending = new AtomicInteger();
+    private volatile boolean _closed;
+
+    /**
+     * @param pool - runs our tasks, shared with any number of other strands
+     * @param name - for the logs
+     */
+    public Strand(Executor pool, String name) {
+        _pool = pool;
+        _name = name;
+    }
+
+    /**
+     * A bounded pool of daemon threads for strands that have no other home -
+     * twice as many as there are cores, however many streams there are.
+     */
+    public static ExecutorService getShared() {
+        return SharedPoolRuntime.getSharedPool();
+    }
+
+    @Override
+    public void execute(Runnable r) {
+        if (_closed) {
+            Log.debug("Strand " + _name + " closed, dropping task");
+            return;
+        }
+        _tasks.add(r);
+        if (_pending.getAndIncrement() == 0) {
+            schedule();
+        }
+    }
+
+    /**
+     * drop anything not yet started and refuse anything new - a task that is
+     * already running is left to finish.
+     */
+    public void close() {
+        _closed = true;
+        _tasks.clear();
+        Log.debug("closed strand " + _name);
+    }
+
+    public boolean isClosed() {
+        return _closed;
+    }
+
+    private void schedule() {
+        try {
+            _pool.execute(this::drain);
+        } catch (RejectedExecutionException x) {
+            Log.warn("Strand " + _name + " pool refused work " + x.getMessage());
+            _tasks.clear();
+            _pending.set(0);
+        }
+    }
+
+    private void drain() {
+        for (int ran = 1;; ran++) {
+            Runnable r = _tasks.poll();
+            if (r == null) {
+                // emptied by close()
+                _pending.set(0);
+                return;
+            }
+            try {
+                if (!_closed) {
+                    r.run();
+                }
+            } catch (Throwable t) {
+                Log.error("Strand " + _name + " task threw " + t);
+                if (Log.getLevel() >= Log.DEBUG) {
+                    t.printStackTrace();
+                }
+            }
+            if (_pending.decrementAndGet() == 0) {
+                return;
+            }
+            if (ran >= BATCH) {
+                // more to do but we've had our turn - back of the pool's queue
+                schedule();
+                return;
+            }
+        }
+    }
+}
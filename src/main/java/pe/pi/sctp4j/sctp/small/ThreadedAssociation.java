@@ -17,25 +17,29 @@
 package pe.pi.sctp4j.sctp.small;
 
 import pe.pi.sctp4j.sctp.Association;
+import pe.pi.sctp4j.sctp.SCTPTimer;
 import pe.pi.sctp4j.sctp.AssociationListener;
 import pe.pi.sctp4j.sctp.SCTPMessage;
 import pe.pi.sctp4j.sctp.SCTPStream;
 import pe.pi.sctp4j.sctp.messages.*;
 import pe.pi.sctp4j.sctp.messages.exceptions.SctpPacketFormatException;
 import com.phono.srtplight.Log;
+import pe.pi.sctp4j.sctp.LazyLog;
 import java.io.EOFException;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 import org.bouncycastle.tls.DatagramTransport;
 import pe.pi.sctp4j.sctp.StreamNumberInUseException;
+import pe.pi.sctp4j.sctp.congestion.CongestionController;
+import pe.pi.sctp4j.sctp.congestion.NewRenoCongestionController;
 import pe.pi.sctp4j.sctp.dataChannel.DECP.DCOpen;
 import pe.pi.sctp4j.sctp.messages.exceptions.UnreadyAssociationException;
+import pe.pi.sctp4j.sctp.runtime.AssociationRuntime;
+import pe.pi.sctp4j.sctp.runtime.DedicatedRuntime;
+import pe.pi.sctp4j.sctp.scheduler.RoundRobinScheduler;
+import pe.pi.sctp4j.sctp.scheduler.StreamScheduler;
 
 /**
  * An association who's retries etc are managed with plain old threads.
@@ -46,7 +50,9 @@ public class ThreadedAssociation extends Association implements Runnable {
 
     final static int MAXBLOCKS = 100; // some number....
     private ArrayBlockingQueue<DataChunk> _freeBlocks;
-    private HashMap<Long, DataChunk> _inFlight;
+    private final InFlight _inFlight = new InFlight();
+    // outbound messages waiting their turn
+    private final OutboundQueue _outbound = new OutboundQueue(new RoundRobinScheduler());
     private long _lastCumuTSNAck;
     final static int MAX_INIT_RETRANS = 8;
 
@@ -60,69 +66,18 @@ public class ThreadedAssociation extends Association implements Runnable {
      */
     private long _rwnd;
     /*
-     o  Congestion control window (cwnd, in bytes), which is adjusted by
-     the sender based on observed network conditions.
-
-     Note: This variable is maintained on a per-destination-address
-     basis.
-     */
-    private long _cwnd;
-    // assume a single destination via ICE
-/*
-     o  Slow-start threshold (ssthresh, in bytes), which is used by the
-     sender to distinguish slow-start and congestion avoidance phases.
-
-     Note: This variable is maintained on a per-destination-address
-     basis.
-     */
-    private long _ssthresh;
-    /*
-
-
-
-     Stewart                     Standards Track                    [Page 95]
-
-     RFC 4960          Stream Control Transmission Protocol    September 2007
-
-
-     SCTP also requires one additional control variable,
-     partial_bytes_acked, which is used during congestion avoidance phase
-     to facilitate cwnd adjustment.
+     cwnd, ssthresh and partial_bytes_acked live in the congestion controller
+     we assume a single destination via ICE so one per association.
      */
-    private long _partial_bytes_acked;
+    private final CongestionController _cc;
     private boolean _fastRecovery;
-    /*
-     10.2.  Probing Method Using SCTP
-
-     In the Stream Control Transmission Protocol (SCTP) [RFC2960], the
-     application writes messages to SCTP, which divides the data into
-     smaller "chunks" suitable for transmission through the network.  Each
-     chunk is assigned a Transmission Sequence Number (TSN).  Once a TSN
-     has been transmitted, SCTP cannot change the chunk size.  SCTP multi-
-     path support normally requires SCTP to choose a chunk size such that
-     its messages to fit the smallest PMTU of all paths.  Although not
-     required, implementations may bundle multiple data chunks together to
-     make larger IP packets to send on paths with a larger PMTU.  Note
-     that SCTP must independently probe the PMTU on each path to the peer.
-
-     The RECOMMENDED method for generating probes is to add a chunk
-     consisting only of padding to an SCTP message.  The PAD chunk defined
-     in [RFC4820] SHOULD be attached to a minimum length HEARTBEAT (HB)
-     chunk to build a probe packet.  This method is fully compatible with
-     all current SCTP implementations.
-
-     SCTP MAY also probe with a method similar to TCP's described above,
-     using inline data.  Using such a method has the advantage that
-     successful probes have no additional overhead; however, failed probes
-     will require retransmission of data, which may impact flow
-     performance.
-
-     To do .....
-     */
-    private int _transpMTU = 768;
-    private Thread retryThread;
+    private long _fastRecoveryExitPoint;
     private Chunk[] _stashCookieEcho;
     private final Object _congestion = new Object();
+    private final Object _t3 = new Object();
+    private long _t3At = Long.MAX_VALUE;
+    private boolean _t3Running; // an expiry is being dealt with
+    private final SCTPTimer _t3Timer = newTimer();
     private boolean _firstRTT = true;
     private double _srtt;
     private double _rttvar;
@@ -142,25 +97,33 @@ public class ThreadedAssociation extends Association implements Runnable {
     private final double _rtoMax = 6.0;
     private long t1 = 1000; // first guess
     private long t3 = 1000; // ditto.
+    private long _lastSent;
 
     public ThreadedAssociation(DatagramTransport transport, AssociationListener al) {
-        super(transport, new ExecutorAssociationListener(al));
-        try {
-            _transpMTU = Math.min(transport.getReceiveLimit(), transport.getSendLimit());
-            Log.debug("Transport MTU is now " + _transpMTU);
-        } catch (IOException x) {
-            Log.warn("Failed to get suitable transport mtu ");
-        }
+        this(transport, al, new NewRenoCongestionController());
+    }
+
+    public ThreadedAssociation(DatagramTransport transport, AssociationListener al, CongestionController cc) {
+        this(transport, al, cc, new DedicatedRuntime());
+    }
+
+    /**
+     * @param transport
+     * @param al
+     * @param cc
+     * @param runtime - reads the transport, runs the timers and the
+     * callbacks - shared with as many other associations as you like.
+     */
+    public ThreadedAssociation(DatagramTransport transport, AssociationListener al, CongestionController cc, AssociationRuntime runtime) {
+        super(transport, new ExecutorAssociationListener(al, runtime), false, runtime, false);
+        _cc = cc;
         _freeBlocks = new ArrayBlockingQueue(MAXBLOCKS);
-        _inFlight = new HashMap(MAXBLOCKS);
 
         for (int i = 0; i < MAXBLOCKS; i++) {
             DataChunk dc = new DataChunk();
             _freeBlocks.add(dc);
         }
-        resetCwnd();
-        retryThread = new Thread(this, "AssocRetry" + __assocNo);
-        retryThread.start();
+        _cc.setMTU(getMTU());
     }
 
     /*
@@ -179,18 +142,19 @@ public class ThreadedAssociation extends Association implements Runnable {
         Chunk[] ret = super.iackDeal(iack);
         _stashCookieEcho = ret;
         _rwnd = iack.getAdRecWinCredit();
-        _ssthresh = _rwnd;
+        _cc.setInitialSsthresh(_rwnd);
         return ret;
     }
 
     @Override
     public void associate() throws SctpPacketFormatException, IOException {
-        final SimpleSCTPTimer init = new SimpleSCTPTimer() {
+        final SCTPTimer init = newTimer();
+        Runnable tick = new Runnable() {
             int retries = 0;
 
             @Override
-            public void tick() {
-                Log.debug("T1 init timer expired in state " + _state.name());
+            public void run() {
+                LazyLog.debug(() -> "T1 init timer expired in state " + _state.name());
 
                 if ((_state == State.COOKIEECHOED) || (_state == State.COOKIEWAIT)) {
                     try {
@@ -206,7 +170,7 @@ public class ThreadedAssociation extends Association implements Runnable {
                     }
                     retries++;
                     if (retries < MAX_INIT_RETRANS) {
-                        this.setNextRun(getT1());
+                        init.setRunnable(this, System.currentTimeMillis() + getT1());
                     }
                 } else {
                     Log.debug("T1 init timer expired with nothing to do");
@@ -214,18 +178,22 @@ public class ThreadedAssociation extends Association implements Runnable {
             }
         };
         sendInit();
-        init.setNextRun(getT1());
+        init.setRunnable(tick, System.currentTimeMillis() + getT1());
     }
 
     public BlockingSCTPStream mkStream(int id) {
-        Log.debug("Make new Blocking stream " + id);
+        LazyLog.debug(() -> "Make new Blocking stream " + id);
         return new BlockingSCTPStream(this, id);
     }
 
     public SCTPStream mkStream(int sno, String label) throws StreamNumberInUseException, UnreadyAssociationException, SctpPacketFormatException, IOException, Exception {
-        SCTPStream sout = super.mkStream(sno, label);
+        return mkStream(sno, new DCOpen(label));
+    }
+
+    @Override
+    public SCTPStream mkStream(int sno, DCOpen dco) throws StreamNumberInUseException, UnreadyAssociationException, SctpPacketFormatException, IOException, Exception {
+        SCTPStream sout = super.mkStream(sno, dco);
         if (sout != null) {
-            DCOpen dco = new DCOpen(label);
             SCTPMessage mess = makeMessage(dco, sout);
             sendAndBlock(mess);
         }
@@ -237,127 +205,140 @@ public class ThreadedAssociation extends Association implements Runnable {
     }
 
     public void enqueue(DataChunk[] ds) {
-
-        // todo - this worries me - 2 nested synchronized 
-        Log.verb(" Aspiring to enqueue " + ds[0].toString());
-
+        LazyLog.verb(() -> " Aspiring to enqueue " + ds[0].toString());
         synchronized (this) {
             long now = System.currentTimeMillis();
             for (DataChunk d : ds) {
-                d.setTsn(_nearTSN++);
-                d.setGapAck(false);
-                d.setRetryTime(now + getT3() - 1);
-                d.setSentTime(now);
-                reduceRwnd(d.getDataSize());
-                //_outbound.put(new Long(d.getTsn()), d);
-                Log.verb(" DataChunk enqueued " + d.toString());
-                // all sorts of things wrong here - being in a synchronized not the least of them
-            }
-            Chunk[] toSend = ds;
-
-            try {
-                send(toSend);
-                for (DataChunk d : ds) {
-                    Log.verb("sent, syncing on inFlight... " + d.getTsn());
-                    synchronized (_inFlight) {
-                        _inFlight.put(new Long(d.getTsn()), d);
-                    }
-                    Log.verb("added to inFlight... " + d.getTsn());
-                }
-            } catch (SctpPacketFormatException ex) {
-                Log.error("badly formatted chunks " +ex);
-            } catch (java.io.EOFException end) {
-                unexpectedClose(end);
-            } catch (IOException ex) {
-                Log.error("Can not send chunks ");
+                queue(d, now);
             }
         }
-        Log.verb("leaving enqueue" + ds[0].getTsn());
-
+        flush();
+        LazyLog.verb(() -> "leaving enqueue" + ds[0].getTsn());
     }
 
     @Override
     public void enqueue(DataChunk d) {
-        // todo - this worries me - 2 nested synchronized 
-        Log.verb(" Aspiring to enqueue " + d.toString());
-
+        LazyLog.verb(() -> " Aspiring to enqueue " + d.toString());
         synchronized (this) {
-            long now = System.currentTimeMillis();
-            d.setTsn(_nearTSN++);
-            d.setGapAck(false);
-            d.setRetryTime(now + getT3() - 1);
-            d.setSentTime(now);
-            reduceRwnd(d.getDataSize());
-            //_outbound.put(new Long(d.getTsn()), d);
-            Log.verb(" DataChunk enqueued " + d.toString());
-            // all sorts of things wrong here - being in a synchronized not the least of them
-
-            Chunk[] toSend = addSackIfNeeded(d);
+            queue(d, System.currentTimeMillis());
+        }
+        flush();
+        LazyLog.verb(() -> "leaving enqueue" + d.getTsn());
+    }
+
+    /**
+     * Whoever is sending fragments everyone's queued messages, in the order
+     * the stream scheduler picks, until their own has gone. With I-DATA (RFC
+     * 8260) the fragments of a message need not have consecutive TSNs, so
+     * the scheduler gets to pick for each chunk - a big message needn't hold
+     * up the other streams.
+     */
+    public void sendAndBlock(SCTPMessage m) throws Exception {
+        if (!this.isAssociated()) {
+            throw new IllegalStateException("not associated");
+        }
+        _outbound.add(m);
+        if (_outbound.awaitTurn(m)) {
             try {
-                send(toSend);
-                Log.verb("sent, syncing on inFlight... " + d.getTsn());
-                synchronized (_inFlight) {
-                    _inFlight.put(new Long(d.getTsn()), d);
+                synchronized (this) {
+                    while (_outbound.hasMoreData(m)) {
+                        DataChunk dc = freeBlock();
+                        _outbound.fill(dc, usesIData());
+                        queueWhenAllowed(dc);
+                    }
                 }
-                Log.verb("added to inFlight... " + d.getTsn());
-
-            } catch (SctpPacketFormatException ex) {
-                Log.error("badly formatted chunk " + d.toString());
-            } catch (java.io.EOFException end) {
-                unexpectedClose(end);
-            } catch (IOException ex) {
-                Log.error("Can not send chunk " + d.toString());
+            } finally {
+                _outbound.doneSending();
             }
         }
-        Log.verb("leaving enqueue" + d.getTsn());
+        flush();
+    }
 
+    /**
+     * Replace the default round robin stream scheduler - before anything is
+     * sent.
+     */
+    public void setStreamScheduler(StreamScheduler scheduler) {
+        _outbound.setScheduler(scheduler);
     }
 
-    public synchronized void sendAndBlock(SCTPMessage m) throws Exception {
-        if (!this.isAssociated()) {
-            throw new IllegalStateException("not associated");
+    // must hold this
+    private DataChunk freeBlock() throws InterruptedException {
+        if (_freeBlocks.isEmpty()) {
+            // blocks only come back when acked - so get them sent.
+            flush();
         }
-        while (m.hasMoreData()) {
-            DataChunk dc = _freeBlocks.take();
-            dc.clean();
-            m.fill(dc);
-            Log.verb("thinking about waiting for congestion " + dc.getTsn());
+        DataChunk dc = _freeBlocks.take();
+        dc.clean();
+        return dc;
+    }
 
-            synchronized (_congestion) {
-                Log.verb("In congestion sync block ");
-                while (!this.maySend(dc.getDataSize())) {
-                    Log.verb("about to wait for congestion for " + this.getT3());
-                    if (this.isAssociated()) {
-                        _congestion.wait(1000);// wholly wrong
-                    } else {
-                        throw new IllegalStateException("not associated");
-                    }
+    // must hold this - waits for the congestion and receive windows to allow dc
+    private void queueWhenAllowed(DataChunk dc) throws InterruptedException {
+        LazyLog.verb(() -> "thinking about waiting for congestion " + dc.getTsn());
+        if (!this.maySend(dc.getDataSize())) {
+            // get what we have queued out so the SACKs can open the window
+            flush();
+        }
+        synchronized (_congestion) {
+            Log.verb("In congestion sync block ");
+            while (!this.maySend(dc.getDataSize())) {
+                LazyLog.verb(() -> "about to wait for congestion for " + this.getT3());
+                if (this.isAssociated()) {
+                    _congestion.wait(getT3());
+                } else {
+                    throw new IllegalStateException("not associated");
                 }
             }
-            // todo check rollover - will break at maxint.
-            enqueue(dc);
+        }
+        // todo check rollover - will break at maxint.
+        queue(dc, System.currentTimeMillis());
+        if (_packetizer.isFull()) {
+            flush();
         }
     }
 
-    /**
-     * try and create a sack packet - if we have any new acks to send or null if
-     * we don't
-     *
-     * @return
+    /*
+     Before an endpoint transmits a DATA chunk, if any received DATA
+     chunks have not been acknowledged (e.g., due to delayed ack), the
+     sender should create a SACK and bundle it with the outbound DATA
+     chunk, as long as the size of the final SCTP packet does not exceed
+     the current MTU.  See Section 6.2.
+
+     So we don't send here - the packetizer bundles the queued DATA with
+     any pending SACK. Must hold this so that TSNs are queued in order.
      */
-    private Chunk[] addSackIfNeeded(DataChunk d) {
-        /*
-         Before an endpoint transmits a DATA chunk, if any received DATA
-         chunks have not been acknowledged (e.g., due to delayed ack), the
-         sender should create a SACK and bundle it with the outbound DATA
-         chunk, as long as the size of the final SCTP packet does not exceed
-         the current MTU.  See Section 6.2.
-         */
-        // ToDo - check on unacked recvs (why?)
-        // and then check on size - will it fit?
-        // then add sack
-        Chunk[] ret = {d};
-        return ret;
+    private void queue(DataChunk d, long now) {
+        d.setTsn(_nearTSN++);
+        if (usesIData()) {
+            // chunks handed to enqueue() may not have been filled by a message
+            d.setIData(true);
+        }
+        d.setGapAck(false);
+        d.setRetryTime(now + getT3() - 1);
+        d.setSentTime(now);
+        reduceRwnd(d.getDataSize());
+        _cc.onSent(d.getDataSize());
+        _lastSent = now;
+        // in flight before it hits the wire - a quick SACK must be able to find it
+        synchronized (_inFlight) {
+            _inFlight.add(d);
+        }
+        armT3(d.getRetryTime());
+        _packetizer.queueData(d);
+        LazyLog.verb(() -> " DataChunk enqueued " + d.toString());
+    }
+
+    private void flush() {
+        try {
+            _packetizer.flush();
+        } catch (SctpPacketFormatException ex) {
+            Log.error("badly formatted chunks " + ex);
+        } catch (EOFException end) {
+            unexpectedClose(end);
+        } catch (IOException ex) {
+            Log.error("Can not send chunks ");
+        }
     }
 
 
@@ -402,9 +383,9 @@ public class ThreadedAssociation extends Association implements Runnable {
      */
     protected Chunk[] inboundInit(InitChunk init) {
         _rwnd = init.getAdRecWinCredit();
-        Log.debug("Inited rwnd to " + _rwnd);
+        LazyLog.debug(() -> "Inited rwnd to " + _rwnd);
 
-        setSsthresh(init);
+        _cc.setInitialSsthresh(_rwnd);
         return super.inboundInit(init);
     }
 
@@ -419,7 +400,7 @@ public class ThreadedAssociation extends Association implements Runnable {
         if (_rwnd < 0) {
             _rwnd = 0;
         }
-        Log.debug("Decreased rwnd to " + _rwnd);
+        LazyLog.debug(() -> "Decreased rwnd to " + _rwnd);
     }
 
     /*
@@ -433,7 +414,7 @@ public class ThreadedAssociation extends Association implements Runnable {
      */
     private void incrRwnd(int dataSize) {
         _rwnd += dataSize;
-        Log.debug("Increased rwnd to " + _rwnd);
+        LazyLog.debug(() -> "Increased rwnd to " + _rwnd);
     }
 
     /*
@@ -453,16 +434,12 @@ public class ThreadedAssociation extends Association implements Runnable {
      which the DATA chunk was originally transmitted, then T3-rtx
      is started for that destination address.
 
-     iv) If the Cumulative TSN Ack matches or exceeds the Fast
-     Recovery exitpoint (Section 7.2.4), Fast Recovery is exited.
-
      */
     private void releaseAllBlocks() {
         synchronized (_inFlight) {
-            Collection<DataChunk> vals = _inFlight.values();
-            _freeBlocks.addAll(vals);
-            _inFlight.clear();
+            _inFlight.drainTo(_freeBlocks);
         }
+        _cc.reset();
     }
 
     @Override
@@ -478,25 +455,28 @@ public class ThreadedAssociation extends Association implements Runnable {
         if (sack.getCumuTSNAck() >= this._lastCumuTSNAck) {
             long ackedTo = sack.getCumuTSNAck();
             int totalAcked = 0;
+            long highestNewlyAcked = ackedTo;
+            long highestReported = ackedTo;
             long now = System.currentTimeMillis();
             // interesting SACK
             // process acks
             synchronized (_inFlight) {
-                ArrayList<Long> removals = new ArrayList();
-                for (Long k : _inFlight.keySet()) {
-                    if (k <= ackedTo) {
-                        removals.add(k);
+                DataChunk d;
+                while (null != (d = _inFlight.pollAcked(ackedTo))) {
+                    if (d.isAbandoned()) {
+                        // given up on - neither a delivery nor an RTT sample
+                    } else {
+                        if (!d.getGapAck()) {
+                            // already counted when the gap block first acked it
+                            totalAcked += d.getDataSize();
+                        }
+                        /*
+                         todo     IMPLEMENTATION NOTE: RTT measurements should only be made using
+                         a chunk with TSN r if no chunk with TSN less than or equal to r
+                         is retransmitted since r is first sent.
+                         */
+                        setRTO(now - d.getSentTime());
                     }
-                }
-                for (Long k : removals) {
-                    DataChunk d = _inFlight.remove(k);
-                    totalAcked += d.getDataSize();
-                    /*
-                     todo     IMPLEMENTATION NOTE: RTT measurements should only be made using
-                     a chunk with TSN r if no chunk with TSN less than or equal to r
-                     is retransmitted since r is first sent.
-                     */
-                    setRTO(now - d.getSentTime());
                     try {
                         int sid = d.getStreamId();
                         SCTPStream stream = getStream(sid);
@@ -519,45 +499,53 @@ public class ThreadedAssociation extends Association implements Runnable {
              Start) and less than or equal to (Cumulative TSN Ack + Gap Ack
              Block End) of each Gap Ack Block are assumed to have been received
              correctly.
-             */
-            for (SackChunk.GapBlock gb : sack.getGaps()) {
-                long ts = gb.getStart() + ackedTo;
-                long te = gb.getEnd() + ackedTo;
-                synchronized (_inFlight) {
-                    for (long t = ts; t <= te; t++) {
-                        Long l = new Long(t);
-                        DataChunk d = _inFlight.get(l);
-                        Log.verb("gap block says far end has seen " + l);
 
-                        if (d == null) {
-                            Log.debug("Huh? gap for something not inFlight ?!? " + l);
-                        } else {
-                            d.setGapAck(true);
-                            totalAcked += d.getDataSize();
-                        }
-                    }
-                }
-            }
-            /*
-             ii) Set rwnd equal to the newly received a_rwnd minus the number
-             of bytes still outstanding after processing the Cumulative
-             TSN Ack and the Gap Ack Blocks.
+             Blocks are repeated in every SACK until the cumulative ack
+             passes them, so the in flight ring only visits TSNs that no
+             earlier block covered.
              */
-            int totalDataInFlight = 0;
+            long totalDataInFlight;
             synchronized (_inFlight) {
-                for (Long k : _inFlight.keySet()) {
-                    DataChunk d = _inFlight.get(k);
-                    if (!d.getGapAck()) {
-                        totalDataInFlight += d.getDataSize();
+                for (SackChunk.GapBlock gb : sack.getGaps()) {
+                    long ts = gb.getStart() + ackedTo;
+                    long te = gb.getEnd() + ackedTo;
+                    LazyLog.verb(() -> "gap block says far end has seen " + ts + " to " + te);
+                    highestReported = te;
+                    totalAcked += _inFlight.gapAck(ts, te);
+                    if (_inFlight.getLastNewlyAcked() > highestNewlyAcked) {
+                        highestNewlyAcked = _inFlight.getLastNewlyAcked();
                     }
                 }
+                /*
+                 ii) Set rwnd equal to the newly received a_rwnd minus the number
+                 of bytes still outstanding after processing the Cumulative
+                 TSN Ack and the Gap Ack Blocks.
+                 */
+                totalDataInFlight = _inFlight.getOutstanding();
             }
 
             this._rwnd = sack.getArWin() - totalDataInFlight;
-            Log.debug("Setting rwnd to " + _rwnd + " " + sack.getArWin() + " - " + totalDataInFlight);
+            LazyLog.debug(() -> "Setting rwnd to " + _rwnd + " " + sack.getArWin() + " - " + totalDataInFlight);
             boolean advanced = (_lastCumuTSNAck < ackedTo);
-            adjustCwind(advanced, totalDataInFlight, totalAcked);
+            /*
+             iv) If the Cumulative TSN Ack matches or exceeds the Fast
+             Recovery exitpoint (Section 7.2.4), Fast Recovery is exited.
+             */
+            if (_fastRecovery && (ackedTo >= _fastRecoveryExitPoint)) {
+                LazyLog.debug(() -> "Leaving fast recovery at " + ackedTo);
+                _fastRecovery = false;
+            }
+            _cc.onSack(advanced, totalAcked, _fastRecovery);
             _lastCumuTSNAck = ackedTo;
+            fastRetransmit(countMisses(highestNewlyAcked, highestReported, advanced));
+            sendMarked();
+            ForwardTsnChunk fwd = mkForwardTsn();
+            if (fwd != null) {
+                ret = new Chunk[]{fwd};
+            }
+            synchronized (_congestion) {
+                _congestion.notifyAll();
+            }
 
         } else {
             Log.debug("Dumping Sack - already seen later sack.");
@@ -565,147 +553,130 @@ public class ThreadedAssociation extends Association implements Runnable {
         return ret;
     }
 
-    /* 
-    
-     7.2.1.  Slow-Start
-
-     Beginning data transmission into a network with unknown conditions or
-     after a sufficiently long idle period requires SCTP to probe the
-     network to determine the available capacity.  The slow-start
-     algorithm is used for this purpose at the beginning of a transfer, or
-     after repairing loss detected by the retransmission timer.
-
-     o  The initial cwnd before DATA transmission or after a sufficiently
-     long idle period MUST be set to min(4*MTU, max (2*MTU, 4380
-     bytes)).
-     */
-    protected void resetCwnd() {
-
-        _cwnd = Math.min(4 * _transpMTU, Math.max(2 * _transpMTU, 4380));
-        synchronized (_congestion) {
-            _congestion.notifyAll();
-        }
-    }
-
     /*
-     o  The initial cwnd after a retransmission timeout MUST be no more
-     than 1*MTU.
+     o  Whenever cwnd is greater than zero, the endpoint is allowed to
+     have cwnd bytes of data outstanding on that transport address.
      */
-    protected void setCwndPostRetrans() {
-        _cwnd = _transpMTU;
-        synchronized (_congestion) {
-            _congestion.notifyAll();
-        }
+    boolean maySend(int sz) {
+        boolean maysend = (sz <= _rwnd) && _cc.maySend(sz);
+        LazyLog.debug(() -> "MaySend " + maysend + " rwnd = " + _rwnd + " " + _cc + " sz = " + sz);
+        return maysend;
     }
 
-    /*
-    
+    public CongestionController getCongestionController() {
+        return _cc;
+    }
 
-     o  The initial value of ssthresh MAY be arbitrarily high (for
-     example, implementations MAY use the size of the receiver
-     advertised window).
-     */
-    void setSsthresh(InitChunk init) {
-        this._ssthresh = init.getAdRecWinCredit();
+    // data bytes sent but not yet acked or abandoned
+    long getOutstanding() {
+        synchronized (_inFlight) {
+            return _inFlight.getOutstanding();
+        }
     }
 
     /*
-     o  Whenever cwnd is greater than zero, the endpoint is allowed to
-     have cwnd bytes of data outstanding on that transport address.
+     7.2.4.  Fast Retransmit on Gap Reports
+
+     Whenever an endpoint receives a SACK that indicates that some TSNs
+     are missing, it SHOULD wait for two further miss indications (via
+     subsequent SACKs for a total of three missing reports) on the same
+     TSNs before taking action with regard to Fast Retransmit.
+
+     Miss indications SHOULD follow the HTNA (Highest TSN Newly
+     Acknowledged) algorithm.  For each incoming SACK, miss indications
+     are incremented only for missing TSNs prior to the highest TSN newly
+     acknowledged in the SACK.  A newly acknowledged DATA chunk is one not
+     previously acknowledged in a SACK.  If an endpoint is in Fast
+     Recovery and a SACK arrives that advances the Cumulative TSN Ack
+     Point, the miss indications are incremented for all TSNs reported
+     missing in the SACK.
      */
-    boolean maySend(int sz) {
-        // todo somehow take account of stuff sent without and sacks yet.......
-        boolean maysend = (sz <= _rwnd);
-        /*
-        if (!maysend) {
-            maysend = (sz <= _cwnd);
-            _cwnd -= sz;
+    private ArrayList<DataChunk> countMisses(long htna, long highestReported, boolean advanced) {
+        long limit = (_fastRecovery && advanced) ? highestReported : htna;
+        ArrayList<DataChunk> ret = new ArrayList();
+        synchronized (_inFlight) {
+            _inFlight.countMisses(limit, 3, ret);
         }
-        Log.debug("MaySend " + maysend + " rwnd = " + _rwnd + " cwnd = " + _cwnd + " sz = " + sz);
-         */
-        Log.debug("MaySend (simple version ignores cwnd)" + maysend + " rwnd = " + _rwnd + " sz = " + sz);
-
-        return maysend;
+        return ret;
     }
 
     /*
-     o  When cwnd is less than or equal to ssthresh, an SCTP endpoint MUST
-     use the slow-start algorithm to increase cwnd only if the current
-     congestion window is being fully utilized, an incoming SACK
-     advances the Cumulative TSN Ack Point, and the data sender is not
-     in Fast Recovery.  Only when these three conditions are met can
-     the cwnd be increased; otherwise, the cwnd MUST not be increased.
-     If these conditions are met, then cwnd MUST be increased by, at
-     most, the lesser of 1) the total size of the previously
-     outstanding DATA chunk(s) acknowledged, and 2) the destination's
-     path MTU.  This upper bound protects against the ACK-Splitting
-     attack outlined in [SAVAGE99].
+     When the third consecutive miss indication is received for a TSN(s),
+     the data sender shall do the following:
+
+     1)  Mark the DATA chunk(s) with three miss indications for
+     retransmission.
+
+     2)  If not in Fast Recovery, adjust the ssthresh and cwnd of the
+     destination address(es) to which the missing DATA chunks were
+     last sent, according to the formula described in Section 7.2.3.
+
+     3)  Determine how many of the earliest (i.e., lowest TSN) DATA chunks
+     marked for retransmission will fit into a single packet, subject
+     to constraint of the path MTU of the destination transport
+     address to which the packet is being sent.  Call this value K.
+     Retransmit those K DATA chunks in a single packet.  When a Fast
+     Retransmit is being performed, the sender SHOULD ignore the value
+     of cwnd and SHOULD NOT delay retransmission for this packet.
+
+     4)  Restart the T3-rtx timer only if the last SACK acknowledged the
+     lowest outstanding TSN number sent to that address, or the
+     endpoint is retransmitting the first outstanding DATA chunk sent
+     to that address.
+
+     5)  Mark the DATA chunk(s) as being fast retransmitted and thus
+     ineligible for a subsequent Fast Retransmit.
+
+     Note: Before the above adjustments, if the received SACK also
+     acknowledges new DATA chunks and advances the Cumulative TSN Ack
+     Point, the cwnd adjustment rules defined in Section 7.2.1 and
+     Section 7.2.2 must be applied first.
+
+     We only send one packet per SACK - marked chunks that don't fit
+     stay eligible and go in the packet triggered by the next SACK
+     (or get picked up by T3).
      */
-    protected void adjustCwind(boolean didAdvance, int inFlightBytes, int totalAcked) {
-        boolean fullyUtilized = ((inFlightBytes - _cwnd) < DataChunk.getCapacity()); // could we fit one more in?
-
-        if (_cwnd <= _ssthresh) {
-            // slow start
-            Log.debug("slow start");
-
-            if (didAdvance && fullyUtilized && !_fastRecovery) {
-                int incCwinBy = Math.min(_transpMTU, totalAcked);
-                _cwnd += incCwinBy;
-                Log.debug("cwnd now " + _cwnd);
-            } else {
-                Log.debug("cwnd static at " + _cwnd + " (didAdvance fullyUtilized  _fastRecovery inFlightBytes totalAcked)  " + didAdvance + " " + fullyUtilized + " " + _fastRecovery + " " + inFlightBytes + " " + totalAcked);
+    private void fastRetransmit(ArrayList<DataChunk> marked) {
+        if (marked.isEmpty()) {
+            return;
+        }
+        if (!_fastRecovery) {
+            _fastRecovery = true;
+            _fastRecoveryExitPoint = _nearTSN - 1;
+            _cc.onFastRetransmit();
+            LazyLog.debug(() -> "Entering fast recovery, exit point is " + _fastRecoveryExitPoint);
+        }
+        long now = System.currentTimeMillis();
+        ArrayList<DataChunk> k = new ArrayList();
+        int space = getMTU() - 12; // common header
+        for (DataChunk d : marked) {
+            if (d.isAbandoned() || abandoned(d, now)) {
+                continue;
             }
-
-        } else /*
-             7.2.2.  Congestion Avoidance
-
-             When cwnd is greater than ssthresh, cwnd should be incremented by
-             1*MTU per RTT if the sender has cwnd or more bytes of data
-             outstanding for the corresponding transport address.
-
-             In practice, an implementation can achieve this goal in the following
-             way:
-
-             o  partial_bytes_acked is initialized to 0.
-
-             o  Whenever cwnd is greater than ssthresh, upon each SACK arrival
-             that advances the Cumulative TSN Ack Point, increase
-             partial_bytes_acked by the total number of bytes of all new chunks
-             acknowledged in that SACK including chunks acknowledged by the new
-             Cumulative TSN Ack and by Gap Ack Blocks.
-
-             o  When partial_bytes_acked is equal to or greater than cwnd and
-             before the arrival of the SACK the sender had cwnd or more bytes
-             of data outstanding (i.e., before arrival of the SACK, flightsize
-             was greater than or equal to cwnd), increase cwnd by MTU, and
-             reset partial_bytes_acked to (partial_bytes_acked - cwnd).
-
-             o  Same as in the slow start, when the sender does not transmit DATA
-             on a given transport address, the cwnd of the transport address
-             should be adjusted to max(cwnd / 2, 4*MTU) per RTO.
-
-
-
-
-
-             Stewart                     Standards Track                    [Page 97]
-
-             RFC 4960          Stream Control Transmission Protocol    September 2007
-
-
-             o  When all of the data transmitted by the sender has been
-             acknowledged by the receiver, partial_bytes_acked is initialized
-             to 0.
-
-         */ if (didAdvance) {
-            _partial_bytes_acked += totalAcked;
-            if ((_partial_bytes_acked >= _cwnd) && fullyUtilized) {
-                _cwnd += _transpMTU;
-                _partial_bytes_acked -= _cwnd;
+            int len = d.getChunkLength();
+            len += (4 - (len % 4)) % 4;
+            if (!k.isEmpty() && (len > space)) {
+                break;
+            }
+            space -= len;
+            k.add(d);
+            d.incrementResends();
+            d.setFastRetransmitted(true);
+            synchronized (_inFlight) {
+                _inFlight.resent(d);
+                _inFlight.setRetryTime(d, now + getT3() - 1);
             }
         }
-        synchronized (_congestion) {
-            _congestion.notifyAll();
+        if (k.isEmpty()) {
+            return; // all given up on
+        }
+        try {
+            LazyLog.debug(() -> "Fast retransmit of " + k.size() + " chunks starting at " + k.get(0).getTsn());
+            send(k.toArray(new DataChunk[k.size()]));
+        } catch (EOFException end) {
+            unexpectedClose(end);
+        } catch (Exception ex) {
+            Log.error("Cant send fast retransmit " + ex.toString());
         }
     }
 
@@ -743,66 +714,306 @@ public class ThreadedAssociation extends Association implements Runnable {
      max(cwnd/2, 4*MTU) per RTO.
 
      */
-    // resend loop - runs on it's own thread.
+    // T3-rtx expiry - run by the shared timer wheel.
     @Override
     public void run() {
-        Log.verb("starting retry thread");
-        while (retryThread != null) {
-            long now = System.currentTimeMillis();
-            long nextTime = now + t3;
-            Log.verb("retry timer went off ");
-            if (canSend()) {
-                ArrayList<DataChunk> dcs = new ArrayList();
-                synchronized (_inFlight) {
-                    Log.verb("have " + _inFlight.values().stream().count() + " data chunks in flight");
-                    Log.verb("have " + _inFlight.values().stream().mapToInt((d) -> d.getDataSize()).sum() + " data bytes in flight");
-                    _inFlight.values().stream()
-                            .filter((d) -> (d.getRetryTime() <= now))
-                            .sorted().filter((d) -> !d.getGapAck()).forEachOrdered((d) -> {
-                        Log.verb("adding this to resend list " + d.toString());
-                        dcs.add(d);
-                    }
-                    );
+        synchronized (_t3) {
+            if (_t3At == Long.MIN_VALUE) {
+                return; // closed
+            }
+            _t3At = Long.MAX_VALUE;
+            _t3Running = true;
+        }
+        long next = Long.MAX_VALUE;
+        try {
+            next = t3Expired(System.currentTimeMillis());
+        } finally {
+            synchronized (_t3) {
+                _t3Running = false;
+                if (_t3At != Long.MIN_VALUE) {
+                    // anything armed meanwhile was held back until now
+                    long at = Math.min(next, _t3At);
+                    _t3At = Long.MAX_VALUE;
+                    armT3(at);
+                }
+            }
+        }
+    }
+
+    /*
+     6.3.2.  Retransmission Timer Rules
+
+     R1)  Every time a DATA chunk is sent to any address (including a
+     retransmission), if the T3-rtx timer of that address is not
+     running, start it running so that it will expire after the RTO
+     of that address.
+
+     R2)  Whenever all outstanding data sent to an address have been
+     acknowledged, turn off the T3-rtx timer of that address.
+
+     R3)  Whenever a SACK is received that acknowledges the DATA chunk
+     with the earliest outstanding TSN for that address, restart the
+     T3-rtx timer for that address with its current RTO (if there is
+     still outstanding data on that address).
+
+     Each chunk carries its own retry time, and the in flight chunks are
+     kept ordered by it, so one timer per association set for the earliest
+     of those does all three - acked chunks simply drop out of the order.
+
+     Only one expiry runs at a time - while one does, arming just notes the
+     earliest time asked for and the expiry sets the timer as it finishes.
+     */
+    private void armT3(long at) {
+        synchronized (_t3) {
+            if (at < _t3At) {
+                _t3At = at;
+                if (!_t3Running) {
+                    _t3Timer.setRunnable(this, at);
                 }
-// this isn't efficient - lots of small packets. limit it to 5 for now
-                int count = 0;
-
-                while (!dcs.isEmpty() && count < 5) {
-                    DataChunk[] da = new DataChunk[1];
-                    DataChunk d = dcs.remove(0);
-                    da[0] = d;
-                    d.setRetryTime(now + getT3() - 1);
+            }
+        }
+    }
+
+    /*
+     6.3.3.  Handle T3-rtx Expiration
+
+     Whenever the retransmission timer T3-rtx expires for a destination
+     address, do the following:
+
+     E1)  For the destination address for which the timer expires, adjust
+     its ssthresh with rules defined in Section 7.2.3 and set the
+     cwnd <- MTU.
+
+     E2)  For the destination address for which the timer expires, set RTO
+     <- RTO * 2 ("back off the timer").  The maximum value discussed
+     in rule C7 above (RTO.max) may be used to provide an upper bound
+     to this doubling operation.
+
+     E3)  Determine how many of the earliest (i.e., lowest TSN) outstanding
+     DATA chunks for the address for which the T3-rtx has expired will
+     fit into a single packet, subject to the MTU constraint for the
+     path corresponding to the destination transport address to which
+     the retransmission is being sent (this may be different from the
+     address for which the timer expires; see Section 6.4).  Call this
+     value K.  Bundle and retransmit those K DATA chunks in a single
+     packet to the destination endpoint.
+
+     E4)  Start the retransmission timer T3-rtx on the destination address
+     to which the retransmission is sent, if rule R1 above indicates
+     to do so.
+
+     The rest of what is due is marked for retransmission and goes, lowest
+     TSN first, as SACKs open the (now one MTU) congestion window - see
+     sendMarked().
+
+     Returns when the timer next needs to run - when nothing is in flight
+     that's an RTO away, to check for idleness.
+     */
+    private long t3Expired(long now) {
+        Log.verb("retry timer went off ");
+        if (canSend()) {
+            ArrayList<DataChunk> dcs = new ArrayList();
+            synchronized (_inFlight) {
+                LazyLog.verb(() -> "have " + _inFlight.size() + " data chunks in flight");
+                LazyLog.verb(() -> "have " + _inFlight.getOutstanding() + " data bytes outstanding");
+                _inFlight.due(now, dcs);
+                if (!dcs.isEmpty()) {
+                    backOffRTO();
+                }
+            }
+            boolean expired = !dcs.isEmpty();
+            // anything past its lifetime or retransmit budget is given up on, not resent
+            dcs.removeIf((d) -> d.isAbandoned() || abandoned(d, now));
+            synchronized (_inFlight) {
+                for (DataChunk d : dcs) {
+                    _inFlight.setRetryTime(d, now + getT3() - 1);
                     d.incrementRetryCount();
-                    try {
-                        Log.debug("Sending retry for  " + d);
-                        this.send(da);
-                        count++;
-                    } catch (java.io.EOFException end) {
-                        if (Log.getLevel() >= Log.DEBUG) {
-                            Log.debug("Retry send failed " + end.getMessage());
-                            end.printStackTrace();
+                    d.incrementResends();
+                }
+            }
+            if (expired) {
+                _fastRecovery = false;
+                _cc.onRetransmitTimeout();
+                Collections.sort(dcs);
+                int space = getMTU() - 12; // common header
+                int k = 0;
+                boolean full = false;
+                synchronized (_inFlight) {
+                    for (DataChunk d : dcs) {
+                        int len = d.getChunkLength();
+                        len += (4 - (len % 4)) % 4;
+                        full |= (k > 0) && (len > space);
+                        if (full) {
+                            _inFlight.mark(d);
+                        } else {
+                            space -= len;
+                            k++;
+                            _inFlight.resent(d);
                         }
-                        unexpectedClose(end);
-                        count = Integer.MAX_VALUE; // force exit
-                    } catch (Exception ex) {
-                        Log.error("Cant send retry - eek " + ex.toString());
                     }
                 }
-                if (count > 0) {
-                    setCwndPostRetrans();
+                sendRetries(new ArrayList(dcs.subList(0, k)));
+            } else if ((_lastSent != 0) && (now - _lastSent >= getT3())) {
+                // idle for an RTO - decay cwnd, once per RTO
+                _cc.onIdle();
+                _lastSent = now;
+            }
+            // (re)tell the far end what we've given up on - in case it missed it
+            sendForwardTsn(mkForwardTsn());
+        } else {
+            Log.verb("Can't send");
+        }
+        long next;
+        synchronized (_inFlight) {
+            next = _inFlight.nextRetryTime();
+        }
+        return Math.min(next, now + getT3());
+    }
+
+    /*
+     RFC 3758 3.5
+
+     A1) The sender maintains an "Advanced.Peer.Ack.Point" for each peer to
+     track a theoretical cumulative TSN point of the peer.
+
+     A2) From time to time, as dictated by the PR-SCTP service, the data
+     sender may decide to mark certain DATA chunks as "abandoned".
+     ...
+     A3) When a TSN is "abandoned", if it is part of a fragmented message,
+     all other TSN's within that fragmented message MUST be abandoned
+     at the same time.
+
+     We decide when a chunk is due for a resend - so that is when we check
+     its policy. What was in flight will never be acked now, so it comes out
+     of the congestion controller's flight size here.
+     */
+    private boolean abandoned(DataChunk d, long now) {
+        if (!mayForwardTSN() || !d.isAbandonable(now)) {
+            return false;
+        }
+        int n;
+        synchronized (_inFlight) {
+            n = _inFlight.abandon(d);
+            _cc.onAbandoned(_inFlight.getLastAbandoned());
+        }
+        LazyLog.debug(() -> "Abandoned " + n + " chunks of message " + d.getSSeqNo() + " on stream " + d.getStreamId());
+        return true;
+    }
+
+    /*
+     C2) Try to further advance the "Advanced.Peer.Ack.Point" locally,
+     that is, to move "Advanced.Peer.Ack.Point" up as long as the chunk
+     next in the out-queue space is marked as "abandoned".
+
+     C3) If, after step C1 and C2, the "Advanced.Peer.Ack.Point" is greater
+     than the Cumulative TSN ACK carried in the received SACK, the data
+     sender MUST send the data receiver a FORWARD TSN chunk containing
+     the latest value of the "Advanced.Peer.Ack.Point".
+
+     Returns null if there is nothing to skip.
+     */
+    private ForwardTsnChunk mkForwardTsn() {
+        if (!mayForwardTSN()) {
+            return null;
+        }
+        ForwardTsnChunk fwd = new ForwardTsnChunk(usesIData());
+        long point;
+        synchronized (_inFlight) {
+            point = _inFlight.advancePeerAckPoint(_lastCumuTSNAck, fwd);
+        }
+        if (point <= _lastCumuTSNAck) {
+            return null;
+        }
+        fwd.setNewCumulativeTSN(point);
+        LazyLog.debug(() -> "Advanced peer ack point to " + point);
+        return fwd;
+    }
+
+    private void sendForwardTsn(ForwardTsnChunk fwd) {
+        if (fwd == null) {
+            return;
+        }
+        try {
+            send(new Chunk[]{fwd});
+        } catch (EOFException end) {
+            unexpectedClose(end);
+        } catch (Exception ex) {
+            Log.error("Cant send forward TSN " + ex.toString());
+        }
+    }
+
+    /*
+     7.2.1.  Slow-Start
+
+     ...
+     o  Whenever cwnd is greater than zero, the endpoint is allowed to
+     have cwnd bytes of data outstanding on that transport address.
+
+     Chunks marked for retransmission by T3 were sent once and still count
+     in the flight size, but aren't in the network - so they may go while
+     the rest of the flight leaves them room in cwnd. They go ahead of any
+     new DATA, which maySend() holds back until they have.
+     */
+    private void sendMarked() {
+        long now = System.currentTimeMillis();
+        ArrayList<DataChunk> dcs = new ArrayList();
+        synchronized (_inFlight) {
+            long flight = _cc.getFlightSize() - _inFlight.getMarkedBytes();
+            DataChunk d;
+            while (null != (d = _inFlight.firstMarked())) {
+                _inFlight.resent(d);
+                if (abandoned(d, now)) {
+                    continue;
+                }
+                int sz = d.getDataSize();
+                if ((flight > 0) && (flight + sz > _cc.getCwnd())) {
+                    _inFlight.mark(d);
+                    break;
                 }
-            } else {
-                Log.verb("Can't send");
+                flight += sz;
+                _inFlight.setRetryTime(d, now + getT3() - 1);
+                dcs.add(d);
             }
-            try {
-                long toSleep = nextTime - now;
-                Log.verb("Will sleep for " + toSleep);
-                Thread.sleep(toSleep);
-            } catch (InterruptedException ex) {
-                Log.info("sleep was awoken.");
+        }
+        if (!dcs.isEmpty()) {
+            LazyLog.debug(() -> "Releasing " + dcs.size() + " marked retries");
+            sendRetries(dcs);
+        }
+    }
+
+    // pack retries (in TSN order) into as few packets as the MTU allows
+    private void sendRetries(ArrayList<DataChunk> dcs) {
+        ArrayList<DataChunk> pkt = new ArrayList();
+        int space = getMTU() - 12; // common header
+        for (int i = 0; i <= dcs.size(); i++) {
+            DataChunk d = (i < dcs.size()) ? dcs.get(i) : null;
+            int len = 0;
+            if (d != null) {
+                len = d.getChunkLength();
+                len += (4 - (len % 4)) % 4;
+            }
+            if (!pkt.isEmpty() && ((d == null) || (len > space))) {
+                try {
+                    LazyLog.debug(() -> "Sending " + pkt.size() + " retries starting at " + pkt.get(0).getTsn());
+                    this.send(pkt.toArray(new DataChunk[pkt.size()]));
+                } catch (EOFException end) {
+                    if (Log.getLevel() >= Log.DEBUG) {
+                        LazyLog.debug(() -> "Retry send failed " + end.getMessage());
+                        end.printStackTrace();
+                    }
+                    unexpectedClose(end);
+                    return;
+                } catch (Exception ex) {
+                    Log.error("Cant send retry - eek " + ex.toString());
+                }
+                pkt.clear();
+                space = getMTU() - 12;
+            }
+            if (d != null) {
+                pkt.add(d);
+                space -= len;
             }
         }
-        Log.verb("leaving retry thread");
     }
 
     private long getT1() {
@@ -860,25 +1071,32 @@ public class ThreadedAssociation extends Association implements Runnable {
             _srtt = (1 - _rtoAlpha) * _srtt + _rtoAlpha * cr;
             nrto = _srtt + 4 * _rttvar;
         }
-        Log.debug("new r =" + r + "candidate  rto is " + nrto);
+        _cc.onRtt(_srtt);
+        if (LazyLog.isDebug()) {
+            Log.debug("new r =" + r + "candidate  rto is " + nrto);
+        }
 
         if (nrto < _rtoMin) {
-            Log.debug("clamping min rto as " + nrto + " < " + _rtoMin);
+            if (LazyLog.isDebug()) {
+                Log.debug("clamping min rto as " + nrto + " < " + _rtoMin);
+            }
             nrto = _rtoMin;
         }
         if (nrto > _rtoMax) {
-            Log.debug("clamping max rto as " + nrto + " > " + _rtoMax);
+            if (LazyLog.isDebug()) {
+                Log.debug("clamping max rto as " + nrto + " > " + _rtoMax);
+            }
             nrto = _rtoMax;
         }
         if ((nrto < _rtoMax) && (nrto > _rtoMin)) {
             // if still out of range (i.e. a NaN) ignore it.
             _rto = nrto;
         }
-        Log.debug("new rto is " + _rto);
+        LazyLog.debug(() -> "new rto is " + _rto);
         t1 = (long) (_rto * 1000) * 10;
-        Log.debug("T1 is now " + t1 + " ms");
+        LazyLog.debug(() -> "T1 is now " + t1 + " ms");
         t3 = (_rto > 0.0) ? (long) (1000.0 * _rto) : 100;
-        Log.debug("T3 is now " + t3 + " ms");
+        LazyLog.debug(() -> "T3 is now " + t3 + " ms");
         /*
 
 
@@ -921,26 +1139,38 @@ public class ThreadedAssociation extends Association implements Runnable {
          */
     }
 
+    /*
+     E2) back off the timer - until the next RTT measurement resets it.
+     */
+    private void backOffRTO() {
+        t3 = Math.min(t3 * 2, (long) (_rtoMax * 1000));
+        _rto = t3 / 1000.0;
+        LazyLog.debug(() -> "T3 backed off to " + t3 + " ms");
+    }
+
     public void unexpectedClose(EOFException end) {
         super.unexpectedClose(end);
         releaseAllBlocks();
         synchronized (_congestion) {
             _congestion.notifyAll();
         }
-        retryThread = null;
+        synchronized (_t3) {
+            _t3Timer.cancel();
+            _t3At = Long.MIN_VALUE;
+        }
     }
 
-    // takes the callback invocation off the rcv thread
+    // takes the callback invocation off the rcv thread - in order
     private static class ExecutorAssociationListener implements AssociationListener, AutoCloseable {
 
         private final AssociationListener _appAl;
-        private final ExecutorService _ex;
+        private final Strand _ex;
         private int id = 0;
 
-        public ExecutorAssociationListener(AssociationListener al) {
+        public ExecutorAssociationListener(AssociationListener al, AssociationRuntime runtime) {
             _appAl = al;
-            id = __assocNo - 1;
-            _ex = Executors.newSingleThreadExecutor((Runnable r) -> new Thread(r, "Assoc-" + id + "-Exec"));
+            id = __assocNo;
+            _ex = new Strand(runtime.getCallbackExecutor(), "Assoc-" + id);
         }
 
         @Override
@@ -953,22 +1183,11 @@ public class ThreadedAssociation extends Association implements Runnable {
         @Override
         public void onDisAssociated(Association a) {
             if (_appAl != null) {
-                if (_ex.isTerminated()) {
-                    Log.warn("Executor terminated... - direct call made..");
+                if (_ex.isClosed()) {
+                    Log.warn("Executor closed... - direct call made..");
                     _appAl.onDisAssociated(a);
                 } else {
                     _ex.execute(() -> _appAl.onDisAssociated(a));
-                    try {
-                        _ex.awaitTermination(1000, TimeUnit.MILLISECONDS);
-                        this.close();
-                    } catch (Throwable x) {
-                        Log.warn("Timeout on " + this.toString());
-                        try {
-                            this.close();
-                        } catch (Throwable y) {
-                            ;
-                        }
-                    }
                 }
             }
         }
@@ -996,10 +1215,7 @@ public class ThreadedAssociation extends Association implements Runnable {
 
         @Override
         public void close() throws Exception {
-            if ((_ex != null) && (!_ex.isShutdown())) {
-                _ex.shutdownNow();
-                Log.warn("shutdown of " + "Assoc-" + id + "-Exec");
-            }
+            _ex.close();
         }
     }
 
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.runtime;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import pe.pi.sctp4j.sctp.HashedWheelTimer;
+import pe.pi.sctp4j.sctp.SCTPTimer;
+
+/**
+ * A virtual thread reading each association's transport, and one per
+ * callback - blocking is cheap so nothing need be shared.
+ *
+ * Timers come off a wheel of our own which runs each expiry on a fresh
+ * virtual thread too.
+ */
+public class VirtualThreadRuntime implements AssociationRuntime, AutoCloseable {
+
+    final static int TICK = 1000;
+
+    private final ExecutorService _callbacks;
+    private final HashedWheelTimer _wheel;
+
+    public static boolean isSupported() {
+        return true;
+    }
+
+    public VirtualThreadRuntime() {
+        _callbacks = Executors.newVirtualThreadPerTaskExecutor();
+        _wheel = new HashedWheelTimer(HashedWheelTimer.DEFAULT_TICK, HashedWheelTimer.DEFAULT_SIZE, "SCTPVirtualWheel", _callbacks);
+    }
+
+    @Override
+    public void startReceiver(String name, Receiver r) {
+        Thread.ofVirtual().name(name).start(() -> {
+            while (r.receive(TICK)) {
+            }
+        });
+    }
+
+    @Override
+    public Executor getCallbackExecutor() {
+        return _callbacks;
+    }
+
+    @Override
+    public SCTPTimer newTimer() {
+        return _wheel.newTimer();
+    }
+
+    /**
+     * stop running callbacks and timers, and let the wheel's thread go -
+     * receivers finish with their associations.
+     */
+    @Override
+    public void close() {
+        _wheel.stop();
+        _callbacks.shutdownNow();
+    }
+}
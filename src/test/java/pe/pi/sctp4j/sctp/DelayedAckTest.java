@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pe.pi.sctp4j.sctp.messages.SackChunk;
+
+/**
+ *
+ * @author tim
+ */
+public class DelayedAckTest {
+
+    AtomicInteger _fired;
+    DelayedAck _da;
+
+    @Before
+    public void setUp() {
+        _fired = new AtomicInteger();
+        _da = new DelayedAck(() -> {
+            synchronized (_fired) {
+                _fired.incrementAndGet();
+                _fired.notifyAll();
+            }
+        });
+    }
+
+    SackChunk mkSack(long cum, long... seen) {
+        SackChunk ret = new SackChunk();
+        ret.setCumuTSNAck(cum);
+        ArrayList<Long> l = new ArrayList();
+        for (long t : seen) {
+            l.add(t);
+        }
+        ret.setGaps(l);
+        return ret;
+    }
+
+    @Test
+    public void testEverySecondPacket() {
+        System.out.println("--> SACK every second packet");
+        assertFalse(_da.sackNow(mkSack(1)));
+        assertTrue(_da.sackNow(mkSack(2)));
+        assertFalse(_da.sackNow(mkSack(3)));
+        assertTrue(_da.sackNow(mkSack(4)));
+        _da.sent();
+    }
+
+    @Test
+    public void testFrequency() {
+        System.out.println("--> SACK frequency");
+        _da.setFrequency(1);
+        assertTrue(_da.sackNow(mkSack(1)));
+        assertTrue(_da.sackNow(mkSack(2)));
+        _da.setFrequency(3);
+        assertFalse(_da.sackNow(mkSack(3)));
+        assertFalse(_da.sackNow(mkSack(4)));
+        assertTrue(_da.sackNow(mkSack(5)));
+    }
+
+    @Test
+    public void testGapsAreImmediate() {
+        System.out.println("--> gaps and their filling are acked at once");
+        assertFalse(_da.sackNow(mkSack(1)));
+        assertTrue(_da.sackNow(mkSack(1, 3)));
+        assertTrue(_da.sackNow(mkSack(1, 3, 4)));
+        // fills the gap
+        assertTrue(_da.sackNow(mkSack(4)));
+        assertFalse(_da.sackNow(mkSack(5)));
+        _da.sent();
+    }
+
+    @Test
+    public void testDuplicatesAreImmediate() {
+        System.out.println("--> duplicates are acked at once");
+        SackChunk s = mkSack(1);
+        ArrayList<Long> dups = new ArrayList();
+        dups.add(1L);
+        s.setDuplicates(dups);
+        assertTrue(_da.sackNow(s));
+    }
+
+    @Test
+    public void testTimer() throws InterruptedException {
+        System.out.println("--> delayed SACK timer");
+        _da.setDelay(50);
+        long start = System.currentTimeMillis();
+        assertFalse(_da.sackNow(mkSack(1)));
+        synchronized (_fired) {
+            while ((_fired.get() == 0) && (System.currentTimeMillis() - start < 2000)) {
+                _fired.wait(100);
+            }
+        }
+        assertEquals(1, _fired.get());
+        assertTrue(System.currentTimeMillis() - start >= 50);
+        // the timer restarts the count
+        assertFalse(_da.sackNow(mkSack(2)));
+        _da.sent();
+    }
+
+    @Test
+    public void testSentCancelsTimer() throws InterruptedException {
+        System.out.println("--> SACK sent with DATA cancels timer");
+        _da.setDelay(50);
+        assertFalse(_da.sackNow(mkSack(1)));
+        _da.sent();
+        Thread.sleep(150);
+        assertEquals(0, _fired.get());
+        // and the count
+        assertFalse(_da.sackNow(mkSack(2)));
+        _da.sent();
+    }
+}
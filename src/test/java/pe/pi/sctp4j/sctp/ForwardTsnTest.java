@@ -0,0 +1,420 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp;
+
+import com.phono.srtplight.Log;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+import org.bouncycastle.tls.DatagramTransport;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pe.pi.sctp4j.sctp.dummy.DummyStream;
+import pe.pi.sctp4j.sctp.messages.Chunk;
+import pe.pi.sctp4j.sctp.messages.DataChunk;
+import pe.pi.sctp4j.sctp.messages.ForwardTsnChunk;
+import pe.pi.sctp4j.sctp.messages.InitChunk;
+import pe.pi.sctp4j.sctp.messages.Packet;
+import pe.pi.sctp4j.sctp.messages.SackChunk;
+import pe.pi.sctp4j.sctp.messages.exceptions.SctpPacketFormatException;
+
+/**
+ * Receive side of partial reliability - a far end that gives up on lost
+ * DATA (as browsers do with maxRetransmits 0) and tells us so with FORWARD
+ * TSNs.
+ *
+ * @author tim
+ */
+public class ForwardTsnTest {
+
+    final static int STREAMS = 4;
+    final static int UNORDERED = 3; // this stream sends with the U bit
+    final static long FIRSTTSN = 1000;
+
+    @BeforeClass
+    public static void setUpClass() {
+        Log.setLevel(Log.ERROR);
+    }
+
+    // what the far end sees of us - our SACKs
+    class SackTransport implements DatagramTransport {
+
+        volatile long cum = -1;
+        volatile long arWin;
+        volatile int gaps;
+
+        @Override
+        public int getReceiveLimit() throws IOException {
+            return 1200;
+        }
+
+        @Override
+        public int getSendLimit() throws IOException {
+            return 1200;
+        }
+
+        @Override
+        public int receive(byte[] buf, int off, int len, int waitMillis) throws IOException {
+            throw new IOException("pushed transports are never read");
+        }
+
+        @Override
+        public void send(byte[] buf, int off, int len) throws IOException {
+            byte[] copy = new byte[len];
+            System.arraycopy(buf, off, copy, 0, len);
+            try {
+                for (Chunk c : new Packet(ByteBuffer.wrap(copy), true).getChunkList()) {
+                    if (c instanceof SackChunk) {
+                        SackChunk s = (SackChunk) c;
+                        cum = s.getCumuTSNAck();
+                        arWin = s.getArWin();
+                        gaps = s.getGaps().length;
+                    }
+                }
+            } catch (Exception x) {
+                throw new IOException(x);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    class Collector implements SCTPByteStreamListener {
+
+        final ArrayList<Integer> got = new ArrayList();
+
+        @Override
+        public void onMessage(SCTPStream s, byte[] message) {
+            got.add(((message[0] & 0xff) << 8) | (message[1] & 0xff));
+        }
+
+        @Override
+        public void onMessage(SCTPStream s, String message) {
+        }
+
+        @Override
+        public void close(SCTPStream aThis) {
+        }
+    }
+
+    // one message as the far end sent it
+    class Sent {
+
+        int sid;
+        int ssn;
+        boolean abandoned;
+        ArrayList<DataChunk> chunks = new ArrayList();
+    }
+
+    // what became of one run
+    class Result {
+
+        int sent;
+        int abandoned;
+        int delivered;
+        int ordered;
+        long last;
+        long nanos;
+        long cum;
+        long arWin;
+    }
+
+    Collector[] _collectors;
+    SackTransport _transport;
+
+    Association mkAssociation() {
+        _transport = new SackTransport();
+        _collectors = new Collector[STREAMS];
+        AssociationListener al = new AssociationListener() {
+            @Override
+            public void onAssociated(Association a) {
+            }
+
+            @Override
+            public void onDisAssociated(Association a) {
+            }
+
+            @Override
+            public void onDCEPStream(SCTPStream s, String label, int type) {
+            }
+
+            @Override
+            public void onRawStream(SCTPStream s) {
+                _collectors[s.getNum()] = new Collector();
+                s.setSCTPStreamListener(_collectors[s.getNum()]);
+            }
+        };
+        Association ret = new Association(_transport, al, false, true) {
+            @Override
+            public void associate() throws SctpPacketFormatException, IOException {
+                throw new UnsupportedOperationException("Not supported yet.");
+            }
+
+            @Override
+            public void enqueue(DataChunk d) {
+                throw new UnsupportedOperationException("Not supported yet.");
+            }
+
+            @Override
+            public SCTPStream mkStream(int id) {
+                return new DummyStream(this, id) {
+                    @Override
+                    public void deliverMessage(SCTPMessage message) {
+                        message.run();
+                    }
+                };
+            }
+
+            @Override
+            protected Chunk[] sackDeal(SackChunk sackChunk) {
+                return new Chunk[0];
+            }
+        };
+        ret.setDelayedAck(1, 10);
+        return ret;
+    }
+
+    void push(Association a, int verTag, Chunk... cs) throws Exception {
+        Packet p = new Packet(5000, 5000, verTag);
+        for (Chunk c : cs) {
+            p.getChunkList().add(c);
+        }
+        a.onDatagram(p.getByteBuffer());
+    }
+
+    void init(Association a) throws Exception {
+        InitChunk init = new InitChunk();
+        init.setInitiate(0x4321);
+        init.setInitialTSN(FIRSTTSN);
+        init.setNumInStreams(16);
+        init.setNumOutStreams(16);
+        init.setAdRecWinCredit(Association.MAXBUFF);
+        init.setSupportedExtensions(new byte[]{(byte) Chunk.FORWARD_TSN});
+        push(a, 0, init);
+    }
+
+    DataChunk mkData(long tsn, int sid, int ssn, int flags, byte[] data) {
+        DataChunk dc = new DataChunk();
+        dc.setTsn(tsn);
+        dc.setStreamId(sid);
+        dc.setsSeqNo(ssn);
+        dc.setPpid(DataChunk.WEBRTCBINARY);
+        dc.setData(data);
+        dc.setFlags(flags);
+        return dc;
+    }
+
+    // n messages round robin over the streams, each 1-3 fragments
+    ArrayList<Sent> mkMessages(int n, Random rand) {
+        ArrayList<Sent> ret = new ArrayList();
+        int[] ssns = new int[STREAMS];
+        long tsn = FIRSTTSN;
+        for (int i = 0; i < n; i++) {
+            Sent m = new Sent();
+            m.sid = i % STREAMS;
+            m.ssn = ssns[m.sid]++ & 0xffff;
+            int frags = 1 + rand.nextInt(3);
+            for (int f = 0; f < frags; f++) {
+                byte[] data = new byte[200];
+                data[0] = (byte) (m.ssn >> 8);
+                data[1] = (byte) m.ssn;
+                int flags = (frags == 1) ? DataChunk.SINGLEFLAG
+                        : (f == 0) ? DataChunk.BEGINFLAG : (f == frags - 1) ? DataChunk.ENDFLAG : 0;
+                if (m.sid == UNORDERED) {
+                    flags |= DataChunk.UNORDERED;
+                }
+                m.chunks.add(mkData(tsn++, m.sid, m.ssn, flags, data));
+            }
+            ret.add(m);
+        }
+        return ret;
+    }
+
+    /*
+     the far end gives up on anything lost first time (maxRetransmits 0) -
+     every SACK round trip it moves its ack point from our cumulative TSN
+     over what it abandoned, and sends a FORWARD TSN if that got it anywhere.
+     */
+    boolean forward(Association a, ArrayList<DataChunk> order, boolean[] abandoned, int sentTo) throws Exception {
+        long cum = _transport.cum;
+        ForwardTsnChunk fwd = new ForwardTsnChunk();
+        long point = cum;
+        for (int i = (int) (cum + 1 - FIRSTTSN); (i < sentTo) && abandoned[i]; i++) {
+            DataChunk d = order.get(i);
+            if ((d.getFlags() & DataChunk.UNORDERED) == 0) {
+                fwd.addStream(d.getStreamId(), d.getSSeqNo());
+            }
+            point = d.getTsn();
+        }
+        if (point > cum) {
+            fwd.setNewCumulativeTSN(point);
+            push(a, a.getMyVerTag(), fwd);
+            return true;
+        }
+        return false;
+    }
+
+    // send n messages with loss, packets of 3 chunks
+    Result run(int n, double loss, boolean forwardTsn, long seed) throws Exception {
+        Random rand = new Random(seed);
+        Association a = mkAssociation();
+        init(a);
+        ArrayList<Sent> msgs = mkMessages(n, rand);
+        ArrayList<DataChunk> order = new ArrayList();
+        for (Sent m : msgs) {
+            order.addAll(m.chunks);
+        }
+        // which packets are lost - and so which messages are given up on
+        int npkts = (order.size() + 2) / 3;
+        boolean[] lost = new boolean[npkts];
+        for (int p = 0; p < npkts; p++) {
+            lost[p] = rand.nextDouble() < loss;
+        }
+        boolean[] abandoned = new boolean[order.size()];
+        int i = 0;
+        Result ret = new Result();
+        ret.sent = n;
+        for (Sent m : msgs) {
+            for (int c = 0; c < m.chunks.size(); c++) {
+                m.abandoned |= lost[(i + c) / 3];
+            }
+            for (int c = 0; c < m.chunks.size(); c++) {
+                abandoned[i + c] = m.abandoned;
+            }
+            i += m.chunks.size();
+            if (m.abandoned) {
+                ret.abandoned++;
+            }
+        }
+        int verTag = a.getMyVerTag();
+        long start = System.nanoTime();
+        for (int p = 0; p < npkts; p++) {
+            int to = Math.min(order.size(), (p + 1) * 3);
+            if (!lost[p]) {
+                push(a, verTag, order.subList(p * 3, to).toArray(new Chunk[0]));
+            }
+            if (forwardTsn && ((p % 8) == 7)) {
+                forward(a, order, abandoned, to);
+            }
+        }
+        while (forwardTsn && forward(a, order, abandoned, order.size())) {
+            ;
+        }
+        ret.nanos = System.nanoTime() - start;
+        for (int sid = 0; sid < STREAMS; sid++) {
+            int got = (_collectors[sid] == null) ? 0 : _collectors[sid].got.size();
+            ret.delivered += got;
+            if (sid != UNORDERED) {
+                ret.ordered += got;
+            }
+        }
+        ret.last = order.get(order.size() - 1).getTsn();
+        ret.cum = _transport.cum;
+        ret.arWin = _transport.arWin;
+        if (forwardTsn) {
+            // all that wasn't given up on got through - ordered ones in order
+            for (int sid = 0; sid < STREAMS; sid++) {
+                HashSet<Integer> expected = new HashSet();
+                for (Sent m : msgs) {
+                    if ((m.sid == sid) && !m.abandoned) {
+                        expected.add(m.ssn);
+                    }
+                }
+                ArrayList<Integer> got = _collectors[sid].got;
+                assertEquals(expected, new HashSet(got));
+                assertEquals(expected.size(), got.size());
+                for (int g = 1; (sid != UNORDERED) && (g < got.size()); g++) {
+                    assertTrue(got.get(g) > got.get(g - 1));
+                }
+            }
+        }
+        return ret;
+    }
+
+    @Test
+    public void testSingleForwardTsn() throws Exception {
+        System.out.println("--> forward tsn over a lost message");
+        Association a = mkAssociation();
+        init(a);
+        int verTag = a.getMyVerTag();
+        byte[] one = new byte[]{0, 1};
+        byte[] two = new byte[]{0, 2};
+        // ssn 0 lost (two fragments, one of which arrives), 1 and 2 held
+        push(a, verTag, mkData(FIRSTTSN + 1, 0, 0, DataChunk.ENDFLAG, new byte[2]));
+        push(a, verTag, mkData(FIRSTTSN + 2, 0, 1, DataChunk.SINGLEFLAG, one),
+                mkData(FIRSTTSN + 3, 0, 2, DataChunk.SINGLEFLAG, two));
+        assertEquals(FIRSTTSN - 1, _transport.cum);
+        assertEquals(1, _transport.gaps);
+        // nothing reached the stream - it hasn't even been opened
+        assertNull(_collectors[0]);
+        // stale - changes nothing but is still acked
+        ForwardTsnChunk stale = new ForwardTsnChunk();
+        stale.setNewCumulativeTSN(FIRSTTSN - 5);
+        _transport.cum = -1;
+        push(a, verTag, stale);
+        assertEquals(FIRSTTSN - 1, _transport.cum);
+        ForwardTsnChunk fwd = new ForwardTsnChunk();
+        fwd.setNewCumulativeTSN(FIRSTTSN + 1);
+        fwd.addStream(0, 0);
+        push(a, verTag, fwd);
+        assertEquals(FIRSTTSN + 3, _transport.cum);
+        assertEquals(0, _transport.gaps);
+        assertEquals(Association.MAXBUFF, _transport.arWin);
+        assertEquals(2, _collectors[0].got.size());
+        assertEquals(1, (int) _collectors[0].got.get(0));
+        assertEquals(2, (int) _collectors[0].got.get(1));
+        // and on it goes
+        push(a, verTag, mkData(FIRSTTSN + 4, 0, 3, DataChunk.SINGLEFLAG, new byte[]{0, 3}));
+        assertEquals(3, _collectors[0].got.size());
+        assertEquals(FIRSTTSN + 4, _transport.cum);
+    }
+
+    @Test
+    public void testAbandoningSender() throws Exception {
+        System.out.println("--> abandoning sender 5% loss");
+        Result r = run(5000, 0.05, true, 1);
+        assertTrue(r.abandoned > 0);
+        assertEquals(r.sent - r.abandoned, r.delivered);
+        assertEquals(r.last, r.cum);
+        assertEquals(Association.MAXBUFF, r.arWin);
+        assertEquals(0, _transport.gaps);
+    }
+
+    @Test
+    public void testLossyRate() throws Exception {
+        System.out.println("--> receive rate at 5% loss");
+        int n = 20000;
+        for (int i = 0; i < 3; i++) {
+            Result fwd = run(n, 0.05, true, i);
+            Result stall = run(n, 0.05, false, i);
+            assertEquals(fwd.sent - fwd.abandoned, fwd.delivered);
+            assertEquals(fwd.last, fwd.cum);
+            // without the FORWARD TSNs the ack point and each ordered stream stop at the first loss
+            assertTrue(stall.cum < stall.last);
+            assertTrue(stall.ordered < fwd.ordered / 10);
+            System.out.println("    " + (fwd.delivered * 1000000000L / fwd.nanos) + " msg/s delivered, "
+                    + fwd.abandoned + " of " + n + " abandoned; without forward tsn "
+                    + stall.delivered + " delivered (" + stall.ordered + " ordered), cum tsn stuck "
+                    + (stall.last - stall.cum) + " behind");
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tim
+ */
+public class HashedWheelTimerTest {
+
+    @Test
+    public void testFiresOnTime() throws InterruptedException {
+        System.out.println("--> wheel fires on time");
+        HashedWheelTimer wheel = new HashedWheelTimer(5, 8, "testWheel");
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicLong firedAt = new AtomicLong();
+        long start = System.currentTimeMillis();
+        // more than one turn of the wheel
+        wheel.newTimer().setRunnable(() -> {
+            firedAt.set(System.currentTimeMillis());
+            done.countDown();
+        }, start + 100);
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertTrue(firedAt.get() >= start + 100);
+        assertTrue(firedAt.get() < start + 500);
+        assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    public void testRescheduleAndCancel() throws InterruptedException {
+        System.out.println("--> wheel reschedule and cancel");
+        HashedWheelTimer wheel = new HashedWheelTimer(5, 64, "testWheel");
+        AtomicInteger fired = new AtomicInteger();
+        Runnable r = () -> fired.incrementAndGet();
+        long now = System.currentTimeMillis();
+        SCTPTimer t = wheel.newTimer();
+        t.setRunnable(r, now + 20);
+        t.setRunnable(r, now + 60); // replaces
+        SCTPTimer c = wheel.newTimer();
+        c.setRunnable(r, now + 20);
+        c.cancel();
+        c.cancel(); // harmless
+        assertEquals(1, wheel.pending());
+        Thread.sleep(40);
+        assertEquals(0, fired.get());
+        Thread.sleep(200);
+        assertEquals(1, fired.get());
+        assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    public void testManyTimers() throws InterruptedException {
+        System.out.println("--> wheel with 10k timers");
+        HashedWheelTimer wheel = new HashedWheelTimer(10, 512, "testWheel");
+        int n = 10000;
+        CountDownLatch done = new CountDownLatch(n / 2);
+        SCTPTimer[] ts = new SCTPTimer[n];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < n; i++) {
+            ts[i] = wheel.newTimer();
+            ts[i].setRunnable(() -> done.countDown(), now + 500 + (i % 200));
+        }
+        for (int i = 0; i < n; i += 2) {
+            ts[i].cancel();
+        }
+        assertEquals(n / 2, wheel.pending());
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    public void testIdleWheel() throws InterruptedException {
+        System.out.println("--> wheel wakes after idle");
+        HashedWheelTimer wheel = new HashedWheelTimer(5, 8, "testWheel");
+        CountDownLatch first = new CountDownLatch(1);
+        wheel.newTimer().setRunnable(() -> first.countDown(), System.currentTimeMillis());
+        assertTrue(first.await(1, TimeUnit.SECONDS));
+        Thread.sleep(300); // many turns with nothing to do
+        CountDownLatch second = new CountDownLatch(1);
+        long start = System.currentTimeMillis();
+        wheel.newTimer().setRunnable(() -> second.countDown(), start + 10);
+        assertTrue(second.await(1, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start < 200);
+    }
+
+    @Test
+    public void testStop() throws InterruptedException {
+        System.out.println("--> stopped wheel lets its thread go");
+        HashedWheelTimer wheel = new HashedWheelTimer(5, 8, "stoppingWheel");
+        AtomicInteger fired = new AtomicInteger();
+        wheel.newTimer().setRunnable(() -> fired.incrementAndGet(), System.currentTimeMillis() + 50);
+        assertEquals(1, countThreads("stoppingWheel"));
+        wheel.stop();
+        wheel.newTimer().setRunnable(() -> fired.incrementAndGet(), System.currentTimeMillis());
+        Thread.sleep(200);
+        assertEquals(0, fired.get());
+        assertEquals(0, countThreads("stoppingWheel"));
+    }
+
+    int countThreads(String name) {
+        int ret = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().equals(name)) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pe.pi.sctp4j.sctp.messages.DataChunk;
+import pe.pi.sctp4j.sctp.messages.SackChunk;
+
+/**
+ *
+ * @author tim
+ */
+public class HoldingPenTest {
+
+    private Random _rand = new Random(1); // deterministic non crypto quality random for repeatable tests
+
+    DataChunk mkData(long tsn) {
+        DataChunk dc = new DataChunk();
+        dc.setTsn(tsn);
+        return dc;
+    }
+
+    String gaps(HoldingPen pen) {
+        SackChunk s = new SackChunk();
+        pen.fillGaps(s);
+        StringBuilder ret = new StringBuilder();
+        for (SackChunk.GapBlock g : s.getGaps()) {
+            ret.append((int) g.getStart()).append('-').append((int) g.getEnd()).append(' ');
+        }
+        return ret.toString().trim();
+    }
+
+    @Test
+    public void testInOrder() {
+        System.out.println("--> pen in order");
+        HoldingPen pen = new HoldingPen(99);
+        for (long t = 100; t < 300; t++) {
+            assertTrue(pen.add(mkData(t)));
+            DataChunk d = pen.poll();
+            assertEquals(t, d.getTsn());
+            assertNull(pen.poll());
+        }
+        assertEquals(299, pen.getCumTSN());
+        assertTrue(pen.isEmpty());
+        assertEquals("", gaps(pen));
+    }
+
+    @Test
+    public void testGapsAndDuplicates() {
+        System.out.println("--> pen gaps and duplicates");
+        HoldingPen pen = new HoldingPen(99);
+        assertTrue(pen.add(mkData(102)));
+        assertTrue(pen.add(mkData(103)));
+        assertTrue(pen.add(mkData(106)));
+        assertFalse(pen.add(mkData(103)));
+        assertFalse(pen.add(mkData(99)));
+        assertNull(pen.poll());
+        assertEquals("3-4 7-7", gaps(pen));
+        assertTrue(pen.add(mkData(105)));
+        assertTrue(pen.add(mkData(104)));
+        assertEquals("3-7", gaps(pen));
+        assertTrue(pen.add(mkData(100)));
+        assertEquals(100, pen.poll().getTsn());
+        assertNull(pen.poll());
+        assertEquals("2-6", gaps(pen));
+        assertTrue(pen.add(mkData(101)));
+        for (long t = 101; t <= 106; t++) {
+            assertEquals(t, pen.poll().getTsn());
+        }
+        assertNull(pen.poll());
+        assertEquals("", gaps(pen));
+        assertFalse(pen.add(mkData(104)));
+    }
+
+    @Test
+    public void testGrowAndWindow() {
+        System.out.println("--> pen grows");
+        HoldingPen pen = new HoldingPen(0);
+        assertTrue(pen.inWindow(HoldingPen.MAXSPAN));
+        assertFalse(pen.inWindow(HoldingPen.MAXSPAN + 1));
+        for (long t = 1000; t > 1; t -= 2) {
+            assertTrue(pen.add(mkData(t)));
+        }
+        assertEquals(500, pen.gapBlockCount());
+        for (long t = 1; t < 1000; t += 2) {
+            assertTrue(pen.add(mkData(t)));
+        }
+        assertEquals(1, pen.gapBlockCount());
+        for (long t = 1; t <= 1000; t++) {
+            assertEquals(t, pen.poll().getTsn());
+        }
+        assertTrue(pen.isEmpty());
+    }
+
+    @Test
+    public void testRandomOrder() {
+        System.out.println("--> pen random arrival");
+        long base = 0xfffff000L;
+        HoldingPen pen = new HoldingPen(base);
+        ArrayList<Long> order = new ArrayList();
+        for (long t = base + 1; t <= base + 2000; t++) {
+            order.add(t);
+            if (_rand.nextInt(10) == 0) {
+                order.add(t); // the odd duplicate
+            }
+        }
+        Collections.shuffle(order, _rand);
+        TreeSet<Long> held = new TreeSet();
+        long next = base + 1;
+        for (Long t : order) {
+            boolean fresh = (t >= next) && held.add(t);
+            assertEquals(fresh, pen.add(mkData(t)));
+            DataChunk d;
+            while (null != (d = pen.poll())) {
+                assertEquals(next, d.getTsn());
+                held.remove(next);
+                next++;
+            }
+            assertEquals(next - 1, pen.getCumTSN());
+            assertEquals(held.size(), pen.size());
+            // held TSNs always start after a gap, so blocks are runs in held
+            int runs = 0;
+            long prev = -2;
+            for (Long h : held) {
+                if (h != prev + 1) {
+                    runs++;
+                }
+                prev = h;
+            }
+            assertEquals(runs, pen.gapBlockCount());
+        }
+        assertEquals(base + 2000, pen.getCumTSN());
+    }
+
+    DataChunk mkUnordered(long tsn, int flags) {
+        DataChunk dc = mkData(tsn);
+        dc.setStreamId(3);
+        dc.setFlags(flags | DataChunk.UNORDERED);
+        return dc;
+    }
+
+    @Test
+    public void testTakeUnordered() {
+        System.out.println("--> pen unordered message past a gap");
+        HoldingPen pen = new HoldingPen(99);
+        DataChunk end = mkUnordered(103, DataChunk.ENDFLAG);
+        DataChunk begin = mkUnordered(101, DataChunk.BEGINFLAG);
+        DataChunk middle = mkUnordered(102, 0);
+        assertTrue(pen.add(end));
+        assertNull(pen.takeUnordered(end));
+        assertTrue(pen.add(begin));
+        assertNull(pen.takeUnordered(begin));
+        assertTrue(pen.add(middle));
+        java.util.List<DataChunk> whole = pen.takeUnordered(middle);
+        assertNotNull(whole);
+        assertEquals(3, whole.size());
+        assertSame(begin, whole.get(0));
+        assertSame(end, whole.get(2));
+        // only once
+        assertNull(pen.takeUnordered(middle));
+        // an ordered single behind it stays put
+        DataChunk ordered = mkData(104);
+        ordered.setStreamId(3);
+        ordered.setFlags(DataChunk.SINGLEFLAG);
+        assertTrue(pen.add(ordered));
+        // still gaps as far as the SACK goes
+        assertEquals("2-5", gaps(pen));
+        assertFalse(pen.add(mkUnordered(102, 0)));
+        assertNull(pen.poll());
+        assertTrue(pen.add(mkData(100)));
+        assertEquals(100, pen.poll().getTsn());
+        assertSame(ordered, pen.poll());
+        assertNull(pen.poll());
+        assertEquals(104, pen.getCumTSN());
+        assertTrue(pen.isEmpty());
+    }
+
+    @Test
+    public void testTakeUnorderedOtherStream() {
+        System.out.println("--> pen unordered fragments on different streams");
+        HoldingPen pen = new HoldingPen(99);
+        DataChunk begin = mkUnordered(101, DataChunk.BEGINFLAG);
+        DataChunk end = mkUnordered(102, DataChunk.ENDFLAG);
+        end.setStreamId(4);
+        pen.add(begin);
+        pen.add(end);
+        assertNull(pen.takeUnordered(end));
+        assertNull(pen.takeUnordered(begin));
+    }
+
+    @Test
+    public void testAdvanceTo() {
+        System.out.println("--> pen forward tsn skips the gaps");
+        HoldingPen pen = new HoldingPen(99);
+        for (long t : new long[]{102, 103, 105, 108, 109}) {
+            assertTrue(pen.add(mkData(t)));
+        }
+        DataChunk u = mkUnordered(106, DataChunk.SINGLEFLAG);
+        assertTrue(pen.add(u));
+        assertNotNull(pen.takeUnordered(u));
+        assertEquals("3-4 6-7 9-10", gaps(pen));
+        ArrayList<DataChunk> out = new ArrayList();
+        // stale - nothing happens
+        pen.advanceTo(99, out);
+        assertEquals(99, pen.getCumTSN());
+        assertTrue(out.isEmpty());
+        // into the middle of a run - the taken one isn't handed back
+        pen.advanceTo(106, out);
+        assertEquals(106, pen.getCumTSN());
+        assertEquals(3, out.size());
+        assertEquals(102, out.get(0).getTsn());
+        assertEquals(105, out.get(2).getTsn());
+        assertEquals("2-3", gaps(pen));
+        assertEquals(2, pen.size());
+        // 107 is still missing
+        assertNull(pen.poll());
+        assertFalse(pen.add(mkData(105)));
+        assertTrue(pen.add(mkData(107)));
+        assertEquals(107, pen.poll().getTsn());
+        assertEquals(108, pen.poll().getTsn());
+        assertEquals(109, pen.poll().getTsn());
+        assertTrue(pen.isEmpty());
+        // a long way past anything we hold
+        out.clear();
+        assertTrue(pen.add(mkData(200)));
+        pen.advanceTo(100000, out);
+        assertEquals(1, out.size());
+        assertTrue(pen.isEmpty());
+        assertEquals("", gaps(pen));
+        assertTrue(pen.add(mkData(100001)));
+        assertEquals(100001, pen.poll().getTsn());
+    }
+}
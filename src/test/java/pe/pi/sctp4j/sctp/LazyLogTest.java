@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp;
+
+import com.phono.srtplight.Log;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tim
+ */
+public class LazyLogTest {
+
+    private final int _level = Log.getLevel();
+
+    @After
+    public void tearDown() {
+        Log.setLevel(_level);
+    }
+
+    @Test
+    public void testNoWorkBelowLevel() {
+        System.out.println("--> messages only built when logged");
+        AtomicInteger built = new AtomicInteger();
+        Log.setLevel(Log.INFO);
+        assertFalse(LazyLog.isDebug());
+        assertFalse(LazyLog.isVerb());
+        LazyLog.debug(() -> "debug " + built.incrementAndGet());
+        LazyLog.verb(() -> "verb " + built.incrementAndGet());
+        assertEquals(0, built.get());
+        LazyLog.info(() -> "info " + built.incrementAndGet());
+        assertEquals(1, built.get());
+        Log.setLevel(Log.DEBUG);
+        LazyLog.debug(() -> "debug " + built.incrementAndGet());
+        LazyLog.verb(() -> "verb " + built.incrementAndGet());
+        assertEquals(2, built.get());
+    }
+}
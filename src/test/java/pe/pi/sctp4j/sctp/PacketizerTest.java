@@ -0,0 +1,162 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pe.pi.sctp4j.sctp.messages.Chunk;
+import pe.pi.sctp4j.sctp.messages.DataChunk;
+import pe.pi.sctp4j.sctp.messages.SackChunk;
+import pe.pi.sctp4j.sctp.messages.exceptions.SctpPacketFormatException;
+
+/**
+ *
+ * @author tim
+ */
+public class PacketizerTest {
+
+    final static int MTU = 1200;
+    ArrayList<Chunk[]> _sent;
+    Packetizer _pz;
+
+    @Before
+    public void setUp() {
+        _sent = new ArrayList();
+        Association fake = new Association(null, null) {
+            @Override
+            public void associate() throws SctpPacketFormatException, IOException {
+                throw new UnsupportedOperationException("Not supported yet.");
+            }
+
+            @Override
+            public void enqueue(DataChunk d) {
+                throw new UnsupportedOperationException("Not supported yet.");
+            }
+
+            @Override
+            public SCTPStream mkStream(int id) {
+                throw new UnsupportedOperationException("Not supported yet.");
+            }
+
+            @Override
+            protected Chunk[] sackDeal(SackChunk sackChunk) {
+                throw new UnsupportedOperationException("Not supported yet.");
+            }
+
+            @Override
+            protected void send(Chunk[] c) {
+                _sent.add(c);
+            }
+        };
+        _pz = new Packetizer(fake, MTU);
+    }
+
+    DataChunk mkData(int size) {
+        DataChunk dc = new DataChunk();
+        dc.setData(new byte[size]);
+        return dc;
+    }
+
+    int wireSize(Chunk[] cs) {
+        int ret = Packetizer.COMMONHEADER;
+        for (Chunk c : cs) {
+            int len = (c instanceof DataChunk) ? ((DataChunk) c).getChunkLength() : ((SackChunk) c).getChunkLength();
+            ret += Packetizer.padded(len);
+        }
+        return ret;
+    }
+
+    @Test
+    public void testSmallChunksShareAPacket() throws Exception {
+        System.out.println("--> small chunks share a packet");
+        for (int i = 0; i < 20; i++) {
+            _pz.queueData(mkData(30));
+        }
+        _pz.flush();
+        assertEquals(1, _sent.size());
+        assertEquals(20, _sent.get(0).length);
+        assertTrue(wireSize(_sent.get(0)) <= MTU);
+    }
+
+    @Test
+    public void testNeverExceedsMTU() throws Exception {
+        System.out.println("--> never exceeds mtu");
+        int count = 0;
+        for (int i = 0; i < 50; i++) {
+            _pz.queueData(mkData(1 + (i * 37) % 900));
+            count++;
+        }
+        _pz.flush();
+        int seen = 0;
+        for (Chunk[] p : _sent) {
+            assertTrue("packet too big " + wireSize(p), wireSize(p) <= MTU);
+            seen += p.length;
+        }
+        assertEquals(count, seen);
+    }
+
+    @Test
+    public void testSackGoesFirst() throws Exception {
+        System.out.println("--> sack piggybacks and goes first");
+        _pz.queueData(mkData(100));
+        _pz.queueData(mkData(100));
+        _pz.queueSack(new SackChunk());
+        _pz.flush();
+        assertEquals(1, _sent.size());
+        Chunk[] p = _sent.get(0);
+        assertEquals(3, p.length);
+        assertEquals(Chunk.SACK, p[0].getType());
+        assertEquals(Chunk.DATA, p[1].getType());
+        assertFalse(_pz.hasSack());
+    }
+
+    @Test
+    public void testNewerSackWins() throws Exception {
+        System.out.println("--> newer sack supersedes");
+        SackChunk older = new SackChunk();
+        older.setCumuTSNAck(10);
+        SackChunk newer = new SackChunk();
+        newer.setCumuTSNAck(12);
+        _pz.queueSack(newer);
+        _pz.queueSack(older);
+        _pz.flush();
+        assertEquals(1, _sent.size());
+        assertSame(newer, _sent.get(0)[0]);
+    }
+
+    @Test
+    public void testNewerSackWinsAcrossWrap() throws Exception {
+        System.out.println("--> newer sack supersedes when the TSN wraps");
+        SackChunk older = new SackChunk();
+        older.setCumuTSNAck(0xfffffffeL);
+        SackChunk newer = new SackChunk();
+        newer.setCumuTSNAck(1);
+        _pz.queueSack(older);
+        _pz.queueSack(newer);
+        _pz.flush();
+        assertEquals(1, _sent.size());
+        assertSame(newer, _sent.get(0)[0]);
+        _pz.queueSack(newer);
+        _pz.queueSack(older);
+        _pz.flush();
+        assertEquals(2, _sent.size());
+        assertSame(newer, _sent.get(1)[0]);
+    }
+}
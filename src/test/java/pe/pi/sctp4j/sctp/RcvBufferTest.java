@@ -0,0 +1,161 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pe.pi.sctp4j.sctp.messages.DataChunk;
+
+/**
+ *
+ * @author tim
+ */
+public class RcvBufferTest {
+
+    // a chunk whose payload is len bytes at off in the buffer - as parsing does
+    DataChunk mkData(RcvBuffer b, int off, int len, int flags) {
+        DataChunk dc = new DataChunk();
+        dc.setData(b.array(), off, len);
+        dc.setFlags(flags);
+        dc.setPpid(DataChunk.WEBRTCBINARY);
+        dc.setRcvBuffer(b);
+        return dc;
+    }
+
+    @Test
+    public void testPoolReuse() {
+        System.out.println("--> receive buffers come back to the pool");
+        RcvBufferPool pool = new RcvBufferPool(1500, 4);
+        RcvBuffer a = pool.take();
+        assertEquals(1, a.refCount());
+        a.release();
+        assertEquals(1, pool.getIdle());
+        RcvBuffer b = pool.take();
+        assertSame(a, b);
+        b.release();
+        // no more than max idle are kept
+        RcvBuffer[] many = new RcvBuffer[10];
+        for (int i = 0; i < many.length; i++) {
+            many[i] = pool.take();
+        }
+        for (RcvBuffer m : many) {
+            m.release();
+        }
+        assertEquals(4, pool.getIdle());
+        assertEquals(10, pool.getAllocated());
+        // too big for the pool - a one off
+        RcvBuffer big = pool.take(2000);
+        assertEquals(2000, big.array().length);
+        big.release();
+        assertEquals(4, pool.getIdle());
+    }
+
+    @Test
+    public void testRefCounts() {
+        System.out.println("--> receive buffer held until the views are released");
+        RcvBufferPool pool = new RcvBufferPool(100, 4);
+        RcvBuffer b = pool.take();
+        DataChunk one = mkData(b, 10, 20, DataChunk.SINGLEFLAG);
+        DataChunk dup = mkData(b, 30, 20, DataChunk.SINGLEFLAG);
+        b.release(); // the receive loop is done with it
+        assertEquals(2, b.refCount());
+        dup.releaseRcvBuffer(); // a duplicate, never delivered
+        dup.releaseRcvBuffer(); // harmless
+        assertEquals(1, b.refCount());
+        MessageView v = new MessageView(one);
+        assertNull(one.takeRcvBuffer());
+        assertEquals(0, pool.getIdle());
+        v.retain();
+        v.release();
+        assertEquals(0, pool.getIdle());
+        v.release();
+        assertEquals(1, pool.getIdle());
+        try {
+            v.release();
+            fail("released twice");
+        } catch (IllegalStateException x) {
+            ;// expected
+        }
+        try {
+            b.retain();
+            fail("retained after release");
+        } catch (IllegalStateException x) {
+            ;// expected
+        }
+    }
+
+    @Test
+    public void testSingleView() {
+        System.out.println("--> single chunk message is a view");
+        RcvBufferPool pool = new RcvBufferPool(100, 4);
+        RcvBuffer b = pool.take();
+        byte[] text = "hello sctp".getBytes();
+        System.arraycopy(text, 0, b.array(), 16, text.length);
+        DataChunk dc = mkData(b, 16, text.length, DataChunk.SINGLEFLAG);
+        b.release();
+        MessageView v = new MessageView(dc);
+        assertTrue(v.isContiguous());
+        assertEquals(text.length, v.length());
+        assertEquals("hello sctp", v.asString());
+        ByteBuffer bb = v.asByteBuffer();
+        assertTrue(bb.isReadOnly());
+        assertEquals(text.length, bb.remaining());
+        // a view, not a copy
+        b.array()[16] = 'j';
+        assertEquals('j', bb.get(0));
+        assertArrayEquals("jello sctp".getBytes(), v.toByteArray());
+        v.release();
+        assertEquals(1, pool.getIdle());
+    }
+
+    @Test
+    public void testCompositeView() {
+        System.out.println("--> fragmented message is a composite view");
+        RcvBufferPool pool = new RcvBufferPool(100, 8);
+        ArrayList<DataChunk> frags = new ArrayList();
+        byte[] expect = new byte[150];
+        for (int i = 0; i < 3; i++) {
+            RcvBuffer b = pool.take();
+            for (int j = 0; j < 50; j++) {
+                b.array()[20 + j] = (byte) (i * 50 + j);
+                expect[i * 50 + j] = (byte) (i * 50 + j);
+            }
+            int flags = (i == 0) ? DataChunk.BEGINFLAG : (i == 2) ? DataChunk.ENDFLAG : 0;
+            frags.add(mkData(b, 20, 50, flags));
+            b.release();
+        }
+        MessageView v = new MessageView(frags);
+        assertFalse(v.isContiguous());
+        assertEquals(150, v.length());
+        ByteBuffer[] parts = v.getBuffers();
+        assertEquals(3, parts.length);
+        for (ByteBuffer p : parts) {
+            assertTrue(p.isReadOnly());
+            assertEquals(50, p.remaining());
+        }
+        assertArrayEquals(expect, v.toByteArray());
+        ByteBuffer whole = v.asByteBuffer();
+        byte[] got = new byte[whole.remaining()];
+        whole.get(got);
+        assertArrayEquals(expect, got);
+        assertEquals(0, pool.getIdle());
+        v.release();
+        assertEquals(3, pool.getIdle());
+    }
+}
@@ -0,0 +1,470 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp;
+
+import java.util.ArrayList;
+import java.util.SortedSet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pe.pi.sctp4j.sctp.behave.OrderedStreamBehaviour;
+import pe.pi.sctp4j.sctp.behave.SCTPStreamBehaviour;
+import pe.pi.sctp4j.sctp.messages.Chunk;
+import pe.pi.sctp4j.sctp.dummy.DummyStream;
+import pe.pi.sctp4j.sctp.messages.DataChunk;
+
+/**
+ *
+ * @author tim
+ */
+public class ReassemblyTest {
+
+    private long _tsn = 0xfffffff0L; // wraps part way through
+
+    class Collector implements SCTPByteStreamListener {
+
+        ArrayList<byte[]> got = new ArrayList();
+
+        @Override
+        public void onMessage(SCTPStream s, byte[] message) {
+            got.add(message);
+        }
+
+        @Override
+        public void onMessage(SCTPStream s, String message) {
+            got.add(message.getBytes());
+        }
+
+        @Override
+        public void close(SCTPStream aThis) {
+        }
+    }
+
+    SCTPStream mockStream() {
+        return new DummyStream(null, 10) {
+            @Override
+            public void deliverMessage(SCTPMessage message) {
+                message.run();
+            }
+        };
+    }
+
+    DataChunk mkData(int ssn, int flags, byte[] data) {
+        DataChunk dc = new DataChunk();
+        dc.setTsn(_tsn);
+        _tsn = (_tsn + 1) & 0xffffffffL;
+        dc.setsSeqNo(ssn);
+        dc.setData(data);
+        dc.setPpid(DataChunk.WEBRTCBINARY);
+        dc.setFlags(flags);
+        return dc;
+    }
+
+    // message ssn as n fragments of len bytes each
+    ArrayList<DataChunk> mkFragments(int ssn, int n, int len) {
+        ArrayList<DataChunk> ret = new ArrayList();
+        for (int i = 0; i < n; i++) {
+            byte[] data = new byte[len];
+            for (int j = 0; j < len; j++) {
+                data[j] = (byte) (i + j);
+            }
+            int flags = (i == 0) ? DataChunk.BEGINFLAG : (i == n - 1) ? DataChunk.ENDFLAG : 0;
+            ret.add(mkData(ssn, flags, data));
+        }
+        return ret;
+    }
+
+    @Test
+    public void testFragmentsAndCount() {
+        System.out.println("--> fragments build a message and are counted");
+        SCTPStream s = mockStream();
+        Reassembly r = new Reassembly(s);
+        ArrayList<DataChunk> frags = mkFragments(0, 5, 100);
+        for (int i = 0; i < 4; i++) {
+            r.add(frags.get(i));
+            assertNull(r.poll());
+            assertEquals((i + 1) * 100, r.getBytes());
+        }
+        r.add(frags.get(4));
+        assertEquals(500, r.getBytes());
+        SCTPMessage m = r.poll();
+        assertNotNull(m);
+        assertEquals(0, m.getSeq());
+        assertEquals(500, m.getView().length());
+        assertEquals(0, r.getBytes());
+        assertNull(r.poll());
+    }
+
+    // written before there was reassembly - only knows the sorted set
+    class LegacyBehaviour implements SCTPStreamBehaviour {
+
+        @Override
+        public Chunk[] respond(SCTPStream a) {
+            return null;
+        }
+
+        @Override
+        public void deliver(SCTPStream s, SortedSet<DataChunk> a, SCTPStreamListener l) {
+            new OrderedStreamBehaviour().deliver(s, a, l);
+        }
+    }
+
+    @Test
+    public void testLegacyBehaviour() {
+        System.out.println("--> a sorted set behaviour still delivers");
+        SCTPStream s = mockStream();
+        Reassembly r = new Reassembly(s);
+        Collector c = new Collector();
+        SCTPStreamBehaviour b = new LegacyBehaviour();
+        DataChunk single = mkData(0, DataChunk.SINGLEFLAG, new byte[7]);
+        assertFalse(b.deliverNow(s, single, c));
+        r.add(single);
+        b.deliver(s, r, c);
+        assertEquals(1, c.got.size());
+        assertEquals(0, r.getBytes());
+        // ahead of its turn - stays put
+        DataChunk ahead = mkData(2, DataChunk.SINGLEFLAG, new byte[5]);
+        r.add(ahead);
+        b.deliver(s, r, c);
+        assertEquals(1, c.got.size());
+        assertEquals(5, r.getBytes());
+        assertFalse(r.isIdle());
+        for (DataChunk dc : mkFragments(1, 3, 10)) {
+            r.add(dc);
+            b.deliver(s, r, c);
+        }
+        assertEquals(2, c.got.size());
+        // one scan in TSN order - the waiting one goes on the next pass
+        b.deliver(s, r, c);
+        assertEquals(3, c.got.size());
+        assertEquals(30, c.got.get(1).length);
+        assertEquals(5, c.got.get(2).length);
+        assertEquals(0, r.getBytes());
+        assertTrue(r.isIdle());
+        // 3 and 4 were given up on - 5 goes once the far end says so
+        DataChunk after = mkData(5, DataChunk.SINGLEFLAG, new byte[3]);
+        r.add(after);
+        b.deliver(s, r, c);
+        assertEquals(3, c.got.size());
+        b.skip(s, r, 4, c);
+        assertEquals(4, c.got.size());
+        assertEquals(3, c.got.get(3).length);
+        assertEquals(6, s.getNextMessageSeqIn());
+        assertTrue(r.isIdle());
+        // a stale skip changes nothing
+        b.skip(s, r, 2, c);
+        assertEquals(6, s.getNextMessageSeqIn());
+    }
+
+    @Test
+    public void testOrphansDropped() {
+        System.out.println("--> fragments with no start are dropped");
+        SCTPStream s = mockStream();
+        Reassembly r = new Reassembly(s);
+        ArrayList<DataChunk> frags = mkFragments(0, 3, 10);
+        // lose the begin
+        r.add(frags.get(1));
+        r.add(frags.get(2));
+        assertEquals(0, r.getBytes());
+        assertNull(r.poll());
+        // a begin with a gap after it is abandoned by the next begin
+        frags = mkFragments(1, 3, 10);
+        r.add(frags.get(0));
+        r.add(frags.get(2));
+        assertEquals(10, r.getBytes());
+        r.add(mkData(2, DataChunk.SINGLEFLAG, new byte[7]));
+        assertEquals(7, r.getBytes());
+        SCTPMessage m = r.poll();
+        assertEquals(2, m.getSeq());
+        assertNull(r.poll());
+    }
+
+    @Test
+    public void testOrderedHolds() {
+        System.out.println("--> ordered messages wait their turn");
+        SCTPStream s = mockStream();
+        Reassembly r = new Reassembly(s);
+        Collector l = new Collector();
+        OrderedStreamBehaviour b = new OrderedStreamBehaviour();
+        // 1 and 2 before 0
+        r.add(mkData(1, DataChunk.SINGLEFLAG, new byte[]{1}));
+        b.deliver(s, r, l);
+        for (DataChunk dc : mkFragments(2, 3, 4)) {
+            r.add(dc);
+            b.deliver(s, r, l);
+        }
+        assertEquals(0, l.got.size());
+        assertEquals(13, r.getBytes());
+        r.add(mkData(0, DataChunk.SINGLEFLAG, new byte[]{0}));
+        b.deliver(s, r, l);
+        assertEquals(3, l.got.size());
+        assertEquals(0, l.got.get(0)[0]);
+        assertEquals(1, l.got.get(1)[0]);
+        assertEquals(12, l.got.get(2).length);
+        assertEquals(0, r.getBytes());
+        assertEquals(3, s.getNextMessageSeqIn());
+    }
+
+    @Test
+    public void testBigMessage() {
+        System.out.println("--> many fragments cost one step each");
+        SCTPStream s = mockStream();
+        Reassembly r = new Reassembly(s);
+        Collector l = new Collector();
+        OrderedStreamBehaviour b = new OrderedStreamBehaviour();
+        int n = 20000;
+        ArrayList<DataChunk> frags = mkFragments(0, n, 64);
+        long start = System.nanoTime();
+        for (DataChunk dc : frags) {
+            r.add(dc);
+            b.deliver(s, r, l);
+        }
+        long took = (System.nanoTime() - start) / 1000000;
+        System.out.println("    " + n + " fragments took " + took + "ms");
+        assertEquals(1, l.got.size());
+        byte[] got = l.got.get(0);
+        assertEquals(n * 64, got.length);
+        for (int i = 0; i < n; i++) {
+            assertEquals((byte) (i + 5), got[i * 64 + 5]);
+        }
+        assertEquals(0, r.getBytes());
+    }
+
+    @Test
+    public void testSingleFastPath() {
+        System.out.println("--> next in line singles skip the queues");
+        SCTPStream s = mockStream();
+        Collector l = new Collector();
+        s.setSCTPStreamListener(l);
+        // 1 arrives early and has to wait
+        DataChunk early = mkData(1, DataChunk.SINGLEFLAG, new byte[]{1});
+        s.append(early);
+        s.inbound(early);
+        assertEquals(0, l.got.size());
+        assertEquals(1, s.stashCap());
+        DataChunk first = mkData(0, DataChunk.SINGLEFLAG, new byte[]{0});
+        s.append(first);
+        s.inbound(first);
+        assertEquals(2, l.got.size());
+        assertEquals(0, l.got.get(0)[0]);
+        assertEquals(1, l.got.get(1)[0]);
+        assertEquals(0, s.stashCap());
+        // now nothing waits
+        DataChunk next = mkData(2, DataChunk.SINGLEFLAG, new byte[]{2});
+        assertNull(s.append(next));
+        assertEquals(3, l.got.size());
+        s.inbound(next);
+        assertEquals(3, l.got.size());
+        assertEquals(3, s.getNextMessageSeqIn());
+    }
+
+    @Test
+    public void testSingleRate() {
+        System.out.println("--> small message rate");
+        int n = 200000;
+        byte[] payload = new byte[32];
+        for (int pass = 0; pass < 3; pass++) {
+            // through the queues
+            SCTPStream s = mockStream();
+            Reassembly r = new Reassembly(s);
+            Collector l = new Collector();
+            OrderedStreamBehaviour b = new OrderedStreamBehaviour();
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                r.add(mkData(i & 0xffff, DataChunk.SINGLEFLAG, payload));
+                b.deliver(s, r, l);
+            }
+            long queued = System.nanoTime() - start;
+            assertEquals(n, l.got.size());
+            // as the association does it
+            s = mockStream();
+            l = new Collector();
+            s.setSCTPStreamListener(l);
+            start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                DataChunk dc = mkData(i & 0xffff, DataChunk.SINGLEFLAG, payload);
+                s.append(dc);
+                s.inbound(dc);
+            }
+            long fast = System.nanoTime() - start;
+            assertEquals(n, l.got.size());
+            assertEquals(0, s.stashCap());
+            System.out.println("    queued " + (n * 1000000000L / queued) + " msg/s, fast path " + (n * 1000000000L / fast) + " msg/s");
+        }
+    }
+
+    @Test
+    public void testUnorderedOnOrderedStream() {
+        System.out.println("--> U bit messages ignore the SSN order");
+        SCTPStream s = mockStream();
+        Collector l = new Collector();
+        s.setSCTPStreamListener(l);
+        DataChunk held = mkData(1, DataChunk.SINGLEFLAG, new byte[]{1});
+        s.append(held);
+        s.inbound(held);
+        for (DataChunk dc : mkFragments(7, 3, 4)) {
+            dc.setFlags(dc.getFlags() | DataChunk.UNORDERED);
+            s.append(dc);
+            s.inbound(dc);
+        }
+        DataChunk single = mkData(9, DataChunk.SINGLEFLAG | DataChunk.UNORDERED, new byte[]{9});
+        s.append(single);
+        s.inbound(single);
+        assertEquals(2, l.got.size());
+        assertEquals(12, l.got.get(0).length);
+        assertEquals(9, l.got.get(1)[0]);
+        // and they don't use up SSNs
+        assertEquals(0, s.getNextMessageSeqIn());
+        assertEquals(1, s.stashCap());
+    }
+
+    @Test
+    public void testForwardTsnSkip() {
+        System.out.println("--> forward tsn frees the stream");
+        SCTPStream s = mockStream();
+        Collector l = new Collector();
+        s.setSCTPStreamListener(l);
+        // 0 is lost, 1 and 2 wait for it
+        _tsn++;
+        for (int ssn = 1; ssn < 3; ssn++) {
+            DataChunk dc = mkData(ssn, DataChunk.SINGLEFLAG, new byte[]{(byte) ssn});
+            s.append(dc);
+            s.inbound(dc);
+        }
+        // 3 is part built, its end lost
+        ArrayList<DataChunk> frags = mkFragments(3, 3, 10);
+        s.append(frags.get(0));
+        s.inbound(frags.get(0));
+        s.append(frags.get(1));
+        s.inbound(frags.get(1));
+        assertTrue(l.got.isEmpty());
+        assertEquals(22, s.stashCap());
+        // stale - behind us
+        s.skip(0xffff);
+        assertTrue(l.got.isEmpty());
+        // the part built message survives until its end is skipped
+        s.forwardTsn(frags.get(1).getTsn());
+        assertEquals(22, s.stashCap());
+        s.forwardTsn(frags.get(2).getTsn());
+        assertEquals(2, s.stashCap());
+        s.skip(0);
+        assertEquals(2, l.got.size());
+        assertEquals(1, l.got.get(0)[0]);
+        assertEquals(2, l.got.get(1)[0]);
+        assertEquals(3, s.getNextMessageSeqIn());
+        s.skip(3);
+        assertEquals(4, s.getNextMessageSeqIn());
+        assertEquals(0, s.stashCap());
+        // SSNs wrap too
+        s.setNextMessageSeqIn(0xfffe);
+        DataChunk dc = mkData(1, DataChunk.SINGLEFLAG, new byte[]{1});
+        s.append(dc);
+        s.inbound(dc);
+        s.skip(0);
+        assertEquals(3, l.got.size());
+        assertEquals(2, s.getNextMessageSeqIn());
+    }
+
+    // a stream whose association has negotiated I-DATA
+    SCTPStream mockIDataStream() {
+        return new DummyStream(null, 10) {
+            @Override
+            public void deliverMessage(SCTPMessage message) {
+                message.run();
+            }
+
+            @Override
+            public boolean usesMessageIds() {
+                return true;
+            }
+        };
+    }
+
+    DataChunk mkIData(int mid, int fsn, int flags, byte[] data) {
+        DataChunk dc = mkData(mid, flags, data);
+        dc.setIData(true);
+        dc.setFsn(fsn);
+        return dc;
+    }
+
+    @Test
+    public void testInterleaved() {
+        System.out.println("--> I-DATA fragments of different messages mix");
+        SCTPStream s = mockIDataStream();
+        Reassembly r = new Reassembly(s);
+        int big = 70000; // past the 16 bit SSN space
+        int u = DataChunk.UNORDERED;
+        r.add(mkIData(big, 0, DataChunk.BEGINFLAG, new byte[]{0}));
+        r.add(mkIData(big, 0, DataChunk.BEGINFLAG | u, new byte[]{10}));
+        r.add(mkIData(big, 1, 0, new byte[]{1}));
+        r.add(mkIData(big + 1, 0, DataChunk.SINGLEFLAG, new byte[]{20}));
+        r.add(mkIData(big, 1, DataChunk.ENDFLAG | u, new byte[]{11}));
+        assertEquals(5, r.getBytes());
+        // the single and the unordered one finished first
+        SCTPMessage m = r.poll();
+        assertEquals(big + 1, m.getSeq());
+        m = r.poll();
+        assertEquals(big, m.getSeq());
+        assertEquals(2, m.getView().length());
+        assertNull(r.poll());
+        r.add(mkIData(big, 2, DataChunk.ENDFLAG, new byte[]{2}));
+        m = r.poll();
+        assertEquals(big, m.getSeq());
+        assertEquals(3, m.getView().length());
+        assertEquals(0, r.getBytes());
+        assertTrue(r.isIdle());
+        // a gap in the fragments loses the message
+        r.add(mkIData(5, 0, DataChunk.BEGINFLAG, new byte[4]));
+        r.add(mkIData(5, 2, 0, new byte[4]));
+        assertEquals(0, r.getBytes());
+        r.add(mkIData(5, 3, DataChunk.ENDFLAG, new byte[4]));
+        assertNull(r.poll());
+        assertTrue(r.isIdle());
+        // an I-FORWARD-TSN drops part built messages, ordered and unordered apart
+        r.add(mkIData(big + 2, 0, DataChunk.BEGINFLAG, new byte[3]));
+        r.add(mkIData(big + 3, 0, DataChunk.BEGINFLAG | u, new byte[5]));
+        r.dropMessages(false, big + 1);
+        assertEquals(8, r.getBytes());
+        r.dropMessages(false, big + 3);
+        assertEquals(5, r.getBytes());
+        r.dropMessages(true, big + 3);
+        assertEquals(0, r.getBytes());
+        assertTrue(r.isIdle());
+    }
+
+    @Test
+    public void testMessageIdSkip() {
+        System.out.println("--> MIDs don't wrap at 16 bits");
+        SCTPStream s = mockIDataStream();
+        Collector l = new Collector();
+        s.setSCTPStreamListener(l);
+        s.setNextMessageSeqIn(0xffff);
+        s.setNextMessageSeqIn(s.getNextMessageSeqIn() + 1);
+        assertEquals(0x10000, s.getNextMessageSeqIn());
+        // 0x10000 is lost, 0x10001 waits for it
+        DataChunk dc = mkIData(0x10001, 0, DataChunk.SINGLEFLAG, new byte[]{1});
+        s.append(dc);
+        s.inbound(dc);
+        assertTrue(l.got.isEmpty());
+        // an SSN style skip would look like it was far behind
+        s.skip(false, 0x10000);
+        assertEquals(1, l.got.size());
+        assertEquals(0x10002, s.getNextMessageSeqIn());
+        // stale
+        s.skip(false, 2);
+        assertEquals(0x10002, s.getNextMessageSeqIn());
+    }
+}
@@ -20,6 +20,9 @@ import pe.pi.sctp4j.sctp.messages.*;
 import pe.pi.sctp4j.sctp.messages.exceptions.SctpPacketFormatException;
 import pe.pi.sctp4j.sctp.small.BlockingSCTPStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Random;
 import java.util.TreeSet;
 import org.bouncycastle.tls.DatagramTransport;
@@ -199,6 +202,25 @@ public class SCTPMessageTest {
         assertEquals(chunks.size(), estimate);
     }
     
+    @Test
+    public void testFillUsesAssociationFragmentSize() {
+        System.out.println("--> fill sized by the transport");
+        byte[] testBlob = new byte[5000];
+        SCTPMessage instance = new SCTPMessage(testBlob, _fakeStream);
+        TreeSet<DataChunk> chunks = new TreeSet<DataChunk>();
+        long tsn = 111;
+        while (instance.hasMoreData()) {
+            DataChunk dc = new DataChunk();
+            dc.setTsn(tsn++);
+            instance.fill(dc);
+            chunks.add(dc);
+        }
+        // fake transport has a 1200 byte send limit
+        assertEquals(1200 - Association.DATAOVERHEAD, chunks.first().getDataSize());
+        assertEquals(1200, chunks.first().getChunkLength() + 12);
+        assertEquals(5, chunks.size());
+    }
+
     @Test
     public void testEmptyString() {
         System.out.println("--> fill empty string");
@@ -242,6 +264,103 @@ public class SCTPMessageTest {
         assertEquals(ppid,DataChunk.WEBRTCBINARYEMPTY);
     }
     
+    // an inbound single chunk message, as parsed - a view into a pooled buffer
+    SCTPMessage mkInbound(RcvBufferPool pool, byte[] payload, int ppid) {
+        RcvBuffer b = pool.take();
+        System.arraycopy(payload, 0, b.array(), 28, payload.length);
+        DataChunk dc = new DataChunk();
+        dc.setData(b.array(), 28, payload.length);
+        dc.setFlags(DataChunk.SINGLEFLAG);
+        dc.setPpid(ppid);
+        dc.setRcvBuffer(b);
+        b.release();
+        return new SCTPMessage(_fakeStream, dc);
+    }
+
+    @Test
+    public void testByteBufferListener() {
+        System.out.println("--> buffer listener reads in place and releases");
+        RcvBufferPool pool = new RcvBufferPool(200, 4);
+        byte[] blob = new byte[50];
+        _rand.nextBytes(blob);
+        final ArrayList<MessageView> got = new ArrayList();
+        SCTPByteBufferListener li = new SCTPByteBufferListener() {
+            @Override
+            public void onMessage(SCTPStream s, MessageView m) {
+                got.add(m);
+            }
+
+            @Override
+            public void close(SCTPStream s) {
+            }
+        };
+        mkInbound(pool, blob, DataChunk.WEBRTCBINARY).deliver(li);
+        mkInbound(pool, "text".getBytes(StandardCharsets.UTF_8), DataChunk.WEBRTCSTRING).deliver(li);
+        assertEquals(2, got.size());
+        MessageView bin = got.get(0);
+        assertFalse(bin.isString());
+        assertEquals(DataChunk.WEBRTCBINARY, bin.getPpid());
+        assertEquals(blob.length, bin.length());
+        ByteBuffer bb = bin.asByteBuffer();
+        byte[] read = new byte[bb.remaining()];
+        bb.get(read);
+        assertArrayEquals(blob, read);
+        assertTrue(got.get(1).isString());
+        assertEquals("text", got.get(1).asString());
+        // still held by the listener
+        assertEquals(0, pool.getIdle());
+        for (MessageView m : got) {
+            m.release();
+        }
+        assertEquals(2, pool.getIdle());
+    }
+
+    @Test
+    public void testAdaptedListeners() {
+        System.out.println("--> string and byte listeners via the adapter");
+        RcvBufferPool pool = new RcvBufferPool(200, 4);
+        String text = "gr\u00fc\u00dfe \u2603";
+        final ArrayList<Object> got = new ArrayList();
+        SCTPByteStreamListener li = new SCTPByteStreamListener() {
+            @Override
+            public void onMessage(SCTPStream s, byte[] message) {
+                got.add(message);
+            }
+
+            @Override
+            public void onMessage(SCTPStream s, String message) {
+                got.add(message);
+            }
+
+            @Override
+            public void close(SCTPStream s) {
+            }
+        };
+        mkInbound(pool, text.getBytes(StandardCharsets.UTF_8), DataChunk.WEBRTCSTRING).deliver(li);
+        mkInbound(pool, new byte[]{1, 2, 3}, DataChunk.WEBRTCBINARY).deliver(li);
+        mkInbound(pool, new byte[0], DataChunk.WEBRTCSTRINGEMPTY).deliver(li);
+        assertEquals(3, got.size());
+        // utf-8 whatever the platform default
+        assertEquals(text, got.get(0));
+        assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) got.get(1));
+        assertEquals("", got.get(2));
+        // the adapter released each one before the next was taken
+        assertEquals(1, pool.getAllocated());
+        assertEquals(1, pool.getIdle());
+    }
+
+    @Test
+    public void testOutboundStringIsUtf8() {
+        System.out.println("--> outbound strings are utf-8");
+        String text = "\u00e9t\u00e9";
+        SCTPMessage instance = new SCTPMessage(text, _fakeStream);
+        DataChunk dc = new DataChunk();
+        instance.fill(dc);
+        byte[] sent = new byte[dc.getDataSize()];
+        System.arraycopy(dc.getData(), dc.getDataOffset(), sent, 0, sent.length);
+        assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), sent);
+    }
+
     /**
      * Test of getData method, of class SCTPMessage.
      */
@@ -256,4 +375,82 @@ public class SCTPMessageTest {
      // TODO review the generated test code and remove the default call to fail.
      fail("The test case is a prototype.");
      }*/
+
+    @Test
+    public void testFillUnordered() {
+        System.out.println("--> fill unordered");
+        _fakeStream.setBehave(new pe.pi.sctp4j.sctp.behave.UnorderedStreamBehaviour());
+        byte[] testBlob = new byte[3000];
+        SCTPMessage instance = new SCTPMessage(testBlob, _fakeStream);
+        _fakeStream.setAsNextMessage(instance);
+        assertTrue(instance.isUnordered());
+        int n = 0;
+        while (instance.hasMoreData()) {
+            DataChunk dc = new DataChunk();
+            instance.fill(dc);
+            assertTrue((dc.getFlags() & DataChunk.UNORDERED) != 0);
+            n++;
+        }
+        assertTrue(n > 1);
+        // dcep stays ordered whatever the stream
+        SCTPMessage open = new SCTPMessage(new DCOpen("unordered"), _fakeStream);
+        _fakeStream.setAsNextMessage(open);
+        assertFalse(open.isUnordered());
+        DataChunk dc = new DataChunk();
+        open.fill(dc);
+        assertEquals(DataChunk.SINGLEFLAG, dc.getFlags());
+        // and ordered streams send ordered
+        _fakeStream.setBehave(new pe.pi.sctp4j.sctp.behave.OrderedStreamBehaviour());
+        SCTPMessage ordered = new SCTPMessage("ordered", _fakeStream);
+        _fakeStream.setAsNextMessage(ordered);
+        dc = new DataChunk();
+        ordered.fill(dc);
+        assertEquals(DataChunk.SINGLEFLAG, dc.getFlags());
+    }
+
+    @Test
+    public void testFillPartialReliable() {
+        System.out.println("--> fill partially reliable");
+        DCOpen rexmit = new DCOpen(DCOpen.PARTIAL_RELIABLE_REXMIT, 0, 3, "rexmit", "");
+        _fakeStream.setBehave(rexmit.mkStreamBehaviour());
+        SCTPMessage instance = new SCTPMessage(new byte[3000], _fakeStream);
+        _fakeStream.setAsNextMessage(instance);
+        assertFalse(instance.isUnordered());
+        assertEquals(3, instance.getMaxRetransmits());
+        assertEquals(0, instance.getExpires());
+        while (instance.hasMoreData()) {
+            DataChunk dc = new DataChunk();
+            instance.fill(dc);
+            assertTrue(dc.isPartiallyReliable());
+            assertFalse(dc.isAbandonable(System.currentTimeMillis()));
+            for (int i = 0; i < 3; i++) {
+                dc.incrementResends();
+            }
+            assertTrue(dc.isAbandonable(System.currentTimeMillis()));
+        }
+        DCOpen timed = new DCOpen(DCOpen.PARTIAL_RELIABLE_TIMED_UNORDERED, 0, 500, "timed", "");
+        _fakeStream.setBehave(timed.mkStreamBehaviour());
+        long now = System.currentTimeMillis();
+        SCTPMessage later = new SCTPMessage("later", _fakeStream);
+        _fakeStream.setAsNextMessage(later);
+        assertTrue(later.isUnordered());
+        assertEquals(-1, later.getMaxRetransmits());
+        DataChunk dc = new DataChunk();
+        later.fill(dc);
+        assertFalse(dc.isAbandonable(now));
+        assertTrue(dc.isAbandonable(now + 1000));
+        // dcep is always reliable
+        SCTPMessage open = new SCTPMessage(new DCOpen("reliable"), _fakeStream);
+        _fakeStream.setAsNextMessage(open);
+        dc = new DataChunk();
+        open.fill(dc);
+        assertFalse(dc.isPartiallyReliable());
+        // as is a reliable stream
+        _fakeStream.setBehave(new DCOpen("plain").mkStreamBehaviour());
+        SCTPMessage plain = new SCTPMessage("plain", _fakeStream);
+        _fakeStream.setAsNextMessage(plain);
+        dc = new DataChunk();
+        plain.fill(dc);
+        assertFalse(dc.isPartiallyReliable());
+    }
 }
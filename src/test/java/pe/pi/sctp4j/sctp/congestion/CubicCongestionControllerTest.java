@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.congestion;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tim
+ */
+public class CubicCongestionControllerTest {
+
+    final static int MTU = NewRenoCongestionControllerTest.MTU;
+
+    @Test
+    public void testCubicLoss() {
+        System.out.println("--> cubic loss");
+        CubicCongestionController cc = new CubicCongestionController();
+        cc.setMTU(MTU);
+        cc.setInitialSsthresh(128 * 1024);
+        for (int i = 0; i < 20; i++) {
+            while (cc.maySend(MTU)) {
+                cc.onSent(MTU);
+            }
+            cc.onSack(true, MTU, false);
+        }
+        long cwnd = cc.getCwnd();
+        cc.onRetransmitTimeout();
+        assertEquals(MTU, cc.getCwnd());
+        assertEquals((long) (cwnd * 0.7), cc.getSsthresh());
+        assertEquals((double) cwnd / MTU, cc.getWMax(), 0.001);
+    }
+
+    @Test
+    public void testCubicGrowth() {
+        System.out.println("--> cubic growth");
+        final long[] clock = {1};
+        CubicCongestionController cc = new CubicCongestionController() {
+            @Override
+            protected long now() {
+                return clock[0];
+            }
+        };
+        cc.setMTU(MTU);
+        cc.setInitialSsthresh(4 * MTU);
+        // get into congestion avoidance
+        while (cc.getCwnd() <= cc.getSsthresh()) {
+            while (cc.maySend(MTU)) {
+                cc.onSent(MTU);
+            }
+            cc.onSack(true, MTU, false);
+        }
+        long last = cc.getCwnd();
+        for (int i = 0; i < 50; i++) {
+            clock[0] += 100_000_000L; // 100ms
+            while (cc.maySend(MTU)) {
+                cc.onSent(MTU);
+            }
+            cc.onSack(true, MTU, false);
+            assertTrue("cwnd shrank", cc.getCwnd() >= last);
+            last = cc.getCwnd();
+        }
+        assertTrue("cwnd didn't grow", last > 5 * MTU);
+    }
+
+    // cwnd after a loss and then an RTT's worth of acks at the epoch start
+    long afterLoss(double srtt) {
+        final long[] clock = {1};
+        CubicCongestionController cc = new CubicCongestionController() {
+            @Override
+            protected long now() {
+                return clock[0];
+            }
+        };
+        cc.setMTU(MTU);
+        cc.setInitialSsthresh(4 * MTU);
+        cc.onRtt(srtt);
+        while (cc.getCwnd() < 40 * MTU) {
+            while (cc.maySend(MTU)) {
+                cc.onSent(MTU);
+            }
+            cc.onSack(true, MTU, false);
+            clock[0] += 10_000_000L;
+        }
+        cc.onFastRetransmit();
+        long cwnd = cc.getCwnd();
+        for (int i = 0; i < cwnd / MTU; i++) {
+            while (cc.maySend(MTU)) {
+                cc.onSent(MTU);
+            }
+            cc.onSack(true, MTU, false);
+        }
+        return cc.getCwnd();
+    }
+
+    @Test
+    public void testCubicTargetsNextRtt() {
+        System.out.println("--> cubic aims at W_cubic(t + RTT)");
+        long noRtt = afterLoss(0.0);
+        long withRtt = afterLoss(1.0);
+        System.out.println("    cwnd " + noRtt + " without an RTT, " + withRtt + " with 1s");
+        assertTrue(withRtt > noRtt);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.congestion;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tim
+ */
+public class NewRenoCongestionControllerTest {
+
+    final static int MTU = 1200;
+    NewRenoCongestionController _cc;
+
+    @Before
+    public void setUp() {
+        _cc = new NewRenoCongestionController();
+        _cc.setMTU(MTU);
+        _cc.setInitialSsthresh(128 * 1024);
+    }
+
+    @Test
+    public void testInitialCwnd() {
+        System.out.println("--> initial cwnd");
+        // min(4*MTU, max (2*MTU, 4380))
+        assertEquals(4380, _cc.getCwnd());
+        assertEquals(0, _cc.getFlightSize());
+    }
+
+    @Test
+    public void testMaySendHonoursCwnd() {
+        System.out.println("--> may send honours cwnd");
+        int sent = 0;
+        while (_cc.maySend(MTU)) {
+            _cc.onSent(MTU);
+            sent += MTU;
+            assertTrue("ran away", sent < 100 * MTU);
+        }
+        assertTrue(_cc.getFlightSize() <= _cc.getCwnd());
+        assertFalse(_cc.maySend(MTU));
+        _cc.onSack(true, MTU, false);
+        assertTrue(_cc.maySend(MTU));
+    }
+
+    @Test
+    public void testSlowStart() {
+        System.out.println("--> slow start");
+        long cwnd = _cc.getCwnd();
+        while (_cc.maySend(MTU)) {
+            _cc.onSent(MTU);
+        }
+        _cc.onSack(true, MTU, false);
+        assertEquals(cwnd + MTU, _cc.getCwnd());
+        // no growth in fast recovery
+        _cc.onSack(true, MTU, true);
+        assertEquals(cwnd + MTU, _cc.getCwnd());
+        // no growth if the cum ack didn't move
+        _cc.onSack(false, MTU, false);
+        assertEquals(cwnd + MTU, _cc.getCwnd());
+    }
+
+    @Test
+    public void testNoGrowthWhenNotFullyUtilized() {
+        System.out.println("--> not fully utilized");
+        long cwnd = _cc.getCwnd();
+        _cc.onSent(MTU);
+        _cc.onSack(true, MTU, false);
+        assertEquals(cwnd, _cc.getCwnd());
+    }
+
+    @Test
+    public void testRetransmitTimeout() {
+        System.out.println("--> T3 expiry");
+        _cc.onRetransmitTimeout();
+        assertEquals(MTU, _cc.getCwnd());
+        assertEquals(4 * MTU, _cc.getSsthresh());
+    }
+
+    @Test
+    public void testCongestionAvoidance() {
+        System.out.println("--> congestion avoidance");
+        _cc.onRetransmitTimeout(); // cwnd = MTU ssthresh = 4 MTU
+        // slow start back up past ssthresh
+        while (_cc.getCwnd() <= _cc.getSsthresh()) {
+            while (_cc.maySend(MTU)) {
+                _cc.onSent(MTU);
+            }
+            _cc.onSack(true, MTU, false);
+        }
+        long cwnd = _cc.getCwnd();
+        // one full window of acks should grow cwnd by one MTU
+        int acked = 0;
+        while (acked < cwnd) {
+            while (_cc.maySend(MTU)) {
+                _cc.onSent(MTU);
+            }
+            _cc.onSack(true, MTU, false);
+            acked += MTU;
+        }
+        assertEquals(cwnd + MTU, _cc.getCwnd());
+    }
+
+    @Test
+    public void testIdle() {
+        System.out.println("--> idle");
+        _cc.onIdle();
+        assertEquals(4 * MTU, _cc.getCwnd());
+    }
+
+    @Test
+    public void testFastRetransmit() {
+        System.out.println("--> fast retransmit");
+        for (int i = 0; i < 10; i++) {
+            while (_cc.maySend(MTU)) {
+                _cc.onSent(MTU);
+            }
+            _cc.onSack(true, MTU, false);
+        }
+        long cwnd = _cc.getCwnd();
+        _cc.onFastRetransmit();
+        assertEquals(Math.max(cwnd / 2, 4 * MTU), _cc.getSsthresh());
+        assertEquals(_cc.getSsthresh(), _cc.getCwnd());
+        // flight is untouched - the missing data is still outstanding
+        assertTrue(_cc.getFlightSize() > 0);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.messages;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tim
+ */
+public class Crc32cTest {
+
+    private Random _rand = new Random(1); // deterministic non crypto quality random for repeatable tests
+
+    long crc(boolean jdk, byte[] b, int off, int len) {
+        Crc32c c = new Crc32c(jdk);
+        c.update(b, off, len);
+        return c.getValue();
+    }
+
+    long bytewise(byte[] b, int off, int len) {
+        return ~Crc32c.updateBytewise(~0, b, off, len) & 0xFFFFFFFFL;
+    }
+
+    @Test
+    public void testKnownVectors() {
+        System.out.println("--> crc32c known vectors");
+        byte[] check = "123456789".getBytes();
+        byte[] zeros = new byte[32];
+        byte[] ones = new byte[32];
+        Arrays.fill(ones, (byte) 0xff);
+        for (boolean jdk : new boolean[]{false, true}) {
+            assertEquals(0xE3069283L, crc(jdk, check, 0, check.length));
+            // RFC 3720 B.4
+            assertEquals(0x8A9136AAL, crc(jdk, zeros, 0, zeros.length));
+            assertEquals(0x62A8AB43L, crc(jdk, ones, 0, ones.length));
+        }
+    }
+
+    @Test
+    public void testSlice8MatchesBytewise() {
+        System.out.println("--> slice by 8 matches the table version");
+        byte[] data = new byte[70000];
+        _rand.nextBytes(data);
+        int[] lens = {0, 1, 7, 8, 9, 15, 16, 100, 1200, 65536};
+        for (int len : lens) {
+            for (int off = 0; off < 9; off++) {
+                long expect = bytewise(data, off, len);
+                assertEquals("len " + len + " off " + off, expect, crc(false, data, off, len));
+                assertEquals("len " + len + " off " + off, expect, crc(true, data, off, len));
+            }
+        }
+    }
+
+    @Test
+    public void testByteBuffers() {
+        System.out.println("--> crc32c over heap and direct buffers");
+        byte[] data = new byte[1200];
+        _rand.nextBytes(data);
+        long expect = bytewise(data, 3, data.length - 3);
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data);
+        ByteBuffer heap = ByteBuffer.wrap(data);
+        for (boolean jdk : new boolean[]{false, true}) {
+            for (ByteBuffer bb : new ByteBuffer[]{heap, direct}) {
+                bb.limit(data.length);
+                bb.position(3);
+                Crc32c c = new Crc32c(jdk);
+                c.update(bb);
+                assertEquals(expect, c.getValue());
+                assertEquals(bb.limit(), bb.position());
+            }
+        }
+        // a slice with a non zero array offset
+        ByteBuffer sliced = ((ByteBuffer) ByteBuffer.wrap(data).position(3)).slice();
+        Crc32c c = new Crc32c(false);
+        c.update(sliced);
+        assertEquals(expect, c.getValue());
+    }
+
+    @Test
+    public void testIncremental() {
+        System.out.println("--> crc32c in pieces");
+        byte[] data = new byte[1000];
+        _rand.nextBytes(data);
+        Crc32c c = new Crc32c(false);
+        c.update(data, 0, 13);
+        c.update(data[13]);
+        c.update(data, 14, 986);
+        assertEquals(bytewise(data, 0, 1000), c.getValue());
+        c.reset();
+        c.update(data, 0, 1000);
+        assertEquals(bytewise(data, 0, 1000), c.getValue());
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.messages;
+
+import java.lang.management.ManagementFactory;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tim
+ */
+public class PacketEncoderTest {
+
+    DataChunk mkData(int len, long tsn) {
+        DataChunk dc = new DataChunk();
+        byte[] data = new byte[len];
+        Arrays.fill(data, (byte) tsn);
+        dc.setData(data);
+        dc.setPpid(DataChunk.WEBRTCBINARY);
+        dc.setFlags(DataChunk.SINGLEFLAG);
+        dc.setTsn(tsn);
+        return dc;
+    }
+
+    byte[] bytes(ByteBuffer bb) {
+        byte[] ret = new byte[((Buffer) bb).remaining()];
+        bb.duplicate().get(ret);
+        return ret;
+    }
+
+    @Test
+    public void testSameAsPacket() throws Exception {
+        System.out.println("--> encoder writes what Packet does");
+        Packet p = new Packet(5000, 5000, 0x1234);
+        p.getChunkList().add(mkData(21, 7));
+        p.getChunkList().add(new SackChunk());
+        byte[] expect = bytes(p.getByteBuffer());
+        PacketEncoder enc = new PacketEncoder(1200);
+        Chunk[] cs = {p.getChunkList().get(0), p.getChunkList().get(1)};
+        ByteBuffer bb = enc.encode(5000, 5000, 0x1234, false, cs);
+        assertArrayEquals(expect, bytes(bb));
+        Packet rec = new Packet(bb.duplicate());
+        assertEquals(2, rec.getChunkList().size());
+        assertEquals(Chunk.DATA, rec.getChunkList().get(0).getType());
+        assertEquals(Chunk.SACK, rec.getChunkList().get(1).getType());
+    }
+
+    @Test
+    public void testReuseZeroesPadding() throws Exception {
+        System.out.println("--> reused buffer leaves no stale bytes");
+        PacketEncoder enc = new PacketEncoder(1200);
+        // dirty the buffer with a big packet
+        enc.encode(5000, 5000, 0x1234, false, new Chunk[]{mkData(1000, 0x55)});
+        ByteBuffer bb = enc.encode(5000, 5000, 0x1234, false, new Chunk[]{mkData(5, 1), mkData(6, 2)});
+        // 12 header + 2 chunks of 16 + payload, each padded to 4
+        assertEquals(12 + 24 + 24, ((Buffer) bb).limit());
+        byte[] got = bytes(bb);
+        for (int i = 12 + 16 + 5; i < 12 + 24; i++) {
+            assertEquals(0, got[i]);
+        }
+        for (int i = 12 + 24 + 16 + 6; i < got.length; i++) {
+            assertEquals(0, got[i]);
+        }
+        Packet rec = new Packet(bb.duplicate());
+        assertEquals(5, ((DataChunk) rec.getChunkList().get(0)).getDataSize());
+        assertEquals(6, ((DataChunk) rec.getChunkList().get(1)).getDataSize());
+    }
+
+    @Test
+    public void testCookieAckFirst() throws Exception {
+        System.out.println("--> cookie ack goes first");
+        PacketEncoder enc = new PacketEncoder(1200);
+        ByteBuffer bb = enc.encode(5000, 5000, 0x1234, false, new Chunk[]{new SackChunk(), new CookieAckChunk()});
+        Packet rec = new Packet(bb.duplicate());
+        assertEquals(Chunk.COOKIE_ACK, rec.getChunkList().get(0).getType());
+        assertEquals(Chunk.SACK, rec.getChunkList().get(1).getType());
+    }
+
+    // bytes allocated by this thread while running r count times, per run
+    long allocatedPer(Runnable r, int count) {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        long before = mx.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < count; i++) {
+            r.run();
+        }
+        return (mx.getThreadAllocatedBytes(tid) - before) / count;
+    }
+
+    @Test
+    public void testAllocationRate() throws Exception {
+        System.out.println("--> steady state encoding allocates nothing per packet");
+        java.lang.management.ThreadMXBean tmx = ManagementFactory.getThreadMXBean();
+        if (!(tmx instanceof com.sun.management.ThreadMXBean)
+                || !((com.sun.management.ThreadMXBean) tmx).isThreadAllocatedMemorySupported()) {
+            System.out.println("no allocation counter on this jvm - skipped");
+            return;
+        }
+        PacketEncoder enc = new PacketEncoder(1200);
+        SackChunk sack = new SackChunk();
+        sack.setCumuTSNAck(99);
+        Chunk[] cs = {mkData(1100, 3), sack};
+        Runnable encode = () -> {
+            try {
+                enc.encode(5000, 5000, 0x1234, false, cs);
+            } catch (Exception x) {
+                throw new RuntimeException(x);
+            }
+        };
+        Runnable packet = () -> {
+            try {
+                Packet p = new Packet(5000, 5000, 0x1234);
+                p.getChunkList().add(cs[0]);
+                p.getChunkList().add(cs[1]);
+                p.getByteBuffer(1200);
+            } catch (Exception x) {
+                throw new RuntimeException(x);
+            }
+        };
+        // warm up so the measurement is of compiled code
+        allocatedPer(encode, 50000);
+        allocatedPer(packet, 50000);
+        long enca = allocatedPer(encode, 20000);
+        long pkta = allocatedPer(packet, 20000);
+        System.out.println("bytes per packet - encoder " + enca + " Packet " + pkta);
+        assertTrue(pkta >= 1500);
+        assertTrue(enca < 16);
+    }
+}
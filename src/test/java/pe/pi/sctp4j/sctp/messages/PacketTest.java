@@ -0,0 +1,319 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.messages;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pe.pi.sctp4j.sctp.messages.exceptions.ChecksumException;
+import pe.pi.sctp4j.sctp.messages.params.ZeroChecksumAcceptable;
+
+/**
+ *
+ * @author tim
+ */
+public class PacketTest {
+
+    Packet mkDataPacket(boolean zero) {
+        Packet p = new Packet(5000, 5000, 0x1234);
+        DataChunk dc = new DataChunk();
+        dc.setData("zero checksum test".getBytes());
+        dc.setPpid(DataChunk.WEBRTCBINARY);
+        dc.setFlags(DataChunk.SINGLEFLAG);
+        dc.setTsn(42);
+        p.getChunkList().add(dc);
+        p.setZeroChecksum(zero);
+        return p;
+    }
+
+    @Test
+    public void testCrcChecksum() throws Exception {
+        System.out.println("--> crc checksum accepted either way");
+        ByteBuffer bb = mkDataPacket(false).getByteBuffer();
+        assertTrue(bb.getInt(8) != 0);
+        new Packet(bb.duplicate());
+        Packet rec = new Packet(bb.duplicate(), true);
+        assertEquals(1, rec.getChunkList().size());
+    }
+
+    String payload(Packet p) {
+        DataChunk dc = (DataChunk) p.getChunkList().get(0);
+        return new String(dc.getData(), dc.getDataOffset(), dc.getDataSize());
+    }
+
+    @Test
+    public void testNoArrayBuffers() throws Exception {
+        System.out.println("--> direct and read only buffers parse too");
+        ByteBuffer bb = mkDataPacket(false).getByteBuffer();
+        ByteBuffer direct = ByteBuffer.allocateDirect(bb.remaining());
+        direct.put(bb.duplicate());
+        direct.flip();
+        assertEquals("zero checksum test", payload(new Packet(direct)));
+        // can't write the checksum into it - so has to be a zero checksum one
+        ByteBuffer ro = mkDataPacket(true).getByteBuffer().asReadOnlyBuffer();
+        assertEquals("zero checksum test", payload(new Packet(ro, true)));
+    }
+
+    @Test
+    public void testZeroChecksum() throws Exception {
+        System.out.println("--> zero checksum");
+        ByteBuffer bb = mkDataPacket(true).getByteBuffer();
+        assertEquals(0, bb.getInt(8));
+        Packet rec = new Packet(bb.duplicate(), true);
+        assertEquals(1, rec.getChunkList().size());
+        assertEquals(Chunk.DATA, rec.getChunkList().get(0).getType());
+        try {
+            new Packet(bb.duplicate());
+            fail("zero checksum accepted when we didn't offer it");
+        } catch (ChecksumException x) {
+            ;// expected
+        }
+    }
+
+    @Test
+    public void testBadChecksum() throws Exception {
+        System.out.println("--> bad checksum still dropped");
+        ByteBuffer bb = mkDataPacket(false).getByteBuffer();
+        bb.putInt(8, bb.getInt(8) ^ 1);
+        try {
+            new Packet(bb.duplicate(), true);
+            fail("corrupt checksum accepted");
+        } catch (ChecksumException x) {
+            ;// expected
+        }
+    }
+
+    @Test
+    public void testInitAlwaysChecksummed() throws Exception {
+        System.out.println("--> INIT never zero checksummed");
+        InitChunk init = new InitChunk();
+        init.setInitialTSN(1);
+        init.setInitiate(99);
+        init.setZeroChecksumEDMID(ZeroChecksumAcceptable.EDMID_DTLS);
+        Packet p = new Packet(5000, 5000, 0);
+        p.getChunkList().add(init);
+        p.setZeroChecksum(true);
+        ByteBuffer bb = p.getByteBuffer();
+        assertTrue(bb.getInt(8) != 0);
+        Packet rec = new Packet(bb.duplicate(), true);
+        InitChunk far = (InitChunk) rec.getChunkList().get(0);
+        assertEquals(ZeroChecksumAcceptable.EDMID_DTLS, far.getFarZeroChecksumEDMID());
+        bb.putInt(8, 0);
+        try {
+            new Packet(bb.duplicate(), true);
+            fail("INIT with zero checksum accepted");
+        } catch (ChecksumException x) {
+            ;// expected
+        }
+    }
+
+    @Test
+    public void testCookieEchoAlwaysChecksummed() throws Exception {
+        System.out.println("--> COOKIE ECHO never zero checksummed");
+        CookieEchoChunk ce = new CookieEchoChunk();
+        ce.setCookieData(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        Packet p = new Packet(5000, 5000, 0x1234);
+        p.getChunkList().add(ce);
+        p.getChunkList().add(mkDataPacket(true).getChunkList().get(0));
+        p.setZeroChecksum(true);
+        ByteBuffer bb = p.getByteBuffer();
+        assertTrue(bb.getInt(8) != 0);
+        Packet rec = new Packet(bb.duplicate(), true);
+        assertEquals(Chunk.COOKIE_ECHO, rec.getChunkList().get(0).getType());
+        bb.putInt(8, 0);
+        try {
+            new Packet(bb.duplicate(), true);
+            fail("COOKIE ECHO with zero checksum accepted");
+        } catch (ChecksumException x) {
+            ;// expected
+        }
+    }
+
+    @Test
+    public void testInitAckOffer() throws Exception {
+        System.out.println("--> INIT ACK carries zero checksum acceptable");
+        InitAckChunk iac = new InitAckChunk();
+        iac.setInitiateTag(99);
+        iac.setCookie(new byte[8]);
+        iac.setZeroChecksumEDMID(ZeroChecksumAcceptable.EDMID_DTLS);
+        Packet p = new Packet(5000, 5000, 0x1234);
+        p.getChunkList().add(iac);
+        Packet rec = new Packet(p.getByteBuffer());
+        InitAckChunk far = (InitAckChunk) rec.getChunkList().get(0);
+        assertEquals(ZeroChecksumAcceptable.EDMID_DTLS, far.getZeroChecksumEDMID());
+        assertEquals(8, far.getCookie().length);
+
+        InitAckChunk plain = new InitAckChunk();
+        plain.setCookie(new byte[8]);
+        p = new Packet(5000, 5000, 0x1234);
+        p.getChunkList().add(plain);
+        far = (InitAckChunk) new Packet(p.getByteBuffer()).getChunkList().get(0);
+        assertEquals(ZeroChecksumAcceptable.EDMID_NONE, far.getZeroChecksumEDMID());
+    }
+
+    @Test
+    public void testForwardTsn() throws Exception {
+        System.out.println("--> FORWARD TSN round trip");
+        ForwardTsnChunk fwd = new ForwardTsnChunk();
+        fwd.setNewCumulativeTSN(0xfffffff0L);
+        for (int s = 0; s < 6; s++) {
+            fwd.addStream(s, 100 + s);
+        }
+        fwd.addStream(2, 0xffff);
+        assertEquals(6, fwd.getStreamCount());
+        assertEquals(8 + 6 * 4, fwd.getChunkLength());
+        Packet p = new Packet(5000, 5000, 0x1234);
+        p.getChunkList().add(fwd);
+        Packet rec = new Packet(p.getByteBuffer());
+        ForwardTsnChunk far = (ForwardTsnChunk) rec.getChunkList().get(0);
+        assertEquals(Chunk.FORWARD_TSN, far.getType() & 0xff);
+        assertEquals(0xfffffff0L, far.getNewCumulativeTSN());
+        assertEquals(6, far.getStreamCount());
+        assertEquals(2, far.getStream(2));
+        assertEquals(0xffff, far.getStreamSequence(2));
+        assertEquals(105, far.getStreamSequence(5));
+    }
+
+    @Test
+    public void testInitOffersForwardTsn() throws Exception {
+        System.out.println("--> INIT and INIT ACK offer FORWARD TSN");
+        InitChunk init = new InitChunk();
+        init.setInitiate(99);
+        init.setSupportedExtensions(new byte[]{(byte) Chunk.RE_CONFIG, (byte) Chunk.FORWARD_TSN});
+        Packet p = new Packet(5000, 5000, 0);
+        p.getChunkList().add(init);
+        InitChunk farInit = (InitChunk) new Packet(p.getByteBuffer()).getChunkList().get(0);
+        assertTrue(farInit.isFarForwardTSNsupported());
+        assertEquals(2, farInit.getFarSupportedExtensions().length);
+
+        InitAckChunk iac = new InitAckChunk();
+        iac.setCookie(new byte[8]);
+        iac.setSupportedExtensions(new byte[]{(byte) Chunk.FORWARD_TSN});
+        p = new Packet(5000, 5000, 0x1234);
+        p.getChunkList().add(iac);
+        InitAckChunk far = (InitAckChunk) new Packet(p.getByteBuffer()).getChunkList().get(0);
+        assertTrue(far.isForwardTSNsupported());
+
+        InitAckChunk plain = new InitAckChunk();
+        plain.setCookie(new byte[8]);
+        p = new Packet(5000, 5000, 0x1234);
+        p.getChunkList().add(plain);
+        far = (InitAckChunk) new Packet(p.getByteBuffer()).getChunkList().get(0);
+        assertFalse(far.isForwardTSNsupported());
+        assertNull(far.getSupportedExtensions());
+    }
+
+    @Test
+    public void testIData() throws Exception {
+        System.out.println("--> I-DATA round trip");
+        DataChunk first = new DataChunk();
+        first.setIData(true);
+        first.setTsn(0xfffffffeL);
+        first.setStreamId(7);
+        first.setsSeqNo(0x80000001); // MIDs use all 32 bits
+        first.setPpid(DataChunk.WEBRTCBINARY);
+        first.setFlags(DataChunk.BEGINFLAG | DataChunk.UNORDERED);
+        first.setData(new byte[]{1, 2, 3});
+        DataChunk second = new DataChunk();
+        second.setIData(true);
+        second.setTsn(0xffffffffL);
+        second.setStreamId(7);
+        second.setsSeqNo(0x80000001);
+        second.setPpid(DataChunk.WEBRTCBINARY);
+        second.setFsn(1);
+        second.setFlags(DataChunk.ENDFLAG | DataChunk.UNORDERED);
+        second.setData(new byte[]{4, 5});
+        assertEquals(20 + 3, first.getChunkLength());
+        Packet p = new Packet(5000, 5000, 0x1234);
+        p.getChunkList().add(first);
+        p.getChunkList().add(second);
+        List<Chunk> rec = new Packet(p.getByteBuffer()).getChunkList();
+        DataChunk f = (DataChunk) rec.get(0);
+        DataChunk s = (DataChunk) rec.get(1);
+        assertEquals(Chunk.I_DATA, f.getType());
+        assertTrue(f.isIData());
+        f.validate();
+        s.validate();
+        assertEquals(0xfffffffeL, f.getTsn());
+        assertEquals(7, f.getStreamId());
+        assertEquals(0x80000001, f.getSSeqNo());
+        assertEquals(DataChunk.WEBRTCBINARY, f.getPpid());
+        assertEquals(0, f.getFsn());
+        assertEquals(3, f.getDataSize());
+        // only the first fragment carries the PPID
+        assertEquals(1, s.getFsn());
+        assertEquals(0x80000001, s.getSSeqNo());
+        assertEquals(DataChunk.ENDFLAG | DataChunk.UNORDERED, s.getFlags());
+        assertEquals(2, s.getDataSize());
+        assertEquals(4, s.getData()[s.getDataOffset()]);
+        // a recycled chunk goes back to being DATA
+        first.clean();
+        assertFalse(first.isIData());
+    }
+
+    @Test
+    public void testIForwardTsn() throws Exception {
+        System.out.println("--> I-FORWARD-TSN round trip");
+        ForwardTsnChunk fwd = new ForwardTsnChunk(true);
+        fwd.setNewCumulativeTSN(1000);
+        fwd.addStream(1, false, 70000);
+        fwd.addStream(1, true, 70001);
+        fwd.addStream(1, false, 70002);
+        fwd.addStream(3, true, -1);
+        assertEquals(3, fwd.getStreamCount());
+        assertEquals(8 + 3 * 8, fwd.getChunkLength());
+        Packet p = new Packet(5000, 5000, 0x1234);
+        p.getChunkList().add(fwd);
+        ForwardTsnChunk far = (ForwardTsnChunk) new Packet(p.getByteBuffer()).getChunkList().get(0);
+        assertEquals(Chunk.I_FORWARD_TSN, far.getType() & 0xff);
+        assertTrue(far.isInterleaved());
+        assertEquals(1000, far.getNewCumulativeTSN());
+        assertEquals(3, far.getStreamCount());
+        assertEquals(1, far.getStream(0));
+        assertFalse(far.isUnordered(0));
+        assertEquals(70002, far.getStreamSequence(0));
+        assertTrue(far.isUnordered(1));
+        assertEquals(70001, far.getStreamSequence(1));
+        assertEquals(3, far.getStream(2));
+        assertEquals(-1, far.getStreamSequence(2));
+        assertFalse(new ForwardTsnChunk().isInterleaved());
+    }
+
+    @Test
+    public void testInitOffersIData() throws Exception {
+        System.out.println("--> INIT and INIT ACK offer I-DATA");
+        InitChunk init = new InitChunk();
+        init.setInitiate(99);
+        init.setSupportedExtensions(new byte[]{(byte) Chunk.FORWARD_TSN, (byte) Chunk.I_DATA, (byte) Chunk.I_FORWARD_TSN});
+        Packet p = new Packet(5000, 5000, 0);
+        p.getChunkList().add(init);
+        InitChunk farInit = (InitChunk) new Packet(p.getByteBuffer()).getChunkList().get(0);
+        assertTrue(farInit.isFarExtensionSupported(Chunk.I_DATA));
+        assertTrue(farInit.isFarExtensionSupported(Chunk.I_FORWARD_TSN));
+        assertFalse(farInit.isFarExtensionSupported(Chunk.RE_CONFIG));
+
+        InitAckChunk iac = new InitAckChunk();
+        iac.setCookie(new byte[8]);
+        iac.setSupportedExtensions(new byte[]{(byte) Chunk.I_DATA});
+        p = new Packet(5000, 5000, 0x1234);
+        p.getChunkList().add(iac);
+        InitAckChunk far = (InitAckChunk) new Packet(p.getByteBuffer()).getChunkList().get(0);
+        assertTrue(far.isExtensionSupported(Chunk.I_DATA));
+        assertFalse(far.isExtensionSupported(Chunk.I_FORWARD_TSN));
+    }
+}
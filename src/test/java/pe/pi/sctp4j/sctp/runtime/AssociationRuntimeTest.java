@@ -0,0 +1,356 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.runtime;
+
+import com.phono.srtplight.Log;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.bouncycastle.tls.DatagramTransport;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pe.pi.sctp4j.sctp.Association;
+import pe.pi.sctp4j.sctp.AssociationListener;
+import pe.pi.sctp4j.sctp.SCTPByteStreamListener;
+import pe.pi.sctp4j.sctp.SCTPStream;
+import pe.pi.sctp4j.sctp.congestion.NewRenoCongestionController;
+import pe.pi.sctp4j.sctp.small.ThreadedAssociation;
+
+/**
+ *
+ * @author tim
+ */
+public class AssociationRuntimeTest {
+
+    private final ArrayList<DatagramTransport> _transports = new ArrayList();
+    private ExecutorService _pool;
+
+    @BeforeClass
+    public static void setUpClass() {
+        Log.setLevel(Log.WARN);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (DatagramTransport t : _transports) {
+            t.close();
+        }
+        _transports.clear();
+        if (_pool != null) {
+            _pool.shutdownNow();
+        }
+    }
+
+    class QueueTransport implements DatagramTransport {
+
+        final BlockingQueue<byte[]> _in;
+        final BlockingQueue<byte[]> _out;
+        volatile boolean _closed;
+
+        QueueTransport(BlockingQueue<byte[]> in, BlockingQueue<byte[]> out) {
+            _in = in;
+            _out = out;
+        }
+
+        @Override
+        public int getReceiveLimit() throws IOException {
+            return 1200;
+        }
+
+        @Override
+        public int getSendLimit() throws IOException {
+            return 1200;
+        }
+
+        @Override
+        public int receive(byte[] buf, int off, int len, int waitMillis) throws IOException {
+            if (_closed) {
+                throw new java.io.EOFException("Transport was shutdown.");
+            }
+            try {
+                byte[] pkt = _in.poll(waitMillis, TimeUnit.MILLISECONDS);
+                if (pkt == null) {
+                    throw new java.io.InterruptedIOException("empty Queue");
+                }
+                System.arraycopy(pkt, 0, buf, off, pkt.length);
+                return pkt.length;
+            } catch (InterruptedException ex) {
+                throw new java.io.InterruptedIOException(ex.getMessage());
+            }
+        }
+
+        @Override
+        public void send(byte[] buf, int off, int len) throws IOException {
+            byte[] pkt = new byte[len];
+            System.arraycopy(buf, off, pkt, 0, len);
+            _out.offer(pkt);
+        }
+
+        @Override
+        public void close() throws IOException {
+            _closed = true;
+        }
+    }
+
+    class Listener implements AssociationListener {
+
+        boolean associated = false;
+        SCTPStream stream = null;
+
+        @Override
+        synchronized public void onAssociated(Association a) {
+            associated = true;
+            this.notifyAll();
+        }
+
+        @Override
+        synchronized public void onDisAssociated(Association a) {
+            associated = false;
+            this.notifyAll();
+        }
+
+        @Override
+        public void onDCEPStream(SCTPStream s, String label, int type) {
+        }
+
+        @Override
+        public void onRawStream(SCTPStream s) {
+        }
+
+        synchronized void waitAssociated() throws InterruptedException {
+            long end = System.currentTimeMillis() + 5000;
+            while (!associated && (System.currentTimeMillis() < end)) {
+                this.wait(100);
+            }
+            assertTrue(associated);
+        }
+
+        synchronized void waitStream() throws InterruptedException {
+            long end = System.currentTimeMillis() + 5000;
+            while ((stream == null) && (System.currentTimeMillis() < end)) {
+                this.wait(100);
+            }
+            assertNotNull(stream);
+        }
+    }
+
+    int countThreads(String prefix) {
+        int ret = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().startsWith(prefix)) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    // associate a pair on the runtime and send some messages from left to right
+    void exchange(AssociationRuntime runtime) throws Exception {
+        BlockingQueue<byte[]> l2r = new LinkedBlockingQueue();
+        BlockingQueue<byte[]> r2l = new LinkedBlockingQueue();
+        QueueTransport lt = new QueueTransport(r2l, l2r);
+        QueueTransport rt = new QueueTransport(l2r, r2l);
+        _transports.add(lt);
+        _transports.add(rt);
+        final ArrayList<byte[]> got = new ArrayList();
+        final SCTPByteStreamListener rsl = new SCTPByteStreamListener() {
+            @Override
+            public void onMessage(SCTPStream s, String message) {
+            }
+
+            @Override
+            public void onMessage(SCTPStream s, byte[] message) {
+                synchronized (got) {
+                    got.add(message);
+                    got.notifyAll();
+                }
+            }
+
+            @Override
+            public void close(SCTPStream aThis) {
+            }
+        };
+        Listener left = new Listener();
+        Listener right = new Listener() {
+            @Override
+            synchronized public void onRawStream(SCTPStream s) {
+                s.setSCTPStreamListener(rsl);
+                stream = s;
+                this.notifyAll();
+            }
+        };
+        ThreadedAssociation la = new ThreadedAssociation(lt, left, new NewRenoCongestionController(), runtime);
+        ThreadedAssociation ra = new ThreadedAssociation(rt, right, new NewRenoCongestionController(), runtime);
+        assertSame(runtime, la.getRuntime());
+        la.associate();
+        left.waitAssociated();
+        right.waitAssociated();
+        SCTPStream s = la.mkStream("runtime test", rsl);
+        // don't race the far end setting its listener
+        right.waitStream();
+        Random rand = new Random(1);
+        byte[][] sent = new byte[5][];
+        for (int i = 0; i < sent.length; i++) {
+            sent[i] = new byte[500 + i * 700];
+            rand.nextBytes(sent[i]);
+            s.send(sent[i]);
+        }
+        long end = System.currentTimeMillis() + 5000;
+        synchronized (got) {
+            while ((got.size() < sent.length) && (System.currentTimeMillis() < end)) {
+                got.wait(100);
+            }
+        }
+        assertEquals(sent.length, got.size());
+        for (int i = 0; i < sent.length; i++) {
+            assertArrayEquals(sent[i], got.get(i));
+        }
+    }
+
+    @Test
+    public void testDedicated() throws Exception {
+        System.out.println("--> dedicated runtime");
+        exchange(new DedicatedRuntime());
+    }
+
+    @Test
+    public void testDedicatedCallbacksOwnThread() throws Exception {
+        System.out.println("--> dedicated runtimes don't share callback threads by default");
+        DedicatedRuntime a = new DedicatedRuntime();
+        DedicatedRuntime b = new DedicatedRuntime();
+        assertFalse(a.getCallbackExecutor() == b.getCallbackExecutor());
+        assertFalse(SharedPoolRuntime.getSharedCallbackPool() == a.getCallbackExecutor());
+        assertFalse(SharedPoolRuntime.getSharedPool() == a.getCallbackExecutor());
+        // opting in to the shared pool
+        ExecutorService shared = SharedPoolRuntime.getSharedCallbackPool();
+        assertSame(shared, new DedicatedRuntime(shared).getCallbackExecutor());
+    }
+
+    @Test
+    public void testInline() throws Exception {
+        System.out.println("--> inline runtime");
+        exchange(new InlineRuntime());
+    }
+
+    @Test
+    public void testSharedPool() throws Exception {
+        System.out.println("--> shared pool runtime");
+        int before = countThreads("AssocRcv");
+        _pool = Executors.newFixedThreadPool(4);
+        exchange(new SharedPoolRuntime(_pool, 5));
+        assertTrue(countThreads("AssocRcv") <= before);
+    }
+
+    @Test
+    public void testBlockingCallbacks() throws Exception {
+        System.out.println("--> callbacks blocked in send outnumber the pool threads");
+        _pool = Executors.newFixedThreadPool(2);
+        SharedPoolRuntime runtime = new SharedPoolRuntime(_pool, 5);
+        int pairs = 4;
+        // well over the initial cwnd - so the send waits for SACKs
+        int replySize = 30000;
+        CountDownLatch replies = new CountDownLatch(pairs);
+        final SCTPByteStreamListener echo = new SCTPByteStreamListener() {
+            @Override
+            public void onMessage(SCTPStream s, String message) {
+            }
+
+            @Override
+            public void onMessage(SCTPStream s, byte[] message) {
+                try {
+                    s.send(new byte[replySize]);
+                } catch (Exception x) {
+                    Log.warn("reply failed " + x.getMessage());
+                }
+            }
+
+            @Override
+            public void close(SCTPStream aThis) {
+            }
+        };
+        final SCTPByteStreamListener counter = new SCTPByteStreamListener() {
+            @Override
+            public void onMessage(SCTPStream s, String message) {
+            }
+
+            @Override
+            public void onMessage(SCTPStream s, byte[] message) {
+                if (message.length == replySize) {
+                    replies.countDown();
+                }
+            }
+
+            @Override
+            public void close(SCTPStream aThis) {
+            }
+        };
+        SCTPStream[] streams = new SCTPStream[pairs];
+        for (int i = 0; i < pairs; i++) {
+            BlockingQueue<byte[]> l2r = new LinkedBlockingQueue();
+            BlockingQueue<byte[]> r2l = new LinkedBlockingQueue();
+            QueueTransport lt = new QueueTransport(r2l, l2r);
+            QueueTransport rt = new QueueTransport(l2r, r2l);
+            _transports.add(lt);
+            _transports.add(rt);
+            Listener left = new Listener();
+            Listener right = new Listener() {
+                @Override
+                synchronized public void onRawStream(SCTPStream s) {
+                    s.setSCTPStreamListener(echo);
+                    stream = s;
+                    this.notifyAll();
+                }
+            };
+            ThreadedAssociation la = new ThreadedAssociation(lt, left, new NewRenoCongestionController(), runtime);
+            new ThreadedAssociation(rt, right, new NewRenoCongestionController(), runtime);
+            la.associate();
+            left.waitAssociated();
+            right.waitAssociated();
+            streams[i] = la.mkStream("blocking " + i, counter);
+            right.waitStream();
+        }
+        for (SCTPStream s : streams) {
+            s.send(new byte[]{1, 2, 3, 4});
+        }
+        assertTrue(replies.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testVirtual() throws Exception {
+        System.out.println("--> virtual thread runtime");
+        if (VirtualThreadRuntime.isSupported()) {
+            try (VirtualThreadRuntime runtime = new VirtualThreadRuntime()) {
+                exchange(runtime);
+            }
+        } else {
+            try {
+                new VirtualThreadRuntime();
+                fail("should need java 21");
+            } catch (UnsupportedOperationException x) {
+                ;// expected on this jvm
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.scheduler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pe.pi.sctp4j.sctp.SCTPMessage;
+import pe.pi.sctp4j.sctp.SCTPStream;
+import pe.pi.sctp4j.sctp.dataChannel.DECP.DCOpen;
+import pe.pi.sctp4j.sctp.dummy.DummyStream;
+import pe.pi.sctp4j.sctp.messages.DataChunk;
+
+/**
+ *
+ * @author tim
+ */
+public class StreamSchedulerTest {
+
+    // fragments are DataChunk.getCapacity() bytes without an association
+    static final int FRAG = DataChunk.getCapacity();
+
+    SCTPStream mkStream(int sid, int priority) {
+        SCTPStream s = new DummyStream(null, sid);
+        s.setPriority(priority);
+        return s;
+    }
+
+    SCTPMessage mkMessage(SCTPStream s, int frags) {
+        return new SCTPMessage(new byte[frags * FRAG], s);
+    }
+
+    // as the association does it - the stream of each chunk in turn
+    class Sender {
+
+        final StreamScheduler sched;
+        final boolean interleave;
+        SCTPMessage current;
+
+        Sender(StreamScheduler s, boolean i) {
+            sched = s;
+            interleave = i;
+        }
+
+        // one chunk - returns the message it came from
+        SCTPMessage send() {
+            SCTPMessage m = ((current != null) && !interleave) ? current : sched.next();
+            DataChunk dc = new DataChunk();
+            m.fill(dc);
+            sched.sent(m, dc.getDataSize());
+            current = m.hasMoreData() ? m : null;
+            return m;
+        }
+
+        String drain() {
+            StringBuilder ret = new StringBuilder();
+            while (!sched.isEmpty()) {
+                ret.append(send().getStream().getNum());
+            }
+            return ret.toString();
+        }
+    }
+
+    @Test
+    public void testFcfs() {
+        System.out.println("--> first come first served");
+        SCTPStream one = mkStream(1, DCOpen.PRIORITY_NORMAL);
+        SCTPStream two = mkStream(2, DCOpen.PRIORITY_EXTRA_HIGH);
+        StreamScheduler s = new FcfsScheduler();
+        assertNull(s.next());
+        s.add(mkMessage(one, 3));
+        s.add(mkMessage(two, 1));
+        s.add(mkMessage(one, 1));
+        assertEquals("11121", new Sender(s, true).drain());
+        assertNull(s.next());
+    }
+
+    @Test
+    public void testRoundRobin() {
+        System.out.println("--> round robin - by chunk with I-DATA, by message with DATA");
+        SCTPStream one = mkStream(1, DCOpen.PRIORITY_NORMAL);
+        SCTPStream two = mkStream(2, DCOpen.PRIORITY_NORMAL);
+        SCTPStream three = mkStream(3, DCOpen.PRIORITY_NORMAL);
+        StreamScheduler s = new RoundRobinScheduler();
+        s.add(mkMessage(one, 3));
+        s.add(mkMessage(one, 1));
+        s.add(mkMessage(two, 1));
+        s.add(mkMessage(three, 2));
+        assertEquals("1231311", new Sender(s, true).drain());
+        s.add(mkMessage(one, 3));
+        s.add(mkMessage(one, 1));
+        s.add(mkMessage(two, 1));
+        s.add(mkMessage(three, 2));
+        assertEquals("1112331", new Sender(s, false).drain());
+    }
+
+    @Test
+    public void testPriority() {
+        System.out.println("--> strict priority");
+        SCTPStream low = mkStream(1, DCOpen.PRIORITY_BELOW_NORMAL);
+        SCTPStream high = mkStream(2, DCOpen.PRIORITY_HIGH);
+        SCTPStream alsoHigh = mkStream(3, DCOpen.PRIORITY_HIGH);
+        StreamScheduler s = new PriorityScheduler();
+        s.add(mkMessage(low, 2));
+        s.add(mkMessage(high, 2));
+        s.add(mkMessage(alsoHigh, 2));
+        assertEquals("232311", new Sender(s, true).drain());
+        // with DATA a started message finishes first
+        Sender d = new Sender(s, false);
+        s.add(mkMessage(low, 2));
+        assertEquals(low, d.send().getStream());
+        s.add(mkMessage(high, 1));
+        assertEquals("12", d.drain());
+    }
+
+    @Test
+    public void testWfq() {
+        System.out.println("--> weighted fair queueing by DCEP priority");
+        SCTPStream normal = mkStream(1, new DCOpen("normal").getPriority());
+        SCTPStream high = mkStream(2, DCOpen.PRIORITY_HIGH);
+        StreamScheduler s = new WfqScheduler();
+        s.add(mkMessage(normal, 300));
+        s.add(mkMessage(high, 300));
+        Sender snd = new Sender(s, true);
+        int[] count = new int[3];
+        for (int i = 0; i < 300; i++) {
+            count[snd.send().getStream().getNum()]++;
+        }
+        assertEquals(100, count[1]);
+        assertEquals(200, count[2]);
+        // a stream that was idle doesn't get to catch up
+        SCTPStream late = mkStream(3, DCOpen.PRIORITY_NORMAL);
+        s.add(mkMessage(late, 100));
+        count = new int[4];
+        for (int i = 0; i < 200; i++) {
+            count[snd.send().getStream().getNum()]++;
+        }
+        // give or take a tie
+        assertEquals(50, count[1], 1);
+        assertEquals(100, count[2], 1);
+        assertEquals(50, count[3], 1);
+    }
+
+    /*
+     One bulk stream with a backlog of big messages, several others sending
+     a small message every so often - how long do the small ones wait, in
+     chunks sent, and what share does each stream get ?
+     */
+    @Test
+    public void testFairness() {
+        int smalls = 4;
+        System.out.println("--> fairness - one bulk stream and " + smalls + " small message streams");
+        int bulkMessages = 50;
+        int bulkFrags = 60;
+        int every = 20; // chunks between small messages
+        StreamScheduler[] scheds = {new FcfsScheduler(), new RoundRobinScheduler(), new PriorityScheduler(), new WfqScheduler()};
+        HashMap<String, Integer> worst = new HashMap();
+        for (StreamScheduler sched : scheds) {
+            String name = sched.getClass().getSimpleName();
+            SCTPStream bulk = mkStream(0, DCOpen.PRIORITY_NORMAL);
+            SCTPStream[] small = new SCTPStream[smalls];
+            for (int i = 0; i < smalls; i++) {
+                small[i] = mkStream(i + 1, DCOpen.PRIORITY_HIGH);
+            }
+            for (int i = 0; i < bulkMessages; i++) {
+                sched.add(mkMessage(bulk, bulkFrags));
+            }
+            Sender snd = new Sender(sched, true);
+            HashMap<SCTPMessage, Integer> queuedAt = new HashMap();
+            ArrayList<Integer> waits = new ArrayList();
+            long[] bytes = new long[smalls + 1];
+            int chunks = 0;
+            long start = System.nanoTime();
+            while (!sched.isEmpty()) {
+                if ((chunks % every == 0) && (chunks < bulkMessages * bulkFrags)) {
+                    for (SCTPStream s : small) {
+                        SCTPMessage m = new SCTPMessage(new byte[100], s);
+                        queuedAt.put(m, chunks);
+                        sched.add(m);
+                    }
+                }
+                SCTPMessage m = snd.send();
+                chunks++;
+                bytes[m.getStream().getNum()] += (m.getStream() == bulk) ? FRAG : 100;
+                if (!m.hasMoreData() && queuedAt.containsKey(m)) {
+                    waits.add(chunks - queuedAt.get(m));
+                }
+            }
+            long took = System.nanoTime() - start;
+            long max = 0;
+            long total = 0;
+            for (int w : waits) {
+                max = Math.max(max, w);
+                total += w;
+            }
+            worst.put(name, (int) max);
+            System.out.println(String.format("    %-20s small message wait mean %.1f max %d chunks, %d chunks in %.2fms",
+                    name, (double) total / waits.size(), max, chunks, took / 1000000.0));
+            assertEquals(bulkMessages * bulkFrags * FRAG, bytes[0]);
+        }
+        // first come first served makes them wait for a whole bulk message
+        assertTrue(worst.get("FcfsScheduler") >= bulkFrags);
+        assertTrue(worst.get("RoundRobinScheduler") <= smalls + 1);
+        assertTrue(worst.get("PriorityScheduler") <= smalls);
+        assertTrue(worst.get("WfqScheduler") <= smalls + 1);
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.small;
+
+import com.phono.srtplight.Log;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.bouncycastle.tls.DatagramTransport;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pe.pi.sctp4j.sctp.Association;
+import pe.pi.sctp4j.sctp.AssociationListener;
+import pe.pi.sctp4j.sctp.SCTPByteStreamListener;
+import pe.pi.sctp4j.sctp.SCTPStream;
+import pe.pi.sctp4j.sctp.congestion.CongestionController;
+import pe.pi.sctp4j.sctp.dataChannel.DECP.DCOpen;
+
+/**
+ * a partially reliable channel over a lossy link - whatever we give up on has
+ * to come out of the congestion window too, or we stop sending.
+ *
+ * @author tim
+ */
+public class AbandonTest {
+
+    static final int LOSSY = 200;
+    static final int CLEAN = 20;
+    static final int SIZE = 1000;
+    static final int DROP_EVERY = 5;
+
+    @BeforeClass
+    public static void setUpClass() {
+        Log.setLevel(Log.WARN);
+    }
+
+    class QueueTransport implements DatagramTransport {
+
+        private final BlockingQueue<byte[]> _in;
+        private final BlockingQueue<byte[]> _out;
+        private volatile boolean _closed;
+        volatile boolean lossy;
+        private int _count;
+
+        QueueTransport(BlockingQueue<byte[]> in, BlockingQueue<byte[]> out) {
+            _in = in;
+            _out = out;
+        }
+
+        @Override
+        public int getReceiveLimit() throws IOException {
+            return 1200;
+        }
+
+        @Override
+        public int getSendLimit() throws IOException {
+            return 1200;
+        }
+
+        @Override
+        public int receive(byte[] buf, int off, int len, int waitMillis) throws IOException {
+            if (_closed) {
+                throw new java.io.EOFException("Transport was shutdown.");
+            }
+            try {
+                byte[] pkt = _in.poll(waitMillis, TimeUnit.MILLISECONDS);
+                if (pkt == null) {
+                    throw new java.io.InterruptedIOException("empty Queue");
+                }
+                System.arraycopy(pkt, 0, buf, off, pkt.length);
+                return pkt.length;
+            } catch (InterruptedException ex) {
+                throw new java.io.InterruptedIOException(ex.getMessage());
+            }
+        }
+
+        @Override
+        public synchronized void send(byte[] bytes, int off, int len) throws IOException {
+            if (lossy && (++_count % DROP_EVERY == 0)) {
+                return;
+            }
+            byte[] pkt = new byte[len];
+            System.arraycopy(bytes, off, pkt, 0, len);
+            _out.add(pkt);
+        }
+
+        @Override
+        public void close() throws IOException {
+            _closed = true;
+        }
+    }
+
+    class Receiver implements AssociationListener, SCTPByteStreamListener {
+
+        final CountDownLatch associated = new CountDownLatch(1);
+        final CountDownLatch opened = new CountDownLatch(1);
+        final CountDownLatch last = new CountDownLatch(1);
+        volatile int got;
+
+        @Override
+        public void onAssociated(Association a) {
+            associated.countDown();
+        }
+
+        @Override
+        public void onDisAssociated(Association a) {
+        }
+
+        @Override
+        public void onDCEPStream(SCTPStream s, String label, int type) {
+            s.setSCTPStreamListener(this);
+            opened.countDown();
+        }
+
+        @Override
+        public void onRawStream(SCTPStream s) {
+        }
+
+        @Override
+        public void onMessage(SCTPStream s, byte[] message) {
+            got++;
+            if (ByteBuffer.wrap(message).getInt() == LOSSY + CLEAN - 1) {
+                last.countDown();
+            }
+        }
+
+        @Override
+        public void onMessage(SCTPStream s, String message) {
+        }
+
+        @Override
+        public void close(SCTPStream s) {
+        }
+    }
+
+    // wait for the sends to be acked or given up on - lost chunks need a T3
+    private void settle(ThreadedAssociation a) throws InterruptedException {
+        for (int i = 0; (i < 300) && (a.getOutstanding() > 0); i++) {
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    public void testAbandonedLeaveFlight() throws Exception {
+        System.out.println("--> abandoned chunks leave the congestion controller's flight size");
+        LinkedBlockingQueue<byte[]> l = new LinkedBlockingQueue();
+        LinkedBlockingQueue<byte[]> r = new LinkedBlockingQueue();
+        QueueTransport lt = new QueueTransport(l, r);
+        QueueTransport rt = new QueueTransport(r, l);
+        Receiver left = new Receiver();
+        Receiver right = new Receiver();
+        ThreadedAssociation sender = new ThreadedAssociation(lt, left);
+        ThreadedAssociation receiver = new ThreadedAssociation(rt, right);
+        try {
+            sender.associate();
+            assertTrue(right.associated.await(2, TimeUnit.SECONDS));
+            assertTrue(left.associated.await(2, TimeUnit.SECONDS));
+            // never resent - so every lost chunk gets abandoned
+            SCTPStream s = sender.mkStream(new DCOpen(DCOpen.PARTIAL_RELIABLE_REXMIT, 0, 0, "lossy", ""), null);
+            assertTrue(right.opened.await(2, TimeUnit.SECONDS));
+            for (int i = 0; (i < 100) && !"PartialReliableStreamBehaviour".equals(s.getBehave()); i++) {
+                Thread.sleep(20);
+            }
+            assertEquals("PartialReliableStreamBehaviour", s.getBehave());
+            CongestionController cc = sender.getCongestionController();
+            lt.lossy = true;
+            // send blocks while the window is full - so don't let it hang us
+            Thread st = new Thread(() -> {
+                try {
+                    for (int i = 0; i < LOSSY; i++) {
+                        s.send(ByteBuffer.allocate(SIZE).putInt(0, i).array());
+                    }
+                } catch (Exception ex) {
+                    Log.warn(ex.getMessage());
+                }
+            }, "lossy sender");
+            st.setDaemon(true);
+            st.start();
+            st.join(30000);
+            assertFalse("sender stalled with " + cc.getFlightSize() + " in flight", st.isAlive());
+            // everything got acked or abandoned - the flight size has to agree
+            settle(sender);
+            assertEquals(0, sender.getOutstanding());
+            assertEquals(0, cc.getFlightSize());
+            lt.lossy = false;
+            for (int i = LOSSY; i < LOSSY + CLEAN; i++) {
+                s.send(ByteBuffer.allocate(SIZE).putInt(0, i).array());
+            }
+            // sending carried on after the losses
+            assertTrue(right.last.await(30, TimeUnit.SECONDS));
+            settle(sender);
+            assertEquals(0, sender.getOutstanding());
+            assertEquals(0, cc.getFlightSize());
+            System.out.println("    " + right.got + " of " + (LOSSY + CLEAN) + " messages arrived");
+            assertTrue(right.got < LOSSY + CLEAN);
+        } finally {
+            lt.close();
+            rt.close();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.small;
+
+import com.phono.srtplight.Log;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.bouncycastle.tls.DatagramTransport;
+import org.bouncycastle.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pe.pi.sctp4j.sctp.Association;
+import pe.pi.sctp4j.sctp.AssociationListener;
+import pe.pi.sctp4j.sctp.SCTPByteStreamListener;
+import pe.pi.sctp4j.sctp.SCTPStream;
+
+/**
+ *
+ * @author tim
+ */
+public class EventLoopGroupTest {
+
+    EventLoopGroup _group;
+
+    @BeforeClass
+    public static void setUpClass() {
+        Log.setLevel(Log.WARN);
+    }
+
+    @Before
+    public void setUp() {
+        _group = new EventLoopGroup(2, 2);
+    }
+
+    @After
+    public void tearDown() {
+        _group.close();
+    }
+
+    // sends straight into the peer association - as a DTLS stack would
+    class PushTransport implements DatagramTransport {
+
+        Association _peer;
+
+        @Override
+        public int getReceiveLimit() throws IOException {
+            return 1200;
+        }
+
+        @Override
+        public int getSendLimit() throws IOException {
+            return 1200;
+        }
+
+        @Override
+        public int receive(byte[] buf, int off, int len, int waitMillis) throws IOException {
+            throw new IOException("pushed transports are never read");
+        }
+
+        @Override
+        public void send(byte[] buf, int off, int len) throws IOException {
+            _peer.onDatagram(ByteBuffer.wrap(buf, off, len));
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    class MockAssociationListener implements AssociationListener {
+
+        boolean associated = false;
+        SCTPStream stream = null;
+
+        @Override
+        synchronized public void onAssociated(Association a) {
+            associated = true;
+            this.notifyAll();
+        }
+
+        @Override
+        synchronized public void onDisAssociated(Association a) {
+            associated = false;
+            this.notifyAll();
+        }
+
+        @Override
+        synchronized public void onDCEPStream(SCTPStream s, String label, int type) {
+            stream = s;
+            this.notifyAll();
+        }
+
+        @Override
+        synchronized public void onRawStream(SCTPStream s) {
+            stream = s;
+            this.notifyAll();
+        }
+    }
+
+    LoopAssociation[] mkPair(MockAssociationListener l, MockAssociationListener r) {
+        PushTransport lt = new PushTransport();
+        PushTransport rt = new PushTransport();
+        LoopAssociation[] ret = new LoopAssociation[2];
+        ret[0] = _group.mkAssociation(lt, l, true);
+        ret[1] = _group.mkAssociation(rt, r, false);
+        lt._peer = ret[1];
+        rt._peer = ret[0];
+        return ret;
+    }
+
+    void waitAssociated(MockAssociationListener l) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        synchronized (l) {
+            while (!l.associated && (System.currentTimeMillis() < end)) {
+                l.wait(100);
+            }
+        }
+        assertTrue(l.associated);
+    }
+
+    void waitStream(MockAssociationListener l) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        synchronized (l) {
+            while ((l.stream == null) && (System.currentTimeMillis() < end)) {
+                l.wait(100);
+            }
+        }
+        assertNotNull(l.stream);
+    }
+
+    int countThreads(String prefix) {
+        int ret = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().startsWith(prefix)) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    @Test
+    public void testManyAssociations() throws Exception {
+        System.out.println("--> many associations on 2 loops");
+        int rcvBefore = countThreads("AssocRcv");
+        int pairs = 50;
+        MockAssociationListener[] ls = new MockAssociationListener[pairs * 2];
+        for (int i = 0; i < pairs; i++) {
+            ls[i * 2] = new MockAssociationListener();
+            ls[i * 2 + 1] = new MockAssociationListener();
+            LoopAssociation[] p = mkPair(ls[i * 2], ls[i * 2 + 1]);
+            p[0].associate();
+        }
+        for (MockAssociationListener l : ls) {
+            waitAssociated(l);
+        }
+        assertTrue(countThreads("AssocRcv") <= rcvBefore);
+    }
+
+    @Test
+    public void testMessage() throws Exception {
+        System.out.println("--> message over pushed association");
+        final ByteBuffer rightout = ByteBuffer.allocate(10000);
+        final SCTPByteStreamListener rsl = new SCTPByteStreamListener() {
+            @Override
+            public void onMessage(SCTPStream s, String message) {
+            }
+
+            @Override
+            public void onMessage(SCTPStream s, byte[] message) {
+                synchronized (rightout) {
+                    rightout.put(message);
+                    rightout.notifyAll();
+                }
+            }
+
+            @Override
+            public void close(SCTPStream aThis) {
+            }
+        };
+        MockAssociationListener listenLeft = new MockAssociationListener();
+        MockAssociationListener listenRight = new MockAssociationListener() {
+            @Override
+            synchronized public void onRawStream(SCTPStream s) {
+                s.setSCTPStreamListener(rsl);
+                super.onRawStream(s);
+            }
+
+            @Override
+            synchronized public void onDCEPStream(SCTPStream s, String label, int type) {
+                s.setSCTPStreamListener(rsl);
+                super.onDCEPStream(s, label, type);
+            }
+        };
+        LoopAssociation[] p = mkPair(listenLeft, listenRight);
+        p[0].associate();
+        waitAssociated(listenLeft);
+        waitAssociated(listenRight);
+        SCTPStream s = p[0].mkStream("test Stream", rsl);
+        // don't send until the far end has a listener on the stream
+        waitStream(listenRight);
+        byte[] testBytes = new byte[3000];
+        new Random(1).nextBytes(testBytes);
+        s.send(testBytes);
+        long end = System.currentTimeMillis() + 5000;
+        synchronized (rightout) {
+            while ((rightout.position() < testBytes.length) && (System.currentTimeMillis() < end)) {
+                rightout.wait(100);
+            }
+            rightout.flip();
+            byte[] rec = new byte[rightout.limit()];
+            rightout.get(rec);
+            assertTrue(Arrays.areEqual(testBytes, rec));
+        }
+    }
+}
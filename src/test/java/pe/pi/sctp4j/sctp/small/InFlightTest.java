@@ -0,0 +1,364 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.small;
+
+import java.util.ArrayList;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pe.pi.sctp4j.sctp.messages.DataChunk;
+import pe.pi.sctp4j.sctp.messages.ForwardTsnChunk;
+
+/**
+ *
+ * @author tim
+ */
+public class InFlightTest {
+
+    DataChunk mkData(long tsn, int sz) {
+        DataChunk dc = new DataChunk();
+        dc.setData(new byte[sz]);
+        dc.setTsn(tsn);
+        return dc;
+    }
+
+    InFlight fill(long from, int n) {
+        InFlight f = new InFlight();
+        for (long t = from; t < from + n; t++) {
+            f.add(mkData(t, 10));
+        }
+        return f;
+    }
+
+    @Test
+    public void testCumAck() {
+        System.out.println("--> in flight cumulative ack");
+        InFlight f = fill(1000, 20);
+        assertEquals(20, f.size());
+        assertEquals(200, f.getOutstanding());
+        assertNull(f.pollAcked(999));
+        for (long t = 1000; t <= 1009; t++) {
+            assertEquals(t, f.pollAcked(1009).getTsn());
+        }
+        assertNull(f.pollAcked(1009));
+        assertEquals(10, f.size());
+        assertEquals(100, f.getOutstanding());
+        // a stale SACK changes nothing
+        assertNull(f.pollAcked(1005));
+        assertEquals(100, f.getOutstanding());
+    }
+
+    @Test
+    public void testGapAck() {
+        System.out.println("--> in flight gap acks only count once");
+        InFlight f = fill(1000, 20);
+        assertEquals(30, f.gapAck(1003, 1005));
+        assertEquals(1005, f.getLastNewlyAcked());
+        // the same block again - nothing new
+        assertEquals(0, f.gapAck(1003, 1005));
+        assertEquals(-1, f.getLastNewlyAcked());
+        // grown at both ends
+        assertEquals(30, f.gapAck(1002, 1007));
+        assertEquals(1007, f.getLastNewlyAcked());
+        assertEquals(30, f.gapAck(1010, 1012));
+        assertEquals(110, f.getOutstanding());
+        // cum ack over gap acked chunks doesn't count them twice
+        long out = f.getOutstanding();
+        DataChunk d;
+        while (null != (d = f.pollAcked(1008))) {
+            if (!d.getGapAck()) {
+                out -= d.getDataSize();
+            }
+        }
+        assertEquals(out, f.getOutstanding());
+        assertEquals(80, f.getOutstanding());
+        // beyond what we sent is ignored
+        assertEquals(0, f.gapAck(1030, 1040));
+    }
+
+    @Test
+    public void testMisses() {
+        System.out.println("--> in flight miss counting");
+        InFlight f = fill(1, 10);
+        f.gapAck(3, 4);
+        f.gapAck(7, 7);
+        ArrayList<DataChunk> marked = new ArrayList();
+        for (int i = 0; i < 2; i++) {
+            f.countMisses(7, 3, marked);
+            assertTrue(marked.isEmpty());
+        }
+        f.countMisses(7, 3, marked);
+        assertEquals(4, marked.size());
+        long[] expect = {1, 2, 5, 6};
+        for (int i = 0; i < expect.length; i++) {
+            assertEquals(expect[i], marked.get(i).getTsn());
+        }
+        // nothing above the last gap ack has been missed
+        for (long t = 8; t <= 10; t++) {
+            f.gapAck(t, t);
+        }
+        marked.clear();
+        f.countMisses(3, 3, marked);
+        assertEquals(4, marked.size());
+        assertEquals(4, marked.get(0).getMissCount());
+        assertEquals(3, marked.get(2).getMissCount());
+    }
+
+    @Test
+    public void testDueAndGrow() {
+        System.out.println("--> in flight grows and retries in order");
+        InFlight f = new InFlight();
+        for (long t = 0xfffffff0L; t < 0xfffffff0L + 1000; t++) {
+            DataChunk d = mkData(t, 1);
+            d.setRetryTime((t & 1) == 0 ? 100 : 200);
+            f.add(d);
+        }
+        assertEquals(1000, f.size());
+        f.gapAck(0xfffffff0L, 0xfffffff0L + 9);
+        ArrayList<DataChunk> due = new ArrayList();
+        f.due(150, due);
+        assertEquals(495, due.size());
+        for (int i = 1; i < due.size(); i++) {
+            assertEquals(due.get(i - 1).getTsn() + 2, due.get(i).getTsn());
+        }
+        ArrayList<DataChunk> free = new ArrayList();
+        f.drainTo(free);
+        assertEquals(1000, free.size());
+        assertTrue(f.isEmpty());
+        assertEquals(0, f.getOutstanding());
+    }
+
+    @Test
+    public void testRetryOrder() {
+        System.out.println("--> in flight ordered by retry time");
+        InFlight f = new InFlight();
+        assertEquals(Long.MAX_VALUE, f.nextRetryTime());
+        for (long t = 1; t <= 10; t++) {
+            DataChunk d = mkData(t, 10);
+            d.setRetryTime(1000 + t);
+            f.add(d);
+        }
+        assertEquals(1001, f.nextRetryTime());
+        ArrayList<DataChunk> due = new ArrayList();
+        f.due(1003, due);
+        assertEquals(3, due.size());
+        // retried - so now last
+        for (DataChunk d : due) {
+            f.setRetryTime(d, 2000);
+        }
+        assertEquals(1004, f.nextRetryTime());
+        // acked chunks are never due
+        f.gapAck(5, 6);
+        assertNull(f.pollAcked(0));
+        f.pollAcked(1);
+        assertEquals(1004, f.nextRetryTime());
+        due.clear();
+        f.due(2000, due);
+        assertEquals(7, due.size());
+        assertEquals(4, due.get(0).getTsn());
+        assertEquals(2, due.get(5).getTsn());
+        int acked = 0;
+        while (null != f.pollAcked(4)) {
+            acked++;
+        }
+        assertEquals(3, acked);
+        assertEquals(1007, f.nextRetryTime());
+    }
+
+    // n fragments of message ssn on stream sid from tsn
+    void addMessage(InFlight f, long tsn, int sid, int ssn, int n, int flags) {
+        for (int i = 0; i < n; i++) {
+            DataChunk d = mkData(tsn + i, 10);
+            d.setStreamId(sid);
+            d.setsSeqNo(ssn);
+            int be = (n == 1) ? DataChunk.SINGLEFLAG
+                    : (i == 0) ? DataChunk.BEGINFLAG : (i == n - 1) ? DataChunk.ENDFLAG : 0;
+            d.setFlags(be | flags);
+            f.add(d);
+        }
+    }
+
+    DataChunk at(InFlight f, long tsn) {
+        ArrayList<DataChunk> all = new ArrayList();
+        f.due(Long.MAX_VALUE, all);
+        for (DataChunk d : all) {
+            if (d.getTsn() == tsn) {
+                return d;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testAbandon() {
+        System.out.println("--> abandoning a fragment abandons its message");
+        InFlight f = new InFlight();
+        addMessage(f, 1000, 1, 0, 1, 0);
+        addMessage(f, 1001, 1, 1, 4, 0);
+        addMessage(f, 1005, 2, 0, 1, 0);
+        assertEquals(60, f.getOutstanding());
+        assertEquals(30, f.gapAck(1003, 1005));
+        DataChunk mid = at(f, 1002);
+        assertEquals(4, f.abandon(mid));
+        assertTrue(mid.isAbandoned());
+        // the two not gap acked stop being outstanding, and stop being due
+        assertEquals(10, f.getOutstanding());
+        assertEquals(20, f.getLastAbandoned());
+        ArrayList<DataChunk> due = new ArrayList();
+        f.due(Long.MAX_VALUE, due);
+        assertEquals(1, due.size());
+        assertEquals(1000, due.get(0).getTsn());
+        assertEquals(0, f.abandon(mid));
+        assertEquals(0, f.getLastAbandoned());
+        // nor are they counted missing
+        ArrayList<DataChunk> marked = new ArrayList();
+        f.countMisses(1006, 1, marked);
+        assertEquals(1, marked.size());
+        // and a late gap ack doesn't count them again
+        assertEquals(0, f.gapAck(1001, 1002));
+        assertEquals(10, f.getOutstanding());
+        // cum ack past them - only the gap acked one left
+        while (null != f.pollAcked(1004)) {
+            ;
+        }
+        assertEquals(0, f.getOutstanding());
+        assertEquals(1, f.size());
+    }
+
+    @Test
+    public void testAdvancePeerAckPoint() {
+        System.out.println("--> peer ack point skips abandoned chunks");
+        InFlight f = new InFlight();
+        addMessage(f, 1000, 1, 5, 2, 0);
+        addMessage(f, 1002, 2, 7, 1, DataChunk.UNORDERED);
+        addMessage(f, 1003, 1, 6, 1, 0);
+        addMessage(f, 1004, 3, 1, 1, 0);
+        ForwardTsnChunk fwd = new ForwardTsnChunk();
+        assertEquals(999, f.advancePeerAckPoint(999, fwd));
+        f.abandon(at(f, 1003));
+        // not next in line - nothing to skip yet
+        assertEquals(999, f.advancePeerAckPoint(999, fwd));
+        assertEquals(0, fwd.getStreamCount());
+        f.abandon(at(f, 1000));
+        f.abandon(at(f, 1002));
+        assertEquals(1003, f.advancePeerAckPoint(999, fwd));
+        // one entry per stream, the last ssn, unordered left out
+        assertEquals(1, fwd.getStreamCount());
+        assertEquals(1, fwd.getStream(0));
+        assertEquals(6, fwd.getStreamSequence(0));
+        // from a later cum ack
+        fwd = new ForwardTsnChunk();
+        while (null != f.pollAcked(1001)) {
+            ;
+        }
+        assertEquals(1003, f.advancePeerAckPoint(1001, fwd));
+    }
+
+    @Test
+    public void testAbandonInterleaved() {
+        System.out.println("--> abandoning an I-DATA message leaves the ones mixed with it");
+        InFlight f = new InFlight();
+        // mid 9 on stream 1 interleaved with mid 4 on stream 2 and unordered mid 9 on stream 1
+        int[][] frags = {{1, 9, DataChunk.BEGINFLAG}, {2, 4, DataChunk.BEGINFLAG},
+        {1, 9, DataChunk.BEGINFLAG | DataChunk.UNORDERED}, {1, 9, 0}, {2, 4, DataChunk.ENDFLAG},
+        {1, 9, DataChunk.ENDFLAG | DataChunk.UNORDERED}, {1, 9, DataChunk.ENDFLAG}};
+        long tsn = 1000;
+        for (int[] fr : frags) {
+            DataChunk d = mkData(tsn++, 10);
+            d.setIData(true);
+            d.setStreamId(fr[0]);
+            d.setsSeqNo(fr[1]);
+            d.setFlags(fr[2]);
+            f.add(d);
+        }
+        assertEquals(3, f.abandon(at(f, 1003)));
+        assertEquals(40, f.getOutstanding());
+        ArrayList<DataChunk> due = new ArrayList();
+        f.due(Long.MAX_VALUE, due);
+        assertEquals(4, due.size());
+        for (DataChunk d : due) {
+            assertTrue((d.getStreamId() == 2) || ((d.getFlags() & DataChunk.UNORDERED) != 0));
+        }
+        // the leading abandoned one can be skipped - and a later one with it
+        ForwardTsnChunk fwd = new ForwardTsnChunk(true);
+        assertEquals(1000, f.advancePeerAckPoint(999, fwd));
+        assertEquals(1, fwd.getStreamCount());
+        assertEquals(9, fwd.getStreamSequence(0));
+        assertFalse(fwd.isUnordered(0));
+        assertEquals(2, f.abandon(at(f, 1002)));
+        assertEquals(2, f.abandon(at(f, 1001)));
+        fwd = new ForwardTsnChunk(true);
+        assertEquals(1006, f.advancePeerAckPoint(999, fwd));
+        // unordered ones count too with I-DATA
+        assertEquals(3, fwd.getStreamCount());
+    }
+
+    @Test
+    public void testAbandonInterleavedAckedHead() {
+        System.out.println("--> abandoning an I-DATA message whose first fragment is acked");
+        InFlight f = new InFlight();
+        // mid 9 on stream 1 interleaved with mid 4 on stream 1
+        int[][] frags = {{9, DataChunk.BEGINFLAG}, {4, DataChunk.BEGINFLAG}, {9, 0}, {9, DataChunk.ENDFLAG},
+        {4, DataChunk.ENDFLAG}};
+        long tsn = 1000;
+        for (int[] fr : frags) {
+            DataChunk d = mkData(tsn++, 10);
+            d.setIData(true);
+            d.setStreamId(1);
+            d.setsSeqNo(fr[0]);
+            d.setFlags(fr[1]);
+            f.add(d);
+        }
+        assertNotNull(f.pollAcked(1000));
+        assertNull(f.pollAcked(1000));
+        assertEquals(2, f.abandon(at(f, 1002)));
+        assertEquals(20, f.getOutstanding());
+        // and from the last fragment back
+        assertEquals(2, f.abandon(at(f, 1004)));
+        assertEquals(0, f.getOutstanding());
+    }
+
+    @Test
+    public void testMarked() {
+        System.out.println("--> chunks marked for resend drop out when acked, abandoned or resent");
+        InFlight f = new InFlight();
+        for (long t = 100; t < 110; t++) {
+            DataChunk d = mkData(t, 10);
+            d.setFlags(DataChunk.SINGLEFLAG);
+            f.add(d);
+        }
+        for (long t = 109; t >= 102; t--) {
+            f.mark(at(f, t));
+        }
+        f.mark(at(f, 105)); // twice is once
+        assertEquals(80, f.getMarkedBytes());
+        assertEquals(102, f.firstMarked().getTsn());
+        f.resent(at(f, 102));
+        assertEquals(103, f.firstMarked().getTsn());
+        f.gapAck(106, 107);
+        assertEquals(50, f.getMarkedBytes());
+        while (f.pollAcked(104) != null) {
+        }
+        assertEquals(105, f.firstMarked().getTsn());
+        assertEquals(30, f.getMarkedBytes());
+        f.abandon(at(f, 108));
+        assertEquals(20, f.getMarkedBytes());
+        ArrayList<DataChunk> free = new ArrayList();
+        f.drainTo(free);
+        assertNull(f.firstMarked());
+        assertEquals(0, f.getMarkedBytes());
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.small;
+
+import com.phono.srtplight.Log;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.bouncycastle.tls.DatagramTransport;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import pe.pi.sctp4j.sctp.Association;
+import pe.pi.sctp4j.sctp.AssociationListener;
+import pe.pi.sctp4j.sctp.SCTPByteStreamListener;
+import pe.pi.sctp4j.sctp.SCTPStream;
+import pe.pi.sctp4j.sctp.messages.Chunk;
+import pe.pi.sctp4j.sctp.scheduler.FcfsScheduler;
+import pe.pi.sctp4j.sctp.scheduler.RoundRobinScheduler;
+import pe.pi.sctp4j.sctp.scheduler.StreamScheduler;
+import pe.pi.sctp4j.sctp.scheduler.WfqScheduler;
+
+/**
+ * small messages on one stream while another carries big ones - with I-DATA
+ * they shouldn't have to wait for a whole big message to go.
+ *
+ * @author tim
+ */
+public class InterleavingTest {
+
+    // just under Association.maxMessageSize()
+    static final int BIG = 60 * 1024;
+    static final int BIGS = 8;
+    static final int SMALLS = 20;
+
+    @BeforeClass
+    public static void setUpClass() {
+        Log.setLevel(Log.WARN);
+    }
+
+    // lossless - so what we measure is the queueing
+    class QueueTransport implements DatagramTransport {
+
+        private final BlockingQueue<byte[]> _in;
+        private final BlockingQueue<byte[]> _out;
+        private volatile boolean _closed;
+
+        QueueTransport(BlockingQueue<byte[]> in, BlockingQueue<byte[]> out) {
+            _in = in;
+            _out = out;
+        }
+
+        @Override
+        public int getReceiveLimit() throws IOException {
+            return 1200;
+        }
+
+        @Override
+        public int getSendLimit() throws IOException {
+            return 1200;
+        }
+
+        @Override
+        public int receive(byte[] buf, int off, int len, int waitMillis) throws IOException {
+            if (_closed) {
+                throw new java.io.EOFException("Transport was shutdown.");
+            }
+            try {
+                byte[] pkt = _in.poll(waitMillis, TimeUnit.MILLISECONDS);
+                if (pkt == null) {
+                    throw new java.io.InterruptedIOException("empty Queue");
+                }
+                System.arraycopy(pkt, 0, buf, off, pkt.length);
+                return pkt.length;
+            } catch (InterruptedException ex) {
+                throw new java.io.InterruptedIOException(ex.getMessage());
+            }
+        }
+
+        @Override
+        public void send(byte[] bytes, int off, int len) throws IOException {
+            byte[] pkt = new byte[len];
+            System.arraycopy(bytes, off, pkt, 0, len);
+            _out.add(pkt);
+        }
+
+        @Override
+        public void close() throws IOException {
+            _closed = true;
+        }
+    }
+
+    // an old style peer
+    class NoIDataAssociation extends ThreadedAssociation {
+
+        NoIDataAssociation(DatagramTransport transport, AssociationListener al) {
+            super(transport, al);
+        }
+
+        @Override
+        protected byte[] getSupportedExtensions() {
+            return new byte[]{(byte) Chunk.RE_CONFIG, (byte) Chunk.FORWARD_TSN};
+        }
+    }
+
+    class Receiver implements AssociationListener, SCTPByteStreamListener {
+
+        final CountDownLatch associated = new CountDownLatch(1);
+        final CountDownLatch opened = new CountDownLatch(2);
+        final CountDownLatch bigs = new CountDownLatch(BIGS);
+        final CountDownLatch smalls = new CountDownLatch(SMALLS);
+        final ConcurrentHashMap<Integer, Long> arrived = new ConcurrentHashMap();
+
+        @Override
+        public void onAssociated(Association a) {
+            associated.countDown();
+        }
+
+        @Override
+        public void onDisAssociated(Association a) {
+        }
+
+        @Override
+        public void onDCEPStream(SCTPStream s, String label, int type) {
+            s.setSCTPStreamListener(this);
+            opened.countDown();
+        }
+
+        @Override
+        public void onRawStream(SCTPStream s) {
+        }
+
+        @Override
+        public void onMessage(SCTPStream s, byte[] message) {
+            if (message.length == BIG) {
+                bigs.countDown();
+            } else {
+                arrived.put((int) message[0], System.nanoTime());
+                smalls.countDown();
+            }
+        }
+
+        @Override
+        public void onMessage(SCTPStream s, String message) {
+        }
+
+        @Override
+        public void close(SCTPStream s) {
+        }
+    }
+
+    // @return the mean latency of the small messages in ms
+    private double smallLatency(boolean iData) throws Exception {
+        return smallLatency(iData, new RoundRobinScheduler());
+    }
+
+    private double smallLatency(boolean iData, StreamScheduler sched) throws Exception {
+        LinkedBlockingQueue<byte[]> l = new LinkedBlockingQueue();
+        LinkedBlockingQueue<byte[]> r = new LinkedBlockingQueue();
+        QueueTransport lt = new QueueTransport(l, r);
+        QueueTransport rt = new QueueTransport(r, l);
+        Receiver left = new Receiver();
+        Receiver right = new Receiver();
+        ThreadedAssociation sender = iData ? new ThreadedAssociation(lt, left) : new NoIDataAssociation(lt, left);
+        ThreadedAssociation receiver = new ThreadedAssociation(rt, right);
+        sender.setStreamScheduler(sched);
+        try {
+            sender.associate();
+            assertTrue(right.associated.await(2, TimeUnit.SECONDS));
+            assertTrue(left.associated.await(2, TimeUnit.SECONDS));
+            assertEquals(iData, sender.usesIData());
+            assertEquals(iData, receiver.usesIData());
+            SCTPStream bulk = sender.mkStream("bulk");
+            SCTPStream voice = sender.mkStream("voice");
+            assertTrue(right.opened.await(2, TimeUnit.SECONDS));
+            Thread bt = new Thread(() -> {
+                try {
+                    for (int i = 0; i < BIGS; i++) {
+                        bulk.send(new byte[BIG]);
+                    }
+                } catch (Exception ex) {
+                    Log.warn(ex.getMessage());
+                }
+            }, "bulk sender");
+            bt.start();
+            long[] sent = new long[SMALLS];
+            for (int i = 0; i < SMALLS; i++) {
+                Thread.sleep(5);
+                sent[i] = System.nanoTime();
+                voice.send(new byte[]{(byte) i, 0, 0, 0});
+            }
+            assertTrue(right.smalls.await(20, TimeUnit.SECONDS));
+            assertTrue(right.bigs.await(20, TimeUnit.SECONDS));
+            bt.join();
+            long total = 0;
+            for (int i = 0; i < SMALLS; i++) {
+                total += right.arrived.get(i) - sent[i];
+            }
+            return total / (SMALLS * 1000000.0);
+        } finally {
+            lt.close();
+            rt.close();
+        }
+    }
+
+    @Test
+    public void testSmallMessagesDontWait() throws Exception {
+        System.out.println("--> small messages alongside " + BIGS + " x " + (BIG / 1024) + "KB ones");
+        for (int pass = 0; pass < 3; pass++) {
+            double without = smallLatency(false);
+            double with = smallLatency(true);
+            System.out.println(String.format("    mean small message latency %.2fms with DATA, %.2fms with I-DATA", without, with));
+        }
+    }
+
+    @Test
+    public void testSchedulers() throws Exception {
+        System.out.println("--> small message latency by stream scheduler");
+        for (int pass = 0; pass < 2; pass++) {
+            double fcfs = smallLatency(true, new FcfsScheduler());
+            double rr = smallLatency(true, new RoundRobinScheduler());
+            double wfq = smallLatency(true, new WfqScheduler());
+            System.out.println(String.format("    mean small message latency %.2fms first come first served, %.2fms round robin, %.2fms wfq", fcfs, rr, wfq));
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017 pi.pe gmbh .
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package pe.pi.sctp4j.sctp.small;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tim
+ */
+public class StrandTest {
+
+    ExecutorService _pool;
+
+    @Before
+    public void setUp() {
+        _pool = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        _pool.shutdownNow();
+    }
+
+    @Test
+    public void testOrderedNoOverlap() throws Exception {
+        System.out.println("--> strands keep order and never overlap");
+        int nstrands = 50;
+        int ntasks = 200;
+        Strand[] strands = new Strand[nstrands];
+        int[] next = new int[nstrands];
+        AtomicInteger[] running = new AtomicInteger[nstrands];
+        AtomicBoolean bad = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(nstrands * ntasks);
+        for (int s = 0; s < nstrands; s++) {
+            strands[s] = new Strand(_pool, "test-" + s);
+            running[s] = new AtomicInteger();
+        }
+        // interleave the submissions across the strands from several threads
+        Thread[] submitters = new Thread[2];
+        for (int k = 0; k < submitters.length; k++) {
+            int half = k;
+            submitters[k] = new Thread(() -> {
+                for (int i = 0; i < ntasks; i++) {
+                    for (int s = half; s < nstrands; s += 2) {
+                        int sno = s;
+                        int seq = i;
+                        strands[s].execute(() -> {
+                            if (running[sno].incrementAndGet() != 1) {
+                                bad.set(true);
+                            }
+                            if (next[sno] != seq) {
+                                bad.set(true);
+                            }
+                            next[sno] = seq + 1;
+                            running[sno].decrementAndGet();
+                            done.countDown();
+                        });
+                    }
+                }
+            });
+            submitters[k].start();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertFalse(bad.get());
+        for (int s = 0; s < nstrands; s++) {
+            assertEquals(ntasks, next[s]);
+        }
+    }
+
+    @Test
+    public void testCloseIsLocal() throws Exception {
+        System.out.println("--> closing a strand leaves the pool and the others alone");
+        Strand a = new Strand(_pool, "a");
+        Strand b = new Strand(_pool, "b");
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger aRan = new AtomicInteger();
+        a.execute(() -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+            }
+            aRan.incrementAndGet();
+        });
+        assertTrue(blocked.await(1, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            a.execute(() -> aRan.incrementAndGet());
+        }
+        a.close();
+        a.execute(() -> aRan.incrementAndGet());
+        release.countDown();
+        CountDownLatch bDone = new CountDownLatch(1);
+        b.execute(() -> bDone.countDown());
+        assertTrue(bDone.await(1, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        // the running task finished, the queued ones were dropped
+        assertEquals(1, aRan.get());
+        assertTrue(a.isClosed());
+        assertFalse(_pool.isShutdown());
+    }
+
+    @Test
+    public void testSharedPoolIsBounded() throws Exception {
+        System.out.println("--> many strands few threads");
+        ExecutorService shared = Strand.getShared();
+        int n = 500;
+        CountDownLatch done = new CountDownLatch(n);
+        for (int i = 0; i < n; i++) {
+            new Strand(shared, "s" + i).execute(() -> done.countDown());
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        int threads = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().startsWith("SCTPPool-")) {
+                threads++;
+            }
+        }
+        assertTrue(threads <= Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+    }
+}
@@ -21,10 +21,12 @@ import pe.pi.sctp4j.sctp.AssociationListener;
 import pe.pi.sctp4j.sctp.SCTPByteStreamListener;
 import pe.pi.sctp4j.sctp.SCTPStream;
 import pe.pi.sctp4j.sctp.SCTPStreamListener;
+import pe.pi.sctp4j.sctp.dataChannel.DECP.DCOpen;
 import com.phono.srtplight.Log;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Random;
 import java.util.Vector;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -463,6 +465,72 @@ public class ThreadedAssociationTest {
 
     }
 
+    @Test
+    public void testDCEPUnorderedStream() throws Exception {
+        System.out.println("---->testDCEPUnorderedStream");
+        final ArrayList<String> rightout = new ArrayList();
+        final SCTPStream[] rightStream = new SCTPStream[1];
+        final SCTPStreamListener rsl = new ASCTPStreamListener() {
+            @Override
+            public void onMessage(SCTPStream s, String message) {
+                synchronized (rightout) {
+                    rightout.add(message);
+                    rightout.notifyAll();
+                }
+            }
+        };
+        DatagramTransport trans[] = mkMockTransports();
+        MockAssociationListener listenLeft = new MockAssociationListener();
+        MockAssociationListener listenRight = new MockAssociationListener() {
+            @Override
+            public void onDCEPStream(SCTPStream s, String label, int type) {
+                s.setSCTPStreamListener(rsl);
+                synchronized (rightStream) {
+                    rightStream[0] = s;
+                    rightStream.notifyAll();
+                }
+            }
+        };
+        ThreadedAssociation instanceLeft = new ThreadedAssociation(trans[0], listenLeft);
+        ThreadedAssociation instanceRight = new ThreadedAssociation(trans[1], listenRight);
+        instanceLeft.associate();
+        synchronized (listenLeft) {
+            listenLeft.wait(2000);
+            assertTrue(listenLeft.associated);
+        }
+        DCOpen open = new DCOpen(DCOpen.RELIABLE_UNORDERED, 0, 0, "unordered", "");
+        SCTPStream s = instanceLeft.mkStream(open, new ASCTPStreamListener() {
+            @Override
+            public void onMessage(SCTPStream s, String message) {
+            }
+        });
+        long end = System.currentTimeMillis() + 5000;
+        synchronized (rightStream) {
+            while ((rightStream[0] == null) && (System.currentTimeMillis() < end)) {
+                rightStream.wait(100);
+            }
+        }
+        assertNotNull(rightStream[0]);
+        assertEquals("UnorderedStreamBehaviour", rightStream[0].getBehave());
+        // we go unordered once the far end acks
+        while (!"UnorderedStreamBehaviour".equals(s.getBehave()) && (System.currentTimeMillis() < end)) {
+            Thread.sleep(10);
+        }
+        assertEquals("UnorderedStreamBehaviour", s.getBehave());
+        HashSet<String> sent = new HashSet();
+        for (int i = 0; i < 20; i++) {
+            String m = "unordered message " + i;
+            sent.add(m);
+            s.send(m);
+        }
+        synchronized (rightout) {
+            while ((rightout.size() < sent.size()) && (System.currentTimeMillis() < end)) {
+                rightout.wait(100);
+            }
+            assertEquals(sent, new HashSet(rightout));
+        }
+    }
+
     @Test
     public void testDCEPStreamSendMultiple() throws Exception {
         //Log.setLevel(Log.INFO);